@@ -0,0 +1,78 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Counts the bytes allocated per shortest route query. The search itself
+ * (RouteSearch.run) should allocate nothing once warmed up; a full
+ * getShortestRoute call only allocates the returned route.
+ *
+ * Usage: java AllocationBenchmark <pathToGraphFile> [queries]
+ *
+ */
+public class AllocationBenchmark {
+
+	/**
+	 * Loads the map and prints the allocation per query
+	 *
+	 * @param args
+	 *            map file and optional number of measured queries
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("Usage: java AllocationBenchmark "
+					+ "<pathToGraphFile> [queries]");
+			System.exit(1);
+		}
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		NavigationGraph graph = MapApp.createNavigationGraphFromMapFile(args[0]);
+		List<Location> vertices = graph.getVertices();
+		String property = graph.getEdgePropertyNames()[0];
+		com.sun.management.ThreadMXBean bean =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		//the first query builds the compact copy and its scratch arrays
+		graph.getShortestRoute(vertices.get(0), vertices.get(1), property);
+		CompactNavigationGraph compact = new CompactNavigationGraph(graph);
+		RouteSearch search = compact.getSearch();
+		int[] sources = new int[queries];
+		Location[][] pairs = new Location[queries][2];
+		Random random = new Random(42);
+		for (int i = 0; i < queries; i++) {
+			int s = random.nextInt(vertices.size());
+			int d = random.nextInt(vertices.size() - 1);
+			sources[i] = s;
+			pairs[i][0] = vertices.get(s);
+			pairs[i][1] = vertices.get(d < s ? d : d + 1);
+		}
+
+		//warm up so the JIT has compiled the hot paths
+		for (int i = 0; i < Math.min(queries, 2000); i++) {
+			search.run(sources[i], 0);
+			graph.getShortestRoute(pairs[i][0], pairs[i][1], property);
+		}
+
+		long before = bean.getThreadAllocatedBytes(thread);
+		for (int i = 0; i < queries; i++) {
+			search.run(sources[i], 0);
+		}
+		long searchBytes = bean.getThreadAllocatedBytes(thread) - before;
+
+		before = bean.getThreadAllocatedBytes(thread);
+		long edges = 0;
+		for (int i = 0; i < queries; i++) {
+			edges += graph.getShortestRoute(pairs[i][0], pairs[i][1], property)
+					.size();
+		}
+		long routeBytes = bean.getThreadAllocatedBytes(thread) - before;
+
+		System.out.println(vertices.size() + " vertices, " + queries
+				+ " queries");
+		System.out.printf("RouteSearch.run:  %.1f bytes/query%n",
+				(double) searchBytes / queries);
+		System.out.printf("getShortestRoute: %.1f bytes/query "
+				+ "(%.1f route edges/query)%n", (double) routeBytes / queries,
+				(double) edges / queries);
+	}
+}
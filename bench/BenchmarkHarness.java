@@ -0,0 +1,170 @@
+import java.util.Arrays;
+
+/**
+ * Minimal benchmark harness: warm-up, timed measurement and latency
+ * percentiles. The benchmarks live in the default package with the rest of
+ * the code, which JMH refuses to generate harness code for, so this plays
+ * the part of the JMH runner.
+ *
+ */
+public class BenchmarkHarness {
+
+	/**
+	 * One benchmarked operation
+	 *
+	 */
+	public interface Operation {
+		/**
+		 * Runs the operation once
+		 *
+		 * @param i
+		 *            invocation number, for picking inputs
+		 * @return any value derived from the result, so the JIT cannot drop
+		 *         the work
+		 */
+		long run(int i) throws Exception;
+	}
+
+	private final long warmupMillis;
+	private final long measureMillis;
+	private long sink; //consumes every result
+
+	/**
+	 * Creates a harness
+	 *
+	 * @param warmupMillis
+	 *            time to run an operation before measuring it
+	 * @param measureMillis
+	 *            time to measure an operation for
+	 */
+	public BenchmarkHarness(long warmupMillis, long measureMillis) {
+		this.warmupMillis = warmupMillis;
+		this.measureMillis = measureMillis;
+	}
+
+	/**
+	 * Measures and prints the throughput of an operation
+	 *
+	 * @param name
+	 *            benchmark name
+	 * @param op
+	 *            operation to measure
+	 * @return operations per second
+	 */
+	public double throughput(String name, Operation op) throws Exception {
+		runFor(op, warmupMillis, 0);
+		long start = System.nanoTime();
+		int count = runFor(op, measureMillis, 0);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double opsPerSecond = count / seconds;
+		System.out.printf("%-48s %14.1f ops/s%n", name, opsPerSecond);
+		return opsPerSecond;
+	}
+
+	/**
+	 * Measures and prints latency percentiles of an operation
+	 *
+	 * @param name
+	 *            benchmark name
+	 * @param maxSamples
+	 *            largest number of measured invocations
+	 * @param op
+	 *            operation to measure
+	 * @return sorted latencies in nanoseconds
+	 */
+	public long[] latency(String name, int maxSamples, Operation op)
+			throws Exception {
+		int warmed = runFor(op, warmupMillis, 0);
+		long[] samples = new long[maxSamples];
+		long deadline = System.nanoTime() + measureMillis * 1000000L;
+		int n = 0;
+		while (n < maxSamples && (n == 0 || System.nanoTime() < deadline)) {
+			long start = System.nanoTime();
+			sink += op.run(warmed + n);
+			samples[n++] = System.nanoTime() - start;
+		}
+		samples = Arrays.copyOf(samples, n);
+		Arrays.sort(samples);
+		System.out.printf("%-48s n=%d p50=%s p90=%s p99=%s max=%s%n", name, n,
+				format(percentile(samples, 50)), format(percentile(samples, 90)),
+				format(percentile(samples, 99)), format(samples[n - 1]));
+		return samples;
+	}
+
+	/**
+	 * Runs a one-off operation, such as loading a big file, a few times and
+	 * prints the best and average time
+	 *
+	 * @param name
+	 *            benchmark name
+	 * @param iterations
+	 *            number of measured runs, after one warm-up run
+	 * @param op
+	 *            operation to measure
+	 * @return best time in nanoseconds
+	 */
+	public long single(String name, int iterations, Operation op)
+			throws Exception {
+		sink += op.run(0);
+		long best = Long.MAX_VALUE;
+		long total = 0;
+		for (int i = 1; i <= iterations; i++) {
+			long start = System.nanoTime();
+			sink += op.run(i);
+			long time = System.nanoTime() - start;
+			best = Math.min(best, time);
+			total += time;
+		}
+		System.out.printf("%-48s best=%s avg=%s%n", name, format(best),
+				format(total / iterations));
+		return best;
+	}
+
+	/**
+	 * Value of all consumed results; printing it keeps them alive
+	 *
+	 * @return accumulated results
+	 */
+	public long getSink() {
+		return sink;
+	}
+
+	/**
+	 * Runs an operation repeatedly for some time
+	 *
+	 * @return number of invocations
+	 */
+	private int runFor(Operation op, long millis, int first) throws Exception {
+		long deadline = System.nanoTime() + millis * 1000000L;
+		int count = 0;
+		do {
+			//check the clock every 16 invocations
+			for (int i = 0; i < 16; i++) {
+				sink += op.run(first + count++);
+			}
+		} while (System.nanoTime() < deadline);
+		return count;
+	}
+
+	/**
+	 * Nearest-rank percentile of sorted samples
+	 */
+	static long percentile(long[] sorted, double p) {
+		int rank = (int) Math.ceil(p / 100 * sorted.length);
+		return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+	}
+
+	/**
+	 * Formats nanoseconds with a readable unit
+	 */
+	static String format(long nanos) {
+		if (nanos < 10000L) {
+			return nanos + "ns";
+		} else if (nanos < 10000000L) {
+			return String.format("%.1fus", nanos / 1e3);
+		} else if (nanos < 10000000000L) {
+			return String.format("%.1fms", nanos / 1e6);
+		}
+		return String.format("%.2fs", nanos / 1e9);
+	}
+}
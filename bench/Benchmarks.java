@@ -0,0 +1,436 @@
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmarks for map loading, shortest route queries, bidirectional, A* and
+ * ALT search, distance matrices, Contraction Hierarchies, the vertex priority
+ * queues, route caching, metrics overhead and adjacency lookups on synthetic
+ * maps of several sizes.
+ *
+ * Usage: java Benchmarks [-sizes 1000,100000,1000000] [-warmup ms]
+ * [-time ms] [-topology grid|geometric|power_law] [filter]
+ *
+ * The maps are written by MapFileGenerator with a fixed seed.
+ *
+ * Only benchmarks whose name contains filter are run. Large sizes need a
+ * big heap, e.g. -Xmx4g for 1M locations.
+ */
+public class Benchmarks {
+
+	/**
+	 * Runs the benchmarks
+	 *
+	 * @param args
+	 *            options as described in the class comment
+	 */
+	public static void main(String[] args) throws Exception {
+		int[] sizes = { 1000, 100000, 1000000 };
+		long warmup = 2000;
+		long time = 5000;
+		String filter = "";
+		MapFileGenerator.Topology topology = MapFileGenerator.Topology.GRID;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-sizes")) {
+				String[] parts = args[++i].split(",");
+				sizes = new int[parts.length];
+				for (int j = 0; j < parts.length; j++) {
+					sizes[j] = Integer.parseInt(parts[j].trim());
+				}
+			} else if (args[i].equals("-warmup")) {
+				warmup = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-time")) {
+				time = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-topology")) {
+				topology = MapFileGenerator.Topology.valueOf(
+						args[++i].toUpperCase());
+			} else {
+				filter = args[i];
+			}
+		}
+
+		BenchmarkHarness harness = new BenchmarkHarness(warmup, time);
+		for (int size : sizes) {
+			new Benchmarks(harness, filter, topology, size).run();
+		}
+		System.out.println("(sink " + harness.getSink() + ")");
+	}
+
+	private final BenchmarkHarness harness;
+	private final String filter;
+	private final MapFileGenerator.Topology topology;
+	private final int size;
+
+	private Benchmarks(BenchmarkHarness harness, String filter,
+			MapFileGenerator.Topology topology, int size) {
+		this.harness = harness;
+		this.filter = filter;
+		this.topology = topology;
+		this.size = size;
+	}
+
+	private boolean selected(String name) {
+		return name.contains(filter);
+	}
+
+	private void run() throws Exception {
+		System.out.println("== " + size + " locations, " + topology);
+		final File file = File.createTempFile("map-" + size + "-", ".txt");
+		file.deleteOnExit();
+		final long lines = 1 + new MapFileGenerator(topology, size,
+				new String[] { "Time", "Cost" }, 42).write(file.getPath());
+
+		if (selected("load")) {
+			long best = harness.single("load/" + size, 3,
+					new BenchmarkHarness.Operation() {
+						public long run(int i) throws Exception {
+							return MapApp.createNavigationGraphFromMapFile(
+									file.getPath()).getVertices().size();
+						}
+					});
+			System.out.printf("%-48s %14.1f lines/s%n", "load/" + size,
+					lines / (best / 1e9));
+		}
+
+		final NavigationGraph graph =
+				MapApp.createNavigationGraphFromMapFile(file.getPath());
+		final List<Location> vertices = graph.getVertices();
+		final int size = vertices.size();//isolated locations are not in the file
+		final String property = graph.getEdgePropertyNames()[0];
+		final Random random = new Random(7);
+		final Location[] sources = new Location[1024];
+		final Location[] dests = new Location[1024];
+		for (int i = 0; i < sources.length; i++) {
+			int s = random.nextInt(size);
+			int d = (s + 1 + random.nextInt(size - 1)) % size;
+			sources[i] = vertices.get(s);
+			dests[i] = vertices.get(d);
+		}
+
+		if (selected("shortestRoute")) {
+			harness.latency("shortestRoute/" + size, 100000,
+					new BenchmarkHarness.Operation() {
+						public long run(int i) {
+							int k = i & (sources.length - 1);
+							return graph.getShortestRoute(sources[k], dests[k],
+									property).size();
+						}
+					});
+		}
+
+		if (selected("bidirectional")) {
+			harness.latency("bidirectional/" + size, 100000,
+					new BenchmarkHarness.Operation() {
+						public long run(int i) {
+							int k = i & (sources.length - 1);
+							return graph.getShortestRouteBidirectional(sources[k],
+									dests[k], property).size();
+						}
+					});
+		}
+
+		if (selected("kshortest")) {
+			harness.latency("kshortest/k=10/" + size, 1000,
+					new BenchmarkHarness.Operation() {
+						public long run(int i) {
+							int k = i & (sources.length - 1);
+							return graph.getKShortestRoutes(sources[k],
+									dests[k], property, 10).size();
+						}
+					});
+		}
+
+		if (selected("astar")) {
+			astar(new MapFileGenerator(topology, this.size,
+					new String[] { "Time", "Cost" }, 42).getCoordinates(),
+					graph, property, sources, dests);
+		}
+
+		if (selected("matrix")) {
+			matrix(graph, property, sources, dests);
+		}
+
+		if (selected("cache")) {
+			cache(graph, property, sources, dests);
+		}
+
+		if (selected("alt")) {
+			alt(graph, property, sources, dests);
+		}
+
+		if (selected("metrics")) {
+			metrics(graph, property, sources, dests);
+		}
+
+		for (final PriorityQueueType type : PriorityQueueType.values()) {
+			if (selected("queue")) {
+				final IndexedMinPriorityQueue queue = type.create(size);
+				final double[] keys = new double[size];
+				for (int v = 0; v < size; v += 2) {
+					keys[v] = random.nextDouble();
+					queue.insert(v, keys[v]);
+				}
+				//hold model: remove the minimum and put it back further on
+				harness.throughput("queue/" + type + "/removeMin+insert/" + size,
+						new BenchmarkHarness.Operation() {
+							public long run(int i) throws Exception {
+								int v = queue.removeMinVertex();
+								keys[v] += 0.5 + (i & 1023) / 1024.0;
+								queue.insert(v, keys[v]);
+								return v;
+							}
+						});
+			}
+		}
+
+		if (selected("outEdges")) {
+			harness.throughput("outEdges/" + size, new BenchmarkHarness.Operation() {
+				public long run(int i) {
+					return graph.getOutEdges(sources[i & (sources.length - 1)])
+							.size();
+				}
+			});
+		}
+		if (selected("neighbors")) {
+			harness.throughput("neighbors/" + size, new BenchmarkHarness.Operation() {
+				public long run(int i) {
+					return graph.getNeighbors(sources[i & (sources.length - 1)])
+							.size();
+				}
+			});
+		}
+
+		if (selected("ch")) {
+			ch(graph, property, sources, dests);
+		}
+	}
+
+	/**
+	 * Times a 256 x 256 distance matrix against the same lengths from
+	 * repeated getShortestRoute calls, of which only the first rows are run
+	 * and the rest extrapolated
+	 */
+	private void matrix(final NavigationGraph graph, final String property,
+			Location[] sources, Location[] dests) throws Exception {
+		final List<Location> from = Arrays.asList(sources).subList(0, 256);
+		final List<Location> to = Arrays.asList(dests).subList(0, 256);
+		long best = harness.single("matrix/256x256/" + size, 3,
+				new BenchmarkHarness.Operation() {
+					public long run(int i) {
+						return graph.distanceMatrix(from, to, property).length;
+					}
+				});
+		final int rows = 4;
+		long naive = harness.single("matrix/naive/" + rows + "x256/" + size,
+				1, new BenchmarkHarness.Operation() {
+					public long run(int i) {
+						long edges = 0;
+						for (int s = 0; s < rows; s++) {
+							for (Location dest : to) {
+								if (dest != from.get(s)) {
+									edges += graph.getShortestRoute(from.get(s),
+											dest, property).size();
+								}
+							}
+						}
+						return edges;
+					}
+				});
+		System.out.printf("%-48s %14.1f x%n", "matrix/speedup/" + size,
+				(double) naive * from.size() / rows / best);
+	}
+
+	/**
+	 * Times a skewed query stream, in which a few of the 1024 pairs make up
+	 * most queries, without and with a RouteCache too small for all routes
+	 */
+	private void cache(final NavigationGraph graph, final String property,
+			final Location[] sources, final Location[] dests) throws Exception {
+		Random random = new Random(11);
+		final int[] stream = new int[4096];
+		for (int i = 0; i < stream.length; i++) {
+			double u = random.nextDouble();
+			stream[i] = (int) (sources.length * u * u * u);
+		}
+		BenchmarkHarness.Operation query = new BenchmarkHarness.Operation() {
+			public long run(int i) {
+				int k = stream[i & (stream.length - 1)];
+				return graph.getShortestRoute(sources[k], dests[k], property)
+						.size();
+			}
+		};
+		harness.latency("cache/none/" + size, 100000, query);
+		RouteCache cache = new RouteCache(256 << 10);
+		graph.setRouteCache(cache);
+		harness.latency("cache/256KB/" + size, 100000, query);
+		graph.setRouteCache(null);
+		System.out.printf("%-48s %14.1f %% hits (%s)%n", "cache/hitRate/" + size,
+				100.0 * cache.getHitCount()
+						/ (cache.getHitCount() + cache.getMissCount()), cache);
+	}
+
+	/**
+	 * Times route queries with Metrics disabled, enabled and disabled again,
+	 * so that a JIT change between the runs shows as a difference of the
+	 * two disabled ones, and prints the cost of recording
+	 */
+	private void metrics(final NavigationGraph graph, final String property,
+			final Location[] sources, final Location[] dests) throws Exception {
+		BenchmarkHarness.Operation query = new BenchmarkHarness.Operation() {
+			public long run(int i) {
+				int k = i & (sources.length - 1);
+				return graph.getShortestRoute(sources[k], dests[k], property)
+						.size();
+			}
+		};
+		boolean was = Metrics.isEnabled();
+		Metrics.setEnabled(false);
+		double off = harness.throughput("metrics/off/" + size, query);
+		Metrics.setEnabled(true);
+		double on = harness.throughput("metrics/on/" + size, query);
+		Metrics.setEnabled(false);
+		double offAgain = harness.throughput("metrics/off/" + size, query);
+		Metrics.setEnabled(was);
+		System.out.printf("%-48s %14.2f %%%n", "metrics/off/drift/" + size,
+				100 * (off - offAgain) / Math.max(off, offAgain));
+		System.out.printf("%-48s %14.2f %%%n", "metrics/on/overhead/" + size,
+				100 * (1 - on / Math.max(off, offAgain)));
+	}
+
+	/**
+	 * Compares Dijkstra and ALT with 16 landmarks of each selection rule by
+	 * settled vertices per query, and times the landmark preprocessing
+	 */
+	private void alt(final NavigationGraph graph, final String property,
+			final Location[] sources, final Location[] dests) throws Exception {
+		final CompactNavigationGraph compact = new CompactNavigationGraph(graph);
+		for (final Landmarks.Selection selection : Landmarks.Selection.values()) {
+			final Landmarks[] built = new Landmarks[1];
+			harness.single("alt/" + selection + "/build/" + size, 1,
+					new BenchmarkHarness.Operation() {
+						public long run(int i) {
+							built[0] = Landmarks.build(compact, 16, selection);
+							return built[0].getCount();
+						}
+					});
+			final RouteHeuristic heuristic = built[0].getHeuristic(property);
+			long settled = 0;
+			for (int i = 0; i < sources.length; i++) {
+				graph.getShortestRoute(sources[i], dests[i], property, heuristic);
+				settled += graph.getLastSettledCount();
+			}
+			System.out.printf("%-48s %14.1f settled/query%n", "alt/" + selection
+					+ "/settled/" + size, (double) settled / sources.length);
+			harness.latency("alt/" + selection + "/" + size, 100000,
+					new BenchmarkHarness.Operation() {
+						public long run(int i) {
+							int k = i & (sources.length - 1);
+							return graph.getShortestRoute(sources[k], dests[k],
+									property, heuristic).size();
+						}
+					});
+		}
+	}
+
+	/**
+	 * Contracts a compact copy of the graph and measures the contraction
+	 * time, the shortcuts and settled vertices per query, and the query
+	 * latency with the hierarchy
+	 */
+	private void ch(NavigationGraph graph, final String property,
+			final Location[] sources, final Location[] dests) throws Exception {
+		final CompactNavigationGraph compact = new CompactNavigationGraph(graph);
+		final ContractionHierarchy[] built = new ContractionHierarchy[1];
+		harness.single("ch/contract/" + size, 1,
+				new BenchmarkHarness.Operation() {
+					public long run(int i) {
+						built[0] = compact.contract(property);
+						return built[0].getShortcutCount();
+					}
+				});
+		long settled = 0;
+		for (int i = 0; i < sources.length; i++) {
+			compact.getShortestRoute(sources[i], dests[i], property);
+			settled += compact.getLastSettledCount();
+		}
+		System.out.printf("%-48s %14d shortcuts, core %d%n", "ch/shortcuts/"
+				+ size, built[0].getShortcutCount(), built[0].getCoreSize());
+		System.out.printf("%-48s %14.1f settled/query%n", "ch/settled/"
+				+ size, (double) settled / sources.length);
+		harness.latency("ch/" + size, 100000,
+				new BenchmarkHarness.Operation() {
+					public long run(int i) {
+						int k = i & (sources.length - 1);
+						return compact.getShortestRoute(sources[k], dests[k],
+								property).size();
+					}
+				});
+	}
+
+	/**
+	 * Compares Dijkstra and A* with a CoordinateHeuristic by settled
+	 * vertices per query, on a copy of the graph whose Locations carry the
+	 * generator's coordinates
+	 */
+	private void astar(double[] points, NavigationGraph graph,
+			final String property, Location[] sources, Location[] dests)
+			throws Exception {
+		if (points == null) {
+			System.out.println("astar/" + size + ": no coordinates for "
+					+ topology);
+			return;
+		}
+		final NavigationGraph placed = new NavigationGraph(
+				graph.getEdgePropertyNames());
+		List<Location> vertices = graph.getVertices();
+		final Location[] copies = new Location[vertices.size()];
+		Map<Location, Location> copyOf = new HashMap<Location, Location>();
+		for (int v = 0; v < copies.length; v++) {
+			String name = vertices.get(v).getName();
+			int id = Integer.parseInt(name.substring(1));
+			copies[v] = new Location(name, points[2 * id], points[2 * id + 1]);
+			copyOf.put(vertices.get(v), copies[v]);
+			placed.addVertex(copies[v]);
+		}
+		for (int v = 0; v < copies.length; v++) {
+			for (Path path : graph.getOutEdges(vertices.get(v))) {
+				Location dest = copyOf.get(path.getDestination());
+				double[] values = new double[path.getProperties().size()];
+				for (int p = 0; p < values.length; p++) {
+					values[p] = path.getProperties().get(p);
+				}
+				placed.addEdge(copies[v], dest, new Path(copies[v], dest, values));
+			}
+		}
+		final RouteHeuristic heuristic = new CoordinateHeuristic(placed,
+				property);
+
+		final Location[] from = new Location[sources.length];
+		final Location[] to = new Location[dests.length];
+		long dijkstra = 0;
+		long astar = 0;
+		for (int i = 0; i < from.length; i++) {
+			from[i] = copyOf.get(sources[i]);
+			to[i] = copyOf.get(dests[i]);
+			placed.getShortestRoute(from[i], to[i], property);
+			dijkstra += placed.getLastSettledCount();
+			placed.getShortestRoute(from[i], to[i], property, heuristic);
+			astar += placed.getLastSettledCount();
+		}
+		System.out.printf("%-48s %14.1f settled/query%n", "dijkstra/settled/"
+				+ size, (double) dijkstra / from.length);
+		System.out.printf("%-48s %14.1f settled/query%n", "astar/settled/"
+				+ size, (double) astar / from.length);
+		harness.latency("astar/" + size, 100000,
+				new BenchmarkHarness.Operation() {
+					public long run(int i) {
+						int k = i & (from.length - 1);
+						return placed.getShortestRoute(from[k], to[k], property,
+								heuristic).size();
+					}
+				});
+	}
+}
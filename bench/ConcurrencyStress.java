@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Stress test of RouteQueryExecutor. A fixed set of random queries is
+ * answered once on a single thread as the reference; then 1, 2, 4, ... up
+ * to the number of cores threads answer all of them at the same time, each
+ * in its own shuffled order, and every route must have exactly the edges
+ * of the reference. Prints the query throughput at each thread count, which
+ * should grow close to linearly with the threads.
+ *
+ * Usage: java ConcurrencyStress <pathToGraphFile> [queries] [rounds] [-ch]
+ * [-threads max] [-cache bytes]
+ *
+ * -ch contracts the graph first so that the queries run on a
+ * ContractionHierarchy. -threads raises or lowers the largest thread count,
+ * e.g. to oversubscribe a small machine. -cache puts a RouteCache of that
+ * size in front of the queries. Exits with status 1 if any route
+ * differs.
+ */
+public class ConcurrencyStress {
+
+	/**
+	 * Loads the map and runs the stress test
+	 *
+	 * @param args
+	 *            options as described in the class comment
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("Usage: java ConcurrencyStress "
+					+ "<pathToGraphFile> [queries] [rounds] [-ch] "
+					+ "[-threads max] [-cache bytes]");
+			System.exit(1);
+		}
+		int queries = 2000;
+		int rounds = 3;
+		boolean contract = false;
+		long cacheBytes = 0;
+		int cores = Runtime.getRuntime().availableProcessors();
+		int position = 0;
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("-ch")) {
+				contract = true;
+			} else if (args[i].equals("-threads")) {
+				cores = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-cache")) {
+				cacheBytes = Long.parseLong(args[++i]);
+			} else if (position++ == 0) {
+				queries = Integer.parseInt(args[i]);
+			} else {
+				rounds = Integer.parseInt(args[i]);
+			}
+		}
+
+		NavigationGraph graph = MapApp.createNavigationGraphFromMapFile(args[0]);
+		final String property = graph.getEdgePropertyNames()[0];
+		final CompactNavigationGraph frozen = graph.freeze();
+		if (contract) {
+			frozen.contract(property);
+		}
+		final RouteQueryExecutor executor = new RouteQueryExecutor(frozen,
+				ForkJoinPool.commonPool(), cacheBytes > 0
+						? new RouteCache(cacheBytes) : null);
+		int n = frozen.getVertexCount();
+		final Location[] sources = new Location[queries];
+		final Location[] dests = new Location[queries];
+		Random random = new Random(42);
+		for (int i = 0; i < queries; i++) {
+			int s = random.nextInt(n);
+			int d = random.nextInt(n - 1);
+			sources[i] = frozen.getLocation(s);
+			dests[i] = frozen.getLocation(d < s ? d : d + 1);
+		}
+
+		//reference routes, one query at a time
+		final String[] expected = new String[queries];
+		for (int i = 0; i < queries; i++) {
+			expected[i] = executor.getShortestRoute(sources[i], dests[i],
+					property).toString();
+		}
+		//warm up on one thread so the JIT does not favour later runs
+		int mismatches = 0;
+		long warmupEnd = System.nanoTime() + 2000000000L;
+		while (System.nanoTime() < warmupEnd) {
+			for (int i = 0; i < queries; i++) {
+				if (!executor.getShortestRoute(sources[i], dests[i], property)
+						.toString().equals(expected[i])) {
+					mismatches++;
+				}
+			}
+		}
+
+		System.out.println(n + " vertices, " + queries + " queries, "
+				+ rounds + " rounds, " + cores + " threads max"
+				+ (contract ? ", contracted" : ""));
+		double single = 0;
+		for (int threads = 1;; threads = Math.min(2 * threads, cores)) {
+			ExecutorService service = Executors.newFixedThreadPool(threads);
+			List<Callable<Integer>> calls = new ArrayList<Callable<Integer>>();
+			for (int t = 0; t < threads; t++) {
+				final int[] order = shuffled(queries, new Random(t));
+				final int rs = rounds;
+				calls.add(new Callable<Integer>() {
+					public Integer call() {
+						int bad = 0;
+						for (int r = 0; r < rs; r++) {
+							for (int i : order) {
+								String route = executor.getShortestRoute(
+										sources[i], dests[i], property)
+										.toString();
+								if (!route.equals(expected[i])) {
+									bad++;
+								}
+							}
+						}
+						return bad;
+					}
+				});
+			}
+			long start = System.nanoTime();
+			for (Future<Integer> future : service.invokeAll(calls)) {
+				mismatches += future.get();
+			}
+			long nanos = System.nanoTime() - start;
+			service.shutdown();
+			double perSecond = (double) threads * rounds * queries * 1e9 / nanos;
+			if (threads == 1) {
+				single = perSecond;
+			}
+			System.out.printf("%3d threads: %10.0f queries/s, %5.2fx%n",
+					threads, perSecond, perSecond / single);
+			if (threads == cores) {
+				break;
+			}
+		}
+		if (executor.getRouteCache() != null) {
+			System.out.println("cache " + executor.getRouteCache());
+		}
+		System.out.println(mismatches == 0 ? "all routes deterministic"
+				: mismatches + " routes differ from the reference");
+		if (mismatches != 0) {
+			System.exit(1);
+		}
+	}
+
+	private static int[] shuffled(int count, Random random) {
+		int[] order = new int[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = i;
+		}
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = order[i];
+			order[i] = order[j];
+			order[j] = swap;
+		}
+		return order;
+	}
+}
@@ -0,0 +1,403 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Answers a file of route queries without the interactive menu, for
+ * replaying query logs. Each input line names a source, a destination and
+ * an edge property, separated by whitespace; blank lines and lines starting
+ * with # are skipped. The output starts with the header line
+ *
+ * Source Destination Property Length Edges Micros Shared Route
+ *
+ * followed by one line per query in input order. Length is the route
+ * length, "unreachable", or "invalid" if a Location or the property is not
+ * in the graph. Route lists the Locations from source to destination joined
+ * by '>'. Micros is the time spent on the query; Shared is the number of
+ * queries that were answered with the same search.
+ *
+ * Queries are read in windows of WINDOW lines. Within a window, queries
+ * with the same source and property share one Dijkstra search that stops
+ * once all their destinations are settled; the others are point queries.
+ * Both run in parallel on a RouteQueryExecutor while the previous window is
+ * written and the next one is read, so the output is streamed in order.
+ */
+public class BatchQueryRunner {
+
+	//queries read and answered at a time
+	private static final int WINDOW = 1 << 16;
+	//point queries per task
+	private static final int TASK_QUERIES = 64;
+	//bits of a window index in the group sort keys
+	private static final int INDEX_BITS = 17;
+
+	private final RouteQueryExecutor executor;
+	private final CompactNavigationGraph graph;
+	private final RouteHeuristic[] heuristics;
+	private final ForkJoinPool pool;
+	//destination marks of each thread's shared searches
+	private final ThreadLocal<boolean[]> marks = new ThreadLocal<boolean[]>();
+	private long queryCount;
+	private long invalidCount;
+
+	/**
+	 * Creates a runner
+	 *
+	 * @param executor
+	 *            executor over the frozen graph
+	 * @param landmarks
+	 *            Landmarks of the graph for point queries on properties
+	 *            without a ContractionHierarchy whose bounds are not
+	 *            stale, or null
+	 * @param pool
+	 *            pool the queries run on
+	 */
+	public BatchQueryRunner(RouteQueryExecutor executor, Landmarks landmarks,
+			ForkJoinPool pool) {
+		if (executor == null || pool == null) {
+			throw new IllegalArgumentException();
+		}
+		this.executor = executor;
+		this.graph = executor.getGraph();
+		this.pool = pool;
+		String[] properties = graph.getEdgePropertyNames();
+		this.heuristics = new RouteHeuristic[properties.length];
+		for (int p = 0; p < properties.length; p++) {
+			if (landmarks != null && !executor.isContracted(p)
+					&& !landmarks.isStale(properties[p])) {
+				heuristics[p] = landmarks.getHeuristic(properties[p]);
+			}
+		}
+	}
+
+	/**
+	 * Answers every query of in and writes the answers to out
+	 *
+	 * @param in
+	 *            query lines
+	 * @param out
+	 *            receives the header and one line per query
+	 * @throws IOException
+	 *             if in cannot be read or out cannot be written
+	 */
+	public void run(BufferedReader in, Writer out) throws IOException {
+		out.write("Source Destination Property Length Edges Micros Shared "
+				+ "Route\n");
+		Window pending = null;
+		while (true) {
+			Window next = read(in);
+			if (next != null) {
+				next.submit();
+			}
+			if (pending != null) {
+				pending.write(out);
+			}
+			if (next == null) {
+				break;
+			}
+			pending = next;
+		}
+		out.flush();
+	}
+
+	/**
+	 * Number of queries answered so far, valid or not
+	 *
+	 * @return query count
+	 */
+	public long getQueryCount() {
+		return queryCount;
+	}
+
+	/**
+	 * Number of queries that named a Location or property not in the graph
+	 *
+	 * @return invalid query count
+	 */
+	public long getInvalidCount() {
+		return invalidCount;
+	}
+
+	/**
+	 * Reads up to WINDOW queries
+	 *
+	 * @return the queries or null at the end of in
+	 */
+	private Window read(BufferedReader in) throws IOException {
+		Window window = new Window();
+		String line;
+		while (window.size < WINDOW && (line = in.readLine()) != null) {
+			String[] fields = line.trim().split("\\s+");
+			if (fields[0].isEmpty() || fields[0].startsWith("#")) {
+				continue;
+			}
+			window.add(fields);
+		}
+		queryCount += window.size;
+		invalidCount += window.invalid;
+		return window.size == 0 ? null : window;
+	}
+
+	/**
+	 * Queries of one window with their answers
+	 */
+	private final class Window {
+
+		private String[][] fields = new String[256][];
+		private int[] s = new int[256];
+		private int[] d = new int[256];
+		private int[] p = new int[256];
+		private String[] answers;
+		private int size;
+		private int invalid;
+		private final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+		void add(String[] query) {
+			if (size == s.length) {
+				fields = Arrays.copyOf(fields, 2 * size);
+				s = Arrays.copyOf(s, 2 * size);
+				d = Arrays.copyOf(d, 2 * size);
+				p = Arrays.copyOf(p, 2 * size);
+			}
+			fields[size] = query;
+			s[size] = query.length == 3 ? index(query[0]) : -1;
+			d[size] = query.length == 3 ? index(query[1]) : -1;
+			p[size] = query.length == 3 ? graph.getPropertyIndex(query[2])
+					: -1;
+			if (s[size] < 0 || d[size] < 0 || p[size] < 0) {
+				invalid++;
+			}
+			size++;
+		}
+
+		/**
+		 * Groups the queries by source and property and starts the tasks
+		 */
+		void submit() {
+			answers = new String[size];
+			long[] keys = new long[size];
+			int valid = 0;
+			for (int i = 0; i < size; i++) {
+				if (s[i] < 0 || d[i] < 0 || p[i] < 0) {
+					answers[i] = answer(i, "invalid", null, 0, 0);
+				} else {
+					long group = (long) p[i] * graph.getVertexCount() + s[i];
+					keys[valid++] = group << INDEX_BITS | i;
+				}
+			}
+			Arrays.sort(keys, 0, valid);
+			int[] singles = new int[valid];
+			int singleCount = 0;
+			for (int lo = 0; lo < valid;) {
+				int hi = lo + 1;
+				while (hi < valid && keys[hi] >>> INDEX_BITS
+						== keys[lo] >>> INDEX_BITS) {
+					hi++;
+				}
+				int[] group = new int[hi - lo];
+				for (int k = lo; k < hi; k++) {
+					group[k - lo] = (int) (keys[k] & ((1 << INDEX_BITS) - 1));
+				}
+				//a hierarchy answers each query faster than any shared search
+				if (group.length > 1 && !executor.isContracted(p[group[0]])) {
+					futures.add(pool.submit(new SharedSearch(this, group)));
+				} else {
+					System.arraycopy(group, 0, singles, singleCount,
+							group.length);
+					singleCount += group.length;
+				}
+				lo = hi;
+			}
+			for (int lo = 0; lo < singleCount; lo += TASK_QUERIES) {
+				futures.add(pool.submit(new PointQueries(this, Arrays
+						.copyOfRange(singles, lo,
+								Math.min(singleCount, lo + TASK_QUERIES)))));
+			}
+		}
+
+		/**
+		 * Waits for the answers and writes them in input order
+		 */
+		void write(Writer out) throws IOException {
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(e);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					throw new IllegalStateException(cause);
+				}
+			}
+			for (int i = 0; i < size; i++) {
+				out.write(answers[i]);
+			}
+		}
+
+		/**
+		 * Formats the output line of a query
+		 *
+		 * @param i
+		 *            query index in the window
+		 * @param length
+		 *            route length column
+		 * @param route
+		 *            route edges ordered from the destination back to the
+		 *            source, or null if there is no route
+		 * @param nanos
+		 *            time spent on the query
+		 * @param shared
+		 *            number of queries answered by the same search
+		 * @return output line
+		 */
+		String answer(int i, String length, int[] route, long nanos,
+				int shared) {
+			StringBuilder line = new StringBuilder();
+			for (int f = 0; f < 3; f++) {
+				line.append(f < fields[i].length ? fields[i][f] : "-")
+						.append(' ');
+			}
+			line.append(length).append(' ')
+					.append(route == null ? 0 : route.length).append(' ')
+					.append(nanos / 1000).append('.')
+					.append(nanos / 100 % 10).append(' ')
+					.append(shared).append(' ');
+			if (route == null) {
+				line.append('-');
+			} else {
+				line.append(graph.getLocation(s[i]).getName());
+				for (int k = route.length - 1; k >= 0; k--) {
+					line.append('>').append(graph.getLocation(
+							graph.edgeTarget(route[k])).getName());
+				}
+			}
+			return line.append('\n').toString();
+		}
+
+		/**
+		 * Formats the answer of a valid query from its route
+		 */
+		String answer(int i, int[] route, boolean reached, long nanos,
+				int shared) {
+			if (!reached) {
+				return answer(i, "unreachable", null, nanos, shared);
+			}
+			double length = 0;
+			for (int e : route) {
+				length += graph.edgeWeight(p[i], e);
+			}
+			return answer(i, String.valueOf(length), route, nanos, shared);
+		}
+	}
+
+	/**
+	 * Answers queries from one source over one property with a single
+	 * search that stops once all of their destinations are settled
+	 */
+	private final class SharedSearch implements Callable<Void> {
+
+		private final Window window;
+		private final int[] queries;
+
+		SharedSearch(Window window, int[] queries) {
+			this.window = window;
+			this.queries = queries;
+		}
+
+		public Void call() {
+			long start = System.nanoTime();
+			int n = graph.getVertexCount();
+			boolean[] isTarget = marks.get();
+			if (isTarget == null) {
+				isTarget = new boolean[n];
+				marks.set(isTarget);
+			}
+			int targetCount = 0;
+			for (int i : queries) {
+				if (!isTarget[window.d[i]]) {
+					isTarget[window.d[i]] = true;
+					targetCount++;
+				}
+			}
+			int s = window.s[queries[0]];
+			RouteSearch search = executor.getSearch();
+			search.run(s, window.p[queries[0]], isTarget, targetCount);
+			for (int i : queries) {
+				isTarget[window.d[i]] = false;
+			}
+			//the search is split evenly between the queries
+			long searchNanos = (System.nanoTime() - start) / queries.length;
+			for (int i : queries) {
+				long begin = System.nanoTime();
+				int d = window.d[i];
+				boolean reached = d == s || search.reached(d);
+				int[] route = new int[0];
+				if (reached) {
+					int length = 0;
+					for (int v = d; v != s; length++) {
+						v = search.getPredecessor(v);
+					}
+					route = new int[length];
+					int v = d;
+					for (int k = 0; k < length; k++) {
+						route[k] = search.getPredecessorEdge(v);
+						v = search.getPredecessor(v);
+					}
+				}
+				window.answers[i] = window.answer(i, route, reached,
+						searchNanos + System.nanoTime() - begin,
+						queries.length);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Answers queries one by one
+	 */
+	private final class PointQueries implements Callable<Void> {
+
+		private final Window window;
+		private final int[] queries;
+
+		PointQueries(Window window, int[] queries) {
+			this.window = window;
+			this.queries = queries;
+		}
+
+		public Void call() {
+			for (int i : queries) {
+				long start = System.nanoTime();
+				int s = window.s[i];
+				int d = window.d[i];
+				int[] route = d == s ? new int[0] : executor.findRoute(s, d,
+						window.p[i], heuristics[window.p[i]]);
+				boolean reached = d == s || route.length > 0;
+				window.answers[i] = window.answer(i, route, reached,
+						System.nanoTime() - start, 1);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Looks up a Location by name
+	 *
+	 * @return vertex id or -1 if there is no such Location
+	 */
+	private int index(String name) {
+		Location location = graph.getLocationByName(name);
+		return location == null ? -1 : graph.getIndex(location);
+	}
+}
@@ -0,0 +1,206 @@
+import java.util.Arrays;
+
+/**
+ * Reusable bidirectional Dijkstra search over a CompactNavigationGraph. A
+ * forward search from the source follows outgoing edges and a backward
+ * search from the destination follows the incoming edge index; each step
+ * settles one vertex on the side whose queue has the smaller minimum, so
+ * both frontiers grow to about half the distance. Whenever an edge reaches
+ * a vertex the other side has labeled, the route through it is a
+ * candidate, and the search stops once the two queue minimums add up to at
+ * least the best candidate: no route through an unsettled vertex can be
+ * shorter then.
+ *
+ * Like RouteSearch the arrays are allocated once and invalidated by a
+ * generation counter, and a search must only be used by one thread at a
+ * time. Edge values must not be negative.
+ */
+final class BidirectionalSearch {
+
+	private final CompactNavigationGraph graph;
+	private final Side forward;
+	private final Side backward;
+	private int generation;
+	//vertices settled by both sides in the last run
+	private int settled;
+
+	/**
+	 * Creates the scratch space for searches on a graph
+	 *
+	 * @param graph
+	 *            graph to be searched
+	 * @param queueType
+	 *            kind of priority queue each side searches with
+	 */
+	BidirectionalSearch(CompactNavigationGraph graph,
+			PriorityQueueType queueType) {
+		graph.buildReverse();
+		this.graph = graph;
+		this.forward = new Side(graph.getVertexCount(), queueType);
+		this.backward = new Side(graph.getVertexCount(), queueType);
+	}
+
+	/**
+	 * Searches for a shortest route from src to dest on one edge property
+	 *
+	 * @param src
+	 *            id of the source vertex
+	 * @param dest
+	 *            id of the destination vertex, not src
+	 * @param property
+	 *            index of the edge property to minimize
+	 * @return edge ids of the route ordered from dest back to src, empty if
+	 *         dest cannot be reached
+	 */
+	int[] run(int src, int dest, int property) {
+		long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+		nextGeneration();
+		forward.start(src);
+		backward.start(dest);
+		settled = 0;
+		int relaxed = 0;
+		int pushes = 2;
+		double best = Double.POSITIVE_INFINITY;
+		int meet = -1;
+		try {
+			while (!forward.queue.isEmpty() && !backward.queue.isEmpty()) {
+				double f = forward.queue.getPriority(forward.queue.peekMinVertex());
+				double b = backward.queue.getPriority(backward.queue.peekMinVertex());
+				if (f + b >= best) {
+					break;
+				}
+				boolean isForward = f <= b;
+				Side side = isForward ? forward : backward;
+				Side other = isForward ? backward : forward;
+				int w = side.queue.removeMinVertex();
+				settled++;
+				double base = side.distance[w];
+				int begin = isForward ? graph.edgesBegin(w)
+						: graph.inEdgesBegin(w);
+				int end = isForward ? graph.edgesEnd(w) : graph.inEdgesEnd(w);
+				relaxed += end - begin;
+				for (int i = begin; i < end; i++) {
+					int e = isForward ? i : graph.inEdge(i);
+					int t = isForward ? graph.edgeTarget(e)
+							: graph.inEdgeSource(i);
+					double weight = base + graph.edgeWeight(property, e);
+					if (side.stamp[t] != generation) {
+						side.label(t, weight, e);
+						side.queue.insert(t, weight);
+						pushes++;
+					} else if (weight < side.distance[t]
+							&& side.queue.contains(t)) {
+						side.label(t, weight, e);
+						side.queue.decreaseKey(t, weight);
+						pushes++;
+					} else {
+						continue;
+					}
+					//a shorter way to t: check the route through it
+					if (other.stamp[t] == generation
+							&& weight + other.distance[t] < best) {
+						best = weight + other.distance[t];
+						meet = t;
+					}
+				}
+			}
+		} catch (PriorityQueueEmptyException e) {
+			throw new IllegalStateException(e);
+		} catch (PriorityQueueFullException e) {
+			throw new IllegalStateException(e);
+		}
+		if (start != 0) {
+			Metrics.BIDIRECTIONAL.record(settled, relaxed, pushes, settled,
+					System.nanoTime() - start);
+		}
+		if (meet < 0) {
+			return new int[0];
+		}
+		return route(src, dest, meet);
+	}
+
+	/**
+	 * Joins the two halves of the route at the meeting vertex
+	 */
+	private int[] route(int src, int dest, int meet) {
+		int before = 0;//edges from src to meet
+		for (int v = meet; v != src; before++) {
+			v = graph.getEdgeSource(forward.predEdge[v]);
+		}
+		int after = 0;//edges from meet to dest
+		for (int v = meet; v != dest; after++) {
+			v = graph.edgeTarget(backward.predEdge[v]);
+		}
+		int[] route = new int[before + after];
+		//the edge into dest comes first
+		int v = meet;
+		for (int i = after - 1; i >= 0; i--) {
+			route[i] = backward.predEdge[v];
+			v = graph.edgeTarget(route[i]);
+		}
+		v = meet;
+		for (int i = after; i < route.length; i++) {
+			route[i] = forward.predEdge[v];
+			v = graph.getEdgeSource(route[i]);
+		}
+		return route;
+	}
+
+	/**
+	 * Number of vertices both sides of the last run settled
+	 *
+	 * @return settled vertex count
+	 */
+	int getSettledCount() {
+		return settled;
+	}
+
+	/**
+	 * Invalidates all labels of the previous run
+	 */
+	private void nextGeneration() {
+		generation++;
+		if (generation == Integer.MAX_VALUE) {
+			//start over before the stamps wrap around
+			Arrays.fill(forward.stamp, 0);
+			Arrays.fill(backward.stamp, 0);
+			generation = 1;
+		}
+	}
+
+	/**
+	 * Labels and queue of one search direction. predEdge is the edge into a
+	 * vertex for the forward side and the edge out of it for the backward
+	 * side.
+	 */
+	private final class Side {
+
+		final double[] distance;
+		final int[] predEdge;
+		final int[] stamp;
+		final IndexedMinPriorityQueue queue;
+
+		Side(int n, PriorityQueueType queueType) {
+			this.distance = new double[n];
+			this.predEdge = new int[n];
+			this.stamp = new int[n];
+			this.queue = queueType.create(n);
+		}
+
+		void start(int v) {
+			queue.clear();
+			label(v, 0, -1);
+			try {
+				queue.insert(v, 0);
+			} catch (PriorityQueueFullException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void label(int v, double d, int e) {
+			stamp[v] = generation;
+			distance[v] = d;
+			predEdge[v] = e;
+		}
+	}
+}
@@ -0,0 +1,258 @@
+import java.util.Arrays;
+
+/**
+ * Reusable Dijkstra search over a CompactNavigationGraph that only visits
+ * the vertices within a budget of its sources. A vertex is labeled only
+ * if its tentative distance is within the budget, so nothing beyond it is
+ * ever queued or expanded.
+ *
+ * Unlike RouteSearch, whose arrays are as long as the graph, the labels
+ * live in slots handed out in the order vertices are reached, found
+ * through an open-addressing hash table from vertex id to slot, and the
+ * queue is a binary heap of slots. The scratch space therefore grows with
+ * the largest region searched so far, not with the graph, and is cleared
+ * slot by slot after each run.
+ *
+ * A BoundedSearch must only be used by one thread at a time.
+ */
+final class BoundedSearch {
+
+	private final CompactNavigationGraph graph;
+	//hash table from vertex id to slot, -1 where free; the capacity is a
+	//power of two kept at least twice the number of slots
+	private int[] keys = new int[64];
+	private int[] values = new int[64];
+	//labels by slot: vertex, distance, position in sources of the source
+	//the distance is from and position in heap, -1 once settled
+	private int[] vertex = new int[32];
+	private double[] distance = new double[32];
+	private int[] origin = new int[32];
+	private int[] heapIndex = new int[32];
+	private int count;
+	//slots settled so far, in order of distance
+	private int[] order = new int[32];
+	private int settled;
+	private int[] heap = new int[32];
+	private int heapSize;
+
+	/**
+	 * Creates empty scratch space for searches on a graph
+	 *
+	 * @param graph
+	 *            graph to be searched
+	 */
+	BoundedSearch(CompactNavigationGraph graph) {
+		this.graph = graph;
+		Arrays.fill(keys, -1);
+	}
+
+	/**
+	 * Searches from several sources at once on one edge property and
+	 * collects the vertices whose distance from the nearest source is
+	 * within the budget
+	 *
+	 * @param sources
+	 *            ids of the source vertices, at least one
+	 * @param property
+	 *            index of the edge property
+	 * @param budget
+	 *            largest distance to collect, at least 0
+	 * @return reached vertices with their distances
+	 */
+	Isochrone run(int[] sources, int property, double budget) {
+		long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+		settled = 0;
+		heapSize = 0;
+		int relaxed = 0;
+		int pushes = 0;
+		for (int i = 0; i < sources.length; i++) {
+			if (slot(sources[i]) < 0) {
+				push(add(sources[i], 0, i));
+				pushes++;
+			}
+		}
+		while (heapSize > 0) {
+			int u = pop();
+			order[settled++] = u;
+			double base = distance[u];
+			int v = vertex[u];
+			int end = graph.edgesEnd(v);
+			relaxed += end - graph.edgesBegin(v);
+			for (int e = graph.edgesBegin(v); e < end; e++) {
+				double d = base + graph.edgeWeight(property, e);
+				if (d > budget) {
+					continue;
+				}
+				int t = graph.edgeTarget(e);
+				int s = slot(t);
+				if (s < 0) {
+					push(add(t, d, origin[u]));
+					pushes++;
+				} else if (d < distance[s] && heapIndex[s] >= 0) {
+					distance[s] = d;
+					origin[s] = origin[u];
+					siftUp(heapIndex[s]);
+					pushes++;
+				}
+			}
+		}
+		int[] vertices = new int[settled];
+		double[] distances = new double[settled];
+		int[] origins = new int[settled];
+		for (int i = 0; i < settled; i++) {
+			int s = order[i];
+			vertices[i] = vertex[s];
+			distances[i] = distance[s];
+			origins[i] = origin[s];
+		}
+		clear();
+		if (start != 0) {
+			Metrics.ISOCHRONE.record(settled, relaxed, pushes, settled,
+					System.nanoTime() - start);
+		}
+		return new Isochrone(graph, sources.clone(), graph
+				.getEdgePropertyNames()[property], budget, vertices,
+				distances, origins);
+	}
+
+	/**
+	 * Number of vertices the last run settled, which is the number it
+	 * reached
+	 *
+	 * @return settled vertex count
+	 */
+	int getSettledCount() {
+		return settled;
+	}
+
+	/**
+	 * Position in the hash table where a vertex is or would go
+	 */
+	private int bucket(int v) {
+		int mask = keys.length - 1;
+		int h = v * 0x9E3779B9;
+		int i = (h ^ h >>> 16) & mask;
+		while (keys[i] >= 0 && keys[i] != v) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * Slot of a vertex, -1 if it was not reached yet
+	 */
+	private int slot(int v) {
+		int i = bucket(v);
+		return keys[i] < 0 ? -1 : values[i];
+	}
+
+	/**
+	 * Labels a newly reached vertex
+	 *
+	 * @return its slot
+	 */
+	private int add(int v, double d, int source) {
+		if (count == vertex.length) {
+			int capacity = 2 * count;
+			vertex = Arrays.copyOf(vertex, capacity);
+			distance = Arrays.copyOf(distance, capacity);
+			origin = Arrays.copyOf(origin, capacity);
+			heapIndex = Arrays.copyOf(heapIndex, capacity);
+			order = Arrays.copyOf(order, capacity);
+			heap = Arrays.copyOf(heap, capacity);
+		}
+		if (2 * (count + 1) > keys.length) {
+			rehash(2 * keys.length);
+		}
+		int s = count++;
+		int i = bucket(v);
+		keys[i] = v;
+		values[i] = s;
+		vertex[s] = v;
+		distance[s] = d;
+		origin[s] = source;
+		return s;
+	}
+
+	private void rehash(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, -1);
+		for (int s = 0; s < count; s++) {
+			int i = bucket(vertex[s]);
+			keys[i] = vertex[s];
+			values[i] = s;
+		}
+	}
+
+	/**
+	 * Frees every slot and its hash table entry. The entries are freed in
+	 * the reverse order of the slots, so the entries on the probe path of
+	 * each one, which went in before it, are still there to find it by.
+	 */
+	private void clear() {
+		for (int s = count - 1; s >= 0; s--) {
+			keys[bucket(vertex[s])] = -1;
+		}
+		count = 0;
+	}
+
+	private void push(int s) {
+		heap[heapSize] = s;
+		heapIndex[s] = heapSize;
+		siftUp(heapSize++);
+	}
+
+	private int pop() {
+		int top = heap[0];
+		heapIndex[top] = -1;
+		int last = heap[--heapSize];
+		if (heapSize > 0) {
+			heap[0] = last;
+			heapIndex[last] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int i) {
+		int s = heap[i];
+		double d = distance[s];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			int p = heap[parent];
+			if (distance[p] <= d) {
+				break;
+			}
+			heap[i] = p;
+			heapIndex[p] = i;
+			i = parent;
+		}
+		heap[i] = s;
+		heapIndex[s] = i;
+	}
+
+	private void siftDown(int i) {
+		int s = heap[i];
+		double d = distance[s];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize
+					&& distance[heap[child + 1]] < distance[heap[child]]) {
+				child++;
+			}
+			int c = heap[child];
+			if (distance[c] >= d) {
+				break;
+			}
+			heap[i] = c;
+			heapIndex[c] = i;
+			i = child;
+		}
+		heap[i] = s;
+		heapIndex[s] = i;
+	}
+}
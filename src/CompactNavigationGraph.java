@@ -0,0 +1,1671 @@
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Compact copy of a NavigationGraph stored in compressed sparse row (CSR)
+ * form. The outgoing edges of vertex v are the edge ids
+ * offsets[v] to offsets[v + 1] - 1, targets[e] is the vertex id an edge
+ * points to and columns[p][e] is the value of edge property p. Vertex ids
+ * are the same as in the NavigationGraph the copy was made from and edges
+ * keep the order in which they were added to their source.
+ *
+ * No Path objects are kept; the ones returned by getOutEdges and
+ * getShortestRoute are created on demand from the primitive columns. The
+ * arrays are held as int and double buffers, so a graph opened from a
+ * GraphSnapshot can read them straight from a memory-mapped file.
+ *
+ * The vertices and edges of a copy are fixed when it is made. The public
+ * methods never change edge values either, but a NavigationGraph writes
+ * edge value updates into the copy it searches on and repairs its
+ * Contraction Hierarchies in place. Only the copies handed out by
+ * NavigationGraph.freeze are immutable.
+ */
+public class CompactNavigationGraph implements NavigationGraphADT {
+
+	private final String[] edgePropertyNames;
+	private final LocationTable vertices;
+	private final IntBuffer offsets;
+	private final IntBuffer targets;
+	private final DoubleBuffer[] columns;
+	//columns still shared with the graph this one was copied from, or null
+	private boolean[] sharedColumns;
+
+	//incoming edges, built on first use: the ids of the edges ending at v
+	//are inEdges[inOffsets[v]] to inEdges[inOffsets[v + 1] - 1] and
+	//inSources holds the vertex each of them leaves from
+	private int[] inOffsets;
+	private int[] inEdges;
+	private int[] inSources;
+
+	//kind of priority queue getShortestRoute runs on
+	private PriorityQueueType queueType = PriorityQueueType.getDefault();
+	//scratch space reused by every getShortestRoute call
+	private RouteSearch search;
+	private BidirectionalSearch bidirectionalSearch;
+	private ParetoSearch paretoSearch;
+	private KShortestSearch kShortestSearch;
+	private BoundedSearch boundedSearch;
+	//strongly connected components, built on first use or handed over
+	//by the NavigationGraph this copy was made from
+	private volatile ComponentIndex components;
+	//attached hierarchies by edge property index, null where there is none
+	private ContractionHierarchy[] hierarchies;
+	//by edge property index, edges whose value went down and whether any
+	//value went up since the hierarchy was last repaired
+	private BitSet[] lowered;
+	private boolean[] raised;
+	//vertices settled by the last query
+	private int lastSettled;
+
+	/**
+	 * Builds a compact copy of a NavigationGraph. Later changes to the
+	 * NavigationGraph are not reflected in the copy.
+	 *
+	 * @param graph
+	 *            graph to be copied
+	 */
+	public CompactNavigationGraph(NavigationGraph graph) {
+		if (graph == null) {
+			throw new IllegalArgumentException();
+		}
+		List<GraphNode<Location, Path>> nodes = graph.getNodes();
+		this.edgePropertyNames = graph.getEdgePropertyNames().clone();
+		Location[] locations = new Location[nodes.size()];
+		int[] offsets = new int[nodes.size() + 1];
+
+		//first pass: vertex table and edge offsets
+		int edgeCount = 0;
+		for (int v = 0; v < nodes.size(); v++) {
+			locations[v] = nodes.get(v).getVertexData();
+			offsets[v] = edgeCount;
+			edgeCount += nodes.get(v).getOutEdges().size();
+		}
+		offsets[nodes.size()] = edgeCount;
+		this.vertices = new LocationTable.Heap(locations);
+
+		//second pass: targets and one column per edge property
+		int[] targets = new int[edgeCount];
+		double[][] columns = new double[edgePropertyNames.length][edgeCount];
+		int e = 0;
+		for (int v = 0; v < nodes.size(); v++) {
+			for (Path path : nodes.get(v).getOutEdges()) {
+				targets[e] = vertices.indexOf(path.getDestination());
+				List<Double> properties = path.getProperties();
+				for (int p = 0; p < columns.length; p++) {
+					columns[p][e] = properties.get(p);
+				}
+				e++;
+			}
+		}
+		this.offsets = IntBuffer.wrap(offsets);
+		this.targets = IntBuffer.wrap(targets);
+		this.columns = new DoubleBuffer[columns.length];
+		for (int p = 0; p < columns.length; p++) {
+			this.columns[p] = DoubleBuffer.wrap(columns[p]);
+		}
+	}
+
+	/**
+	 * Creates a graph over existing CSR buffers, used by GraphSnapshot. The
+	 * buffers are read with absolute gets only and are not copied.
+	 *
+	 * @param edgePropertyNames
+	 *            edge property names
+	 * @param vertices
+	 *            vertex table
+	 * @param offsets
+	 *            vertexCount + 1 edge offsets
+	 * @param targets
+	 *            target vertex id of every edge
+	 * @param columns
+	 *            one buffer of edge values per property
+	 */
+	CompactNavigationGraph(String[] edgePropertyNames, LocationTable vertices,
+			IntBuffer offsets, IntBuffer targets, DoubleBuffer[] columns) {
+		this.edgePropertyNames = edgePropertyNames;
+		this.vertices = vertices;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.columns = columns;
+	}
+
+	/**
+	 * Not supported, the vertices are fixed when the copy is made
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	public void addVertex(Location vertex) {
+		throw new UnsupportedOperationException(
+				"Compact graph vertices are fixed");
+	}
+
+	/**
+	 * Not supported, the edges are fixed when the copy is made
+	 *
+	 * @throws UnsupportedOperationException
+	 *             always
+	 */
+	public void addEdge(Location src, Location dest, Path edge) {
+		throw new UnsupportedOperationException(
+				"Compact graph edges are fixed");
+	}
+
+	/**
+	 * Getter method for the vertices
+	 *
+	 * @return unmodifiable list of vertices ordered by id
+	 */
+	public List<Location> getVertices() {
+		return new VertexList();
+	}
+
+	/**
+	 * Returns a Location object given its name, ignoring letter case
+	 *
+	 * @param name
+	 *            name of the location
+	 * @return Location object or null if there is no such location
+	 */
+	public Location getLocationByName(String name) {
+		if (name == null) {
+			throw new IllegalArgumentException();
+		}
+		int id = vertices.findByName(name);
+		return id < 0 ? null : vertices.get(id);
+	}
+
+	/**
+	 * Returns edge if there is one from src to dest vertex else null
+	 *
+	 * @param src
+	 *            Source vertex
+	 * @param dest
+	 *            Destination vertex
+	 * @return Edge from src to dest
+	 */
+	public Path getEdgeIfExists(Location src, Location dest) {
+		if (src == dest || src == null || dest == null) {
+			throw new IllegalArgumentException();
+		}
+		int s = getIndex(src);
+		int d = getIndex(dest);
+		if (s < 0) {
+			throw new IllegalArgumentException("Src: " + src);
+		}
+		//the last matching edge wins, as in NavigationGraph
+		for (int e = offsets.get(s + 1) - 1; e >= offsets.get(s); e--) {
+			if (targets.get(e) == d) {
+				return createPath(s, e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the outgoing edges from a vertex
+	 *
+	 * @param src
+	 *            Source vertex for which the outgoing edges need to be obtained
+	 * @return List of edges
+	 */
+	public List<Path> getOutEdges(Location src) {
+		int s = src == null ? -1 : getIndex(src);
+		if (s < 0) {
+			throw new IllegalArgumentException("Src: " + src);
+		}
+		List<Path> list = new ArrayList<Path>(offsets.get(s + 1) - offsets.get(s));
+		for (int e = offsets.get(s); e < offsets.get(s + 1); e++) {
+			list.add(createPath(s, e));
+		}
+		return list;
+	}
+
+	/**
+	 * Returns the incoming edges of a vertex, ordered by source id and
+	 * then by the order in which they were added to their source
+	 *
+	 * @param dest
+	 *            Destination vertex for which the incoming edges are required
+	 * @return List of edges ending at dest
+	 */
+	public List<Path> getInEdges(Location dest) {
+		int d = dest == null ? -1 : getIndex(dest);
+		if (d < 0) {
+			throw new IllegalArgumentException("Dest: " + dest);
+		}
+		buildReverse();
+		List<Path> list = new ArrayList<Path>(inOffsets[d + 1] - inOffsets[d]);
+		for (int i = inOffsets[d]; i < inOffsets[d + 1]; i++) {
+			list.add(createPath(inSources[i], inEdges[i]));
+		}
+		return list;
+	}
+
+	/**
+	 * Returns neighbors of a vertex
+	 *
+	 * @param vertex
+	 *            vertex for which the neighbors are required
+	 * @return List of vertices(neighbors)
+	 */
+	public List<Location> getNeighbors(Location vertex) {
+		int s = vertex == null ? -1 : getIndex(vertex);
+		if (s < 0) {
+			throw new IllegalArgumentException("Vertex: " + vertex);
+		}
+		List<Location> neighbors = new ArrayList<Location>(
+				offsets.get(s + 1) - offsets.get(s));
+		for (int e = offsets.get(s); e < offsets.get(s + 1); e++) {
+			neighbors.add(vertices.get(targets.get(e)));
+		}
+		return neighbors;
+	}
+
+	/**
+	 * Calculate the shortest route from src to dest vertex using
+	 * edgePropertyName and Dijkstra's algorithm. The search stops as soon
+	 * as dest is settled. If a ContractionHierarchy for edgePropertyName
+	 * is attached, the route is found with it instead.
+	 *
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param edgePropertyName
+	 *            edge property by which shortest route has to be calculated
+	 * @return List of edges that denote the shortest route by
+	 *         edgePropertyName, ordered from dest back to src, or an empty
+	 *         list if dest cannot be reached
+	 * @see RouteSearch
+	 */
+	public List<Path> getShortestRoute(Location src, Location dest,
+			String edgePropertyName) {
+		return getShortestRoute(src, dest, edgePropertyName, null);
+	}
+
+	/**
+	 * Calculate the shortest route from src to dest vertex using
+	 * edgePropertyName and A* search guided by a heuristic. The search
+	 * stops as soon as dest is settled.
+	 *
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param edgePropertyName
+	 *            edge property by which shortest route has to be calculated
+	 * @param heuristic
+	 *            lower bounds on the route length over edgePropertyName,
+	 *            or null to run Dijkstra's algorithm
+	 * @return List of edges that denote the shortest route by
+	 *         edgePropertyName, ordered from dest back to src, or an empty
+	 *         list if dest cannot be reached
+	 * @see RouteHeuristic
+	 */
+	public List<Path> getShortestRoute(Location src, Location dest,
+			String edgePropertyName, RouteHeuristic heuristic) {
+		if (src == null || dest == null || edgePropertyName == null
+				|| src == dest) {
+			throw new IllegalArgumentException("Locations and "
+					+ "properties cannot be null");
+		}
+		int s = getIndex(src);
+		int d = getIndex(dest);
+		int p = getPropertyIndex(edgePropertyName);
+		if (s < 0 || d < 0 || p < 0) {
+			throw new IllegalArgumentException("Src: " + src
+					+ ", Dest: " + dest + ", Edge: " + edgePropertyName);
+		}
+
+		return createRoute(findRoute(s, d, p, heuristic));
+	}
+
+	/**
+	 * Calculate the shortest route from src to dest vertex using
+	 * edgePropertyName and bidirectional Dijkstra: a forward search from
+	 * src over outgoing edges and a backward search from dest over incoming
+	 * edges take turns until they meet. The route has the same length as
+	 * the one of getShortestRoute; of several equally short routes another
+	 * one may be returned.
+	 *
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param edgePropertyName
+	 *            edge property by which shortest route has to be calculated
+	 * @return List of edges that denote the shortest route by
+	 *         edgePropertyName, ordered from dest back to src, or an empty
+	 *         list if dest cannot be reached
+	 * @see BidirectionalSearch
+	 */
+	public List<Path> getShortestRouteBidirectional(Location src,
+			Location dest, String edgePropertyName) {
+		if (src == null || dest == null || edgePropertyName == null
+				|| src == dest) {
+			throw new IllegalArgumentException("Locations and "
+					+ "properties cannot be null");
+		}
+		int s = getIndex(src);
+		int d = getIndex(dest);
+		int p = getPropertyIndex(edgePropertyName);
+		if (s < 0 || d < 0 || p < 0) {
+			throw new IllegalArgumentException("Src: " + src
+					+ ", Dest: " + dest + ", Edge: " + edgePropertyName);
+		}
+		return createRoute(findRouteBidirectional(s, d, p));
+	}
+
+	/**
+	 * Calculates every Pareto-optimal route from src to dest over several
+	 * edge properties at once: each route is shorter than every other one
+	 * on at least one of the properties, so the list shows the trade-offs
+	 * between them, e.g. the fastest route, the cheapest one and those in
+	 * between. The number of routes can grow quickly with the size of the
+	 * graph; an epsilon above 0 merges routes whose values are within a
+	 * factor of 1 + epsilon of each other.
+	 *
+	 * @param src
+	 *            Source vertex from which the routes are desired
+	 * @param dest
+	 *            Destination vertex to which the routes are desired
+	 * @param edgePropertyNames
+	 *            edge properties to minimize together, or null for all
+	 * @param epsilon
+	 *            0 for every Pareto-optimal route, or e.g. 0.05 to treat
+	 *            values within 5% of each other as equal
+	 * @return routes ordered by their value on the first property, each a
+	 *         List of edges ordered from dest back to src; an empty list if
+	 *         dest cannot be reached
+	 * @see ParetoSearch
+	 */
+	public List<List<Path>> getParetoRoutes(Location src, Location dest,
+			String[] edgePropertyNames, double epsilon) {
+		if (src == null || dest == null || src == dest) {
+			throw new IllegalArgumentException("Locations cannot be null");
+		}
+		int s = getIndex(src);
+		int d = getIndex(dest);
+		if (s < 0 || d < 0) {
+			throw new IllegalArgumentException("Src: " + src
+					+ ", Dest: " + dest);
+		}
+		List<List<Path>> routes = new ArrayList<List<Path>>();
+		for (int[] route : findParetoRoutes(s, d,
+				getPropertyIndexes(edgePropertyNames), epsilon)) {
+			routes.add(createRoute(route));
+		}
+		return routes;
+	}
+
+	/**
+	 * Looks up the edge properties of a multi-criteria search
+	 *
+	 * @param edgePropertyNames
+	 *            distinct edge property names, or null for all
+	 * @return property indexes in the same order
+	 */
+	int[] getPropertyIndexes(String[] edgePropertyNames) {
+		if (edgePropertyNames == null) {
+			edgePropertyNames = this.edgePropertyNames;
+		}
+		if (edgePropertyNames.length == 0) {
+			throw new IllegalArgumentException("No edge properties");
+		}
+		int[] properties = new int[edgePropertyNames.length];
+		for (int i = 0; i < properties.length; i++) {
+			properties[i] = edgePropertyNames[i] == null ? -1
+					: getPropertyIndex(edgePropertyNames[i]);
+			for (int j = 0; j < i; j++) {
+				if (properties[j] == properties[i]) {
+					properties[i] = -1;
+				}
+			}
+			if (properties[i] < 0) {
+				throw new IllegalArgumentException("Edge: "
+						+ edgePropertyNames[i]);
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * Runs a multi-criteria search and collects the routes
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id, not s
+	 * @param properties
+	 *            distinct edge property indexes
+	 * @param epsilon
+	 *            relative difference below which values count as equal
+	 * @return edge ids of each route ordered from d back to s
+	 */
+	int[][] findParetoRoutes(int s, int d, int[] properties, double epsilon) {
+		if (!(epsilon >= 0)) {
+			throw new IllegalArgumentException("Epsilon: " + epsilon);
+		}
+		if (!mayReach(s, d)) {
+			lastSettled = 0;
+			return new int[0][];
+		}
+		return getParetoSearch().run(s, d, properties, epsilon);
+	}
+
+	private ParetoSearch getParetoSearch() {
+		ParetoSearch search = paretoSearch;
+		if (search == null) {
+			search = new ParetoSearch(this);
+			paretoSearch = search;
+		}
+		return search;
+	}
+
+	/**
+	 * Calculates up to k shortest loopless routes from src to dest over
+	 * edgePropertyName with Yen's algorithm, e.g. as alternatives to the
+	 * route of getShortestRoute, which comes first. The spur searches of
+	 * each route run in parallel on the common fork-join pool; attached
+	 * ContractionHierarchies are not used.
+	 *
+	 * @param src
+	 *            Source vertex from which the routes are desired
+	 * @param dest
+	 *            Destination vertex to which the routes are desired
+	 * @param edgePropertyName
+	 *            edge property by which routes are calculated
+	 * @param k
+	 *            largest number of routes, at least 1
+	 * @return routes shortest first, each a List of edges ordered from dest
+	 *         back to src and visiting no vertex twice; fewer than k if
+	 *         there are no more, and an empty list if dest cannot be
+	 *         reached
+	 * @see KShortestSearch
+	 */
+	public List<List<Path>> getKShortestRoutes(Location src, Location dest,
+			String edgePropertyName, int k) {
+		if (src == null || dest == null || edgePropertyName == null
+				|| src == dest) {
+			throw new IllegalArgumentException("Locations and "
+					+ "properties cannot be null");
+		}
+		int s = getIndex(src);
+		int d = getIndex(dest);
+		int p = getPropertyIndex(edgePropertyName);
+		if (s < 0 || d < 0 || p < 0) {
+			throw new IllegalArgumentException("Src: " + src
+					+ ", Dest: " + dest + ", Edge: " + edgePropertyName);
+		}
+		List<List<Path>> routes = new ArrayList<List<Path>>();
+		for (int[] route : findKShortestRoutes(s, d, p, k)) {
+			routes.add(createRoute(route));
+		}
+		return routes;
+	}
+
+	/**
+	 * Runs a k shortest routes search and collects the routes
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id, not s
+	 * @param p
+	 *            edge property index
+	 * @param k
+	 *            largest number of routes
+	 * @return edge ids of each route ordered from d back to s
+	 */
+	int[][] findKShortestRoutes(int s, int d, int p, int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("k: " + k);
+		}
+		if (!mayReach(s, d)) {
+			lastSettled = 0;
+			return new int[0][];
+		}
+		KShortestSearch search = kShortestSearch;
+		if (search == null) {
+			search = new KShortestSearch(this, queueType);
+			kShortestSearch = search;
+		}
+		int[][] routes = search.run(s, d, p, k, ForkJoinPool.commonPool());
+		lastSettled = search.getSettledCount();
+		return routes;
+	}
+
+	/**
+	 * Calculate the shortest route from src to dest vertex on a weighted
+	 * sum of the edge properties, e.g. 0.7 Time + 0.3 Cost, with
+	 * Dijkstra's algorithm. The sum is computed for each edge as the search
+	 * reaches it; attached ContractionHierarchies are not used.
+	 *
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param weights
+	 *            factor of each edge property in the order of
+	 *            getEdgePropertyNames, none negative
+	 * @return List of edges that denote the shortest route by the weighted
+	 *         sum, ordered from dest back to src, or an empty list if dest
+	 *         cannot be reached
+	 */
+	public List<Path> getShortestRoute(Location src, Location dest,
+			double[] weights) {
+		if (src == null || dest == null || src == dest) {
+			throw new IllegalArgumentException("Locations cannot be null");
+		}
+		int s = getIndex(src);
+		int d = getIndex(dest);
+		if (s < 0 || d < 0) {
+			throw new IllegalArgumentException("Src: " + src
+					+ ", Dest: " + dest);
+		}
+		return createRoute(findRoute(s, d, weights));
+	}
+
+	/**
+	 * Runs a search on a weighted sum of the edge properties and collects
+	 * the route
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id, not s
+	 * @param weights
+	 *            factor of each edge property
+	 * @return edge ids of the route ordered from d back to s, empty if d
+	 *         cannot be reached
+	 */
+	int[] findRoute(int s, int d, double[] weights) {
+		if (weights == null || weights.length != edgePropertyNames.length) {
+			throw new IllegalArgumentException("Need one weight per edge "
+					+ "property");
+		}
+		for (double weight : weights) {
+			if (!(weight >= 0) || Double.isInfinite(weight)) {
+				throw new IllegalArgumentException("Weight: " + weight);
+			}
+		}
+		if (!mayReach(s, d)) {
+			lastSettled = 0;
+			return new int[0];
+		}
+		RouteSearch search = getSearch();
+		search.run(s, weights.clone(), d);
+		lastSettled = search.getSettledCount();
+		return route(search, s, d);
+	}
+
+	/**
+	 * Calculate the shortest route from src to dest vertex on one edge
+	 * property among the routes whose totals on other properties stay
+	 * within bounds, e.g. the cheapest route that takes at most 30 minutes.
+	 * The search keeps the costs on all of these properties for every
+	 * route it extends, so it explores more than getShortestRoute, but it
+	 * prunes routes that cannot stay within the bounds early.
+	 *
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param edgePropertyName
+	 *            edge property by which shortest route has to be calculated
+	 * @param boundedPropertyNames
+	 *            other edge properties whose route totals are bounded
+	 * @param bounds
+	 *            largest allowed route total of each bounded property
+	 * @return List of edges of the route, ordered from dest back to src,
+	 *         or an empty list if no route stays within the bounds
+	 * @see ParetoSearch#runConstrained
+	 */
+	public List<Path> getShortestRoute(Location src, Location dest,
+			String edgePropertyName, String[] boundedPropertyNames,
+			double[] bounds) {
+		if (src == null || dest == null || src == dest) {
+			throw new IllegalArgumentException("Locations cannot be null");
+		}
+		int s = getIndex(src);
+		int d = getIndex(dest);
+		if (s < 0 || d < 0) {
+			throw new IllegalArgumentException("Src: " + src
+					+ ", Dest: " + dest);
+		}
+		return createRoute(findConstrainedRoute(s, d,
+				getConstrainedProperties(edgePropertyName,
+						boundedPropertyNames, bounds), bounds));
+	}
+
+	/**
+	 * Looks up the edge properties of a constrained search
+	 *
+	 * @return index of the minimized property, then of each bounded one
+	 */
+	int[] getConstrainedProperties(String edgePropertyName,
+			String[] boundedPropertyNames, double[] bounds) {
+		if (boundedPropertyNames == null || bounds == null
+				|| boundedPropertyNames.length != bounds.length) {
+			throw new IllegalArgumentException("Need one bound per bounded "
+					+ "property");
+		}
+		for (double bound : bounds) {
+			if (!(bound >= 0)) {
+				throw new IllegalArgumentException("Bound: " + bound);
+			}
+		}
+		String[] names = new String[bounds.length + 1];
+		names[0] = edgePropertyName;
+		System.arraycopy(boundedPropertyNames, 0, names, 1, bounds.length);
+		return getPropertyIndexes(names);
+	}
+
+	/**
+	 * Runs a resource-constrained search and collects the route
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id, not s
+	 * @param properties
+	 *            index of the minimized property, then of each bounded one
+	 * @param bounds
+	 *            bound of properties[i + 1] at i
+	 * @return edge ids of the route ordered from d back to s, empty if no
+	 *         route stays within the bounds
+	 */
+	int[] findConstrainedRoute(int s, int d, int[] properties,
+			double[] bounds) {
+		if (!mayReach(s, d)) {
+			lastSettled = 0;
+			return new int[0];
+		}
+		ParetoSearch search = getParetoSearch();
+		int[] route = search.runConstrained(s, d, properties, bounds.clone());
+		lastSettled = search.getSettledCount();
+		return route;
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm from src to every reachable vertex and
+	 * keeps the result, so that routes to many destinations can be read
+	 * off without searching again
+	 *
+	 * @param src
+	 *            Location the routes start at
+	 * @param edgePropertyName
+	 *            edge property by which routes are calculated
+	 * @return immutable shortest path tree of src
+	 * @throws IllegalArgumentException
+	 *             if src or the property is null or not in the graph
+	 */
+	public ShortestPathTree shortestPathTree(Location src,
+			String edgePropertyName) {
+		if (src == null || edgePropertyName == null) {
+			throw new IllegalArgumentException("Locations and "
+					+ "properties cannot be null");
+		}
+		int s = getIndex(src);
+		int p = getPropertyIndex(edgePropertyName);
+		if (s < 0 || p < 0) {
+			throw new IllegalArgumentException("Src: " + src + ", Edge: "
+					+ edgePropertyName);
+		}
+		return shortestPathTree(s, p, null);
+	}
+
+	/**
+	 * Computes a shortest path tree with the shared search state
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param p
+	 *            edge property index
+	 * @param edgePaths
+	 *            Paths by edge id for the tree to return, or null
+	 * @return shortest path tree of s
+	 */
+	ShortestPathTree shortestPathTree(int s, int p, Path[] edgePaths) {
+		RouteSearch search = getSearch();
+		search.run(s, p);
+		lastSettled = search.getSettledCount();
+		int n = getVertexCount();
+		double[] distance = new double[n];
+		int[] predEdge = new int[n];
+		int[] predVertex = new int[n];
+		for (int v = 0; v < n; v++) {
+			distance[v] = search.getDistance(v);
+			predEdge[v] = search.getPredecessorEdge(v);
+			predVertex[v] = search.getPredecessor(v);
+		}
+		return new ShortestPathTree(this, edgePaths, s,
+				edgePropertyNames[p], distance, predEdge, predVertex);
+	}
+
+	/**
+	 * Finds every Location that can be reached from src within a budget on
+	 * edgePropertyName, e.g. within 15 minutes, with the length of the
+	 * shortest route to each. The search stops expanding at the budget and
+	 * its scratch space only grows with the region it explores.
+	 *
+	 * @param src
+	 *            Location the routes start at
+	 * @param edgePropertyName
+	 *            edge property the budget is on
+	 * @param budget
+	 *            largest route length, at least 0
+	 * @return reached Locations in order of distance, src included
+	 * @throws IllegalArgumentException
+	 *             if an argument is null, src or the property is not in the
+	 *             graph or the budget is negative
+	 * @see BoundedSearch
+	 */
+	public Isochrone isochrone(Location src, String edgePropertyName,
+			double budget) {
+		if (src == null) {
+			throw new IllegalArgumentException("Locations cannot be null");
+		}
+		return isochrone(Arrays.asList(src), edgePropertyName, budget);
+	}
+
+	/**
+	 * Finds every Location that can be reached from any of several sources
+	 * within a budget on edgePropertyName, searching from all of them at
+	 * once, e.g. the area served by a set of depots
+	 *
+	 * @param sources
+	 *            Locations the routes start at, at least one
+	 * @param edgePropertyName
+	 *            edge property the budget is on
+	 * @param budget
+	 *            largest route length, at least 0
+	 * @return reached Locations in order of distance from the nearest
+	 *         source, the sources included
+	 * @throws IllegalArgumentException
+	 *             if an argument is null or empty, a source or the property
+	 *             is not in the graph or the budget is negative
+	 */
+	public Isochrone isochrone(List<Location> sources,
+			String edgePropertyName, double budget) {
+		if (sources == null || sources.isEmpty() || edgePropertyName == null) {
+			throw new IllegalArgumentException("Locations and "
+					+ "properties cannot be null");
+		}
+		int p = getPropertyIndex(edgePropertyName);
+		if (p < 0) {
+			throw new IllegalArgumentException("Edge: " + edgePropertyName);
+		}
+		return isochrone(indexes(sources), p, budget);
+	}
+
+	/**
+	 * Runs a budget-bounded search with the shared search state
+	 *
+	 * @param sources
+	 *            source vertex ids, at least one
+	 * @param p
+	 *            edge property index
+	 * @param budget
+	 *            largest route length
+	 * @return reached vertices with their distances
+	 */
+	Isochrone isochrone(int[] sources, int p, double budget) {
+		if (!(budget >= 0)) {
+			throw new IllegalArgumentException("Budget: " + budget);
+		}
+		BoundedSearch search = boundedSearch;
+		if (search == null) {
+			search = new BoundedSearch(this);
+			boundedSearch = search;
+		}
+		Isochrone isochrone = search.run(sources, p, budget);
+		lastSettled = search.getSettledCount();
+		return isochrone;
+	}
+
+	/**
+	 * Calculates the shortest route lengths from every source to every
+	 * target. With a ContractionHierarchy attached for edgePropertyName the
+	 * searches of all sources share the backward searches of the targets
+	 * through buckets; otherwise there is one Dijkstra search per source
+	 * that stops once every target is settled. The sources are searched in
+	 * parallel on the common fork-join pool.
+	 *
+	 * @param sources
+	 *            Locations the routes start at
+	 * @param targets
+	 *            Locations the routes end at
+	 * @param edgePropertyName
+	 *            edge property by which route lengths are calculated
+	 * @return matrix[i][j] is the length of the shortest route from source
+	 *         i to target j, 0 if they are the same Location and infinity
+	 *         if there is no route
+	 * @throws IllegalArgumentException
+	 *             if an argument is null or names a Location or property
+	 *             that is not in the graph
+	 */
+	public double[][] distanceMatrix(List<Location> sources,
+			List<Location> targets, String edgePropertyName) {
+		if (sources == null || targets == null || edgePropertyName == null) {
+			throw new IllegalArgumentException("Locations and "
+					+ "properties cannot be null");
+		}
+		int p = getPropertyIndex(edgePropertyName);
+		if (p < 0) {
+			throw new IllegalArgumentException("Edge: " + edgePropertyName);
+		}
+		int[] s = indexes(sources);
+		int[] t = indexes(targets);
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		ContractionHierarchy hierarchy = getContractionHierarchy(p);
+		if (hierarchy != null) {
+			return hierarchy.distanceMatrix(s, t, pool);
+		}
+		return distanceMatrix(s, t, p, pool);
+	}
+
+	/**
+	 * Looks up the ids of Locations
+	 */
+	private int[] indexes(List<Location> locations) {
+		int[] ids = new int[locations.size()];
+		for (int i = 0; i < ids.length; i++) {
+			Location location = locations.get(i);
+			ids[i] = location == null ? -1 : getIndex(location);
+			if (ids[i] < 0) {
+				throw new IllegalArgumentException("Location: " + location);
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * One Dijkstra search per source, each with its own RouteSearch and
+	 * stopped as soon as all targets are settled
+	 */
+	private double[][] distanceMatrix(final int[] sources, final int[] targets,
+			final int p, ForkJoinPool pool) {
+		final boolean[] isTarget = new boolean[getVertexCount()];
+		int distinct = 0;
+		for (int t : targets) {
+			if (!isTarget[t]) {
+				isTarget[t] = true;
+				distinct++;
+			}
+		}
+		final int targetCount = distinct;
+		final double[][] matrix = new double[sources.length][];
+		int tasks = Math.max(1, Math.min(sources.length,
+				pool.getParallelism()));
+		List<Callable<Void>> calls = new ArrayList<Callable<Void>>(tasks);
+		for (int k = 0; k < tasks; k++) {
+			final int lo = (int) ((long) sources.length * k / tasks);
+			final int hi = (int) ((long) sources.length * (k + 1) / tasks);
+			calls.add(new Callable<Void>() {
+				public Void call() {
+					RouteSearch search = new RouteSearch(
+							CompactNavigationGraph.this, queueType);
+					for (int i = lo; i < hi; i++) {
+						search.run(sources[i], p, isTarget, targetCount);
+						double[] row = new double[targets.length];
+						for (int j = 0; j < row.length; j++) {
+							row[j] = search.getDistance(targets[j]);
+						}
+						matrix[i] = row;
+					}
+					return null;
+				}
+			});
+		}
+		for (Future<Void> future : pool.invokeAll(calls)) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Runs a one-directional search and collects the route
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id, not s
+	 * @param p
+	 *            edge property index
+	 * @param heuristic
+	 *            A* bounds or null for Dijkstra
+	 * @return edge ids of the route ordered from d back to s, empty if d
+	 *         cannot be reached
+	 */
+	int[] findRoute(int s, int d, int p, RouteHeuristic heuristic) {
+		if (!mayReach(s, d)) {
+			lastSettled = 0;
+			return new int[0];
+		}
+		ContractionHierarchy hierarchy = heuristic == null
+				? getContractionHierarchy(p) : null;
+		if (hierarchy != null) {
+			int[] route = hierarchy.findRoute(s, d);
+			lastSettled = hierarchy.getSettledCount();
+			return route;
+		}
+		RouteSearch search = getSearch();
+		int[] route = findRoute(search, s, d, p, heuristic);
+		lastSettled = search.getSettledCount();
+		return route;
+	}
+
+	/**
+	 * Runs a one-directional search on given scratch space and collects the
+	 * route, leaving the state of this graph untouched
+	 *
+	 * @param search
+	 *            scratch space of the calling thread
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id, not s
+	 * @param p
+	 *            edge property index
+	 * @param heuristic
+	 *            A* bounds or null for Dijkstra
+	 * @return edge ids of the route ordered from d back to s, empty if d
+	 *         cannot be reached
+	 */
+	int[] findRoute(RouteSearch search, int s, int d, int p,
+			RouteHeuristic heuristic) {
+		if (!mayReach(s, d)) {
+			return new int[0];
+		}
+		search.run(s, p, d, heuristic);
+		return route(search, s, d);
+	}
+
+	/**
+	 * Reads the route to d off the last run of a search from s
+	 *
+	 * @return edge ids ordered from d back to s, empty if d was not reached
+	 */
+	private int[] route(RouteSearch search, int s, int d) {
+		if (!search.reached(d)) {
+			return new int[0];
+		}
+		int length = 0;
+		for (int v = d; v != s; length++) {
+			v = search.getPredecessor(v);
+		}
+		int[] route = new int[length];
+		int v = d;
+		for (int i = 0; i < length; i++) {
+			route[i] = search.getPredecessorEdge(v);
+			v = search.getPredecessor(v);
+		}
+		return route;
+	}
+
+	/**
+	 * Runs a bidirectional search and collects the route
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id, not s
+	 * @param p
+	 *            edge property index
+	 * @return edge ids of the route ordered from d back to s, empty if d
+	 *         cannot be reached
+	 */
+	int[] findRouteBidirectional(int s, int d, int p) {
+		if (!mayReach(s, d)) {
+			lastSettled = 0;
+			return new int[0];
+		}
+		BidirectionalSearch search = bidirectionalSearch;
+		if (search == null) {
+			search = new BidirectionalSearch(this, queueType);
+			bidirectionalSearch = search;
+		}
+		int[] route = search.run(s, d, p);
+		lastSettled = search.getSettledCount();
+		return route;
+	}
+
+	/**
+	 * Checks the component index for a route from s to d, so that a query
+	 * between vertices without one is answered without searching
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id
+	 * @return false if there is no route
+	 */
+	private boolean mayReach(int s, int d) {
+		return getComponentIndex().mayReach(s, d);
+	}
+
+	/**
+	 * Returns the strongly connected components of this graph, finding
+	 * them on first use
+	 *
+	 * @return component index of this graph
+	 * @see ComponentIndex
+	 */
+	ComponentIndex getComponentIndex() {
+		ComponentIndex index = components;
+		return index != null ? index : buildComponentIndex();
+	}
+
+	private synchronized ComponentIndex buildComponentIndex() {
+		if (components == null) {
+			components = ComponentIndex.build(this);
+		}
+		return components;
+	}
+
+	/**
+	 * Returns the component index if it was built or handed over
+	 *
+	 * @return component index, or null
+	 */
+	ComponentIndex peekComponentIndex() {
+		return components;
+	}
+
+	/**
+	 * Hands over a component index that NavigationGraph kept up to date,
+	 * so that it need not be built again
+	 *
+	 * @param index
+	 *            index of a graph with the same vertices and edges, or of
+	 *            one with more
+	 */
+	void setComponentIndex(ComponentIndex index) {
+		components = index;
+	}
+
+	/**
+	 * Creates the Paths of a route
+	 *
+	 * @param edges
+	 *            edge ids of the route
+	 * @return Paths in the same order
+	 */
+	List<Path> createRoute(int[] edges) {
+		List<Path> route = new ArrayList<Path>(edges.length);
+		for (int e : edges) {
+			route.add(createPath(getEdgeSource(e), e));
+		}
+		return route;
+	}
+
+	/**
+	 * Number of vertices the last getShortestRoute or
+	 * getShortestRouteBidirectional call settled, showing how much of the
+	 * graph it had to explore
+	 *
+	 * @return settled vertex count, 0 before the first query
+	 */
+	public int getLastSettledCount() {
+		return lastSettled;
+	}
+
+	/**
+	 * Builds a ContractionHierarchy for an edge property and attaches it,
+	 * so that getShortestRoute uses it for that property from now on
+	 *
+	 * @param edgePropertyName
+	 *            edge property to contract for
+	 * @return the attached hierarchy, e.g. to be written to a file
+	 * @see ContractionHierarchy#build
+	 */
+	public ContractionHierarchy contract(String edgePropertyName) {
+		ContractionHierarchy hierarchy = ContractionHierarchy.build(this,
+				edgePropertyName);
+		setContractionHierarchy(hierarchy);
+		return hierarchy;
+	}
+
+	/**
+	 * Attaches a ContractionHierarchy, replacing the one for the same edge
+	 * property if there is one
+	 *
+	 * @param hierarchy
+	 *            hierarchy built or read for this graph
+	 * @throws IllegalArgumentException
+	 *             if the hierarchy belongs to another graph
+	 */
+	public void setContractionHierarchy(ContractionHierarchy hierarchy) {
+		if (hierarchy == null || hierarchy.getGraph() != this) {
+			throw new IllegalArgumentException();
+		}
+		ContractionHierarchy[] attached = hierarchies == null
+				? new ContractionHierarchy[edgePropertyNames.length]
+				: hierarchies.clone();
+		attached[hierarchy.getPropertyIndex()] = hierarchy;
+		hierarchies = attached;
+		if (lowered != null) {
+			lowered[hierarchy.getPropertyIndex()] = null;
+			raised[hierarchy.getPropertyIndex()] = false;
+		}
+	}
+
+	/**
+	 * Returns the attached ContractionHierarchy of an edge property
+	 *
+	 * @param edgePropertyName
+	 *            edge property name
+	 * @return hierarchy or null if none is attached
+	 */
+	public ContractionHierarchy getContractionHierarchy(
+			String edgePropertyName) {
+		int p = getPropertyIndex(edgePropertyName);
+		return p < 0 ? null : getContractionHierarchy(p);
+	}
+
+	/**
+	 * Returns the attached ContractionHierarchy of an edge property,
+	 * repairing it first if edge values changed since it was last used
+	 *
+	 * @param p
+	 *            edge property index
+	 * @return hierarchy or null if none is attached
+	 */
+	ContractionHierarchy getContractionHierarchy(int p) {
+		ContractionHierarchy[] attached = hierarchies;
+		ContractionHierarchy hierarchy = attached == null ? null : attached[p];
+		if (hierarchy == null || lowered == null
+				|| (lowered[p] == null && !raised[p])) {
+			return hierarchy;
+		}
+		ContractionHierarchy repaired = raised[p] ? null
+				: hierarchy.repair(this, lowered[p]);
+		if (repaired == null) {
+			repaired = hierarchy.recontract(this, ForkJoinPool.commonPool());
+		}
+		setContractionHierarchy(repaired);
+		return repaired;
+	}
+
+	/**
+	 * Kind of priority queue getShortestRoute runs on
+	 *
+	 * @return vertex priority queue type
+	 */
+	PriorityQueueType getPriorityQueueType() {
+		return queueType;
+	}
+
+	/**
+	 * Returns this graph, whose vertices, edges and edge values none of
+	 * its public methods change. Queries on it share one scratch space; a
+	 * RouteQueryExecutor runs them concurrently.
+	 *
+	 * @return this graph
+	 */
+	public CompactNavigationGraph freeze() {
+		return this;
+	}
+
+	/**
+	 * Returns the reusable search state of this graph, creating it on first
+	 * use. The state is shared, so queries must not run concurrently.
+	 *
+	 * @return search state sized to this graph
+	 */
+	RouteSearch getSearch() {
+		RouteSearch search = this.search;
+		if (search == null) {
+			search = new RouteSearch(this, queueType);
+			this.search = search;
+		}
+		return search;
+	}
+
+	/**
+	 * Chooses the priority queue getShortestRoute runs on
+	 *
+	 * @param queueType
+	 *            kind of vertex priority queue
+	 */
+	public void setPriorityQueueType(PriorityQueueType queueType) {
+		if (queueType == null) {
+			throw new IllegalArgumentException();
+		}
+		this.queueType = queueType;
+		this.search = null;
+		this.bidirectionalSearch = null;
+		this.kShortestSearch = null;
+	}
+
+	/**
+	 * Getter method for edge property names
+	 *
+	 * @return array of String that denotes the edge property names
+	 */
+	public String[] getEdgePropertyNames() {
+		return edgePropertyNames.clone();
+	}
+
+	/**
+	 * Number of vertices in the graph
+	 *
+	 * @return vertex count
+	 */
+	public int getVertexCount() {
+		return vertices.size();
+	}
+
+	/**
+	 * Number of edges in the graph
+	 *
+	 * @return edge count
+	 */
+	public int getEdgeCount() {
+		return targets.limit();
+	}
+
+	/**
+	 * Returns the dense id of a vertex
+	 *
+	 * @param vertex
+	 *            vertex to look up
+	 * @return id of vertex or -1 if it is not in the graph
+	 */
+	public int getIndex(Location vertex) {
+		return vertices.indexOf(vertex);
+	}
+
+	/**
+	 * Returns the index of an edge property
+	 *
+	 * @param name
+	 *            edge property name
+	 * @return index into getEdgePropertyNames() or -1 if not found
+	 */
+	public int getPropertyIndex(String name) {
+		for (int i = 0; i < edgePropertyNames.length; i++) {
+			if (edgePropertyNames[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * First outgoing edge id of a vertex
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return id of the first edge leaving v
+	 */
+	int edgesBegin(int v) {
+		return offsets.get(v);
+	}
+
+	/**
+	 * End of the outgoing edge ids of a vertex
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return one past the id of the last edge leaving v
+	 */
+	int edgesEnd(int v) {
+		return offsets.get(v + 1);
+	}
+
+	/**
+	 * Target vertex of an edge
+	 *
+	 * @param e
+	 *            edge id
+	 * @return id of the vertex edge e points to
+	 */
+	int edgeTarget(int e) {
+		return targets.get(e);
+	}
+
+	/**
+	 * Value of one property of an edge
+	 *
+	 * @param p
+	 *            edge property index
+	 * @param e
+	 *            edge id
+	 * @return property value
+	 */
+	double edgeWeight(int p, int e) {
+		return columns[p].get(e);
+	}
+
+	/**
+	 * Weighted sum of the properties of an edge
+	 *
+	 * @param weights
+	 *            factor of each edge property, by index
+	 * @param e
+	 *            edge id
+	 * @return combined value
+	 */
+	double edgeWeight(double[] weights, int e) {
+		double sum = 0;
+		for (int p = 0; p < weights.length; p++) {
+			if (weights[p] != 0) {
+				sum += weights[p] * columns[p].get(e);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Copy of this graph for edge value updates, used by NavigationGraph
+	 * when a frozen graph shares its edge values. The vertex table, edges and
+	 * incoming edge index are shared; a value column is copied the first
+	 * time setEdgeWeight writes to it.
+	 *
+	 * @return copy with the same vertex and edge ids, without hierarchies
+	 */
+	CompactNavigationGraph copyForUpdate() {
+		CompactNavigationGraph copy = new CompactNavigationGraph(
+				edgePropertyNames, vertices, offsets, targets, columns.clone());
+		copy.sharedColumns = new boolean[columns.length];
+		Arrays.fill(copy.sharedColumns, true);
+		copy.queueType = queueType;
+		synchronized (this) {
+			copy.inOffsets = inOffsets;
+			copy.inEdges = inEdges;
+			copy.inSources = inSources;
+		}
+		copy.components = components;//same edges, other values
+		return copy;
+	}
+
+	/**
+	 * Copy of this graph handed out by NavigationGraph.freeze. The vertex
+	 * table, edges, edge values and component index are shared, which
+	 * NavigationGraph copies before changing from then on. The hierarchies
+	 * are rebound to the copy and the queue type is carried over, so that
+	 * contracting, choosing another queue type or querying this graph
+	 * later leaves the copy as it is.
+	 *
+	 * @return copy with the same vertex and edge ids and hierarchies
+	 */
+	CompactNavigationGraph copyForFreeze() {
+		CompactNavigationGraph copy = copyForUpdate();
+		for (int p = 0; p < columns.length; p++) {
+			ContractionHierarchy hierarchy = getContractionHierarchy(p);
+			if (hierarchy != null) {
+				copy.setContractionHierarchy(hierarchy.rebind(copy));
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Changes the value of one property of an edge in place. Only for the
+	 * compact copy a NavigationGraph keeps, which is never searched by
+	 * other threads while it changes.
+	 *
+	 * @param p
+	 *            edge property index
+	 * @param e
+	 *            edge id
+	 * @param value
+	 *            new property value
+	 */
+	void setEdgeWeight(int p, int e, double value) {
+		if (sharedColumns != null && sharedColumns[p]) {
+			double[] column = new double[columns[p].limit()];
+			columns[p].duplicate().get(column);
+			columns[p] = DoubleBuffer.wrap(column);
+			sharedColumns[p] = false;
+		}
+		columns[p].put(e, value);
+	}
+
+	/**
+	 * Brings the hierarchies of a graph over to this graph after edge values
+	 * changed. Hierarchies of changed properties are not repaired here but
+	 * on their next use, so that many updates in a row cost one repair:
+	 * around the lowered edges if values only went down, otherwise by
+	 * contracting again in the old order.
+	 *
+	 * @param previous
+	 *            this graph or the one it was copied from
+	 * @param decreased
+	 *            by edge property index, ids of the edges whose value went
+	 *            down, null where none did
+	 * @param increased
+	 *            by edge property index, ids of the edges whose value went
+	 *            up, null where none did
+	 */
+	void updateHierarchies(CompactNavigationGraph previous,
+			BitSet[] decreased, BitSet[] increased) {
+		for (int p = 0; p < decreased.length; p++) {
+			ContractionHierarchy[] attached = previous.hierarchies;
+			ContractionHierarchy hierarchy = attached == null ? null
+					: attached[p];
+			if (hierarchy == null) {
+				continue;
+			}
+			BitSet low = previous.lowered == null ? null
+					: previous.lowered[p];
+			boolean high = previous.lowered != null && previous.raised[p];
+			if (previous != this) {
+				setContractionHierarchy(hierarchy.rebind(this));
+				low = low == null ? null : (BitSet) low.clone();
+			}
+			if (decreased[p] != null) {
+				if (low == null) {
+					low = new BitSet();
+				}
+				low.or(decreased[p]);
+			}
+			high |= increased[p] != null;
+			if (low != null || high) {
+				if (lowered == null) {
+					lowered = new BitSet[columns.length];
+					raised = new boolean[columns.length];
+				}
+				lowered[p] = low;
+				raised[p] = high;
+			}
+		}
+	}
+
+	/**
+	 * Builds the incoming edge index if it does not exist yet, by counting
+	 * sort of the edge ids on their targets
+	 */
+	synchronized void buildReverse() {
+		if (inOffsets != null) {
+			return;
+		}
+		int n = vertices.size();
+		int m = targets.limit();
+		int[] offsets = new int[n + 1];
+		for (int e = 0; e < m; e++) {
+			offsets[targets.get(e) + 1]++;
+		}
+		for (int v = 0; v < n; v++) {
+			offsets[v + 1] += offsets[v];
+		}
+		int[] next = offsets.clone();
+		int[] edges = new int[m];
+		int[] sources = new int[m];
+		for (int v = 0; v < n; v++) {
+			int end = edgesEnd(v);
+			for (int e = edgesBegin(v); e < end; e++) {
+				int i = next[targets.get(e)]++;
+				edges[i] = e;
+				sources[i] = v;
+			}
+		}
+		inEdges = edges;
+		inSources = sources;
+		inOffsets = offsets;
+	}
+
+	/**
+	 * First position of a vertex's incoming edges, see buildReverse
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return index of the first edge ending at v
+	 */
+	int inEdgesBegin(int v) {
+		return inOffsets[v];
+	}
+
+	/**
+	 * End of a vertex's incoming edges, see buildReverse
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return one past the index of the last edge ending at v
+	 */
+	int inEdgesEnd(int v) {
+		return inOffsets[v + 1];
+	}
+
+	/**
+	 * Edge id at a position of the incoming edge index
+	 *
+	 * @param i
+	 *            position between inEdgesBegin and inEdgesEnd
+	 * @return edge id
+	 */
+	int inEdge(int i) {
+		return inEdges[i];
+	}
+
+	/**
+	 * Source vertex of the edge at a position of the incoming edge index
+	 *
+	 * @param i
+	 *            position between inEdgesBegin and inEdgesEnd
+	 * @return id of the vertex the edge leaves from
+	 */
+	int inEdgeSource(int i) {
+		return inSources[i];
+	}
+
+	/**
+	 * Location of a vertex
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return Location with id v
+	 */
+	public Location getLocation(int v) {
+		return vertices.get(v);
+	}
+
+	/**
+	 * Finds the source vertex of an edge by binary search over the offsets
+	 *
+	 * @param e
+	 *            edge id
+	 * @return id of the vertex edge e leaves from
+	 */
+	int getEdgeSource(int e) {
+		int lo = 0;
+		int hi = vertices.size() - 1;
+		//find the last vertex whose first edge is <= e
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (offsets.get(mid) <= e) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Creates a Path for edge e leaving vertex src
+	 *
+	 * @param src
+	 *            id of the source vertex
+	 * @param e
+	 *            edge id
+	 * @return new Path backed by the property columns
+	 */
+	Path createPath(int src, final int e) {
+		List<Double> properties = new AbstractList<Double>() {
+			public Double get(int p) {
+				return columns[p].get(e);
+			}
+
+			public int size() {
+				return columns.length;
+			}
+		};
+		return new Path(vertices.get(src), vertices.get(targets.get(e)), properties);
+	}
+
+	/**
+	 * Read-only list view of the vertex table
+	 */
+	private class VertexList extends AbstractList<Location> implements
+			RandomAccess {
+
+		public Location get(int v) {
+			if (v < 0 || v >= vertices.size()) {
+				throw new IndexOutOfBoundsException("Index: " + v);
+			}
+			return vertices.get(v);
+		}
+
+		public int size() {
+			return vertices.size();
+		}
+	}
+
+	/**
+	 * Return a string representation of the graph, in the same layout as
+	 * NavigationGraph
+	 *
+	 * @return String representation of the graph
+	 */
+	public String toString() {
+		StringBuilder out = new StringBuilder();
+		int count = 0;//how many edges have been put on the current line
+		for (int v = 0; v < vertices.size(); v++) {
+			for (int e = offsets.get(v); e < offsets.get(v + 1); e++) {
+				if (count == 3) {
+					out.append('\n');
+					count = 0;
+				}
+				out.append(createPath(v, e)).append(", ");
+				count++;
+			}
+		}
+		int last = out.lastIndexOf(",");
+		return last < 0 ? "" : out.substring(0, last);
+	}
+}
@@ -0,0 +1,393 @@
+import java.util.Arrays;
+
+/**
+ * Strongly connected components of a graph with reachability labels on
+ * their condensation, the DAG with one node per component, so that most
+ * pairs of vertices without a route between them are told apart in
+ * constant time instead of by a search that explores everything
+ * reachable from the source.
+ *
+ * The components are found with Tarjan's algorithm, run with explicit
+ * stacks so that long paths cannot overflow the call stack. Each
+ * component gets two intervals [low, post], one per labeling: post is the
+ * position of the component in a postorder of the condensation and low
+ * the smallest post below it. If a component reaches another, its
+ * intervals contain the other's, so a pair whose intervals are not nested
+ * has no route. The first labeling is the order Tarjan's algorithm
+ * completes the components in, the second a depth-first search of the
+ * condensation in the opposite edge order, which rules out pairs the
+ * first one cannot.
+ *
+ * The labels only ever claim that there is no route. addVertex and most
+ * calls of addEdge keep them valid by widening or placing intervals; an
+ * edge they cannot account for makes addEdge return false, after which
+ * the index must be built again.
+ */
+final class ComponentIndex {
+
+	//component of each vertex
+	private int[] component;
+	private int vertexCount;
+	//by component: vertices, edges from and to other components, and the
+	//intervals of both labelings
+	private int[] size;
+	private int[] parents;
+	private int[] children;
+	private int[] low1;
+	private int[] post1;
+	private int[] low2;
+	private int[] post2;
+	private int componentCount;
+	//components left without vertices by absorb
+	private int emptied;
+	//larger than every post, for the intervals of new components
+	private int nextPost;
+
+	private ComponentIndex(int vertices, int components) {
+		this.component = new int[vertices];
+		this.vertexCount = vertices;
+		this.size = new int[components];
+		this.parents = new int[components];
+		this.children = new int[components];
+		this.low1 = new int[components];
+		this.post1 = new int[components];
+		this.low2 = new int[components];
+		this.post2 = new int[components];
+		this.componentCount = components;
+		this.nextPost = components;
+	}
+
+	/**
+	 * Finds the strongly connected components of a graph and labels its
+	 * condensation
+	 *
+	 * @param graph
+	 *            graph to index
+	 * @return index of the current edges of graph
+	 */
+	static ComponentIndex build(CompactNavigationGraph graph) {
+		int n = graph.getVertexCount();
+		int[] component = new int[n];
+		int count = tarjan(graph, component);
+		ComponentIndex index = new ComponentIndex(n, count);
+		index.component = component;
+		index.label(graph);
+		return index;
+	}
+
+	/**
+	 * Tarjan's algorithm with explicit stacks
+	 *
+	 * @param component
+	 *            receives the component of each vertex, numbered in the
+	 *            order they are completed, so every edge between two
+	 *            components leads to a lower number
+	 * @return number of components
+	 */
+	private static int tarjan(CompactNavigationGraph graph, int[] component) {
+		int n = component.length;
+		//discovery number + 1 of each vertex, 0 while unvisited
+		int[] index = new int[n];
+		int[] lowlink = new int[n];
+		//vertices of components not completed yet
+		int[] stack = new int[n];
+		int stackSize = 0;
+		//depth-first search path and the next edge to follow at each
+		int[] path = new int[n];
+		int[] nextEdge = new int[n];
+		int depth = 0;
+		int visited = 0;
+		int count = 0;
+		Arrays.fill(component, -1);
+		for (int root = 0; root < n; root++) {
+			if (index[root] != 0) {
+				continue;
+			}
+			index[root] = lowlink[root] = ++visited;
+			stack[stackSize++] = root;
+			path[depth] = root;
+			nextEdge[depth++] = graph.edgesBegin(root);
+			while (depth > 0) {
+				int v = path[depth - 1];
+				if (nextEdge[depth - 1] < graph.edgesEnd(v)) {
+					int w = graph.edgeTarget(nextEdge[depth - 1]++);
+					if (index[w] == 0) {
+						index[w] = lowlink[w] = ++visited;
+						stack[stackSize++] = w;
+						path[depth] = w;
+						nextEdge[depth++] = graph.edgesBegin(w);
+					} else if (component[w] < 0) {
+						lowlink[v] = Math.min(lowlink[v], index[w]);
+					}
+					continue;
+				}
+				depth--;
+				if (lowlink[v] == index[v]) {
+					int w;
+					do {
+						w = stack[--stackSize];
+						component[w] = count;
+					} while (w != v);
+					count++;
+				}
+				if (depth > 0) {
+					int u = path[depth - 1];
+					lowlink[u] = Math.min(lowlink[u], lowlink[v]);
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Builds the condensation and computes both labelings and the edge
+	 * counts of every component
+	 */
+	private void label(CompactNavigationGraph graph) {
+		int n = vertexCount;
+		int c = componentCount;
+		//condensation edges by source component, duplicates included
+		int[] offsets = new int[c + 1];
+		for (int v = 0; v < n; v++) {
+			size[component[v]]++;
+			for (int e = graph.edgesBegin(v); e < graph.edgesEnd(v); e++) {
+				int w = graph.edgeTarget(e);
+				if (component[w] != component[v]) {
+					offsets[component[v] + 1]++;
+					children[component[v]]++;
+					parents[component[w]]++;
+				}
+			}
+		}
+		for (int i = 0; i < c; i++) {
+			offsets[i + 1] += offsets[i];
+		}
+		int[] targets = new int[offsets[c]];
+		int[] fill = Arrays.copyOf(offsets, c);
+		for (int v = 0; v < n; v++) {
+			for (int e = graph.edgesBegin(v); e < graph.edgesEnd(v); e++) {
+				int w = graph.edgeTarget(e);
+				if (component[w] != component[v]) {
+					targets[fill[component[v]]++] = component[w];
+				}
+			}
+		}
+		//Tarjan's numbering is a postorder: every edge leads lower
+		for (int i = 0; i < c; i++) {
+			post1[i] = i;
+			low1[i] = i;
+			for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+				low1[i] = Math.min(low1[i], low1[targets[j]]);
+			}
+		}
+		//second postorder: roots and edges in the opposite order
+		Arrays.fill(post2, -1);
+		int[] path = new int[c];
+		int[] nextEdge = new int[c];
+		int posted = 0;
+		for (int root = c - 1; root >= 0; root--) {
+			if (post2[root] >= 0 || parents[root] > 0) {
+				continue;
+			}
+			int depth = 0;
+			path[depth] = root;
+			nextEdge[depth++] = offsets[root + 1];
+			post2[root] = -2;//on the path
+			while (depth > 0) {
+				int u = path[depth - 1];
+				if (nextEdge[depth - 1] > offsets[u]) {
+					int w = targets[--nextEdge[depth - 1]];
+					if (post2[w] == -1) {
+						post2[w] = -2;
+						path[depth] = w;
+						nextEdge[depth++] = offsets[w + 1];
+					}
+					continue;
+				}
+				depth--;
+				post2[u] = posted++;
+				low2[u] = post2[u];
+				for (int j = offsets[u]; j < offsets[u + 1]; j++) {
+					low2[u] = Math.min(low2[u], low2[targets[j]]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks if there may be a route from s to d. Only false is certain.
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id
+	 * @return false if there is no route from s to d
+	 */
+	boolean mayReach(int s, int d) {
+		int cs = component[s];
+		int cd = component[d];
+		return cs == cd || contains(cs, cd);
+	}
+
+	/**
+	 * Checks if the intervals of component a contain those of component b
+	 * in both labelings, as they do if a reaches b
+	 */
+	private boolean contains(int a, int b) {
+		return low1[a] <= low1[b] && post1[b] <= post1[a]
+				&& low2[a] <= low2[b] && post2[b] <= post2[a];
+	}
+
+	/**
+	 * Component of a vertex
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return component id
+	 */
+	int getComponent(int v) {
+		return component[v];
+	}
+
+	/**
+	 * Number of strongly connected components
+	 *
+	 * @return component count
+	 */
+	int getComponentCount() {
+		return componentCount - emptied;
+	}
+
+	/**
+	 * Adds a vertex without edges as a component of its own, with
+	 * intervals of its own
+	 *
+	 * @return id of the new vertex
+	 */
+	int addVertex() {
+		if (vertexCount == component.length) {
+			component = Arrays.copyOf(component, Math.max(16,
+					2 * vertexCount));
+		}
+		if (componentCount == size.length) {
+			int capacity = Math.max(16, 2 * componentCount);
+			size = Arrays.copyOf(size, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			children = Arrays.copyOf(children, capacity);
+			low1 = Arrays.copyOf(low1, capacity);
+			post1 = Arrays.copyOf(post1, capacity);
+			low2 = Arrays.copyOf(low2, capacity);
+			post2 = Arrays.copyOf(post2, capacity);
+		}
+		int c = componentCount++;
+		size[c] = 1;
+		parents[c] = 0;
+		children[c] = 0;
+		low1[c] = post1[c] = low2[c] = post2[c] = nextPost++;
+		component[vertexCount] = c;
+		return vertexCount++;
+	}
+
+	/**
+	 * Accounts for a new edge from s to d if the components and labels can
+	 * stay valid: the edge stays within a component, the intervals of d's
+	 * component already lie in those of s's but not the other way round,
+	 * s's component has no edges coming in so its intervals can grow, or
+	 * d's component has no edges at all so its intervals can be put inside
+	 * those of s's. If the intervals lie in each other, d's component may
+	 * reach s's, and the edge would join the two and every component on
+	 * the routes between them.
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id
+	 * @return false if the index must be built again
+	 */
+	boolean addEdge(int s, int d) {
+		int cs = component[s];
+		int cd = component[d];
+		if (cs == cd) {
+			return true;
+		}
+		if (contains(cs, cd)) {
+			if (contains(cd, cs)) {
+				return false;//the edge may close a cycle
+			}
+			//nothing new can be reached through the edge
+		} else if (parents[cs] == 0) {
+			low1[cs] = Math.min(low1[cs], low1[cd]);
+			post1[cs] = Math.max(post1[cs], post1[cd]);
+			low2[cs] = Math.min(low2[cs], low2[cd]);
+			post2[cs] = Math.max(post2[cs], post2[cd]);
+		} else if (parents[cd] == 0 && children[cd] == 0) {
+			low1[cd] = post1[cd] = low1[cs];
+			low2[cd] = post2[cd] = low2[cs];
+		} else {
+			return false;
+		}
+		children[cs]++;
+		parents[cd]++;
+		return true;
+	}
+
+	/**
+	 * Accounts for a new edge between a vertex that is a component of its
+	 * own and component c which closes a cycle, i.e. runs opposite to one
+	 * of v's edges to or from c, as the caller checks. If all other edges
+	 * of v connect it to c as well, v joins c.
+	 *
+	 * @param v
+	 *            vertex id
+	 * @param c
+	 *            component at the other end of the new edge
+	 * @param neighbors
+	 *            vertices at the other end of v's edges before the new
+	 *            one
+	 * @return false if v cannot join c
+	 */
+	boolean absorb(int v, int c, int[] neighbors) {
+		int cv = component[v];
+		if (cv == c || size[cv] != 1 || neighbors.length == 0) {
+			return false;
+		}
+		for (int w : neighbors) {
+			if (component[w] != c) {
+				return false;
+			}
+		}
+		//v's edges to and from c become edges within c
+		parents[c] -= children[cv];
+		children[c] -= parents[cv];
+		component[v] = c;
+		size[c]++;
+		size[cv] = 0;
+		parents[cv] = 0;
+		children[cv] = 0;
+		emptied++;
+		return true;
+	}
+
+	/**
+	 * Copies the index, so that the copy can change while this one is
+	 * used by other threads
+	 *
+	 * @return independent copy
+	 */
+	ComponentIndex copy() {
+		ComponentIndex copy = new ComponentIndex(0, 0);
+		copy.component = Arrays.copyOf(component, vertexCount);
+		copy.vertexCount = vertexCount;
+		copy.size = Arrays.copyOf(size, componentCount);
+		copy.parents = Arrays.copyOf(parents, componentCount);
+		copy.children = Arrays.copyOf(children, componentCount);
+		copy.low1 = Arrays.copyOf(low1, componentCount);
+		copy.post1 = Arrays.copyOf(post1, componentCount);
+		copy.low2 = Arrays.copyOf(low2, componentCount);
+		copy.post2 = Arrays.copyOf(post2, componentCount);
+		copy.componentCount = componentCount;
+		copy.emptied = emptied;
+		copy.nextPost = nextPost;
+		return copy;
+	}
+}
@@ -0,0 +1,1896 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Contraction Hierarchy of a CompactNavigationGraph for one edge property.
+ *
+ * Preprocessing contracts the vertices one by one in the order of a
+ * priority (twice the edge difference plus the number of already
+ * contracted neighbors and the level of the vertex): a vertex is removed
+ * and, for every pair of its neighbors whose shortest connection ran
+ * through it, a shortcut edge is added unless a bounded witness search
+ * finds another path that is strictly shorter. The vertices contracted in
+ * one round are an independent set of local priority minimums, so their
+ * witness searches and the priority updates of their neighbors run in
+ * parallel on a fork-join pool; the strict comparison keeps two vertices
+ * of a round from each counting on a route through the other. Vertices
+ * with too many neighbor pairs to test, like the hubs of power-law
+ * networks, are not contracted at all; once only they are left they form
+ * the core of the hierarchy.
+ *
+ * A query is a bidirectional Dijkstra in which the forward search only
+ * follows edges to higher ranked vertices and the backward search only
+ * follows incoming edges from higher ranked vertices, with stall-on-demand
+ * pruning. Inside the core both searches follow every edge. Every
+ * shortcut remembers the two edges it replaces, so the route unpacks into
+ * original edge ids of the graph and getShortestRoute returns the same
+ * Paths as without the hierarchy.
+ *
+ * A hierarchy is bound to the graph it was built for; write and read store
+ * it in a file so it does not have to be rebuilt. Edge values must not be
+ * negative.
+ */
+public final class ContractionHierarchy {
+
+	private static final byte[] MAGIC = { 'M', 'A', 'P', 'C', 'H', '0', '0',
+			'1' };
+	//vertices settled plus edges scanned by a witness search before it
+	//gives up, when a vertex is contracted and when its priority is only
+	//estimated. Counting edges keeps searches through hubs short.
+	private static final int WITNESS_WORK_LIMIT = 4000;
+	private static final int ESTIMATE_WORK_LIMIT = 400;
+	//vertices with more neighbor pairs than this are left in the core
+	private static final int CORE_PAIRS = 1024;
+	//smallest number of vertices worth a task of their own
+	private static final int MIN_TASK = 256;
+
+	private final CompactNavigationGraph graph;
+	private final int property;
+	//contraction order: rank[v] is the position of v in it
+	private final int[] rank;
+	//vertices ranked coreRank or higher were not contracted; edges between
+	//two of them are both upward and downward
+	private final int coreRank;
+
+	//hierarchy edges: original edges and shortcuts. An original edge has
+	//first == -1 and second == its edge id in the graph; a shortcut joins
+	//edge first (from -> via) and edge second (via -> to)
+	private final int[] from;
+	private final int[] to;
+	private final double[] weight;
+	private final int[] first;
+	private final int[] second;
+	//edges right after the last full contraction; repairs may add a
+	//quarter of that, after which contracting again is cheaper
+	private int contractedEdgeCount;
+
+	//upward edges by source: ids upEdges[upOffsets[v]] .. of edges leaving
+	//v towards higher ranks
+	private int[] upOffsets;
+	private int[] upEdges;
+	//downward edges by target: ids of edges entering v from higher ranks
+	private int[] downOffsets;
+	private int[] downEdges;
+
+	//scratch space reused by every query
+	private Query query;
+
+	private ContractionHierarchy(CompactNavigationGraph graph, int property,
+			int[] rank, int coreRank, int[] from, int[] to, double[] weight,
+			int[] first, int[] second) {
+		this.graph = graph;
+		this.property = property;
+		this.rank = rank;
+		this.coreRank = coreRank;
+		this.from = from;
+		this.to = to;
+		this.weight = weight;
+		this.first = first;
+		this.second = second;
+		this.contractedEdgeCount = from.length;
+		index();
+	}
+
+	/**
+	 * Hierarchy sharing every array of another one, including the upward
+	 * and downward edge index, but not its query scratch space
+	 */
+	private ContractionHierarchy(CompactNavigationGraph graph,
+			ContractionHierarchy other) {
+		this.graph = graph;
+		this.property = other.property;
+		this.rank = other.rank;
+		this.coreRank = other.coreRank;
+		this.from = other.from;
+		this.to = other.to;
+		this.weight = other.weight;
+		this.first = other.first;
+		this.second = other.second;
+		this.contractedEdgeCount = other.contractedEdgeCount;
+		this.upOffsets = other.upOffsets;
+		this.upEdges = other.upEdges;
+		this.downOffsets = other.downOffsets;
+		this.downEdges = other.downEdges;
+	}
+
+	/**
+	 * Builds the hierarchy on the common fork-join pool
+	 *
+	 * @param graph
+	 *            graph to be contracted
+	 * @param edgePropertyName
+	 *            edge property the hierarchy answers queries for
+	 * @return new hierarchy, not yet attached to the graph
+	 * @throws IllegalArgumentException
+	 *             if the property does not exist or an edge value of it is
+	 *             negative
+	 */
+	public static ContractionHierarchy build(CompactNavigationGraph graph,
+			String edgePropertyName) {
+		return build(graph, edgePropertyName, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Builds the hierarchy on the given pool
+	 *
+	 * @param graph
+	 *            graph to be contracted
+	 * @param edgePropertyName
+	 *            edge property the hierarchy answers queries for
+	 * @param pool
+	 *            pool the witness searches run on
+	 * @return new hierarchy, not yet attached to the graph
+	 * @throws IllegalArgumentException
+	 *             if the property does not exist or an edge value of it is
+	 *             negative
+	 */
+	public static ContractionHierarchy build(CompactNavigationGraph graph,
+			String edgePropertyName, ForkJoinPool pool) {
+		if (graph == null || edgePropertyName == null || pool == null) {
+			throw new IllegalArgumentException();
+		}
+		int p = graph.getPropertyIndex(edgePropertyName);
+		if (p < 0) {
+			throw new IllegalArgumentException("Edge: " + edgePropertyName);
+		}
+		return new Contraction(graph, p, pool).run();
+	}
+
+	/**
+	 * Contracts a graph with changed edge values again in the order of this
+	 * hierarchy. No priorities are computed, which makes up most of the
+	 * work of build; the witness searches are run again, so the shortcuts
+	 * fit the new values and queries stay exact.
+	 *
+	 * @param graph
+	 *            graph with the same vertices and edges as the one of this
+	 *            hierarchy, only edge values may differ
+	 * @param pool
+	 *            pool the witness searches run on
+	 * @return new hierarchy for graph, not yet attached to it
+	 */
+	ContractionHierarchy recontract(CompactNavigationGraph graph,
+			ForkJoinPool pool) {
+		return new Contraction(graph, property, pool).run(rank, coreRank);
+	}
+
+	/**
+	 * Repairs the hierarchy for a graph in which values of this edge
+	 * property only went down. Witnesses only get shorter then, so the
+	 * vertices whose shortcuts may no longer suffice are the lower ends of
+	 * hierarchy edges that got cheaper. These are contracted again in rank
+	 * order: their shortcuts move to the cheapest edges they span, and
+	 * witness searches among the higher vertices add the shortcuts that
+	 * are missing now. A changed or new shortcut makes the lower of its
+	 * ends a candidate in turn. The vertices and edges no change reaches
+	 * keep their shortcuts as they are.
+	 *
+	 * A value that went up may lengthen a witness of any vertex below the
+	 * edge, which recontract handles instead. So does a change that would
+	 * grow the hierarchy by more than a quarter since it was contracted.
+	 *
+	 * @param graph
+	 *            graph with the same vertices and edges as the one of this
+	 *            hierarchy, only lower values on some edges
+	 * @param lowered
+	 *            ids of the edges whose value went down
+	 * @return new hierarchy for graph, not yet attached to it, or null if
+	 *         it would grow too large
+	 * @throws IllegalArgumentException
+	 *             if a lowered value is negative
+	 */
+	ContractionHierarchy repair(CompactNavigationGraph graph, BitSet lowered) {
+		return new Repair(graph).run(lowered);
+	}
+
+	/**
+	 * Hierarchy with the same shortcuts for a copy of the graph whose values
+	 * of this edge property did not change
+	 *
+	 * @param graph
+	 *            copy of the graph of this hierarchy
+	 * @return hierarchy sharing the arrays of this one
+	 */
+	ContractionHierarchy rebind(CompactNavigationGraph graph) {
+		return new ContractionHierarchy(graph, this);
+	}
+
+	/**
+	 * Graph the hierarchy was built for
+	 *
+	 * @return contracted graph
+	 */
+	public CompactNavigationGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Name of the edge property the hierarchy answers queries for
+	 *
+	 * @return edge property name
+	 */
+	public String getEdgePropertyName() {
+		return graph.getEdgePropertyNames()[property];
+	}
+
+	/**
+	 * Index of the edge property in getEdgePropertyNames() of the graph
+	 *
+	 * @return edge property index
+	 */
+	int getPropertyIndex() {
+		return property;
+	}
+
+	/**
+	 * Number of shortcut edges added by the contraction
+	 *
+	 * @return shortcut count
+	 */
+	public int getShortcutCount() {
+		int count = 0;
+		for (int e = 0; e < first.length; e++) {
+			if (first[e] >= 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Position of a vertex in the contraction order
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return rank, 0 for the first contracted vertex
+	 */
+	public int getRank(int v) {
+		return rank[v];
+	}
+
+	/**
+	 * Number of vertices left uncontracted because contracting them would
+	 * have needed too many witness searches, as with the hubs of power-law
+	 * networks
+	 *
+	 * @return core size
+	 */
+	public int getCoreSize() {
+		return rank.length - coreRank;
+	}
+
+	/**
+	 * Finds a shortest route with an upward bidirectional search. The
+	 * scratch space is shared, so queries must not run concurrently.
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id, not s
+	 * @return edge ids of the graph on the route ordered from d back to s,
+	 *         empty if d cannot be reached
+	 */
+	int[] findRoute(int s, int d) {
+		Query query = this.query;
+		if (query == null) {
+			query = new Query();
+			this.query = query;
+		}
+		return query.run(s, d);
+	}
+
+	/**
+	 * Creates scratch space for queries of one thread, see
+	 * RouteQueryExecutor
+	 *
+	 * @return new query state sized to the graph
+	 */
+	Query newQuery() {
+		return new Query();
+	}
+
+	/**
+	 * Number of vertices the last findRoute settled on both sides
+	 *
+	 * @return settled vertex count
+	 */
+	int getSettledCount() {
+		Query query = this.query;
+		return query == null ? 0 : query.settled;
+	}
+
+	/**
+	 * Computes the route lengths between many sources and targets with
+	 * buckets: an upward backward search from every target leaves its
+	 * distance in a bucket at each vertex it settles, and an upward forward
+	 * search from every source then only has to read the buckets of the
+	 * vertices it settles. Both kinds of search run in parallel.
+	 *
+	 * @param sources
+	 *            source vertex ids
+	 * @param targets
+	 *            target vertex ids
+	 * @param pool
+	 *            pool the searches run on
+	 * @return route lengths by source and target index, infinity where a
+	 *         target cannot be reached
+	 */
+	double[][] distanceMatrix(final int[] sources, final int[] targets,
+			ForkJoinPool pool) {
+		int n = rank.length;
+		//backward search spaces of the targets
+		final int[][] spaceVertices = new int[targets.length][];
+		final double[][] spaceDistances = new double[targets.length][];
+		List<Callable<Void>> backward = new ArrayList<Callable<Void>>();
+		for (final int[] range : ranges(targets.length, pool)) {
+			backward.add(new Callable<Void>() {
+				public Void call() {
+					Upward search = new Upward();
+					for (int j = range[0]; j < range[1]; j++) {
+						search.run(targets[j], false);
+						spaceVertices[j] = search.reached.toArray();
+						spaceDistances[j] = new double[search.reached.size()];
+						for (int k = 0; k < spaceVertices[j].length; k++) {
+							spaceDistances[j][k] =
+									search.distance[spaceVertices[j][k]];
+						}
+					}
+					return null;
+				}
+			});
+		}
+		invokeAll(pool, backward);
+
+		//buckets by vertex: (target index, distance to it)
+		final int[] bucketOffsets = new int[n + 1];
+		for (int[] space : spaceVertices) {
+			for (int v : space) {
+				bucketOffsets[v + 1]++;
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			bucketOffsets[v + 1] += bucketOffsets[v];
+		}
+		final int[] bucketTargets = new int[bucketOffsets[n]];
+		final double[] bucketDistances = new double[bucketOffsets[n]];
+		int[] fill = Arrays.copyOf(bucketOffsets, n);
+		for (int j = 0; j < targets.length; j++) {
+			for (int k = 0; k < spaceVertices[j].length; k++) {
+				int i = fill[spaceVertices[j][k]]++;
+				bucketTargets[i] = j;
+				bucketDistances[i] = spaceDistances[j][k];
+			}
+		}
+
+		final double[][] matrix = new double[sources.length][];
+		List<Callable<Void>> forward = new ArrayList<Callable<Void>>();
+		for (final int[] range : ranges(sources.length, pool)) {
+			forward.add(new Callable<Void>() {
+				public Void call() {
+					Upward search = new Upward();
+					for (int i = range[0]; i < range[1]; i++) {
+						double[] row = new double[targets.length];
+						Arrays.fill(row, Double.POSITIVE_INFINITY);
+						search.run(sources[i], true);
+						for (int k = 0; k < search.reached.size(); k++) {
+							int v = search.reached.get(k);
+							double d = search.distance[v];
+							int end = bucketOffsets[v + 1];
+							for (int b = bucketOffsets[v]; b < end; b++) {
+								double through = d + bucketDistances[b];
+								if (through < row[bucketTargets[b]]) {
+									row[bucketTargets[b]] = through;
+								}
+							}
+						}
+						matrix[i] = row;
+					}
+					return null;
+				}
+			});
+		}
+		invokeAll(pool, forward);
+		return matrix;
+	}
+
+	/**
+	 * Splits [0, count) into about four ranges per pool thread
+	 */
+	private static List<int[]> ranges(int count, ForkJoinPool pool) {
+		int tasks = Math.max(1, Math.min(count, pool.getParallelism() * 4));
+		List<int[]> ranges = new ArrayList<int[]>(tasks);
+		for (int t = 0; t < tasks; t++) {
+			ranges.add(new int[] { (int) ((long) count * t / tasks),
+					(int) ((long) count * (t + 1) / tasks) });
+		}
+		return ranges;
+	}
+
+	private static void invokeAll(ForkJoinPool pool,
+			List<Callable<Void>> calls) {
+		for (Future<Void> future : pool.invokeAll(calls)) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+	}
+
+	/**
+	 * Writes the hierarchy to a file
+	 *
+	 * @param path
+	 *            file to write, replaced if it exists
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void write(String path) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(path), 1 << 16));
+		try {
+			out.write(MAGIC);
+			out.writeInt(graph.getVertexCount());
+			out.writeInt(graph.getEdgeCount());
+			out.writeUTF(getEdgePropertyName());
+			out.writeInt(from.length);
+			out.writeInt(coreRank);
+			for (int v = 0; v < rank.length; v++) {
+				out.writeInt(rank[v]);
+			}
+			for (int e = 0; e < from.length; e++) {
+				out.writeInt(from[e]);
+				out.writeInt(to[e]);
+				out.writeDouble(weight[e]);
+				out.writeInt(first[e]);
+				out.writeInt(second[e]);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a hierarchy written by write
+	 *
+	 * @param path
+	 *            file to read
+	 * @param graph
+	 *            graph the hierarchy was built for
+	 * @return hierarchy bound to graph, not yet attached to it
+	 * @throws FileNotFoundException
+	 *             if path is not found
+	 * @throws InvalidFileException
+	 *             if the file is not a hierarchy or was built for a graph
+	 *             with other vertex or edge counts or properties
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static ContractionHierarchy read(String path,
+			CompactNavigationGraph graph) throws FileNotFoundException,
+			InvalidFileException, IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(path), 1 << 16));
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new InvalidFileException("Invalid hierarchy file.");
+			}
+			int n = in.readInt();
+			int m = in.readInt();
+			int p = graph.getPropertyIndex(in.readUTF());
+			if (n != graph.getVertexCount() || m != graph.getEdgeCount()
+					|| p < 0) {
+				throw new InvalidFileException("Hierarchy does not match "
+						+ "the graph.");
+			}
+			int count = in.readInt();
+			int coreRank = in.readInt();
+			if (count < 0 || coreRank < 0 || coreRank > n) {
+				throw new InvalidFileException("Invalid hierarchy file.");
+			}
+			int[] rank = new int[n];
+			for (int v = 0; v < n; v++) {
+				rank[v] = in.readInt();
+			}
+			int[] from = new int[count];
+			int[] to = new int[count];
+			double[] weight = new double[count];
+			int[] first = new int[count];
+			int[] second = new int[count];
+			for (int e = 0; e < count; e++) {
+				from[e] = in.readInt();
+				to[e] = in.readInt();
+				weight[e] = in.readDouble();
+				first[e] = in.readInt();
+				second[e] = in.readInt();
+			}
+			return new ContractionHierarchy(graph, p, rank, coreRank, from,
+					to, weight, first, second);
+		} catch (EOFException e) {
+			throw new InvalidFileException("Hierarchy file is truncated.");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Sorts the hierarchy edges into the upward and downward indexes
+	 */
+	private void index() {
+		int n = rank.length;
+		upOffsets = new int[n + 1];
+		downOffsets = new int[n + 1];
+		for (int e = 0; e < from.length; e++) {
+			if (isUpward(e)) {
+				upOffsets[from[e] + 1]++;
+			}
+			if (isDownward(e)) {
+				downOffsets[to[e] + 1]++;
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			upOffsets[v + 1] += upOffsets[v];
+			downOffsets[v + 1] += downOffsets[v];
+		}
+		upEdges = new int[upOffsets[n]];
+		downEdges = new int[downOffsets[n]];
+		int[] up = upOffsets.clone();
+		int[] down = downOffsets.clone();
+		for (int e = 0; e < from.length; e++) {
+			if (isUpward(e)) {
+				upEdges[up[from[e]]++] = e;
+			}
+			if (isDownward(e)) {
+				downEdges[down[to[e]]++] = e;
+			}
+		}
+	}
+
+	private boolean isUpward(int e) {
+		return rank[to[e]] > rank[from[e]] || isCoreEdge(e);
+	}
+
+	private boolean isDownward(int e) {
+		return rank[to[e]] < rank[from[e]] || isCoreEdge(e);
+	}
+
+	private boolean isCoreEdge(int e) {
+		return rank[from[e]] >= coreRank && rank[to[e]] >= coreRank;
+	}
+
+	/**
+	 * Appends the original edge ids behind a hierarchy edge, in route order
+	 *
+	 * @param e
+	 *            hierarchy edge id
+	 * @param out
+	 *            list the edge ids are added to
+	 * @param stack
+	 *            empty scratch stack
+	 */
+	private void unpack(int e, IntList out, IntList stack) {
+		stack.add(e);
+		while (stack.size() > 0) {
+			int top = stack.removeLast();
+			if (first[top] < 0) {
+				out.add(second[top]);
+			} else {
+				stack.add(second[top]);
+				stack.add(first[top]);
+			}
+		}
+	}
+
+	/**
+	 * Scratch space of the upward bidirectional query
+	 */
+	final class Query {
+
+		private final Side forward = new Side();
+		private final Side backward = new Side();
+		private final IntList unpacked = new IntList();
+		private final IntList stack = new IntList();
+		private int generation;
+		private int settled;
+
+		int[] run(int s, int d) {
+			long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+			generation++;
+			if (generation == Integer.MAX_VALUE) {
+				Arrays.fill(forward.stamp, 0);
+				Arrays.fill(backward.stamp, 0);
+				generation = 1;
+			}
+			settled = 0;
+			int relaxed = 0;
+			int pushes = 2;
+			forward.start(s);
+			backward.start(d);
+			double best = Double.POSITIVE_INFINITY;
+			int meet = -1;
+			try {
+				while (true) {
+					double f = forward.queue.isEmpty() ? Double.POSITIVE_INFINITY
+							: forward.queue.getPriority(forward.queue.peekMinVertex());
+					double b = backward.queue.isEmpty() ? Double.POSITIVE_INFINITY
+							: backward.queue.getPriority(backward.queue.peekMinVertex());
+					//neither side can improve on best any more
+					if (f >= best && b >= best) {
+						break;
+					}
+					boolean isForward = f <= b;
+					Side side = isForward ? forward : backward;
+					Side other = isForward ? backward : forward;
+					int w = side.queue.removeMinVertex();
+					settled++;
+					double base = side.distance[w];
+					if (other.stamp[w] == generation
+							&& base + other.distance[w] < best) {
+						best = base + other.distance[w];
+						meet = w;
+					}
+					if (isForward ? stalledForward(w, base)
+							: stalledBackward(w, base)) {
+						continue;
+					}
+					int[] offsets = isForward ? upOffsets : downOffsets;
+					int[] edges = isForward ? upEdges : downEdges;
+					int[] ends = isForward ? to : from;
+					relaxed += offsets[w + 1] - offsets[w];
+					for (int i = offsets[w]; i < offsets[w + 1]; i++) {
+						int e = edges[i];
+						int t = ends[e];
+						double dist = base + weight[e];
+						if (side.stamp[t] != generation) {
+							side.label(t, dist, e);
+							side.queue.insert(t, dist);
+							pushes++;
+						} else if (dist < side.distance[t]
+								&& side.queue.contains(t)) {
+							side.label(t, dist, e);
+							side.queue.decreaseKey(t, dist);
+							pushes++;
+						}
+					}
+				}
+			} catch (PriorityQueueEmptyException e) {
+				throw new IllegalStateException(e);
+			} catch (PriorityQueueFullException e) {
+				throw new IllegalStateException(e);
+			}
+			int[] route = meet < 0 ? new int[0] : route(s, d, meet);
+			if (start != 0) {
+				//unpacking the route is part of a hierarchy query
+				Metrics.HIERARCHY.record(settled, relaxed, pushes, settled,
+						System.nanoTime() - start);
+			}
+			return route;
+		}
+
+		/**
+		 * Stall-on-demand: a forward vertex reached more cheaply from a
+		 * higher ranked vertex over a downward edge is not expanded
+		 */
+		private boolean stalledForward(int w, double base) {
+			for (int i = downOffsets[w]; i < downOffsets[w + 1]; i++) {
+				int e = downEdges[i];
+				int u = from[e];
+				if (forward.stamp[u] == generation
+						&& forward.distance[u] + weight[e] < base) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Stall-on-demand for the backward search over upward edges
+		 */
+		private boolean stalledBackward(int w, double base) {
+			for (int i = upOffsets[w]; i < upOffsets[w + 1]; i++) {
+				int e = upEdges[i];
+				int u = to[e];
+				if (backward.stamp[u] == generation
+						&& backward.distance[u] + weight[e] < base) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Unpacks the two halves of the route into original edge ids,
+		 * ordered from d back to s
+		 */
+		private int[] route(int s, int d, int meet) {
+			unpacked.clear();
+			//forward half: hierarchy edges from meet back to s
+			int half = 0;
+			for (int v = meet; v != s; v = from[forward.predEdge[v]]) {
+				half++;
+			}
+			int[] up = new int[half];
+			int i = half;
+			for (int v = meet; v != s; v = from[forward.predEdge[v]]) {
+				up[--i] = forward.predEdge[v];
+			}
+			for (int e : up) {
+				unpack(e, unpacked, stack);
+			}
+			//backward half: hierarchy edges from meet on to d
+			for (int v = meet; v != d; v = to[backward.predEdge[v]]) {
+				unpack(backward.predEdge[v], unpacked, stack);
+			}
+			int[] route = new int[unpacked.size()];
+			for (int k = 0; k < route.length; k++) {
+				route[k] = unpacked.get(route.length - 1 - k);
+			}
+			return route;
+		}
+
+		/**
+		 * Labels and queue of one search direction
+		 */
+		private final class Side {
+
+			final double[] distance = new double[rank.length];
+			final int[] predEdge = new int[rank.length];
+			final int[] stamp = new int[rank.length];
+			final IndexedMinPriorityQueue queue = PriorityQueueType.BINARY
+					.create(rank.length);
+
+			void start(int v) {
+				queue.clear();
+				label(v, 0, -1);
+				try {
+					queue.insert(v, 0);
+				} catch (PriorityQueueFullException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+
+			void label(int v, double d, int e) {
+				stamp[v] = generation;
+				distance[v] = d;
+				predEdge[v] = e;
+			}
+		}
+	}
+
+	/**
+	 * One-directional upward search that runs until its queue is empty,
+	 * for many-to-many queries. Afterwards reached lists the settled
+	 * vertices that were not stalled, with their distances in distance.
+	 */
+	private final class Upward {
+
+		final double[] distance = new double[rank.length];
+		private final int[] stamp = new int[rank.length];
+		private final IndexedMinPriorityQueue queue = PriorityQueueType.BINARY
+				.create(rank.length);
+		private int generation;
+		final IntList reached = new IntList();
+
+		void run(int v, boolean isForward) {
+			generation++;
+			if (generation == Integer.MAX_VALUE) {
+				Arrays.fill(stamp, 0);
+				generation = 1;
+			}
+			reached.clear();
+			queue.clear();
+			stamp[v] = generation;
+			distance[v] = 0;
+			int[] offsets = isForward ? upOffsets : downOffsets;
+			int[] edges = isForward ? upEdges : downEdges;
+			int[] ends = isForward ? to : from;
+			//stalling looks at the edges of the other direction
+			int[] stallOffsets = isForward ? downOffsets : upOffsets;
+			int[] stallEdges = isForward ? downEdges : upEdges;
+			int[] stallEnds = isForward ? from : to;
+			try {
+				queue.insert(v, 0);
+				while (!queue.isEmpty()) {
+					int w = queue.removeMinVertex();
+					double base = distance[w];
+					boolean stalled = false;
+					for (int i = stallOffsets[w]; i < stallOffsets[w + 1]
+							&& !stalled; i++) {
+						int e = stallEdges[i];
+						int u = stallEnds[e];
+						stalled = stamp[u] == generation
+								&& distance[u] + weight[e] < base;
+					}
+					if (stalled) {
+						continue;
+					}
+					reached.add(w);
+					for (int i = offsets[w]; i < offsets[w + 1]; i++) {
+						int e = edges[i];
+						int t = ends[e];
+						double d = base + weight[e];
+						if (stamp[t] != generation) {
+							stamp[t] = generation;
+							distance[t] = d;
+							queue.insert(t, d);
+						} else if (d < distance[t] && queue.contains(t)) {
+							distance[t] = d;
+							queue.decreaseKey(t, d);
+						}
+					}
+				}
+			} catch (PriorityQueueEmptyException e) {
+				throw new IllegalStateException(e);
+			} catch (PriorityQueueFullException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Growable list of ints
+	 */
+	static final class IntList {
+
+		private int[] values = new int[16];
+		private int size;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		int get(int i) {
+			return values[i];
+		}
+
+		int removeLast() {
+			return values[--size];
+		}
+
+		int size() {
+			return size;
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * State of one repair: the hierarchy edges, the ones of this hierarchy
+	 * first, indexed by source, target and the vertex a shortcut passes
+	 * through, and the vertices still to be contracted again, by rank.
+	 * Before the repair every pair of higher neighbors of a vertex had a
+	 * shortcut or a witness, and witnesses only get shorter, so a vertex
+	 * only checks the pairs with an edge to it that got cheaper or is new.
+	 */
+	private final class Repair {
+
+		private final CompactNavigationGraph graph;
+		private final int n;
+
+		private int[] from;
+		private int[] to;
+		private double[] weight;
+		private int[] first;
+		private int[] second;
+		private int edgeCount;
+
+		//edges of this hierarchy by source, higher targets first, by target
+		//and shortcuts by the vertex they pass through, then the edges the
+		//repair adds
+		private final int[] outOffsets;
+		private final int[] outEdges;
+		private final int[] inOffsets;
+		private final int[] inEdges;
+		private final int[] viaOffsets;
+		private final int[] viaEdges;
+		private final int[][] addedOut;
+		private final int[] addedOutSize;
+		private final int[][] addedIn;
+		private final int[] addedInSize;
+
+		//vertices to contract again, keyed by rank, with their edges to
+		//higher vertices that got cheaper or were added
+		private final IndexedMinPriorityQueue candidates;
+		private final int[][] changed;
+		private final int[] changedSize;
+
+		//cheapest edge from each higher in neighbor and to each higher out
+		//neighbor of the vertex being contracted
+		private final int[] bestIn;
+		private final int[] bestOut;
+		private final int[] inStamp;
+		private final int[] outStamp;
+		private int neighborGeneration;
+		private final IntList ins = new IntList();
+		private final IntList outs = new IntList();
+		//higher neighbors of the vertex being contracted joined to it by a
+		//changed edge
+		private final int[] changedInStamp;
+		private final int[] changedOutStamp;
+		private final IntList changedOuts = new IntList();
+
+		//witness search scratch
+		private final double[] distance;
+		private final int[] stamp;
+		private final IndexedMinPriorityQueue queue;
+		private int generation;
+
+		Repair(CompactNavigationGraph graph) {
+			this.graph = graph;
+			this.n = rank.length;
+			int m = ContractionHierarchy.this.from.length;
+			this.from = Arrays.copyOf(ContractionHierarchy.this.from, m);
+			this.to = Arrays.copyOf(ContractionHierarchy.this.to, m);
+			this.weight = Arrays.copyOf(ContractionHierarchy.this.weight, m);
+			this.first = Arrays.copyOf(ContractionHierarchy.this.first, m);
+			this.second = Arrays.copyOf(ContractionHierarchy.this.second, m);
+			this.edgeCount = m;
+			this.outOffsets = new int[n + 1];
+			this.inOffsets = new int[n + 1];
+			this.viaOffsets = new int[n + 1];
+			for (int e = 0; e < m; e++) {
+				outOffsets[from[e] + 1]++;
+				inOffsets[to[e] + 1]++;
+				if (first[e] >= 0) {
+					viaOffsets[to[first[e]] + 1]++;
+				}
+			}
+			for (int v = 0; v < n; v++) {
+				outOffsets[v + 1] += outOffsets[v];
+				inOffsets[v + 1] += inOffsets[v];
+				viaOffsets[v + 1] += viaOffsets[v];
+			}
+			this.outEdges = new int[m];
+			this.inEdges = new int[m];
+			this.viaEdges = new int[viaOffsets[n]];
+			int[] out = Arrays.copyOf(outOffsets, n);
+			int[] in = Arrays.copyOf(inOffsets, n);
+			int[] via = Arrays.copyOf(viaOffsets, n);
+			for (int e = 0; e < m; e++) {
+				inEdges[in[to[e]]++] = e;
+				if (first[e] >= 0) {
+					viaEdges[via[to[first[e]]]++] = e;
+				}
+			}
+			//targets in falling rank, so that a search above some vertex
+			//stops at the first edge down
+			int[] order = new int[n];
+			for (int v = 0; v < n; v++) {
+				order[rank[v]] = v;
+			}
+			for (int r = n - 1; r >= 0; r--) {
+				int t = order[r];
+				for (int k = inOffsets[t]; k < inOffsets[t + 1]; k++) {
+					int e = inEdges[k];
+					outEdges[out[from[e]]++] = e;
+				}
+			}
+			this.addedOut = new int[n][];
+			this.addedOutSize = new int[n];
+			this.addedIn = new int[n][];
+			this.addedInSize = new int[n];
+			this.candidates = PriorityQueueType.BINARY.create(n);
+			this.changed = new int[n][];
+			this.changedSize = new int[n];
+			this.bestIn = new int[n];
+			this.bestOut = new int[n];
+			this.inStamp = new int[n];
+			this.outStamp = new int[n];
+			this.changedInStamp = new int[n];
+			this.changedOutStamp = new int[n];
+			this.distance = new double[n];
+			this.stamp = new int[n];
+			this.queue = PriorityQueueType.BINARY.create(n);
+		}
+
+		ContractionHierarchy run(BitSet lowered) {
+			//original edges first: each pair of adjacent vertices is joined
+			//by its cheapest edge
+			for (int e = lowered.nextSetBit(0); e >= 0; e = lowered
+					.nextSetBit(e + 1)) {
+				double w = graph.edgeWeight(property, e);
+				int u = graph.getEdgeSource(e);
+				int x = graph.edgeTarget(e);
+				if (w < 0) {
+					throw new IllegalArgumentException("Negative edge: "
+							+ graph.getLocation(u) + " -> "
+							+ graph.getLocation(x));
+				}
+				for (int k = outOffsets[u]; k < outOffsets[u + 1]; k++) {
+					int h = outEdges[k];
+					if (first[h] < 0 && to[h] == x && w < weight[h]) {
+						weight[h] = w;
+						second[h] = e;
+						lowered(h);
+					}
+				}
+			}
+			try {
+				while (!candidates.isEmpty()) {
+					int v = candidates.removeMinVertex();
+					if (rank[v] < coreRank) {
+						neighbors(v);
+						moveShortcuts(v);
+						addShortcuts(v);
+					}
+					if (edgeCount > contractedEdgeCount
+							+ contractedEdgeCount / 4) {
+						return null;
+					}
+				}
+			} catch (PriorityQueueEmptyException e) {
+				throw new IllegalStateException(e);
+			}
+			ContractionHierarchy repaired = new ContractionHierarchy(graph,
+					property, rank, coreRank, Arrays.copyOf(from, edgeCount),
+					Arrays.copyOf(to, edgeCount),
+					Arrays.copyOf(weight, edgeCount),
+					Arrays.copyOf(first, edgeCount),
+					Arrays.copyOf(second, edgeCount));
+			repaired.contractedEdgeCount = contractedEdgeCount;
+			return repaired;
+		}
+
+		/**
+		 * Makes the lower end of an edge that got cheaper or was added a
+		 * candidate
+		 */
+		private void lowered(int e) {
+			int v = rank[from[e]] < rank[to[e]] ? from[e] : to[e];
+			changed[v] = Contraction.append(changed[v], changedSize[v]++, e);
+			if (!candidates.contains(v)) {
+				try {
+					candidates.insert(v, rank[v]);
+				} catch (PriorityQueueFullException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		}
+
+		/**
+		 * Collects the cheapest edge from each higher in neighbor and to
+		 * each higher out neighbor of v, and the neighbors joined to v by a
+		 * changed edge
+		 */
+		private void neighbors(int v) {
+			neighborGeneration++;
+			ins.clear();
+			outs.clear();
+			for (int k = inOffsets[v]; k < inOffsets[v + 1] + addedInSize[v]; k++) {
+				int e = k < inOffsets[v + 1] ? inEdges[k]
+						: addedIn[v][k - inOffsets[v + 1]];
+				int u = from[e];
+				if (rank[u] <= rank[v]) {
+					continue;
+				}
+				if (inStamp[u] != neighborGeneration) {
+					inStamp[u] = neighborGeneration;
+					bestIn[u] = e;
+					ins.add(u);
+				} else if (weight[e] < weight[bestIn[u]]) {
+					bestIn[u] = e;
+				}
+			}
+			for (int k = outOffsets[v]; k < outOffsets[v + 1] + addedOutSize[v]; k++) {
+				int e = k < outOffsets[v + 1] ? outEdges[k]
+						: addedOut[v][k - outOffsets[v + 1]];
+				int x = to[e];
+				if (rank[x] <= rank[v]) {
+					continue;
+				}
+				if (outStamp[x] != neighborGeneration) {
+					outStamp[x] = neighborGeneration;
+					bestOut[x] = e;
+					outs.add(x);
+				} else if (weight[e] < weight[bestOut[x]]) {
+					bestOut[x] = e;
+				}
+			}
+			changedOuts.clear();
+			for (int k = 0; k < changedSize[v]; k++) {
+				int e = changed[v][k];
+				if (from[e] != v) {
+					changedInStamp[from[e]] = neighborGeneration;
+				} else if (changedOutStamp[to[e]] != neighborGeneration) {
+					changedOutStamp[to[e]] = neighborGeneration;
+					changedOuts.add(to[e]);
+				}
+			}
+			changed[v] = null;
+			changedSize[v] = 0;
+		}
+
+		/**
+		 * Moves the shortcuts through v onto the cheapest edges they span
+		 */
+		private void moveShortcuts(int v) {
+			for (int k = viaOffsets[v]; k < viaOffsets[v + 1]; k++) {
+				int s = viaEdges[k];
+				int a = bestIn[from[s]];
+				int b = bestOut[to[s]];
+				double w = weight[a] + weight[b];
+				if (w < weight[s]) {
+					weight[s] = w;
+					first[s] = a;
+					second[s] = b;
+					lowered(s);
+				}
+			}
+		}
+
+		/**
+		 * Adds a shortcut for every pair of higher neighbors of v with a
+		 * changed edge to v that no path among the vertices above v joins
+		 * at most as cheaply
+		 */
+		private void addShortcuts(int v) {
+			double maxOut = 0;
+			for (int j = 0; j < outs.size(); j++) {
+				maxOut = Math.max(maxOut, weight[bestOut[outs.get(j)]]);
+			}
+			double maxChangedOut = 0;
+			for (int j = 0; j < changedOuts.size(); j++) {
+				maxChangedOut = Math.max(maxChangedOut,
+						weight[bestOut[changedOuts.get(j)]]);
+			}
+			for (int i = 0; i < ins.size(); i++) {
+				int u = ins.get(i);
+				boolean all = changedInStamp[u] == neighborGeneration;
+				if (!all && changedOuts.size() == 0) {
+					continue;
+				}
+				int a = bestIn[u];
+				IntList targets = all ? outs : changedOuts;
+				search(u, v, weight[a] + (all ? maxOut : maxChangedOut), all);
+				for (int j = 0; j < targets.size(); j++) {
+					int x = targets.get(j);
+					if (x == u) {
+						continue;
+					}
+					int b = bestOut[x];
+					double through = weight[a] + weight[b];
+					if (stamp[x] != generation || distance[x] > through) {
+						addShortcut(u, x, through, a, b);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Lowers a shortcut from u to x to a route through the edges a and
+		 * b, or adds one if there is none
+		 */
+		private void addShortcut(int u, int x, double w, int a, int b) {
+			int end = outOffsets[u + 1] + addedOutSize[u];
+			for (int k = outOffsets[u]; k < end; k++) {
+				int e = k < outOffsets[u + 1] ? outEdges[k]
+						: addedOut[u][k - outOffsets[u + 1]];
+				if (to[e] == x && first[e] >= 0) {
+					//its old vertex may still move it back if that is cheaper
+					if (w < weight[e]) {
+						weight[e] = w;
+						first[e] = a;
+						second[e] = b;
+						lowered(e);
+					}
+					return;
+				}
+				if (k < outOffsets[u + 1] && rank[to[e]] < rank[x]) {
+					k = outOffsets[u + 1] - 1;//rest go lower
+				}
+			}
+			if (edgeCount == from.length) {
+				int size = edgeCount * 2;
+				from = Arrays.copyOf(from, size);
+				to = Arrays.copyOf(to, size);
+				weight = Arrays.copyOf(weight, size);
+				first = Arrays.copyOf(first, size);
+				second = Arrays.copyOf(second, size);
+			}
+			int e = edgeCount++;
+			from[e] = u;
+			to[e] = x;
+			weight[e] = w;
+			first[e] = a;
+			second[e] = b;
+			addedOut[u] = Contraction.append(addedOut[u], addedOutSize[u]++, e);
+			addedIn[x] = Contraction.append(addedIn[x], addedInSize[x]++, e);
+			lowered(e);
+		}
+
+		/**
+		 * Dijkstra from u over the vertices ranked above skip, up to a
+		 * distance and the witness work limit or until every higher out
+		 * neighbor of skip is settled, or only every one joined to skip by
+		 * a changed edge
+		 */
+		private void search(int u, int skip, double limit, boolean all) {
+			generation++;
+			if (generation == Integer.MAX_VALUE) {
+				Arrays.fill(stamp, 0);
+				generation = 1;
+			}
+			queue.clear();
+			stamp[u] = generation;
+			distance[u] = 0;
+			try {
+				queue.insert(u, 0);
+				int work = 0;
+				int[] targetStamp = all ? outStamp : changedOutStamp;
+				int targets = all ? outs.size() : changedOuts.size();
+				while (!queue.isEmpty() && work < WITNESS_WORK_LIMIT) {
+					int w = queue.removeMinVertex();
+					work++;
+					double base = distance[w];
+					if (base > limit) {
+						break;
+					}
+					if (targetStamp[w] == neighborGeneration && --targets == 0) {
+						break;
+					}
+					int end = outOffsets[w + 1] + addedOutSize[w];
+					for (int k = outOffsets[w]; k < end
+							&& work < WITNESS_WORK_LIMIT; k++) {
+						int e = k < outOffsets[w + 1] ? outEdges[k]
+								: addedOut[w][k - outOffsets[w + 1]];
+						int t = to[e];
+						if (rank[t] <= rank[skip]) {
+							if (k < outOffsets[w + 1]) {
+								k = outOffsets[w + 1] - 1;//rest go lower
+							}
+							continue;
+						}
+						work++;
+						double d = base + weight[e];
+						if (stamp[t] != generation) {
+							stamp[t] = generation;
+							distance[t] = d;
+							queue.insert(t, d);
+						} else if (d < distance[t] && queue.contains(t)) {
+							distance[t] = d;
+							queue.decreaseKey(t, d);
+						}
+					}
+				}
+			} catch (PriorityQueueEmptyException e) {
+				throw new IllegalStateException(e);
+			} catch (PriorityQueueFullException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * State of one contraction run. The hierarchy edges are kept in
+	 * growable arrays, and every vertex has lists of the ids of the edges
+	 * leaving and entering it. Lists are only changed between the parallel
+	 * phases, which read them.
+	 */
+	private static final class Contraction {
+
+		private final CompactNavigationGraph graph;
+		private final int property;
+		private final ForkJoinPool pool;
+		private final int n;
+
+		private int[] from = new int[1024];
+		private int[] to = new int[1024];
+		private double[] weight = new double[1024];
+		private int[] first = new int[1024];
+		private int[] second = new int[1024];
+		private int edgeCount;
+
+		private final int[][] out;
+		private final int[] outSize;
+		private final int[][] in;
+		private final int[] inSize;
+
+		private final boolean[] contracted;
+		private final int[] contractedNeighbors;
+		//length of the longest chain of contracted vertices below a vertex
+		private final int[] level;
+		private final double[] priority;
+		private final int[] rank;
+
+		//witness search scratch of each pool thread
+		private final ThreadLocal<Witness> witnesses = new ThreadLocal<Witness>();
+
+		Contraction(CompactNavigationGraph graph, int property,
+				ForkJoinPool pool) {
+			this.graph = graph;
+			this.property = property;
+			this.pool = pool;
+			this.n = graph.getVertexCount();
+			this.out = new int[n][];
+			this.outSize = new int[n];
+			this.in = new int[n][];
+			this.inSize = new int[n];
+			this.contracted = new boolean[n];
+			this.contractedNeighbors = new int[n];
+			this.level = new int[n];
+			this.priority = new double[n];
+			this.rank = new int[n];
+		}
+
+		ContractionHierarchy run() {
+			addOriginalEdges();
+
+			//initial priorities
+			int[] remaining = new int[n];
+			for (int v = 0; v < n; v++) {
+				remaining[v] = v;
+			}
+			updatePriorities(remaining, n);
+
+			int next = 0;//next rank to hand out
+			int count = n;
+			int[] batch = new int[n];
+			int[] touched = new int[n];
+			int[] touchedStamp = new int[n];
+			int round = 0;
+			while (count > 0) {
+				round++;
+				//an independent set of local priority minimums
+				int size = 0;
+				for (int i = 0; i < count; i++) {
+					int v = remaining[i];
+					if (priority[v] < Double.POSITIVE_INFINITY
+							&& isLocalMinimum(v)) {
+						batch[size++] = v;
+					}
+				}
+				if (size == 0) {
+					break;
+				}
+				List<int[]> shortcuts = findShortcuts(batch, size);
+				for (int i = 0; i < size; i++) {
+					contracted[batch[i]] = true;
+				}
+
+				//apply the shortcuts and rank the batch
+				for (int i = 0; i < size; i++) {
+					int[] found = shortcuts.get(i);
+					for (int k = 0; k < found.length; k += 2) {
+						addEdge(from[found[k]], to[found[k + 1]],
+								weight[found[k]] + weight[found[k + 1]],
+								found[k], found[k + 1]);
+					}
+					rank[batch[i]] = next++;
+				}
+
+				//neighbors of the batch need a new priority
+				int touchedCount = 0;
+				for (int i = 0; i < size; i++) {
+					int v = batch[i];
+					for (int k = 0; k < outSize[v] + inSize[v]; k++) {
+						int e = k < outSize[v] ? out[v][k] : in[v][k - outSize[v]];
+						int u = k < outSize[v] ? to[e] : from[e];
+						if (!contracted[u]) {
+							contractedNeighbors[u]++;
+							level[u] = Math.max(level[u], level[v] + 1);
+							if (touchedStamp[u] != round) {
+								touchedStamp[u] = round;
+								touched[touchedCount++] = u;
+							}
+						}
+					}
+				}
+				for (int i = 0; i < size; i++) {
+					detach(batch[i]);
+				}
+				updatePriorities(touched, touchedCount);
+
+				//drop the batch from the remaining vertices
+				int kept = 0;
+				for (int i = 0; i < count; i++) {
+					if (!contracted[remaining[i]]) {
+						remaining[kept++] = remaining[i];
+					}
+				}
+				count = kept;
+			}
+			//the vertices left form the core
+			int coreRank = next;
+			for (int i = 0; i < count; i++) {
+				rank[remaining[i]] = next++;
+			}
+			return new ContractionHierarchy(graph, property, rank, coreRank,
+					Arrays.copyOf(from, edgeCount), Arrays.copyOf(to, edgeCount),
+					Arrays.copyOf(weight, edgeCount),
+					Arrays.copyOf(first, edgeCount),
+					Arrays.copyOf(second, edgeCount));
+		}
+
+		/**
+		 * Contracts the vertices in a given order. Each batch is the longest
+		 * run of consecutive ranks no two of which are adjacent, so its
+		 * witness searches can run in parallel as in run().
+		 *
+		 * @param order
+		 *            rank of every vertex
+		 * @param coreRank
+		 *            vertices of this rank and above are left uncontracted
+		 * @return new hierarchy with the given order
+		 */
+		ContractionHierarchy run(int[] order, int coreRank) {
+			addOriginalEdges();
+			int[] byRank = new int[n];
+			for (int v = 0; v < n; v++) {
+				byRank[order[v]] = v;
+			}
+			int[] batch = new int[n];
+			int[] adjacentStamp = new int[n];
+			int round = 0;
+			for (int next = 0; next < coreRank;) {
+				round++;
+				int size = 0;
+				while (next < coreRank && adjacentStamp[byRank[next]] != round) {
+					int v = byRank[next++];
+					batch[size++] = v;
+					for (int k = 0; k < outSize[v] + inSize[v]; k++) {
+						int e = k < outSize[v] ? out[v][k] : in[v][k - outSize[v]];
+						adjacentStamp[k < outSize[v] ? to[e] : from[e]] = round;
+					}
+				}
+				List<int[]> shortcuts = findShortcuts(batch, size);
+				for (int i = 0; i < size; i++) {
+					contracted[batch[i]] = true;
+				}
+				for (int i = 0; i < size; i++) {
+					int[] found = shortcuts.get(i);
+					for (int k = 0; k < found.length; k += 2) {
+						addEdge(from[found[k]], to[found[k + 1]],
+								weight[found[k]] + weight[found[k + 1]],
+								found[k], found[k + 1]);
+					}
+				}
+				for (int i = 0; i < size; i++) {
+					detach(batch[i]);
+				}
+			}
+			return new ContractionHierarchy(graph, property, order, coreRank,
+					Arrays.copyOf(from, edgeCount), Arrays.copyOf(to, edgeCount),
+					Arrays.copyOf(weight, edgeCount),
+					Arrays.copyOf(first, edgeCount),
+					Arrays.copyOf(second, edgeCount));
+		}
+
+		/**
+		 * Adds the cheapest original edge between every ordered pair of
+		 * adjacent vertices, the first one on ties
+		 */
+		private void addOriginalEdges() {
+			int[] best = new int[n];
+			int[] bestStamp = new int[n];
+			for (int u = 0; u < n; u++) {
+				int end = graph.edgesEnd(u);
+				for (int e = graph.edgesBegin(u); e < end; e++) {
+					double w = graph.edgeWeight(property, e);
+					if (w < 0) {
+						throw new IllegalArgumentException("Negative edge: "
+								+ graph.getLocation(u) + " -> "
+								+ graph.getLocation(graph.edgeTarget(e)));
+					}
+					int t = graph.edgeTarget(e);
+					if (bestStamp[t] != u + 1) {
+						bestStamp[t] = u + 1;
+						best[t] = e;
+					} else if (w < graph.edgeWeight(property, best[t])) {
+						best[t] = e;
+					}
+				}
+				for (int e = graph.edgesBegin(u); e < end; e++) {
+					if (best[graph.edgeTarget(e)] == e) {
+						addEdge(u, graph.edgeTarget(e),
+								graph.edgeWeight(property, e), -1, e);
+					}
+				}
+			}
+		}
+
+		private void addEdge(int u, int v, double w, int a, int b) {
+			if (edgeCount == from.length) {
+				int size = edgeCount * 2;
+				from = Arrays.copyOf(from, size);
+				to = Arrays.copyOf(to, size);
+				weight = Arrays.copyOf(weight, size);
+				first = Arrays.copyOf(first, size);
+				second = Arrays.copyOf(second, size);
+			}
+			int e = edgeCount++;
+			from[e] = u;
+			to[e] = v;
+			weight[e] = w;
+			first[e] = a;
+			second[e] = b;
+			out[u] = append(out[u], outSize[u]++, e);
+			in[v] = append(in[v], inSize[v]++, e);
+		}
+
+		/**
+		 * Removes the edges of a contracted vertex from the lists of its
+		 * neighbors and drops its own lists, so that the lists only hold
+		 * the graph of the vertices still to be contracted. The edges stay
+		 * in the hierarchy.
+		 */
+		private void detach(int v) {
+			for (int k = 0; k < outSize[v]; k++) {
+				int e = out[v][k];
+				inSize[to[e]] = remove(in[to[e]], inSize[to[e]], e);
+			}
+			for (int k = 0; k < inSize[v]; k++) {
+				int e = in[v][k];
+				outSize[from[e]] = remove(out[from[e]], outSize[from[e]], e);
+			}
+			out[v] = null;
+			in[v] = null;
+			outSize[v] = 0;
+			inSize[v] = 0;
+		}
+
+		/**
+		 * Removes a value from an unordered list by moving the last one
+		 * into its place
+		 *
+		 * @return new list size
+		 */
+		private static int remove(int[] list, int size, int value) {
+			for (int i = 0; i < size; i++) {
+				if (list[i] == value) {
+					list[i] = list[size - 1];
+					return size - 1;
+				}
+			}
+			return size;
+		}
+
+		private static int[] append(int[] list, int size, int value) {
+			if (list == null) {
+				list = new int[4];
+			} else if (size == list.length) {
+				list = Arrays.copyOf(list, size * 2);
+			}
+			list[size] = value;
+			return list;
+		}
+
+		/**
+		 * Checks if v comes before all its uncontracted neighbors, ties
+		 * broken by a hash of the ids
+		 */
+		private boolean isLocalMinimum(int v) {
+			for (int k = 0; k < outSize[v] + inSize[v]; k++) {
+				int e = k < outSize[v] ? out[v][k] : in[v][k - outSize[v]];
+				int u = k < outSize[v] ? to[e] : from[e];
+				if (!contracted[u] && (priority[u] < priority[v]
+						|| priority[u] == priority[v] && mix(u) < mix(v))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static int mix(int v) {
+			int h = v * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+		/**
+		 * Recomputes the priority of some vertices in parallel
+		 */
+		private void updatePriorities(final int[] vertices, int count) {
+			forEach(count, new Body<Void>() {
+				public Void run(int from, int to) {
+					Witness witness = getWitness();
+					for (int i = from; i < to; i++) {
+						int v = vertices[i];
+						int removed = witness.neighbors(v);
+						if (witness.pairs() > CORE_PAIRS) {
+							priority[v] = Double.POSITIVE_INFINITY;
+							continue;
+						}
+						int added = witness.shortcuts(v, null,
+								ESTIMATE_WORK_LIMIT);
+						priority[v] = 2 * (added - removed)
+									+ contractedNeighbors[v] + level[v];
+					}
+					return null;
+				}
+			});
+		}
+
+		/**
+		 * Finds the shortcuts of every batch vertex in parallel
+		 *
+		 * @return per batch vertex the pairs of edge ids (into v, out of v)
+		 *         each shortcut replaces
+		 */
+		private List<int[]> findShortcuts(final int[] batch, int size) {
+			final int[][] found = new int[size][];
+			forEach(size, new Body<Void>() {
+				public Void run(int from, int to) {
+					Witness witness = getWitness();
+					IntList pairs = new IntList();
+					for (int i = from; i < to; i++) {
+						pairs.clear();
+						witness.neighbors(batch[i]);
+						witness.shortcuts(batch[i], pairs,
+								WITNESS_WORK_LIMIT);
+						found[i] = pairs.toArray();
+					}
+					return null;
+				}
+			});
+			return Arrays.asList(found);
+		}
+
+		private Witness getWitness() {
+			Witness witness = witnesses.get();
+			if (witness == null) {
+				witness = new Witness();
+				witnesses.set(witness);
+			}
+			return witness;
+		}
+
+		/**
+		 * Runs body over [0, count) in ranges on the pool
+		 */
+		private <T> void forEach(int count, final Body<T> body) {
+			int tasks = Math.max(1, Math.min(pool.getParallelism() * 4,
+					count / MIN_TASK));
+			List<Callable<T>> calls = new ArrayList<Callable<T>>(tasks);
+			for (int t = 0; t < tasks; t++) {
+				final int lo = (int) ((long) count * t / tasks);
+				final int hi = (int) ((long) count * (t + 1) / tasks);
+				calls.add(new Callable<T>() {
+					public T call() {
+						return body.run(lo, hi);
+					}
+				});
+			}
+			for (Future<T> future : pool.invokeAll(calls)) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(e);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					throw new IllegalStateException(cause);
+				}
+			}
+		}
+
+		/**
+		 * Work on a range of indexes
+		 */
+		private interface Body<T> {
+			T run(int from, int to);
+		}
+
+		/**
+		 * Witness search scratch of one thread. neighbors collects the
+		 * cheapest edge from and to each uncontracted neighbor of a vertex;
+		 * shortcuts then runs one bounded Dijkstra per incoming neighbor.
+		 */
+		private final class Witness {
+
+			private final double[] distance = new double[n];
+			private final int[] stamp = new int[n];
+			private final IndexedMinPriorityQueue queue = PriorityQueueType.BINARY
+					.create(n);
+			private int generation;
+
+			//cheapest edge id by neighbor, valid while the stamp is current
+			private final int[] bestIn = new int[n];
+			private final int[] bestOut = new int[n];
+			private final int[] inStamp = new int[n];
+			private final int[] outStamp = new int[n];
+			private int neighborGeneration;
+			private final IntList ins = new IntList();
+			private final IntList outs = new IntList();
+
+			/**
+			 * Collects the incoming and outgoing edges of v to uncontracted
+			 * vertices, keeping the cheapest per neighbor
+			 *
+			 * @return number of edges contracting v would remove
+			 */
+			int neighbors(int v) {
+				neighborGeneration++;
+				ins.clear();
+				outs.clear();
+				for (int k = 0; k < inSize[v]; k++) {
+					int e = in[v][k];
+					int u = from[e];
+					if (contracted[u]) {
+						continue;
+					}
+					if (inStamp[u] != neighborGeneration) {
+						inStamp[u] = neighborGeneration;
+						bestIn[u] = e;
+						ins.add(u);
+					} else if (weight[e] < weight[bestIn[u]]) {
+						bestIn[u] = e;
+					}
+				}
+				for (int k = 0; k < outSize[v]; k++) {
+					int e = out[v][k];
+					int x = to[e];
+					if (contracted[x]) {
+						continue;
+					}
+					if (outStamp[x] != neighborGeneration) {
+						outStamp[x] = neighborGeneration;
+						bestOut[x] = e;
+						outs.add(x);
+					} else if (weight[e] < weight[bestOut[x]]) {
+						bestOut[x] = e;
+					}
+				}
+				return ins.size() + outs.size();
+			}
+
+			/**
+			 * Number of neighbor pairs of the vertex collected last
+			 */
+			long pairs() {
+				return (long) ins.size() * outs.size();
+			}
+
+			/**
+			 * Counts, and if pairs is given lists, the shortcuts contracting
+			 * v needs, using the neighbors collected last
+			 *
+			 * @param pairs
+			 *            receives (edge into v, edge out of v) per shortcut,
+			 *            or null to only count
+			 * @param workLimit
+			 *            vertices each witness search may settle plus edges
+			 *            it may scan
+			 * @return number of shortcuts
+			 */
+			int shortcuts(int v, IntList pairs, int workLimit) {
+				int count = 0;
+				double maxOut = 0;
+				for (int j = 0; j < outs.size(); j++) {
+					maxOut = Math.max(maxOut, weight[bestOut[outs.get(j)]]);
+				}
+				for (int i = 0; i < ins.size(); i++) {
+					int u = ins.get(i);
+					int a = bestIn[u];
+					search(u, v, weight[a] + maxOut, workLimit);
+					for (int j = 0; j < outs.size(); j++) {
+						int x = outs.get(j);
+						if (x == u) {
+							continue;
+						}
+						int b = bestOut[x];
+						double through = weight[a] + weight[b];
+						//only a strictly shorter witness counts: two vertices of
+						//one batch may otherwise drop a route via each other
+						if (stamp[x] != generation || distance[x] >= through) {
+							count++;
+							if (pairs != null) {
+								pairs.add(a);
+								pairs.add(b);
+							}
+						}
+					}
+				}
+				return count;
+			}
+
+			/**
+			 * Dijkstra from u over uncontracted vertices other than skip,
+			 * up to a distance and a work limit or until every out
+			 * neighbor of skip is settled
+			 */
+			private void search(int u, int skip, double limit,
+					int workLimit) {
+				generation++;
+				if (generation == Integer.MAX_VALUE) {
+					Arrays.fill(stamp, 0);
+					generation = 1;
+				}
+				queue.clear();
+				stamp[u] = generation;
+				distance[u] = 0;
+				try {
+					queue.insert(u, 0);
+					int work = 0;
+					int targets = outs.size();
+					while (!queue.isEmpty() && work < workLimit) {
+						int w = queue.removeMinVertex();
+						work++;
+						double base = distance[w];
+						if (base > limit) {
+							break;
+						}
+						if (outStamp[w] == neighborGeneration && --targets == 0) {
+							break;
+						}
+						for (int k = 0; k < outSize[w] && work < workLimit; k++) {
+							work++;
+							int e = out[w][k];
+							int t = to[e];
+							if (t == skip || contracted[t]) {
+								continue;
+							}
+							double d = base + weight[e];
+							if (stamp[t] != generation) {
+								stamp[t] = generation;
+								distance[t] = d;
+								queue.insert(t, d);
+							} else if (d < distance[t] && queue.contains(t)) {
+								distance[t] = d;
+								queue.decreaseKey(t, d);
+							}
+						}
+					}
+				} catch (PriorityQueueEmptyException e) {
+					throw new IllegalStateException(e);
+				} catch (PriorityQueueFullException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+import java.util.List;
+
+/**
+ * RouteHeuristic over the coordinates of the Locations: the straight-line
+ * distance to dest times the smallest ratio of edge value to edge length
+ * in the graph. No edge is cheaper per unit of distance than that ratio,
+ * so the estimate is a consistent lower bound for the edge property it was
+ * built for, whatever units the coordinates and the property use.
+ *
+ */
+public class CoordinateHeuristic implements RouteHeuristic {
+
+	private final double[] x;
+	private final double[] y;
+	//smallest edge value per unit of straight-line distance
+	private final double scale;
+
+	/**
+	 * Reads the coordinates and derives the scale from every edge
+	 *
+	 * @param graph
+	 *            graph whose Locations all have coordinates
+	 * @param edgePropertyName
+	 *            edge property the heuristic is used with
+	 * @throws IllegalArgumentException
+	 *             if a Location has no coordinates, the property does not
+	 *             exist or an edge has a negative value
+	 */
+	public CoordinateHeuristic(NavigationGraphADT graph,
+			String edgePropertyName) {
+		int p = indexOf(graph.getEdgePropertyNames(), edgePropertyName);
+		if (p < 0) {
+			throw new IllegalArgumentException("Edge: " + edgePropertyName);
+		}
+		List<Location> vertices = graph.getVertices();
+		this.x = new double[vertices.size()];
+		this.y = new double[vertices.size()];
+		for (int v = 0; v < vertices.size(); v++) {
+			Location location = vertices.get(v);
+			if (!location.hasCoordinates()) {
+				throw new IllegalArgumentException("No coordinates: "
+						+ location);
+			}
+			x[v] = location.getX();
+			y[v] = location.getY();
+		}
+
+		double scale = Double.POSITIVE_INFINITY;
+		for (Location location : vertices) {
+			for (Path path : graph.getOutEdges(location)) {
+				double value = path.getProperties().get(p);
+				if (value < 0) {
+					throw new IllegalArgumentException("Negative edge: " + path);
+				}
+				Location dest = path.getDestination();
+				double dx = dest.getX() - location.getX();
+				double dy = dest.getY() - location.getY();
+				double length = Math.sqrt(dx * dx + dy * dy);
+				if (length > 0) {
+					scale = Math.min(scale, value / length);
+				}
+			}
+		}
+		//without any edge of positive length there is nothing to bound
+		this.scale = scale == Double.POSITIVE_INFINITY ? 0 : scale;
+	}
+
+	/**
+	 * Straight-line distance to dest times the scale
+	 *
+	 * @param vertex
+	 *            id of the vertex the route starts at
+	 * @param dest
+	 *            id of the destination
+	 * @return lower bound on the route length
+	 */
+	public double estimate(int vertex, int dest) {
+		double dx = x[dest] - x[vertex];
+		double dy = y[dest] - y[vertex];
+		return scale * Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Smallest edge value per unit of distance found in the graph
+	 *
+	 * @return scale of the estimates
+	 */
+	public double getScale() {
+		return scale;
+	}
+
+	private static int indexOf(String[] names, String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
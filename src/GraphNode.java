@@ -15,6 +15,7 @@ public class GraphNode<V, E> {
 	private int id;
 	private V vertexData;
 	private List<E> outEdges;
+	private List<E> inEdges;
 
 	/**
 	 * Constructor to create a GraphNode object
@@ -28,6 +29,7 @@ public class GraphNode<V, E> {
 		this.id = id;
 		this.vertexData = vertexData;
 		this.outEdges = new ArrayList<E>();
+		this.inEdges = new ArrayList<E>();
 	}
 
 	/**
@@ -43,6 +45,7 @@ public class GraphNode<V, E> {
 	public GraphNode(V vertexData, List<E> outEdges, int id) {
 		this.vertexData = vertexData;
 		this.outEdges = outEdges;
+		this.inEdges = new ArrayList<E>();
 		this.id = id;
 	}
 
@@ -103,6 +106,35 @@ public class GraphNode<V, E> {
 		this.outEdges.add(outEdge);
 	}
 
+	/**
+	 * Getter method for incoming edges
+	 * 
+	 * @return list of edges ending at this node
+	 */
+	public List<E> getInEdges() {
+		return inEdges;
+	}
+
+	/**
+	 * Setter method for incoming edges
+	 * 
+	 * @param inEdges
+	 *            list of incoming edges
+	 */
+	public void setInEdges(List<E> inEdges) {
+		this.inEdges = inEdges;
+	}
+
+	/**
+	 * Adds an incoming edge
+	 * 
+	 * @param inEdge
+	 *            edge to be added to the list of incoming edges
+	 */
+	public void addInEdge(E inEdge) {
+		this.inEdges.add(inEdge);
+	}
+
 	@Override
 	public String toString() {
 		return outEdges.toString();
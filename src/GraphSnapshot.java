@@ -0,0 +1,372 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Binary snapshot of a CompactNavigationGraph that is opened by memory
+ * mapping the file instead of parsing it. Opening only reads the header;
+ * the pages of the name table, offsets, targets and property columns are
+ * faulted in as queries touch them, and several processes opening the same
+ * file share them through the page cache.
+ *
+ * All numbers are little-endian. The file is
+ *
+ * <pre>
+ * header      magic "MAPSNAP1", int version, int vertexCount,
+ *             int edgeCount, int propertyCount, int hashCapacity,
+ *             int nameBytes
+ * properties  per property an int byte length and the UTF-8 name
+ * nameOffsets int[vertexCount + 1] into names
+ * names       UTF-8 vertex names, back to back
+ * hash        int[hashCapacity] of vertex id + 1, see LocationTable.Mapped
+ * coordinates double[2 * vertexCount], x and y of each vertex, NaN where
+ *             it has none
+ * offsets     int[vertexCount + 1]
+ * targets     int[edgeCount]
+ * columns     double[edgeCount] per property
+ * </pre>
+ *
+ * and every section after the properties starts at a multiple of 8 bytes.
+ * Each section is mapped on its own, so a section may not exceed 2GB.
+ *
+ */
+public final class GraphSnapshot {
+
+	static final byte[] MAGIC = { 'M', 'A', 'P', 'S', 'N', 'A', 'P', '1' };
+	static final int VERSION = 1;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int HEADER_BYTES = MAGIC.length + 6 * 4;
+
+	private GraphSnapshot() {
+	}
+
+	/**
+	 * Tells whether a file starts with the snapshot magic
+	 *
+	 * @param path
+	 *            path to the file
+	 * @return true if the file is a snapshot, false if it is shorter or
+	 *         starts differently
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static boolean isSnapshot(String path) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(path, "r");
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			if (raf.length() < magic.length) {
+				return false;
+			}
+			raf.readFully(magic);
+			return Arrays.equals(magic, MAGIC);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes a snapshot of a graph
+	 *
+	 * @param graph
+	 *            graph to be written
+	 * @param path
+	 *            file to write, replaced if it exists
+	 * @throws IOException
+	 *             if the file cannot be written or a section would exceed
+	 *             2GB
+	 */
+	public static void write(CompactNavigationGraph graph, String path)
+			throws IOException {
+		int vertexCount = graph.getVertexCount();
+		int edgeCount = graph.getEdgeCount();
+		String[] properties = graph.getEdgePropertyNames();
+
+		//encode the names and lay out the hash table
+		byte[][] names = new byte[vertexCount][];
+		long nameBytes = 0;
+		for (int v = 0; v < vertexCount; v++) {
+			names[v] = graph.getLocation(v).getName().getBytes(UTF_8);
+			nameBytes += names[v].length;
+		}
+		int capacity = Integer.highestOneBit(Math.max(1, vertexCount) * 2 - 1) << 1;
+		checkSection((long) capacity * 4);
+		checkSection(nameBytes);
+		checkSection(((long) vertexCount + 1) * 4);
+		checkSection((long) edgeCount * 8);
+		checkSection((long) vertexCount * 16);
+		int[] slots = new int[capacity];
+		for (int v = 0; v < vertexCount; v++) {
+			int i = LocationTable.homeSlot(graph.getLocation(v).getName(),
+					capacity);
+			while (slots[i] != 0) {
+				i = (i + 1) & (capacity - 1);
+			}
+			slots[i] = v + 1;
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(path, "rw");
+		try {
+			raf.setLength(0);
+			Output out = new Output(raf.getChannel());
+			out.bytes(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(vertexCount);
+			out.putInt(edgeCount);
+			out.putInt(properties.length);
+			out.putInt(capacity);
+			out.putInt((int) nameBytes);
+			for (String property : properties) {
+				byte[] bytes = property.getBytes(UTF_8);
+				out.putInt(bytes.length);
+				out.bytes(bytes);
+			}
+
+			out.align();
+			int offset = 0;
+			for (int v = 0; v < vertexCount; v++) {
+				out.putInt(offset);
+				offset += names[v].length;
+			}
+			out.putInt(offset);
+			out.align();
+			for (int v = 0; v < vertexCount; v++) {
+				out.bytes(names[v]);
+			}
+			out.align();
+			for (int slot : slots) {
+				out.putInt(slot);
+			}
+			out.align();
+			for (int v = 0; v < vertexCount; v++) {
+				Location location = graph.getLocation(v);
+				out.putDouble(location.getX());
+				out.putDouble(location.getY());
+			}
+			out.align();
+			for (int v = 0; v <= vertexCount; v++) {
+				out.putInt(v < vertexCount ? graph.edgesBegin(v) : edgeCount);
+			}
+			out.align();
+			for (int e = 0; e < edgeCount; e++) {
+				out.putInt(graph.edgeTarget(e));
+			}
+			for (int p = 0; p < properties.length; p++) {
+				out.align();
+				for (int e = 0; e < edgeCount; e++) {
+					out.putDouble(graph.edgeWeight(p, e));
+				}
+			}
+			out.flush();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Opens a snapshot by memory mapping its sections. The file can be
+	 * closed by the caller right away; the mappings stay valid until the
+	 * graph is garbage collected.
+	 *
+	 * @param path
+	 *            path to the snapshot
+	 * @return read-only graph backed by the mapped file
+	 * @throws FileNotFoundException
+	 *             if path is not found
+	 * @throws InvalidFileException
+	 *             if the file is not a snapshot of a supported version or
+	 *             is truncated
+	 * @throws IOException
+	 *             if the file cannot be read or mapped
+	 */
+	public static CompactNavigationGraph open(String path)
+			throws FileNotFoundException, InvalidFileException, IOException {
+		File file = new File(path);
+		if (!file.exists()) {
+			throw new FileNotFoundException();
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if (size < HEADER_BYTES) {
+				throw new InvalidFileException("Invalid snapshot file.");
+			}
+			ByteBuffer header = read(channel, 0, HEADER_BYTES);
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new InvalidFileException("Invalid snapshot file.");
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new InvalidFileException("Unsupported snapshot version: "
+						+ version);
+			}
+			int vertexCount = header.getInt();
+			int edgeCount = header.getInt();
+			int propertyCount = header.getInt();
+			int capacity = header.getInt();
+			int nameBytes = header.getInt();
+			if (vertexCount < 0 || edgeCount < 0 || propertyCount < 0
+					|| nameBytes < 0 || capacity <= vertexCount
+					|| Integer.bitCount(capacity) != 1) {
+				throw new InvalidFileException("Invalid snapshot file.");
+			}
+
+			long position = HEADER_BYTES;
+			String[] properties = new String[propertyCount];
+			for (int p = 0; p < propertyCount; p++) {
+				checkLength(position + 4, size);
+				int length = read(channel, position, 4).getInt();
+				position += 4;
+				checkLength(position + length, size);
+				ByteBuffer name = read(channel, position, length);
+				properties[p] = new String(name.array(), UTF_8);
+				position += length;
+			}
+
+			//check the whole layout before mapping anything
+			long[] sections = new long[6 + propertyCount];
+			long[] lengths = { (vertexCount + 1L) * 4, nameBytes,
+					capacity * 4L, vertexCount * 16L, (vertexCount + 1L) * 4,
+					edgeCount * 4L };
+			for (int s = 0; s < sections.length; s++) {
+				position = (position + 7) & ~7L;
+				sections[s] = position;
+				position += s < lengths.length ? lengths[s] : edgeCount * 8L;
+			}
+			checkLength(position, size);
+
+			IntBuffer nameOffsets = map(channel, sections[0], lengths[0])
+					.asIntBuffer();
+			ByteBuffer names = map(channel, sections[1], lengths[1]);
+			IntBuffer slots = map(channel, sections[2], lengths[2])
+					.asIntBuffer();
+			DoubleBuffer coordinates = map(channel, sections[3], lengths[3])
+					.asDoubleBuffer();
+			IntBuffer offsets = map(channel, sections[4], lengths[4])
+					.asIntBuffer();
+			IntBuffer targets = map(channel, sections[5], lengths[5])
+					.asIntBuffer();
+			DoubleBuffer[] columns = new DoubleBuffer[propertyCount];
+			for (int p = 0; p < propertyCount; p++) {
+				columns[p] = map(channel, sections[6 + p], edgeCount * 8L)
+						.asDoubleBuffer();
+			}
+			return new CompactNavigationGraph(properties,
+					new LocationTable.Mapped(nameOffsets, names, slots,
+							coordinates),
+					offsets, targets, columns);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Maps one read-only section of the file
+	 */
+	private static ByteBuffer map(FileChannel channel, long position,
+			long length) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, length)
+				.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Reads a few bytes at a position into a little-endian heap buffer
+	 */
+	private static ByteBuffer read(FileChannel channel, long position,
+			int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+		buffer.flip();
+		return buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static void checkLength(long needed, long size)
+			throws InvalidFileException {
+		if (needed > size) {
+			throw new InvalidFileException("Snapshot file is truncated.");
+		}
+	}
+
+	private static void checkSection(long length) throws IOException {
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Graph is too large for a snapshot");
+		}
+	}
+
+	/**
+	 * Buffered little-endian writer that tracks the file position
+	 */
+	private static class Output {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(
+				ByteOrder.LITTLE_ENDIAN);
+		private long position;
+
+		Output(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(4);
+			buffer.putInt(value);
+			position += 4;
+		}
+
+		void putDouble(double value) throws IOException {
+			ensure(8);
+			buffer.putDouble(value);
+			position += 8;
+		}
+
+		void bytes(byte[] bytes) throws IOException {
+			for (int i = 0; i < bytes.length;) {
+				ensure(1);
+				int n = Math.min(buffer.remaining(), bytes.length - i);
+				buffer.put(bytes, i, n);
+				i += n;
+				position += n;
+			}
+		}
+
+		/**
+		 * Pads with zeros up to the next multiple of 8 bytes
+		 */
+		void align() throws IOException {
+			while ((position & 7) != 0) {
+				ensure(1);
+				buffer.put((byte) 0);
+				position++;
+			}
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+}
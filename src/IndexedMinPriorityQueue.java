@@ -0,0 +1,92 @@
+
+/**
+ * A MinPriorityQueueADT over dense int vertex ids 0 to capacity() - 1 with
+ * primitive double priorities. Each vertex is queued at most once, so a
+ * shortest route search lowers the priority of a queued vertex with
+ * decreaseKey instead of inserting it again.
+ *
+ * The boxed insert(double, Integer) and removeMin() from MinPriorityQueueADT
+ * behave like insert(int, double) and removeMinVertex().
+ */
+public interface IndexedMinPriorityQueue extends MinPriorityQueueADT<Integer> {
+
+    /**
+     * Inserts a vertex that is not in the queue yet.
+     *
+     * @param vertex
+     *            vertex id, 0 <= vertex < capacity()
+     * @param priority
+     *            priority of the vertex
+     * @throws PriorityQueueFullException if the queue holds capacity() vertices
+     * @throws IllegalArgumentException if the vertex is out of range or
+     *             already queued
+     */
+    public void insert(int vertex, double priority) throws PriorityQueueFullException;
+
+    /**
+     * Lowers the priority of a queued vertex.
+     *
+     * @param vertex
+     *            queued vertex id
+     * @param priority
+     *            new priority, not larger than the current one
+     * @throws IllegalArgumentException if the vertex is not queued or the
+     *             priority would increase
+     */
+    public void decreaseKey(int vertex, double priority);
+
+    /**
+     * Removes the vertex with the smallest priority.
+     *
+     * @return the removed vertex id
+     * @throws PriorityQueueEmptyException if the queue is empty
+     */
+    public int removeMinVertex() throws PriorityQueueEmptyException;
+
+    /**
+     * Returns the vertex with the smallest priority without removing it.
+     *
+     * @return the vertex id that removeMinVertex would return
+     * @throws PriorityQueueEmptyException if the queue is empty
+     */
+    public int peekMinVertex() throws PriorityQueueEmptyException;
+
+    /**
+     * Checks if a vertex is in the queue.
+     *
+     * @param vertex
+     *            vertex id
+     * @return true if the vertex is queued
+     */
+    public boolean contains(int vertex);
+
+    /**
+     * Returns the priority of a queued vertex.
+     *
+     * @param vertex
+     *            queued vertex id
+     * @return current priority of the vertex
+     */
+    public double getPriority(int vertex);
+
+    /**
+     * Returns the number of queued vertices.
+     *
+     * @return queue size
+     */
+    public int size();
+
+    /**
+     * Returns the largest number of vertices the queue can hold; vertex ids
+     * must be smaller than this.
+     *
+     * @return queue capacity
+     */
+    public int capacity();
+
+    /**
+     * Removes all vertices. Runs in time proportional to size(), so the
+     * queue can be reused between searches without being reallocated.
+     */
+    public void clear();
+}
@@ -0,0 +1,117 @@
+/**
+ * Totals of the map files loaded by MapApp.createNavigationGraphFromMapFile
+ * while Metrics are enabled: files, lines, bytes, and the time spent
+ * parsing the text apart from the time spent building the graph.
+ *
+ * @see Metrics
+ */
+public final class IngestMetrics {
+
+	private long files;
+	private long lines;
+	private long bytes;
+	private long parseNanos;
+	private long buildNanos;
+
+	IngestMetrics() {
+	}
+
+	/**
+	 * Adds one loaded file
+	 *
+	 * @param lineCount
+	 *            lines of the file, header included
+	 * @param byteCount
+	 *            size of the file
+	 * @param parseTime
+	 *            nanoseconds spent reading and parsing
+	 * @param buildTime
+	 *            nanoseconds spent creating and adding Locations and Paths
+	 */
+	synchronized void record(long lineCount, long byteCount, long parseTime,
+			long buildTime) {
+		files++;
+		lines += lineCount;
+		bytes += byteCount;
+		parseNanos += parseTime;
+		buildNanos += buildTime;
+	}
+
+	/**
+	 * Number of loaded files
+	 *
+	 * @return file count
+	 */
+	public synchronized long getFileCount() {
+		return files;
+	}
+
+	/**
+	 * Lines of all loaded files
+	 *
+	 * @return line count
+	 */
+	public synchronized long getLineCount() {
+		return lines;
+	}
+
+	/**
+	 * Size of all loaded files
+	 *
+	 * @return bytes
+	 */
+	public synchronized long getByteCount() {
+		return bytes;
+	}
+
+	/**
+	 * Time spent reading and parsing the files
+	 *
+	 * @return nanoseconds
+	 */
+	public synchronized long getParseNanos() {
+		return parseNanos;
+	}
+
+	/**
+	 * Time spent building the graphs from the parsed lines
+	 *
+	 * @return nanoseconds
+	 */
+	public synchronized long getBuildNanos() {
+		return buildNanos;
+	}
+
+	/**
+	 * Lines loaded per second of parsing and building
+	 *
+	 * @return lines per second, 0 before the first file
+	 */
+	public synchronized double getLinesPerSecond() {
+		long nanos = parseNanos + buildNanos;
+		return nanos == 0 ? 0 : lines * 1e9 / nanos;
+	}
+
+	/**
+	 * Forgets every loaded file
+	 */
+	public synchronized void reset() {
+		files = 0;
+		lines = 0;
+		bytes = 0;
+		parseNanos = 0;
+		buildNanos = 0;
+	}
+
+	/**
+	 * Returns the totals, e.g. "ingest: files=1 lines=1000 bytes=20000
+	 * lines/s=500000 parse=1.5ms build=0.5ms"
+	 */
+	@Override
+	public synchronized String toString() {
+		return String.format("ingest: files=%d lines=%d bytes=%d "
+				+ "lines/s=%.0f parse=%.1fms build=%.1fms", files, lines,
+				bytes, getLinesPerSecond(), parseNanos / 1e6,
+				buildNanos / 1e6);
+	}
+}
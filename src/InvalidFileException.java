@@ -4,6 +4,12 @@
  */
 
 public class InvalidFileException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String reason;
+	private final long lineNumber;
+
 	/**
 	 * Constructs an InvalidFileException object with a message
 	 * 
@@ -12,5 +18,40 @@ public class InvalidFileException extends Exception {
 	 */
 	public InvalidFileException(String message) {
 		super(message);
+		this.reason = message;
+		this.lineNumber = -1;
+	}
+
+	/**
+	 * Constructs an InvalidFileException object for one line of the file.
+	 * The message is the reason prefixed with the line number.
+	 * 
+	 * @param reason
+	 *            what is wrong with the line
+	 * @param lineNumber
+	 *            number of the line, starting at 1
+	 */
+	public InvalidFileException(String reason, long lineNumber) {
+		super("Line " + lineNumber + ": " + reason);
+		this.reason = reason;
+		this.lineNumber = lineNumber;
+	}
+
+	/**
+	 * Getter method for the reason, the message without a line number
+	 * 
+	 * @return reason
+	 */
+	public String getReason() {
+		return reason;
+	}
+
+	/**
+	 * Getter method for the line number
+	 * 
+	 * @return number of the invalid line, -1 if not known
+	 */
+	public long getLineNumber() {
+		return lineNumber;
 	}
 }
@@ -0,0 +1,225 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable result of a budget-bounded search: the vertices that can be
+ * reached from one or more source Locations within a budget on one edge
+ * property, e.g. every Location within 15 minutes, with the length of the
+ * shortest route to each. Only the reached vertices are stored, in order
+ * of their distance, so the result is as small as the region it covers.
+ *
+ * Vertex ids are those of the CompactNavigationGraph the search ran on,
+ * which for a NavigationGraph is its compact copy at the time; the result
+ * stays valid when the graph changes later.
+ */
+public final class Isochrone {
+
+	private final CompactNavigationGraph graph;
+	private final int[] sources;
+	private final String edgePropertyName;
+	private final double budget;
+	//reached vertices in order of distance, their distance and the
+	//position in sources of the source their route starts at
+	private final int[] vertices;
+	private final double[] distances;
+	private final int[] origins;
+	//vertex id in the high and position in vertices in the low 32 bits,
+	//sorted for lookups by vertex id
+	private final long[] byVertex;
+
+	/**
+	 * Creates an isochrone from the arrays of a search
+	 *
+	 * @param graph
+	 *            graph the search ran on
+	 * @param sources
+	 *            ids of the source vertices
+	 * @param edgePropertyName
+	 *            edge property the budget is on
+	 * @param budget
+	 *            largest distance of a reached vertex
+	 * @param vertices
+	 *            reached vertex ids in order of distance
+	 * @param distances
+	 *            distance of each reached vertex
+	 * @param origins
+	 *            position in sources of the nearest source of each reached
+	 *            vertex
+	 */
+	Isochrone(CompactNavigationGraph graph, int[] sources,
+			String edgePropertyName, double budget, int[] vertices,
+			double[] distances, int[] origins) {
+		this.graph = graph;
+		this.sources = sources;
+		this.edgePropertyName = edgePropertyName;
+		this.budget = budget;
+		this.vertices = vertices;
+		this.distances = distances;
+		this.origins = origins;
+		this.byVertex = new long[vertices.length];
+		for (int i = 0; i < vertices.length; i++) {
+			byVertex[i] = (long) vertices[i] << 32 | i;
+		}
+		Arrays.sort(byVertex);
+	}
+
+	/**
+	 * Locations the routes start at
+	 *
+	 * @return source Locations in the order they were given
+	 */
+	public List<Location> getSources() {
+		return new Locations(sources);
+	}
+
+	/**
+	 * Edge property the budget is on
+	 *
+	 * @return edge property name
+	 */
+	public String getEdgePropertyName() {
+		return edgePropertyName;
+	}
+
+	/**
+	 * Largest distance of a reached vertex
+	 *
+	 * @return budget
+	 */
+	public double getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Number of reached vertices, the sources included
+	 *
+	 * @return reached vertex count
+	 */
+	public int size() {
+		return vertices.length;
+	}
+
+	/**
+	 * Id of a reached vertex
+	 *
+	 * @param i
+	 *            position in order of distance, from 0 to size() - 1
+	 * @return vertex id
+	 */
+	public int getVertex(int i) {
+		return vertices[i];
+	}
+
+	/**
+	 * Location of a reached vertex
+	 *
+	 * @param i
+	 *            position in order of distance, from 0 to size() - 1
+	 * @return reached Location
+	 */
+	public Location getLocation(int i) {
+		return graph.getLocation(vertices[i]);
+	}
+
+	/**
+	 * Length of the shortest route to a reached vertex
+	 *
+	 * @param i
+	 *            position in order of distance, from 0 to size() - 1
+	 * @return distance from the nearest source, at most the budget
+	 */
+	public double getDistanceAt(int i) {
+		return distances[i];
+	}
+
+	/**
+	 * Source the shortest route to a reached vertex starts at
+	 *
+	 * @param i
+	 *            position in order of distance, from 0 to size() - 1
+	 * @return nearest source Location
+	 */
+	public Location getNearestSource(int i) {
+		return graph.getLocation(sources[origins[i]]);
+	}
+
+	/**
+	 * Reached Locations
+	 *
+	 * @return unmodifiable list in order of distance
+	 */
+	public List<Location> getLocations() {
+		return new Locations(vertices);
+	}
+
+	/**
+	 * Checks if a Location is within the budget
+	 *
+	 * @param location
+	 *            Location in the graph
+	 * @return true if it was reached
+	 * @throws IllegalArgumentException
+	 *             if location is not in the graph
+	 */
+	public boolean contains(Location location) {
+		return position(location) >= 0;
+	}
+
+	/**
+	 * Length of the shortest route to a Location
+	 *
+	 * @param location
+	 *            Location in the graph
+	 * @return distance from the nearest source, infinity if it is beyond
+	 *         the budget
+	 * @throws IllegalArgumentException
+	 *             if location is not in the graph
+	 */
+	public double getDistance(Location location) {
+		int i = position(location);
+		return i < 0 ? Double.POSITIVE_INFINITY : distances[i];
+	}
+
+	/**
+	 * Position of a Location in order of distance, -1 if not reached
+	 */
+	private int position(Location location) {
+		int v = location == null ? -1 : graph.getIndex(location);
+		if (v < 0) {
+			throw new IllegalArgumentException("Location: " + location);
+		}
+		int i = Arrays.binarySearch(byVertex, (long) v << 32);
+		if (i < 0) {
+			i = -i - 1;//where an entry of v would be
+		}
+		if (i < byVertex.length && (int) (byVertex[i] >>> 32) == v) {
+			return (int) byVertex[i];
+		}
+		return -1;
+	}
+
+	/**
+	 * Locations of a list of vertex ids
+	 */
+	private final class Locations extends AbstractList<Location>
+			implements RandomAccess {
+
+		private final int[] ids;
+
+		Locations(int[] ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		public Location get(int i) {
+			return graph.getLocation(ids[i]);
+		}
+
+		@Override
+		public int size() {
+			return ids.length;
+		}
+	}
+}
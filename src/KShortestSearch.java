@@ -0,0 +1,498 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Reusable search for the k shortest loopless routes between two vertices
+ * of a CompactNavigationGraph with Yen's algorithm. Each accepted route is
+ * taken apart at every vertex, the spur node: the next route may follow it
+ * up to the spur node, the root, and must then leave it over an edge that
+ * no accepted route with the same root takes, without returning to a
+ * vertex of the root. The cheapest spur route of each spur node joins the
+ * candidates, and the cheapest candidate is the next route. As in Lawler's
+ * variant, only the spur nodes at or after the one a route was found at
+ * are searched again.
+ *
+ * One backward Dijkstra search from dest over incoming edges gives the
+ * distance to dest of every vertex and the shortest route from src. Bans
+ * only lengthen routes, so the distances are exact A* estimates for the
+ * spur searches; where the tree route from a spur node avoids the bans it
+ * is the spur route without searching. The spur searches of one route run
+ * in parallel, each worker with its own scratch space and with the banned
+ * vertices and edges as bitsets that are set and cleared per spur node.
+ *
+ * A search must only be used by one thread at a time.
+ */
+final class KShortestSearch {
+
+	private final CompactNavigationGraph graph;
+	private final PriorityQueueType queueType;
+	//distance of each vertex to dest and first edge of its shortest
+	//route there, -1 at dest and where dest cannot be reached
+	private final double[] toDest;
+	private final int[] nextEdge;
+	private final IndexedMinPriorityQueue queue;
+	//scratch space of each worker, created on demand
+	private Spur[] spurs = new Spur[0];
+	//vertices settled, edges relaxed and queue pushes of the last run
+	private int settled;
+	private int relaxed;
+	private int pushes;
+
+	/**
+	 * Creates the scratch space for searches on a graph
+	 *
+	 * @param graph
+	 *            graph to be searched
+	 * @param queueType
+	 *            kind of priority queue to search with
+	 */
+	KShortestSearch(CompactNavigationGraph graph,
+			PriorityQueueType queueType) {
+		int n = graph.getVertexCount();
+		this.graph = graph;
+		this.queueType = queueType;
+		this.toDest = new double[n];
+		this.nextEdge = new int[n];
+		this.queue = queueType.create(n);
+	}
+
+	/**
+	 * Searches for the k shortest loopless routes from src to dest
+	 *
+	 * @param src
+	 *            id of the source vertex
+	 * @param dest
+	 *            id of the destination vertex, not src
+	 * @param property
+	 *            index of the edge property to minimize
+	 * @param k
+	 *            largest number of routes, at least 1
+	 * @param pool
+	 *            pool the spur searches run on
+	 * @return edge ids of each route ordered from dest back to src, the
+	 *         routes shortest first; fewer than k if there are no more
+	 */
+	int[][] run(int src, int dest, int property, int k, ForkJoinPool pool) {
+		long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+		settled = 0;
+		relaxed = 0;
+		pushes = 0;
+		graph.buildReverse();
+		backward(dest, property);
+		List<Route> accepted = new ArrayList<Route>();
+		if (nextEdge[src] >= 0) {
+			accepted.add(new Route(treeRoute(src, new int[0], 0),
+					toDest[src], 0));
+		}
+		PriorityQueue<Route> candidates = new PriorityQueue<Route>(11,
+				new Comparator<Route>() {
+					public int compare(Route a, Route b) {
+						int c = Double.compare(a.cost, b.cost);
+						return c != 0 ? c : a.edges.length - b.edges.length;
+					}
+				});
+		Set<Route> seen = new HashSet<Route>(accepted);
+		while (!accepted.isEmpty() && accepted.size() < k) {
+			for (Route route : spurRoutes(accepted, dest, property, pool)) {
+				if (route != null && seen.add(route)) {
+					candidates.add(route);
+				}
+			}
+			if (candidates.isEmpty()) {
+				break;
+			}
+			accepted.add(candidates.poll());
+		}
+		int[][] routes = new int[accepted.size()][];
+		for (int i = 0; i < routes.length; i++) {
+			int[] edges = accepted.get(i).edges;
+			int[] route = new int[edges.length];
+			for (int j = 0; j < edges.length; j++) {
+				route[j] = edges[edges.length - 1 - j];
+			}
+			routes[i] = route;
+		}
+		if (start != 0) {
+			Metrics.KSHORTEST.record(settled, relaxed, pushes, settled,
+					System.nanoTime() - start);
+		}
+		return routes;
+	}
+
+	/**
+	 * Number of vertices the last run settled, in the backward search and
+	 * every spur search together
+	 *
+	 * @return settled vertex count
+	 */
+	int getSettledCount() {
+		return settled;
+	}
+
+	/**
+	 * Searches the spur nodes of the last accepted route in parallel
+	 *
+	 * @return the spur route of each spur node, null where there is none
+	 */
+	private Route[] spurRoutes(final List<Route> accepted, final int dest,
+			final int property, ForkJoinPool pool) {
+		final Route last = accepted.get(accepted.size() - 1);
+		final int[] edges = last.edges;
+		final int from = last.deviation;
+		final Route[] found = new Route[edges.length];
+		//edges banned at each spur node: the next edge of every accepted
+		//route with the same root
+		final int[][] banned = new int[edges.length][];
+		int[] count = new int[edges.length];
+		for (Route route : accepted) {
+			int common = 0;
+			while (common < route.edges.length && common < edges.length
+					&& route.edges[common] == edges[common]) {
+				common++;
+			}
+			for (int i = from; i <= common && i < route.edges.length
+					&& i < edges.length; i++) {
+				if (banned[i] == null) {
+					banned[i] = new int[accepted.size()];
+				}
+				banned[i][count[i]++] = route.edges[i];
+			}
+		}
+		for (int i = from; i < edges.length; i++) {
+			banned[i] = Arrays.copyOf(banned[i], count[i]);
+		}
+		final double[] rootCost = new double[edges.length];
+		for (int i = 1; i < edges.length; i++) {
+			rootCost[i] = rootCost[i - 1]
+					+ graph.edgeWeight(property, edges[i - 1]);
+		}
+		final int tasks = Math.max(1, Math.min(edges.length - from,
+				pool.getParallelism()));
+		if (spurs.length < tasks) {
+			spurs = Arrays.copyOf(spurs, tasks);
+		}
+		List<Callable<Void>> calls = new ArrayList<Callable<Void>>(tasks);
+		for (int t = 0; t < tasks; t++) {
+			final int first = from + t;
+			if (spurs[t] == null) {
+				spurs[t] = new Spur(graph, queueType);
+			}
+			final Spur spur = spurs[t];
+			calls.add(new Callable<Void>() {
+				public Void call() {
+					//spur nodes first, first + tasks, ... so that the
+					//banned root only grows
+					int rooted = 0;
+					for (int i = first; i < edges.length; i += tasks) {
+						for (; rooted < i; rooted++) {
+							spur.banVertex(graph.getEdgeSource(
+									edges[rooted]));
+						}
+						found[i] = spur(spur, edges, i, rootCost[i],
+								banned[i], dest, property);
+					}
+					spur.clearVertices();
+					return null;
+				}
+			});
+		}
+		for (Future<Void> future : pool.invokeAll(calls)) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+		for (int t = 0; t < tasks; t++) {
+			settled += spurs[t].settled;
+			relaxed += spurs[t].relaxed;
+			pushes += spurs[t].pushes;
+			spurs[t].settled = 0;
+			spurs[t].relaxed = 0;
+			spurs[t].pushes = 0;
+		}
+		return found;
+	}
+
+	/**
+	 * Finds the spur route at position i of a route, with its root
+	 * vertices already banned
+	 *
+	 * @return root plus spur route, or null if dest cannot be reached
+	 */
+	private Route spur(Spur spur, int[] edges, int i, double rootCost,
+			int[] bannedEdges, int dest, int property) {
+		int v = i == 0 ? graph.getEdgeSource(edges[0])
+				: graph.edgeTarget(edges[i - 1]);
+		if (nextEdge[v] < 0) {
+			return null;
+		}
+		int[] root = Arrays.copyOf(edges, i);
+		for (int e : bannedEdges) {
+			spur.banEdge(e);
+		}
+		double cost;
+		int[] route;
+		if (spur.avoids(v, nextEdge)) {
+			cost = rootCost + toDest[v];
+			route = treeRoute(v, root, i);
+		} else {
+			cost = rootCost + spur.search(v, dest, property, toDest);
+			route = cost < Double.POSITIVE_INFINITY ? spur.route(v, dest,
+					root) : null;
+		}
+		for (int e : bannedEdges) {
+			spur.clearEdge(e);
+		}
+		return route == null ? null : new Route(route, cost, i);
+	}
+
+	/**
+	 * Appends the tree route from v to dest to a root
+	 */
+	private int[] treeRoute(int v, int[] root, int rootLength) {
+		int length = rootLength;
+		for (int u = v; nextEdge[u] >= 0; u = graph.edgeTarget(nextEdge[u])) {
+			length++;
+		}
+		int[] route = Arrays.copyOf(root, length);
+		for (int u = v, i = rootLength; i < length; i++) {
+			route[i] = nextEdge[u];
+			u = graph.edgeTarget(route[i]);
+		}
+		return route;
+	}
+
+	/**
+	 * Dijkstra's algorithm from dest over incoming edges, filling toDest
+	 * and nextEdge for every vertex
+	 */
+	private void backward(int dest, int property) {
+		Arrays.fill(toDest, Double.POSITIVE_INFINITY);
+		Arrays.fill(nextEdge, -1);
+		queue.clear();
+		toDest[dest] = 0;
+		pushes++;
+		try {
+			queue.insert(dest, 0);
+			while (!queue.isEmpty()) {
+				int v = queue.removeMinVertex();
+				settled++;
+				double d = toDest[v];
+				int end = graph.inEdgesEnd(v);
+				relaxed += end - graph.inEdgesBegin(v);
+				for (int j = graph.inEdgesBegin(v); j < end; j++) {
+					int u = graph.inEdgeSource(j);
+					int e = graph.inEdge(j);
+					double w = d + graph.edgeWeight(property, e);
+					if (toDest[u] == Double.POSITIVE_INFINITY && u != dest) {
+						toDest[u] = w;
+						nextEdge[u] = e;
+						queue.insert(u, w);
+						pushes++;
+					} else if (w < toDest[u] && queue.contains(u)) {
+						toDest[u] = w;
+						nextEdge[u] = e;
+						queue.decreaseKey(u, w);
+						pushes++;
+					}
+				}
+			}
+		} catch (PriorityQueueEmptyException e) {
+			throw new IllegalStateException(e);
+		} catch (PriorityQueueFullException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Route from src to dest as edge ids in driving order, its length and
+	 * the position of its spur node
+	 */
+	private static final class Route {
+
+		final int[] edges;
+		final double cost;
+		final int deviation;
+
+		Route(int[] edges, double cost, int deviation) {
+			this.edges = edges;
+			this.cost = cost;
+			this.deviation = deviation;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Route && Arrays.equals(edges,
+					((Route) o).edges);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(edges);
+		}
+	}
+
+	/**
+	 * Scratch space of one worker: A* labels invalidated by a generation
+	 * counter, and bitsets of the banned vertices and edges
+	 */
+	private static final class Spur {
+
+		private final CompactNavigationGraph graph;
+		private final double[] distance;
+		private final int[] predEdge;
+		private final int[] stamp;
+		private final IndexedMinPriorityQueue queue;
+		private final long[] bannedVertices;
+		private final long[] bannedEdges;
+		//vertices banned since the last clearVertices
+		private int[] bannedList = new int[16];
+		private int bannedCount;
+		private int generation;
+		private int settled;
+		private int relaxed;
+		private int pushes;
+
+		Spur(CompactNavigationGraph graph, PriorityQueueType queueType) {
+			int n = graph.getVertexCount();
+			this.graph = graph;
+			this.distance = new double[n];
+			this.predEdge = new int[n];
+			this.stamp = new int[n];
+			this.queue = queueType.create(n);
+			this.bannedVertices = new long[(n + 63) >>> 6];
+			this.bannedEdges = new long[(graph.getEdgeCount() + 63) >>> 6];
+		}
+
+		void banVertex(int v) {
+			bannedVertices[v >>> 6] |= 1L << v;
+			if (bannedCount == bannedList.length) {
+				bannedList = Arrays.copyOf(bannedList, 2 * bannedCount);
+			}
+			bannedList[bannedCount++] = v;
+		}
+
+		void clearVertices() {
+			for (int i = 0; i < bannedCount; i++) {
+				bannedVertices[bannedList[i] >>> 6] = 0;
+			}
+			bannedCount = 0;
+		}
+
+		void banEdge(int e) {
+			bannedEdges[e >>> 6] |= 1L << e;
+		}
+
+		void clearEdge(int e) {
+			bannedEdges[e >>> 6] &= ~(1L << e);
+		}
+
+		private boolean isBanned(int v, int e) {
+			return (bannedVertices[v >>> 6] & 1L << v) != 0
+					|| (bannedEdges[e >>> 6] & 1L << e) != 0;
+		}
+
+		/**
+		 * Checks if the tree route from v avoids every ban
+		 */
+		boolean avoids(int v, int[] nextEdge) {
+			for (int e = nextEdge[v]; e >= 0; e = nextEdge[v]) {
+				v = graph.edgeTarget(e);
+				if (isBanned(v, e)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * A* from v to dest around the bans, guided by the exact distances
+		 * to dest without them
+		 *
+		 * @return length of the spur route, infinity if there is none
+		 */
+		double search(int v, int dest, int property, double[] toDest) {
+			generation++;
+			if (generation == Integer.MAX_VALUE) {
+				Arrays.fill(stamp, 0);
+				generation = 1;
+			}
+			queue.clear();
+			stamp[v] = generation;
+			distance[v] = 0;
+			predEdge[v] = -1;
+			pushes++;
+			try {
+				queue.insert(v, toDest[v]);
+				while (!queue.isEmpty()) {
+					int w = queue.removeMinVertex();
+					settled++;
+					if (w == dest) {
+						return distance[w];
+					}
+					double base = distance[w];
+					int end = graph.edgesEnd(w);
+					relaxed += end - graph.edgesBegin(w);
+					for (int e = graph.edgesBegin(w); e < end; e++) {
+						int t = graph.edgeTarget(e);
+						if (toDest[t] == Double.POSITIVE_INFINITY
+								|| isBanned(t, e)) {
+							continue;
+						}
+						double d = base + graph.edgeWeight(property, e);
+						if (stamp[t] != generation) {
+							stamp[t] = generation;
+							distance[t] = d;
+							predEdge[t] = e;
+							queue.insert(t, d + toDest[t]);
+							pushes++;
+						} else if (d < distance[t] && queue.contains(t)) {
+							distance[t] = d;
+							predEdge[t] = e;
+							queue.decreaseKey(t, d + toDest[t]);
+							pushes++;
+						}
+					}
+				}
+			} catch (PriorityQueueEmptyException e) {
+				throw new IllegalStateException(e);
+			} catch (PriorityQueueFullException e) {
+				throw new IllegalStateException(e);
+			}
+			return Double.POSITIVE_INFINITY;
+		}
+
+		/**
+		 * Appends the route of the last search from v to dest to a root
+		 */
+		int[] route(int v, int dest, int[] root) {
+			int length = root.length;
+			for (int u = dest; u != v; length++) {
+				u = graph.getEdgeSource(predEdge[u]);
+			}
+			int[] route = Arrays.copyOf(root, length);
+			for (int u = dest, i = length - 1; u != v; i--) {
+				route[i] = predEdge[u];
+				u = graph.getEdgeSource(route[i]);
+			}
+			return route;
+		}
+	}
+}
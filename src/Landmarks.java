@@ -0,0 +1,727 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Landmark distance tables for ALT (A*, Landmarks, Triangle inequality)
+ * searches, which need no coordinates. For a few landmark vertices L the
+ * shortest route lengths from L to every vertex and from every vertex to L
+ * are precomputed for each edge property. By the triangle inequality
+ *
+ *     d(v, t) >= d(L, t) - d(L, v)   and   d(v, t) >= d(v, L) - d(t, L)
+ *
+ * so the largest of these differences over all landmarks is a lower bound
+ * that getHeuristic turns into a RouteHeuristic for the A* variant of
+ * getShortestRoute.
+ *
+ * Landmarks are chosen one at a time on the first edge property, either
+ * farthest from the ones already chosen or by the avoid rule, which looks
+ * for the part of a shortest path tree whose distances the current
+ * landmarks bound worst. The tables of the other properties and
+ * directions are computed in parallel afterwards, one landmark per task.
+ *
+ * Distances are stored as floats rounded down, vertex after vertex, so the
+ * bounds of one vertex lie next to each other. Landmarks are bound to the
+ * graph they were computed for; write and read store them in a file, by
+ * convention pathFor the map file. Edge values must not be negative.
+ *
+ * Higher edge values keep the bounds valid, lower ones or new edges do
+ * not. A NavigationGraph the landmarks are attached to marks the changed
+ * properties stale, and the heuristic of a stale property estimates 0.
+ */
+public final class Landmarks {
+
+	/**
+	 * Rule by which landmarks are chosen
+	 */
+	public enum Selection {
+		/**
+		 * Each landmark is the vertex farthest from the closest landmark
+		 * chosen so far
+		 */
+		FARTHEST,
+		/**
+		 * Each landmark is a leaf of the shortest path tree of a random
+		 * root, below the vertices whose distance from the root the chosen
+		 * landmarks bound worst
+		 */
+		AVOID
+	}
+
+	private static final byte[] MAGIC = { 'M', 'A', 'P', 'L', 'M', 'K', '0',
+			'1' };
+	//file name suffix of the tables stored next to a map file
+	private static final String SUFFIX = ".landmarks";
+	//seed of the random roots used to choose landmarks
+	private static final long SEED = 42;
+
+	private final CompactNavigationGraph graph;
+	//vertex ids of the landmarks
+	private final int[] landmarks;
+	//per edge property: forward[p][v * count + i] is the distance from
+	//landmark i to v, reverse[p][v * count + i] the one from v to it
+	private final float[][] forward;
+	private final float[][] reverse;
+	//per edge property, whether the tables may be above some route length
+	//since a value went down or an edge was added; replaced, not written
+	private volatile boolean[] stale;
+
+	private Landmarks(CompactNavigationGraph graph, int[] landmarks,
+			float[][] forward, float[][] reverse) {
+		this.graph = graph;
+		this.landmarks = landmarks;
+		this.forward = forward;
+		this.reverse = reverse;
+		this.stale = new boolean[forward.length];
+	}
+
+	/**
+	 * Chooses landmarks and computes their tables on the common fork-join
+	 * pool
+	 *
+	 * @param graph
+	 *            graph to be searched with the landmarks
+	 * @param count
+	 *            number of landmarks, at most the number of vertices
+	 * @param selection
+	 *            rule by which landmarks are chosen
+	 * @return new landmark tables
+	 * @throws IllegalArgumentException
+	 *             if count is not positive or an edge value is negative
+	 */
+	public static Landmarks build(CompactNavigationGraph graph, int count,
+			Selection selection) {
+		return build(graph, count, selection, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Chooses landmarks and computes their tables on the given pool
+	 *
+	 * @param graph
+	 *            graph to be searched with the landmarks
+	 * @param count
+	 *            number of landmarks, at most the number of vertices
+	 * @param selection
+	 *            rule by which landmarks are chosen
+	 * @param pool
+	 *            pool the table searches run on
+	 * @return new landmark tables
+	 * @throws IllegalArgumentException
+	 *             if count is not positive or an edge value is negative
+	 */
+	public static Landmarks build(CompactNavigationGraph graph, int count,
+			Selection selection, ForkJoinPool pool) {
+		if (graph == null || selection == null || pool == null || count <= 0) {
+			throw new IllegalArgumentException();
+		}
+		int n = graph.getVertexCount();
+		int properties = graph.getEdgePropertyNames().length;
+		for (int p = 0; p < properties; p++) {
+			for (int e = 0; e < graph.getEdgeCount(); e++) {
+				if (graph.edgeWeight(p, e) < 0) {
+					throw new IllegalArgumentException("Negative edge: "
+							+ graph.getLocation(graph.getEdgeSource(e))
+							+ " -> " + graph.getLocation(graph.edgeTarget(e)));
+				}
+			}
+		}
+		count = Math.min(count, n);
+		float[][] forward = new float[properties][];
+		float[][] reverse = new float[properties][];
+		for (int p = 0; p < properties; p++) {
+			forward[p] = new float[n * count];
+			reverse[p] = new float[n * count];
+		}
+		Builder builder = new Builder(graph, count, forward, reverse);
+		int[] landmarks = selection == Selection.FARTHEST
+				? builder.chooseFarthest() : builder.chooseAvoid();
+		builder.fill(landmarks, pool);
+		return new Landmarks(graph, landmarks, forward, reverse);
+	}
+
+	/**
+	 * Graph the landmarks were computed for
+	 *
+	 * @return searched graph
+	 */
+	public CompactNavigationGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Number of landmarks
+	 *
+	 * @return landmark count
+	 */
+	public int getCount() {
+		return landmarks.length;
+	}
+
+	/**
+	 * Returns a landmark
+	 *
+	 * @param i
+	 *            index of the landmark, below getCount()
+	 * @return the landmark Location
+	 */
+	public Location getLandmark(int i) {
+		return graph.getLocation(landmarks[i]);
+	}
+
+	/**
+	 * Returns the triangle inequality bounds for an edge property as a
+	 * RouteHeuristic. Vertex ids are those of the graph, so the heuristic
+	 * also works for a NavigationGraph the graph was copied from.
+	 *
+	 * @param edgePropertyName
+	 *            edge property the routes are searched on
+	 * @return lower bounds on the route lengths
+	 * @throws IllegalArgumentException
+	 *             if the property does not exist
+	 */
+	public RouteHeuristic getHeuristic(String edgePropertyName) {
+		int p = graph.getPropertyIndex(edgePropertyName);
+		if (p < 0) {
+			throw new IllegalArgumentException("Edge: " + edgePropertyName);
+		}
+		final int property = p;
+		final float[] from = forward[p];
+		final float[] to = reverse[p];
+		final int count = landmarks.length;
+		return new RouteHeuristic() {
+			public double estimate(int vertex, int dest) {
+				if (stale[property]) {
+					return 0;//no bound is safe, search like Dijkstra
+				}
+				int v = vertex * count;
+				int t = dest * count;
+				double best = 0;
+				for (int i = 0; i < count; i++) {
+					//the subtracted distance is rounded up again, so the
+					//rounding never raises a bound. Unreachable landmarks
+					//give no bound.
+					float lt = from[t + i];
+					float lv = from[v + i];
+					if (lt != Float.POSITIVE_INFINITY
+							&& lv != Float.POSITIVE_INFINITY) {
+						best = Math.max(best, (double) lt - Math.nextUp(lv));
+					}
+					float vl = to[v + i];
+					float tl = to[t + i];
+					if (vl != Float.POSITIVE_INFINITY
+							&& tl != Float.POSITIVE_INFINITY) {
+						best = Math.max(best, (double) vl - Math.nextUp(tl));
+					}
+				}
+				return best;
+			}
+		};
+	}
+
+	/**
+	 * Checks if the bounds for an edge property may be too high, because a
+	 * value went down or an edge was added since they were computed
+	 *
+	 * @param edgePropertyName
+	 *            edge property name
+	 * @return true if the heuristic of the property estimates 0
+	 * @throws IllegalArgumentException
+	 *             if the property does not exist
+	 */
+	public boolean isStale(String edgePropertyName) {
+		int p = graph.getPropertyIndex(edgePropertyName);
+		if (p < 0) {
+			throw new IllegalArgumentException("Edge: " + edgePropertyName);
+		}
+		return stale[p];
+	}
+
+	/**
+	 * Marks the bounds for an edge property stale
+	 *
+	 * @param p
+	 *            edge property index
+	 */
+	synchronized void invalidate(int p) {
+		if (!stale[p]) {
+			boolean[] marked = stale.clone();
+			marked[p] = true;
+			stale = marked;
+		}
+	}
+
+	/**
+	 * Marks the bounds for every edge property stale
+	 */
+	synchronized void invalidate() {
+		boolean[] marked = new boolean[stale.length];
+		Arrays.fill(marked, true);
+		stale = marked;
+	}
+
+	/**
+	 * Path of the landmark file stored next to a map file
+	 *
+	 * @param mapFilepath
+	 *            path to the map or snapshot file
+	 * @return path of the landmark file
+	 */
+	public static String pathFor(String mapFilepath) {
+		return mapFilepath + SUFFIX;
+	}
+
+	/**
+	 * Writes the landmarks and their tables to a file
+	 *
+	 * @param path
+	 *            file to write, replaced if it exists
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public void write(String path) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(path), 1 << 16));
+		try {
+			out.write(MAGIC);
+			out.writeInt(graph.getVertexCount());
+			out.writeInt(graph.getEdgeCount());
+			String[] names = graph.getEdgePropertyNames();
+			out.writeInt(names.length);
+			for (String name : names) {
+				out.writeUTF(name);
+			}
+			out.writeInt(landmarks.length);
+			for (int landmark : landmarks) {
+				out.writeInt(landmark);
+			}
+			for (int p = 0; p < names.length; p++) {
+				for (float d : forward[p]) {
+					out.writeFloat(d);
+				}
+				for (float d : reverse[p]) {
+					out.writeFloat(d);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads landmarks written by write
+	 *
+	 * @param path
+	 *            file to read
+	 * @param graph
+	 *            graph the landmarks were computed for
+	 * @return landmarks bound to graph
+	 * @throws FileNotFoundException
+	 *             if path is not found
+	 * @throws InvalidFileException
+	 *             if the file holds no landmarks or was written for a graph
+	 *             with other vertex or edge counts or properties
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static Landmarks read(String path, CompactNavigationGraph graph)
+			throws FileNotFoundException, InvalidFileException, IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(path), 1 << 16));
+		try {
+			byte[] magic = new byte[MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, MAGIC)) {
+				throw new InvalidFileException("Invalid landmark file.");
+			}
+			int n = in.readInt();
+			int m = in.readInt();
+			String[] names = new String[in.readInt()];
+			for (int p = 0; p < names.length; p++) {
+				names[p] = in.readUTF();
+			}
+			if (n != graph.getVertexCount() || m != graph.getEdgeCount()
+					|| !Arrays.equals(names, graph.getEdgePropertyNames())) {
+				throw new InvalidFileException("Landmarks do not match "
+						+ "the graph.");
+			}
+			int count = in.readInt();
+			if (count <= 0 || count > n) {
+				throw new InvalidFileException("Invalid landmark file.");
+			}
+			int[] landmarks = new int[count];
+			for (int i = 0; i < count; i++) {
+				landmarks[i] = in.readInt();
+				if (landmarks[i] < 0 || landmarks[i] >= n) {
+					throw new InvalidFileException("Invalid landmark file.");
+				}
+			}
+			float[][] forward = new float[names.length][];
+			float[][] reverse = new float[names.length][];
+			for (int p = 0; p < names.length; p++) {
+				forward[p] = readFloats(in, n * count);
+				reverse[p] = readFloats(in, n * count);
+			}
+			return new Landmarks(graph, landmarks, forward, reverse);
+		} catch (EOFException e) {
+			throw new InvalidFileException("Landmark file is truncated.");
+		} finally {
+			in.close();
+		}
+	}
+
+	private static float[] readFloats(DataInputStream in, int length)
+			throws IOException {
+		float[] values = new float[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = in.readFloat();
+		}
+		return values;
+	}
+
+	/**
+	 * Largest float not above a distance, or infinity if unreachable
+	 */
+	private static float roundDown(double d) {
+		float f = (float) d;
+		return f > d ? Math.nextDown(f) : f;
+	}
+
+	/**
+	 * Chooses the landmarks and fills the tables
+	 */
+	private static final class Builder {
+
+		private final CompactNavigationGraph graph;
+		private final int count;
+		private final int n;
+		private final float[][] forward;
+		private final float[][] reverse;
+		private final Random random = new Random(SEED);
+		//search state of each pool thread
+		private final ThreadLocal<Sweep> sweeps = new ThreadLocal<Sweep>();
+
+		Builder(CompactNavigationGraph graph, int count, float[][] forward,
+				float[][] reverse) {
+			this.graph = graph;
+			this.count = count;
+			this.n = graph.getVertexCount();
+			this.forward = forward;
+			this.reverse = reverse;
+		}
+
+		/**
+		 * Farthest selection: starting from a random root, each landmark is
+		 * the reachable vertex whose distance from the closest landmark
+		 * chosen so far is largest
+		 */
+		int[] chooseFarthest() {
+			int[] landmarks = new int[count];
+			Sweep sweep = getSweep();
+			//distance from the closest landmark, or the root at first
+			double[] closest = new double[n];
+			sweep.run(random.nextInt(n), 0, false);
+			for (int v = 0; v < n; v++) {
+				closest[v] = sweep.distance(v);
+			}
+			for (int i = 0; i < count; i++) {
+				int next = -1;
+				for (int v = 0; v < n; v++) {
+					if (closest[v] != Double.POSITIVE_INFINITY && (next < 0
+							|| closest[v] > closest[next])) {
+						next = v;
+					}
+				}
+				if (next < 0 || closest[next] == 0) {
+					//everything reachable is a landmark: start elsewhere
+					next = unchosen(landmarks, i);
+				}
+				landmarks[i] = next;
+				sweep.run(next, 0, false);
+				store(sweep, forward[0], i);
+				for (int v = 0; v < n; v++) {
+					double d = sweep.distance(v);
+					if (i == 0 || d < closest[v]
+							|| closest[v] == Double.POSITIVE_INFINITY) {
+						closest[v] = d;
+					}
+				}
+				closest[next] = 0;
+			}
+			return landmarks;
+		}
+
+		/**
+		 * Avoid selection: in the shortest path tree of a random root each
+		 * vertex weighs its distance from the root minus the lower bound
+		 * of the landmarks so far. Starting at the root, the walk goes to
+		 * the heaviest subtree without a landmark until it reaches a leaf,
+		 * which becomes the next landmark.
+		 */
+		int[] chooseAvoid() {
+			int[] landmarks = new int[count];
+			Sweep sweep = getSweep();
+			boolean[] isLandmark = new boolean[n];
+			double[] size = new double[n];
+			for (int i = 0; i < count; i++) {
+				int root = random.nextInt(n);
+				sweep.run(root, 0, false);
+				//subtree sizes, children before parents
+				for (int k = sweep.settled - 1; k >= 0; k--) {
+					int v = sweep.order[k];
+					size[v] = 0;
+				}
+				for (int k = sweep.settled - 1; k >= 0; k--) {
+					int v = sweep.order[k];
+					if (size[v] < 0 || isLandmark[v]) {
+						size[v] = -1;//the subtree holds a landmark
+					} else {
+						size[v] += sweep.distance(v) - bound(root, v, i);
+					}
+					int parent = sweep.parent[v];
+					if (parent >= 0) {
+						if (size[v] < 0) {
+							size[parent] = -1;
+						} else if (size[parent] >= 0) {
+							size[parent] += size[v];
+						}
+					}
+				}
+				int next = descend(sweep, root, size);
+				if (next < 0 || isLandmark[next]) {
+					next = unchosen(landmarks, i);
+				}
+				landmarks[i] = next;
+				isLandmark[next] = true;
+				sweep.run(next, 0, false);
+				store(sweep, forward[0], i);
+			}
+			return landmarks;
+		}
+
+		/**
+		 * Walks from the root into the heaviest subtree until a leaf
+		 *
+		 * @return the leaf, or -1 if every subtree holds a landmark
+		 */
+		private int descend(Sweep sweep, int root, double[] size) {
+			if (size[root] < 0) {
+				return -1;
+			}
+			//children of every tree vertex, grouped by parent
+			int[] childOffsets = new int[n + 1];
+			for (int k = 0; k < sweep.settled; k++) {
+				int parent = sweep.parent[sweep.order[k]];
+				if (parent >= 0) {
+					childOffsets[parent + 1]++;
+				}
+			}
+			for (int v = 0; v < n; v++) {
+				childOffsets[v + 1] += childOffsets[v];
+			}
+			int[] children = new int[childOffsets[n]];
+			int[] fill = Arrays.copyOf(childOffsets, n);
+			for (int k = 0; k < sweep.settled; k++) {
+				int v = sweep.order[k];
+				if (sweep.parent[v] >= 0) {
+					children[fill[sweep.parent[v]]++] = v;
+				}
+			}
+			int v = root;
+			while (true) {
+				int best = -1;
+				for (int k = childOffsets[v]; k < childOffsets[v + 1]; k++) {
+					int child = children[k];
+					if (size[child] >= 0
+							&& (best < 0 || size[child] > size[best])) {
+						best = child;
+					}
+				}
+				if (best < 0) {
+					return v;
+				}
+				v = best;
+			}
+		}
+
+		/**
+		 * Lower bound on d(root, v) from the forward tables of the first
+		 * chosen landmarks
+		 */
+		private double bound(int root, int v, int chosen) {
+			float[] table = forward[0];
+			double best = 0;
+			for (int i = 0; i < chosen; i++) {
+				float lv = table[v * count + i];
+				float lr = table[root * count + i];
+				if (lv != Float.POSITIVE_INFINITY
+						&& lr != Float.POSITIVE_INFINITY) {
+					best = Math.max(best, (double) lv - Math.nextUp(lr));
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Some vertex that is no landmark yet, used when a rule finds none
+		 */
+		private int unchosen(int[] landmarks, int chosen) {
+			while (true) {
+				int v = random.nextInt(n);
+				boolean taken = false;
+				for (int i = 0; i < chosen; i++) {
+					taken |= landmarks[i] == v;
+				}
+				if (!taken) {
+					return v;
+				}
+			}
+		}
+
+		/**
+		 * Computes the remaining tables in parallel, one task per landmark
+		 * covering every edge property and direction
+		 */
+		void fill(final int[] landmarks, ForkJoinPool pool) {
+			List<Callable<Void>> calls = new ArrayList<Callable<Void>>(count);
+			for (int i = 0; i < count; i++) {
+				final int index = i;
+				calls.add(new Callable<Void>() {
+					public Void call() {
+						Sweep sweep = getSweep();
+						for (int p = 0; p < forward.length; p++) {
+							if (p > 0) {
+								sweep.run(landmarks[index], p, false);
+								store(sweep, forward[p], index);
+							}
+							sweep.run(landmarks[index], p, true);
+							store(sweep, reverse[p], index);
+						}
+						return null;
+					}
+				});
+			}
+			for (Future<Void> future : pool.invokeAll(calls)) {
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(e);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					throw new IllegalStateException(cause);
+				}
+			}
+		}
+
+		/**
+		 * Copies the distances of the last sweep into column i of a table
+		 */
+		private void store(Sweep sweep, float[] table, int i) {
+			for (int v = 0; v < n; v++) {
+				table[v * count + i] = roundDown(sweep.distance(v));
+			}
+		}
+
+		private Sweep getSweep() {
+			Sweep sweep = sweeps.get();
+			if (sweep == null) {
+				sweep = new Sweep(graph);
+				sweeps.set(sweep);
+			}
+			return sweep;
+		}
+	}
+
+	/**
+	 * Dijkstra over the whole graph from one vertex, along outgoing edges
+	 * or backwards along incoming ones. It keeps the settle order and the
+	 * tree parents for the avoid rule.
+	 */
+	private static final class Sweep {
+
+		private final CompactNavigationGraph graph;
+		private final double[] distance;
+		private final int[] stamp;
+		final int[] parent;
+		final int[] order;
+		int settled;
+		private final IndexedMinPriorityQueue queue;
+		private int generation;
+
+		Sweep(CompactNavigationGraph graph) {
+			int n = graph.getVertexCount();
+			graph.buildReverse();
+			this.graph = graph;
+			this.distance = new double[n];
+			this.stamp = new int[n];
+			this.parent = new int[n];
+			this.order = new int[n];
+			this.queue = PriorityQueueType.BINARY.create(n);
+		}
+
+		double distance(int v) {
+			return stamp[v] == generation ? distance[v]
+					: Double.POSITIVE_INFINITY;
+		}
+
+		void run(int src, int property, boolean backward) {
+			generation++;
+			if (generation == Integer.MAX_VALUE) {
+				Arrays.fill(stamp, 0);
+				generation = 1;
+			}
+			settled = 0;
+			queue.clear();
+			stamp[src] = generation;
+			distance[src] = 0;
+			parent[src] = -1;
+			try {
+				queue.insert(src, 0);
+				while (!queue.isEmpty()) {
+					int w = queue.removeMinVertex();
+					order[settled++] = w;
+					double base = distance[w];
+					int end = backward ? graph.inEdgesEnd(w) : graph.edgesEnd(w);
+					for (int i = backward ? graph.inEdgesBegin(w)
+							: graph.edgesBegin(w); i < end; i++) {
+						int e = backward ? graph.inEdge(i) : i;
+						int t = backward ? graph.inEdgeSource(i)
+								: graph.edgeTarget(e);
+						double d = base + graph.edgeWeight(property, e);
+						if (stamp[t] != generation) {
+							stamp[t] = generation;
+							distance[t] = d;
+							parent[t] = w;
+							queue.insert(t, d);
+						} else if (d < distance[t] && queue.contains(t)) {
+							distance[t] = d;
+							parent[t] = w;
+							queue.decreaseKey(t, d);
+						}
+					}
+				}
+			} catch (PriorityQueueEmptyException e) {
+				throw new IllegalStateException(e);
+			} catch (PriorityQueueFullException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
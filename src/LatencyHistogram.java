@@ -0,0 +1,162 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Histogram of durations in nanoseconds with log-linear buckets, in the
+ * manner of HdrHistogram: every power of two is split into 128 equal
+ * buckets, so a recorded value is off by less than 1% from the value
+ * reported for its bucket, from 1 ns up to the largest long, in a fixed
+ * 58 KB array.
+ *
+ * Recording takes no locks and is safe from any number of threads at once;
+ * count, sum and maximum are kept in cells per thread, so threads recording
+ * at once do not contend on them. Counts read while others record may miss
+ * the latest values.
+ */
+public final class LatencyHistogram {
+
+	//bits of the linear sub-buckets of each power of two
+	private static final int SUB_BITS = 7;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+
+	private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+		public long applyAsLong(long left, long right) {
+			return Math.max(left, right);
+		}
+	};
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(MAX, 0);
+
+	/**
+	 * Records one duration
+	 *
+	 * @param nanos
+	 *            duration, negative values count as 0
+	 */
+	public void record(long nanos) {
+		long value = Math.max(0, nanos);
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * Number of recorded durations
+	 *
+	 * @return count
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Largest recorded duration
+	 *
+	 * @return nanoseconds, 0 if nothing was recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Mean of the recorded durations
+	 *
+	 * @return nanoseconds, 0 if nothing was recorded
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * Duration that a share of the recorded ones do not exceed
+	 *
+	 * @param percentile
+	 *            share in percent, from 0 to 100
+	 * @return upper end of the bucket holding that percentile, at most
+	 *         getMax(); 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile: " + percentile);
+		}
+		long total = 0;
+		long[] snapshot = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(highestValue(i), getMax());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Forgets every recorded duration
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	/**
+	 * Returns count, mean, percentiles and maximum in microseconds, e.g.
+	 * "count=1000 mean=12.3us p50=11.1us p90=20.2us p99=31.0us p99.9=40.1us
+	 * max=52.7us"
+	 */
+	@Override
+	public String toString() {
+		return "count=" + getCount() + " mean=" + micros(getMean())
+				+ " p50=" + micros(getValueAtPercentile(50))
+				+ " p90=" + micros(getValueAtPercentile(90))
+				+ " p99=" + micros(getValueAtPercentile(99))
+				+ " p99.9=" + micros(getValueAtPercentile(99.9))
+				+ " max=" + micros(getMax());
+	}
+
+	private static String micros(double nanos) {
+		return String.format("%.1fus", nanos / 1000);
+	}
+
+	/**
+	 * Index of the bucket a value falls in
+	 */
+	static int bucket(long value) {
+		if (value < SUB_COUNT) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		//value >>> shift lies in [SUB_COUNT, 2 * SUB_COUNT)
+		return (shift + 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+	}
+
+	/**
+	 * Largest value that falls in a bucket
+	 */
+	static long highestValue(int bucket) {
+		if (bucket < SUB_COUNT) {
+			return bucket;
+		}
+		int shift = bucket / SUB_COUNT - 1;
+		long top = SUB_COUNT + bucket % SUB_COUNT;
+		long high = ((top + 1) << shift) - 1;
+		return high < 0 ? Long.MAX_VALUE : high;//the last bucket wraps
+	}
+}
@@ -5,6 +5,9 @@
 public class Location {
 
 	final private String name;
+	//planar position, NaN if the location has none
+	final private double x;
+	final private double y;
 
 	/**
 	 * Constructs a location object
@@ -13,7 +16,24 @@ public class Location {
 	 *            name of the location
 	 */
 	public Location(String name) {
+		this(name, Double.NaN, Double.NaN);
+	}
+
+	/**
+	 * Constructs a location object with planar coordinates, which A*
+	 * searches can use through a CoordinateHeuristic
+	 *
+	 * @param name
+	 *            name of the location
+	 * @param x
+	 *            x coordinate
+	 * @param y
+	 *            y coordinate
+	 */
+	public Location(String name, double x, double y) {
 		this.name = name;
+		this.x = x;
+		this.y = y;
 	}
 
 	/**
@@ -25,6 +45,33 @@ public class Location {
 		return name;
 	}
 
+	/**
+	 * Getter method for the x coordinate
+	 * 
+	 * @return x coordinate or NaN if the location has no coordinates
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * Getter method for the y coordinate
+	 * 
+	 * @return y coordinate or NaN if the location has no coordinates
+	 */
+	public double getY() {
+		return y;
+	}
+
+	/**
+	 * Checks if the location was given coordinates
+	 * 
+	 * @return true if x and y are known
+	 */
+	public boolean hasCoordinates() {
+		return !Double.isNaN(x) && !Double.isNaN(y);
+	}
+
 	/**
 	 * Compare with another location for equality
 	 * 
@@ -43,6 +90,16 @@ public class Location {
 		return true;
 	}
 
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Location && equals((Location) other);
+	}
+
+	@Override
+	public int hashCode() {
+		return name.hashCode();
+	}
+
 	@Override
 	public String toString() {
 		return "{" + name + "}";
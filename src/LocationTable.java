@@ -0,0 +1,233 @@
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Vertex table of a CompactNavigationGraph: maps dense vertex ids to
+ * Locations and back. Heap holds Location objects and hash maps; the
+ * memory-mapped table of a GraphSnapshot decodes names lazily instead.
+ *
+ */
+abstract class LocationTable {
+
+	/**
+	 * Number of vertices
+	 *
+	 * @return vertex count
+	 */
+	abstract int size();
+
+	/**
+	 * Location of a vertex
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return Location with id v
+	 */
+	abstract Location get(int v);
+
+	/**
+	 * Id of the vertex whose name equals the location's name, the first
+	 * one if several do
+	 *
+	 * @param location
+	 *            location to look up
+	 * @return vertex id or -1 if there is none
+	 */
+	abstract int indexOf(Location location);
+
+	/**
+	 * Finds a vertex by name, ignoring letter case; an exact match is
+	 * preferred, otherwise the first vertex whose lower case name matches
+	 *
+	 * @param name
+	 *            name to look up
+	 * @return vertex id or -1 if there is none
+	 */
+	abstract int findByName(String name);
+
+	/**
+	 * Slot of a name in an open-addressing table of the given capacity. The
+	 * hash is taken of the lower case name so that case-insensitive lookups
+	 * land on the same probe sequence as exact ones.
+	 *
+	 * @param name
+	 *            location name
+	 * @param capacity
+	 *            table capacity, a power of two
+	 * @return first slot to probe
+	 */
+	static int homeSlot(String name, int capacity) {
+		int h = name.toLowerCase().hashCode();
+		h ^= h >>> 16;
+		return h & (capacity - 1);
+	}
+
+	/**
+	 * Table over Location objects already on the heap
+	 */
+	static final class Heap extends LocationTable {
+
+		private final Location[] vertices;
+		//vertex id by exact name, matching Location.equals
+		private final Map<String, Integer> indexByName;
+		//vertex id by lower case name
+		private final Map<String, Integer> indexByFoldedName;
+
+		/**
+		 * Builds the name indexes
+		 *
+		 * @param vertices
+		 *            Locations ordered by id; the array is kept
+		 */
+		Heap(Location[] vertices) {
+			this.vertices = vertices;
+			this.indexByName = new HashMap<String, Integer>(vertices.length * 2);
+			this.indexByFoldedName = new HashMap<String, Integer>(
+					vertices.length * 2);
+			for (int v = 0; v < vertices.length; v++) {
+				String name = vertices[v].getName();
+				if (!indexByName.containsKey(name)) {
+					indexByName.put(name, v);
+				}
+				String folded = name.toLowerCase();
+				if (!indexByFoldedName.containsKey(folded)) {
+					indexByFoldedName.put(folded, v);
+				}
+			}
+		}
+
+		int size() {
+			return vertices.length;
+		}
+
+		Location get(int v) {
+			return vertices[v];
+		}
+
+		int indexOf(Location location) {
+			Integer id = indexByName.get(location.getName());
+			return id == null ? -1 : id;
+		}
+
+		int findByName(String name) {
+			Integer id = indexByName.get(name);
+			if (id == null) {
+				id = indexByFoldedName.get(name.toLowerCase());
+			}
+			return id == null ? -1 : id;
+		}
+	}
+
+	/**
+	 * Table over the name and coordinate sections of a GraphSnapshot.
+	 * Names are stored as UTF-8 and decoded when a vertex is first asked
+	 * for, together with its coordinates; lookups probe an
+	 * open-addressing table of vertex id + 1 (0 is an empty slot) filled in
+	 * vertex id order, so among equal lower case names the lowest id is
+	 * probed first.
+	 */
+	static final class Mapped extends LocationTable {
+
+		private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+		private final IntBuffer nameOffsets;
+		private final ByteBuffer names;
+		private final IntBuffer slots;
+		//x and y of each vertex
+		private final DoubleBuffer coordinates;
+		//Locations decoded so far; racing threads at worst decode one twice
+		private final Location[] decoded;
+
+		/**
+		 * Creates a table over the snapshot sections
+		 *
+		 * @param nameOffsets
+		 *            vertexCount + 1 byte offsets into names
+		 * @param names
+		 *            UTF-8 names of all vertices, back to back
+		 * @param slots
+		 *            hash table of vertex id + 1, capacity a power of two
+		 * @param coordinates
+		 *            x and y of each vertex, NaN where it has none
+		 */
+		Mapped(IntBuffer nameOffsets, ByteBuffer names, IntBuffer slots,
+				DoubleBuffer coordinates) {
+			this.nameOffsets = nameOffsets;
+			this.names = names;
+			this.slots = slots;
+			this.coordinates = coordinates;
+			this.decoded = new Location[nameOffsets.limit() - 1];
+		}
+
+		int size() {
+			return decoded.length;
+		}
+
+		Location get(int v) {
+			Location location = decoded[v];
+			if (location == null) {
+				location = new Location(name(v), coordinates.get(2 * v),
+						coordinates.get(2 * v + 1));
+				decoded[v] = location;
+			}
+			return location;
+		}
+
+		int indexOf(Location location) {
+			return find(location.getName(), false);
+		}
+
+		int findByName(String name) {
+			return find(name, true);
+		}
+
+		/**
+		 * Probes the hash table for a name
+		 *
+		 * @param name
+		 *            name to look up
+		 * @param ignoreCase
+		 *            whether a lower case match is accepted if there is no
+		 *            exact one
+		 * @return vertex id or -1 if there is none
+		 */
+		private int find(String name, boolean ignoreCase) {
+			int mask = slots.limit() - 1;
+			int firstFolded = -1;
+			for (int i = homeSlot(name, slots.limit());; i = (i + 1) & mask) {
+				int v = slots.get(i) - 1;
+				if (v < 0) {
+					return firstFolded;
+				}
+				String candidate = name(v);
+				if (candidate.equals(name)) {
+					return v;
+				}
+				if (ignoreCase && firstFolded < 0
+						&& candidate.toLowerCase().equals(name.toLowerCase())) {
+					firstFolded = v;
+				}
+			}
+		}
+
+		/**
+		 * Decodes the name of a vertex
+		 *
+		 * @param v
+		 *            vertex id
+		 * @return name of vertex v
+		 */
+		private String name(int v) {
+			int from = nameOffsets.get(v);
+			byte[] bytes = new byte[nameOffsets.get(v + 1) - from];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = names.get(from + i);
+			}
+			return new String(bytes, UTF_8);
+		}
+	}
+}
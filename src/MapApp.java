@@ -1,11 +1,20 @@
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.InputMismatchException;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Driver class that reads/parses the input file and creates NavigationGraph
@@ -15,41 +24,102 @@ import java.util.Scanner;
  */
 public class MapApp {
 
-	private NavigationGraph graphObject;
+	//files at least this big are loaded with ParallelMapFileLoader
+	private static final long PARALLEL_LOAD_BYTES = 64L << 20;
+
+	private NavigationGraphADT graphObject;
+	//ALT tables for route queries, or null to run Dijkstra's algorithm
+	private Landmarks landmarks;
 
 	/**
 	 * Constructs a MapApp object
 	 * 
 	 * @param graph
-	 *            NaviagtionGraph object
+	 *            NavigationGraph or CompactNavigationGraph object
 	 */
-	public MapApp(NavigationGraph graph) {
+	public MapApp(NavigationGraphADT graph) {
 		this.graphObject = graph;
 	}
 
+	/**
+	 * Sets the landmarks shortest routes are searched with. They are
+	 * attached to a NavigationGraph, whose changes mark them stale.
+	 * 
+	 * @param landmarks
+	 *            Landmarks of the graph, or null for Dijkstra's algorithm
+	 */
+	public void setLandmarks(Landmarks landmarks) {
+		this.landmarks = landmarks;
+		if (graphObject instanceof NavigationGraph) {
+			((NavigationGraph) graphObject).setLandmarks(landmarks);
+		}
+	}
+
 	/**Main method that accepts user input and creates a NavigationGraph
 	 * based on the file name. Also creates an instance of MapApp for graph
-	 * operation.
+	 * operation. With --snapshot the graph is written as a GraphSnapshot
+	 * instead, which later runs can be started on. With --landmarks the
+	 * landmark file next to the graph file is read, or computed and written
+	 * if it is missing or has another number of landmarks; without it an
+	 * existing landmark file is still used. With --queries and --out the
+	 * menu is skipped and a file of route queries is answered instead.
+	 * Metrics are recorded and printed when the menu or the queries are
+	 * done.
 	 * 
 	 * @param: String [] args: will store command line arguments
 	 */
 	public static void main(String[] args) {
 		//exit if CLAs are incorrect
-		if (args.length != 1) {
-			System.out.println("Usage: java MapApp <pathToGraphFile>");
+		if (args.length != 1 && !(args.length == 3 
+				&& (args[1].equals("--snapshot") 
+						|| args[1].equals("--landmarks")))
+				&& !(args.length == 5 && args[1].equals("--queries")
+						&& args[3].equals("--out"))) {
+			System.out.println("Usage: java MapApp <pathToGraphFile> "
+					+ "[--snapshot <pathToSnapshotFile> | "
+					+ "--landmarks <count> | "
+					+ "--queries <pathToQueryFile> --out <pathToOutputFile>]");
 			System.exit(1);
 		}
+		int landmarkCount = 0;
+		if (args.length == 3 && args[1].equals("--landmarks")) {
+			try {
+				landmarkCount = Integer.parseInt(args[2]);
+			} catch (NumberFormatException e) {
+				landmarkCount = -1;
+			}
+			if (landmarkCount <= 0) {
+				System.out.println("Landmark count must be a positive "
+						+ "integer.");
+				System.exit(1);
+			}
+		}
+
+		//the app reports what its loads and queries cost
+		Metrics.setEnabled(true);
 
 		// read the filename from command line argument
 		String locationFileName = args[0];
 		try
 		{
-			//create a new Navigation graph for file name
-			NavigationGraph graph = createNavigationGraphFromMapFile
-					(locationFileName);
+			//create a graph from the map file or snapshot
+			NavigationGraphADT graph = loadGraph(locationFileName);
+			if (args.length == 3 && landmarkCount == 0) {
+				writeSnapshot(graph, args[2]);
+				return;
+			}
+			if (args.length == 5) {
+				runQueries(graph, loadLandmarks(graph, locationFileName, 0),
+						args[2], args[4]);
+				System.out.print(Metrics.report());
+				return;
+			}
 			//create new MapApp and go to startService for graph operations
 			MapApp appInstance = new MapApp(graph);
+			appInstance.setLandmarks(loadLandmarks(graph, locationFileName, 
+					landmarkCount));
 			appInstance.startService();
+			System.out.print(Metrics.report());
 
 			//exit if either exception occurs during input of file name
 		} catch (FileNotFoundException e) {
@@ -63,6 +133,170 @@ public class MapApp {
 
 	}
 
+	/**
+	 * Loads a graph from a GraphSnapshot if the file starts with the
+	 * snapshot magic, else parses it as a map file
+	 * 
+	 * @param graphFilepath
+	 *            path to the map or snapshot file
+	 * @return CompactNavigationGraph over the mapped snapshot, or 
+	 *         NavigationGraph parsed from the map file
+	 * @throws FileNotFoundException
+	 *             if graphFilepath is not found
+	 * @throws InvalidFileException
+	 *             if the file is neither a valid snapshot nor a valid map
+	 *             file
+	 */
+	public static NavigationGraphADT loadGraph(String graphFilepath) 
+			throws FileNotFoundException, InvalidFileException {
+		if (!new File(graphFilepath).exists()) {
+			throw new FileNotFoundException();
+		}
+		try {
+			if (GraphSnapshot.isSnapshot(graphFilepath)) {
+				return GraphSnapshot.open(graphFilepath);
+			}
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new InvalidFileException("Could not read file: " 
+					+ e.getMessage());
+		}
+		return createNavigationGraphFromMapFile(graphFilepath);
+	}
+
+	/**
+	 * Writes a loaded graph as a GraphSnapshot
+	 * 
+	 * @param graph
+	 *            graph to be written
+	 * @param snapshotFilepath
+	 *            path to the snapshot file
+	 */
+	private static void writeSnapshot(NavigationGraphADT graph, 
+			String snapshotFilepath) {
+		CompactNavigationGraph compact = compact(graph);
+		try {
+			GraphSnapshot.write(compact, snapshotFilepath);
+		} catch (IOException e) {
+			System.out.println("Could not write snapshot: " 
+					+ e.getMessage());
+			System.exit(1);
+		}
+		System.out.println("Wrote " + compact.getVertexCount() 
+				+ " locations and " + compact.getEdgeCount() 
+				+ " edges to " + snapshotFilepath);
+	}
+
+	/**
+	 * Answers a file of route queries with a BatchQueryRunner
+	 * 
+	 * @param graph
+	 *            loaded graph
+	 * @param landmarks
+	 *            Landmarks of the graph or null
+	 * @param queryFilepath
+	 *            path to the query file
+	 * @param outFilepath
+	 *            path to the output file
+	 */
+	private static void runQueries(NavigationGraphADT graph, 
+			Landmarks landmarks, String queryFilepath, String outFilepath) {
+		Charset utf8 = Charset.forName("UTF-8");
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		BatchQueryRunner runner = new BatchQueryRunner(
+				new RouteQueryExecutor(graph.freeze(), pool), landmarks, pool);
+		long start = System.nanoTime();
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					new FileInputStream(queryFilepath), utf8));
+			try {
+				Writer out = new BufferedWriter(new OutputStreamWriter(
+						new FileOutputStream(outFilepath), utf8), 1 << 16);
+				try {
+					runner.run(in, out);
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+		} catch (FileNotFoundException e) {
+			System.out.println("QUERY FILE: " + e.getMessage());
+			System.exit(1);
+		} catch (IOException e) {
+			System.out.println("Could not answer queries: " 
+					+ e.getMessage());
+			System.exit(1);
+		}
+		System.out.println("Answered " + runner.getQueryCount() 
+				+ " queries (" + runner.getInvalidCount() + " invalid) in " 
+				+ (System.nanoTime() - start) / 1000000 + " ms, wrote " 
+				+ outFilepath);
+	}
+
+	/**
+	 * Reads the landmark file next to the graph file, computing and
+	 * writing it first if count landmarks are asked for and the file does
+	 * not have them
+	 * 
+	 * @param graph
+	 *            loaded graph
+	 * @param graphFilepath
+	 *            path to the map or snapshot file
+	 * @param count
+	 *            number of landmarks wanted, or 0 to only use an existing
+	 *            file
+	 * @return Landmarks or null if there are none
+	 */
+	private static Landmarks loadLandmarks(NavigationGraphADT graph, 
+			String graphFilepath, int count) {
+		String path = Landmarks.pathFor(graphFilepath);
+		if (count == 0 && !new File(path).exists()) {
+			return null;
+		}
+		CompactNavigationGraph compact = compact(graph);
+		Landmarks landmarks = null;
+		try {
+			landmarks = Landmarks.read(path, compact);
+		} catch (FileNotFoundException e) {
+			//computed below
+		} catch (InvalidFileException e) {
+			System.out.println(path + ": " + e.getMessage());
+		} catch (IOException e) {
+			System.out.println("Could not read landmarks: " 
+					+ e.getMessage());
+		}
+		if (count == 0 || landmarks != null && landmarks.getCount() 
+				== Math.min(count, compact.getVertexCount())) {
+			return landmarks;
+		}
+		landmarks = Landmarks.build(compact, count, 
+				Landmarks.Selection.AVOID);
+		try {
+			landmarks.write(path);
+			System.out.println("Wrote " + landmarks.getCount() 
+					+ " landmarks to " + path);
+		} catch (IOException e) {
+			System.out.println("Could not write landmarks: " 
+					+ e.getMessage());
+		}
+		return landmarks;
+	}
+
+	/**
+	 * Returns the graph as a CompactNavigationGraph, copying it if needed
+	 * 
+	 * @param graph
+	 *            loaded graph
+	 * @return graph itself or a compact copy with the same vertex ids
+	 */
+	private static CompactNavigationGraph compact(NavigationGraphADT graph) {
+		return graph instanceof NavigationGraph 
+				? new CompactNavigationGraph((NavigationGraph) graph) 
+				: (CompactNavigationGraph) graph;
+	}
+
 	/**
 	 * Displays options to user about the various operations on the 
 	 * loaded graph
@@ -78,7 +312,10 @@ public class MapApp {
 			System.out.println("2. Display Graph");
 			System.out.println("3. Display Outgoing Edges");
 			System.out.println("4. Display Shortest Route");
-			System.out.println("5. Quit");
+			System.out.println("5. Display Distances From Location");
+			System.out.println("6. Display Route Trade-offs");
+			System.out.println("7. Display Metrics");
+			System.out.println("8. Quit");
 			System.out.print("Enter your choice: ");
 
 			//keep prompting user to input an integer
@@ -142,48 +379,65 @@ public class MapApp {
 					break;
 				}
 
-				//get edge property names and print them to show user
-				System.out.println("Edge properties: ");
-				String[] propertyNames = graphObject.getEdgePropertyNames();
-				for (int i = 0; i < propertyNames.length; i++) {
-					System.out.println("\t" + (i + 1) + ": "
-							+ propertyNames[i]);
+				int selectedPropertyIndex = selectProperty(sc);
+				if (selectedPropertyIndex < 0) {
+					break;
 				}
-				System.out.println("Select property to compute shortest "
-						+ "route on: ");
-				try{
-					int selectedPropertyIndex = sc.nextInt() - 1; 
-					//if the property # inputed by user is not one listed
-					if (selectedPropertyIndex >= propertyNames.length) {
-						System.out.println("Invalid option chosen: " + 
-								(selectedPropertyIndex + 1));
-						break;
-					}
-
-					String selectedPropertyName = propertyNames
-							[selectedPropertyIndex];
-					//get shortest route based on location, destination,
-					//and specified property
-					List<Path> shortestRoute = graphObject.getShortestRoute
-							(src, dest, selectedPropertyName);
-					//print shortest route
-					for(Path path : shortestRoute) {
-						System.out.print(path.displayPathWithProperty
-								(selectedPropertyIndex) + ",");
-					}
-					if(shortestRoute.size()==0) {
-						System.out.print("No route exists");
-					}
-					System.out.println();
+				String selectedPropertyName = graphObject
+						.getEdgePropertyNames()[selectedPropertyIndex];
+				//get shortest route based on location, destination,
+				//and specified property
+				RouteHeuristic heuristic = landmarks == null 
+						|| landmarks.isStale(selectedPropertyName) ? null 
+						: landmarks.getHeuristic(selectedPropertyName);
+				List<Path> shortestRoute = graphObject.getShortestRoute
+						(src, dest, selectedPropertyName, heuristic);
+				//print shortest route
+				for(Path path : shortestRoute) {
+					System.out.print(path.displayPathWithProperty
+							(selectedPropertyIndex) + ",");
+				}
+				if(shortestRoute.size()==0) {
+					System.out.print("No route exists");
+				}
+				System.out.println();
+				break;
+				//input 5: prints the distance from one location to all others
+			case 5: {
+				System.out.println("Enter source location name: ");
+				String sourceName = sc.next();
+				Location source = graphObject.getLocationByName(sourceName);
 
+				if (source == null) {
+					System.out.println(sourceName + " is not a valid Location");
 					break;
-					//for case that user inputs something other than an integer
-				} catch (InputMismatchException e) {
-					System.out.println("Must choose and integer "
-							+ "between 1 and " + propertyNames.length + ".");
 				}
-				//input 5: exits program
-			case 5:
+				int propertyIndex = selectProperty(sc);
+				if (propertyIndex < 0) {
+					break;
+				}
+				//one search gives the distance to every location
+				ShortestPathTree tree = graphObject.shortestPathTree(source,
+						graphObject.getEdgePropertyNames()[propertyIndex]);
+				System.out.println("Distances from " + source + ": ");
+				for (Location location : graphObject.getVertices()) {
+					double distance = tree.getDistance(location);
+					System.out.println("\t" + location + ": " 
+							+ (distance == Double.POSITIVE_INFINITY 
+							? "unreachable" : String.valueOf(distance)));
+				}
+			}
+			break;
+			//input 6: prints the Pareto-optimal routes over all properties
+			case 6:
+				displayTradeoffs(sc);
+				break;
+			//input 7: prints what the loads and searches so far cost
+			case 7:
+				System.out.print(Metrics.report());
+				break;
+			//input 8: exits program
+			case 8:
 				break;
 			default:
 				System.out.println("Please select a valid option: ");
@@ -191,10 +445,116 @@ public class MapApp {
 			}
 		} 
 		//quit program
-		while (choice != 5);
+		while (choice != 8);
 		sc.close();
 	}
 
+	/**
+	 * Reads a source, a destination and an epsilon and prints every route
+	 * between them that no other route beats on all edge properties, with
+	 * its value on each property
+	 * 
+	 * @param sc
+	 *            Scanner reading the user's input
+	 */
+	private void displayTradeoffs(Scanner sc) {
+		System.out.println("Enter source location name: ");
+		String srcName = sc.next();
+		Location src = graphObject.getLocationByName(srcName);
+
+		System.out.println("Enter destination location name: ");
+		String destName = sc.next();
+		Location dest = graphObject.getLocationByName(destName);
+
+		//location and/or destination aren't valid places
+		if (src == null || dest == null) {
+			System.out.println(srcName + " and/or " + destName 
+					+ " are not valid Locations in the graph");
+			return;
+		}
+		if (src == dest) {
+			System.out.println(srcName + " and " + destName 
+					+ " correspond to the same Location");
+			return;
+		}
+		System.out.println("Enter epsilon, e.g. 0 for all trade-offs or "
+				+ "0.05 to merge routes within 5%: ");
+		double epsilon;
+		try {
+			epsilon = sc.nextDouble();
+		} catch (InputMismatchException e) {
+			sc.next();
+			epsilon = -1;
+		}
+		if (!(epsilon >= 0)) {
+			System.out.println("Epsilon must be a number of at least 0.");
+			return;
+		}
+		String[] propertyNames = graphObject.getEdgePropertyNames();
+		List<List<Path>> routes = graphObject.getParetoRoutes(src, dest, 
+				null, epsilon);
+		if (routes.isEmpty()) {
+			System.out.println("No route exists");
+			return;
+		}
+		System.out.println(routes.size() + " trade-offs from " + src 
+				+ " to " + dest + ": ");
+		for (List<Path> route : routes) {
+			double[] totals = new double[propertyNames.length];
+			StringBuilder locations = new StringBuilder(src.toString());
+			//routes start with the edge that enters dest
+			for (int i = route.size() - 1; i >= 0; i--) {
+				Path path = route.get(i);
+				for (int p = 0; p < totals.length; p++) {
+					totals[p] += path.getProperties().get(p);
+				}
+				locations.append(" -> ").append(path.getDestination());
+			}
+			StringBuilder line = new StringBuilder("\t");
+			for (int p = 0; p < totals.length; p++) {
+				line.append(propertyNames[p]).append(": ")
+						.append(totals[p]).append(", ");
+			}
+			System.out.println(line.append(locations));
+		}
+	}
+
+	/**
+	 * Lists the edge properties and reads the one the user selects
+	 * 
+	 * @param sc
+	 *            Scanner reading the user's input
+	 * @return index of the selected property, or -1 after telling the user
+	 *         the choice is not valid
+	 */
+	private int selectProperty(Scanner sc) {
+		//get edge property names and print them to show user
+		System.out.println("Edge properties: ");
+		String[] propertyNames = graphObject.getEdgePropertyNames();
+		for (int i = 0; i < propertyNames.length; i++) {
+			System.out.println("\t" + (i + 1) + ": " + propertyNames[i]);
+		}
+		System.out.println("Select property to compute shortest "
+				+ "route on: ");
+		try{
+			int selectedPropertyIndex = sc.nextInt() - 1; 
+			//if the property # inputed by user is not one listed
+			if (selectedPropertyIndex < 0 
+					|| selectedPropertyIndex >= propertyNames.length) {
+				System.out.println("Invalid option chosen: " + 
+						(selectedPropertyIndex + 1));
+				return -1;
+			}
+			return selectedPropertyIndex;
+			//for case that user inputs something other than an integer
+		} catch (InputMismatchException e) {
+			sc.next();
+			System.out.println("Must choose and integer "
+					+ "between 1 and " + propertyNames.length + ".");
+			return -1;
+		}
+	}
+
 	/**
 	 * Reads and parses the input file passed as argument create a
 	 * NavigationGraph object. The edge property names required for
@@ -212,7 +572,9 @@ public class MapApp {
 	 *             if header line in the file has < 3 columns or 
 	 *             if any line that describes an edge has different 
 	 *             number of properties than as described in the header or 
-	 *             if any property value is not numeric 
+	 *             if any property value is not numeric; the message
+	 *             names the offending line
+	 * @see MapFileParser
 	 */
 
 	public static NavigationGraph createNavigationGraphFromMapFile
@@ -221,74 +583,73 @@ public class MapApp {
 		File file = new File(graphFilepath);
 
 		if(!file.exists()) {
-			System.out.println(file.exists());
 			throw new FileNotFoundException();
 		}
 
-		String[] properties = null;//to store the property names
-		int numProperties = 0;
-		Scanner sc = new Scanner(file);
-
-		//for the first line
-		if(sc.hasNextLine()) {
-			String a = sc.nextLine();
-			String[] split = a.split(" ");
-			properties = new String[split.length - 2];
-			numProperties = properties.length;
+		//big files are parsed in chunks on all cores; the graph is the same
+		if(file.length() >= PARALLEL_LOAD_BYTES 
+				&& Runtime.getRuntime().availableProcessors() > 1) {
+			return new ParallelMapFileLoader().load(graphFilepath);
+		}
 
-			if(split.length < 3) {
-				throw new InvalidFileException("Invalid file format.");
+		//parse the file and add vertices and edges as lines are read
+		NavigationGraphBuilder builder = new NavigationGraphBuilder();
+		boolean timed = Metrics.isEnabled();
+		TimedHandler handler = timed ? new TimedHandler(builder) : null;
+		long start = System.nanoTime();
+		InputStream in = new FileInputStream(file);
+		try {
+			MapFileParser parser = new MapFileParser(in);
+			parser.parse(timed ? handler : builder);
+			if (timed) {
+				long total = System.nanoTime() - start;
+				Metrics.INGEST.record(parser.getLineCount(), file.length(), 
+						total - handler.nanos, handler.nanos);
 			}
-
-			//get each property and put it into properties array
-			for(int i = 2; i < split.length; i++) {
-				properties[i - 2] = split[i];
+		} catch (IOException e) {
+			throw new InvalidFileException("Could not read file: " 
+					+ e.getMessage());
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				//nothing left to read
 			}
 		}
+		return builder.getGraph();
+	}
 
-		//create a graph based on the properties
-		NavigationGraph graph = new NavigationGraph(properties);
+	/**
+	 * Passes the lines on to another Handler and sums the time it takes,
+	 * which is the time spent building rather than parsing
+	 */
+	private static class TimedHandler implements MapFileParser.Handler {
 
-		//for the rest of the lines
-		while(sc.hasNextLine()) {
-			String curr = sc.nextLine();
-			String[] line = curr.split(" ");//all words in current line
+		private final MapFileParser.Handler handler;
+		private long nanos;
 
-			//check if there is the correct number of words
-			if(line.length != properties.length + 2) {
-				throw new InvalidFileException(
-						"Incorrect number of properties.");
-			}
-			//make a new array to store all the property values
-			List<Double> props = new ArrayList<Double>();
-			//find properties in "line" and add them to propery list
-			for(int i = 0; i < line.length - 2; i++) {
-				try {
-					props.add(Double.parseDouble(line[i + 2]));
-				} catch(NumberFormatException e) {
-					throw new InvalidFileException(
-							"All properties must be Doubles.");
-				}
-			}
+		TimedHandler(MapFileParser.Handler handler) {
+			this.handler = handler;
+		}
 
-			for(int i = 0; i < 2; i++) {
-				//get location with name
-				Location src = graph.getLocationByName(line[i].toLowerCase());
-				if(src == null) {//if no vertex exists yet
-					//create new vertex
-					Location vertex = new Location(line[i].toLowerCase());
-					graph.addVertex(vertex);//add that vertex
-				}
-			}
-			//create new path with give names and properties
-			Path path = new Path(graph.getLocationByName(line[0].
-					toLowerCase()), graph.getLocationByName(line[1].
-							toLowerCase()), props);
-
-			//add edge to graph
-			graph.addEdge(graph.getLocationByName(line[0].toLowerCase()), 
-					graph.getLocationByName(line[1].toLowerCase()), path);
+		public void header(String[] propertyNames) 
+				throws InvalidFileException {
+			long start = System.nanoTime();
+			handler.header(propertyNames);
+			nanos += System.nanoTime() - start;
+		}
+
+		public void vertex(int id, String name) {
+			long start = System.nanoTime();
+			handler.vertex(id, name);
+			nanos += System.nanoTime() - start;
+		}
+
+		public void edge(int src, int dest, double[] properties) 
+				throws InvalidFileException {
+			long start = System.nanoTime();
+			handler.edge(src, dest, properties);
+			nanos += System.nanoTime() - start;
 		}
-		return graph;
 	}
 }
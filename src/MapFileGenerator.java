@@ -0,0 +1,459 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Writes synthetic road networks in MapApp's "Source Destination Prop1 Prop2
+ * ..." format for load and scale testing. Three topologies are supported:
+ *
+ * GRID: locations on a square grid, linked both ways to the locations
+ * left, right, above and below them.
+ *
+ * GEOMETRIC: locations scattered over the unit square, linked both ways to
+ * every location within a radius chosen to give the requested average
+ * degree. Locations that end up without a neighbor do not appear in the
+ * file.
+ *
+ * POWER_LAW: Chung-Lu style graph whose degrees follow a power law, so a
+ * few hub locations have very many edges. Each sampled edge is written in
+ * both directions.
+ *
+ * Edges are written as they are generated, so memory use does not grow
+ * with the size of the map; the geometric generator only keeps three rows
+ * of its cell grid at a time. The same seed always gives the same file.
+ * Property values depend only on the two end points, so both directions of
+ * a road have the same values.
+ *
+ */
+public class MapFileGenerator {
+
+	/** Kinds of generated networks */
+	public enum Topology {
+		GRID, GEOMETRIC, POWER_LAW
+	}
+
+	private final Topology topology;
+	private final int vertices;
+	private final String[] propertyNames;
+	private final long seed;
+	private double averageDegree = 4;
+	private double exponent = 2.5; //power law exponent for POWER_LAW
+
+	private OutputStream out;
+	private final byte[] buffer = new byte[1 << 16];
+	private int length; //bytes used in buffer
+	private long edges; //edges written so far
+
+	/**
+	 * Creates a generator
+	 *
+	 * @param topology
+	 *            kind of network
+	 * @param vertices
+	 *            number of locations, at least 2
+	 * @param propertyNames
+	 *            names of the edge properties, at least one
+	 * @param seed
+	 *            random seed
+	 */
+	public MapFileGenerator(Topology topology, int vertices,
+			String[] propertyNames, long seed) {
+		if (topology == null || vertices < 2 || propertyNames == null
+				|| propertyNames.length == 0) {
+			throw new IllegalArgumentException("Topology: " + topology
+					+ ", Vertices: " + vertices);
+		}
+		this.topology = topology;
+		this.vertices = vertices;
+		this.propertyNames = propertyNames.clone();
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the average number of outgoing edges per location for the
+	 * GEOMETRIC and POWER_LAW topologies; a grid always has up to 4
+	 *
+	 * @param averageDegree
+	 *            average out degree, default 4
+	 */
+	public void setAverageDegree(double averageDegree) {
+		if (!(averageDegree > 0)) {
+			throw new IllegalArgumentException("Degree: " + averageDegree);
+		}
+		this.averageDegree = averageDegree;
+	}
+
+	/**
+	 * Sets the degree distribution exponent of the POWER_LAW topology
+	 *
+	 * @param exponent
+	 *            exponent, greater than 2; default 2.5
+	 */
+	public void setExponent(double exponent) {
+		if (!(exponent > 2)) {
+			throw new IllegalArgumentException("Exponent: " + exponent);
+		}
+		this.exponent = exponent;
+	}
+
+	/**
+	 * Positions of the locations: grid locations sit at (column, row) and
+	 * geometric ones in the unit square. Power-law maps have no geometry.
+	 * Location id v is named "v" + id in the written map.
+	 *
+	 * @return x, y pairs by location id, or null for POWER_LAW
+	 */
+	public double[] getCoordinates() {
+		double[] points = new double[2 * vertices];
+		if (topology == Topology.GRID) {
+			int columns = (int) Math.ceil(Math.sqrt(vertices));
+			for (int v = 0; v < vertices; v++) {
+				points[2 * v] = v % columns;
+				points[2 * v + 1] = v / columns;
+			}
+		} else if (topology == Topology.GEOMETRIC) {
+			int m = geometricCells(Math.sqrt(averageDegree
+					/ (Math.PI * vertices)));
+			for (int row = 0; row < m; row++) {
+				double[] rowPoints = geometricRow(row, m);
+				System.arraycopy(rowPoints, 0, points,
+						2 * cellStart(row * m, m), rowPoints.length);
+			}
+		} else {
+			return null;
+		}
+		return points;
+	}
+
+	/**
+	 * Writes the map to a file
+	 *
+	 * @param path
+	 *            file to be written
+	 * @return number of edges written
+	 */
+	public long write(String path) throws IOException {
+		OutputStream file = new FileOutputStream(path);
+		try {
+			return write(file);
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Writes the map to a stream, which is left open
+	 *
+	 * @param stream
+	 *            where the map is written to
+	 * @return number of edges written
+	 */
+	public synchronized long write(OutputStream stream) throws IOException {
+		out = stream;
+		length = 0;
+		edges = 0;
+		append("Source Destination");
+		for (String name : propertyNames) {
+			append(" ");
+			append(name);
+		}
+		append("\n");
+		switch (topology) {
+		case GRID:
+			writeGrid();
+			break;
+		case GEOMETRIC:
+			writeGeometric();
+			break;
+		default:
+			writePowerLaw();
+			break;
+		}
+		flush();
+		out.flush();
+		out = null;
+		return edges;
+	}
+
+	/**
+	 * Grid of ceil(sqrt(n)) columns; location id = row * columns + column
+	 */
+	private void writeGrid() throws IOException {
+		int columns = (int) Math.ceil(Math.sqrt(vertices));
+		for (int v = 0; v < vertices; v++) {
+			int column = v % columns;
+			if (column > 0) {
+				writeEdge(v, v - 1, 1);
+			}
+			if (column < columns - 1 && v + 1 < vertices) {
+				writeEdge(v, v + 1, 1);
+			}
+			if (v >= columns) {
+				writeEdge(v, v - columns, 1);
+			}
+			if (v + columns < vertices) {
+				writeEdge(v, v + columns, 1);
+			}
+		}
+	}
+
+	/**
+	 * Random geometric graph. The unit square is cut into m x m cells whose
+	 * side is at least the link radius, so a location's neighbors are all in
+	 * the 3 x 3 cells around it. Locations are spread evenly over the cells
+	 * and numbered cell by cell; the points of a cell are drawn from a
+	 * random generator seeded by the cell index, so any row of cells can be
+	 * regenerated without keeping the others.
+	 */
+	private void writeGeometric() throws IOException {
+		double radius = Math.sqrt(averageDegree / (Math.PI * vertices));
+		int m = geometricCells(radius);
+		double radius2 = radius * radius;
+		//scale distances so values look like minutes on a 100 unit map
+		double scale = 100;
+
+		double[][] rows = new double[3][];
+		for (int cy = 0; cy < m; cy++) {
+			//points of rows cy - 1, cy and cy + 1, reusing the last two
+			for (int dy = -1; dy <= 1; dy++) {
+				int row = cy + dy;
+				if (row >= 0 && row < m && (dy == 1 || cy == 0)) {
+					rows[row % 3] = geometricRow(row, m);
+				}
+			}
+			for (int cx = 0; cx < m; cx++) {
+				int cell = cy * m + cx;
+				int first = cellStart(cell, m);
+				int count = cellStart(cell + 1, m) - first;
+				double[] own = rows[cy % 3];
+				for (int i = 0; i < count; i++) {
+					int p = first + i;
+					double px = own[2 * (p - cellStart(cy * m, m))];
+					double py = own[2 * (p - cellStart(cy * m, m)) + 1];
+					for (int ny = Math.max(0, cy - 1); ny <= Math.min(m - 1, cy + 1); ny++) {
+						double[] other = rows[ny % 3];
+						int rowFirst = cellStart(ny * m, m);
+						int from = cellStart(ny * m + Math.max(0, cx - 1), m);
+						int to = cellStart(ny * m + Math.min(m - 1, cx + 1) + 1, m);
+						for (int q = from; q < to; q++) {
+							if (q == p) {
+								continue;
+							}
+							double dx = other[2 * (q - rowFirst)] - px;
+							double dy = other[2 * (q - rowFirst) + 1] - py;
+							double d2 = dx * dx + dy * dy;
+							if (d2 < radius2) {
+								writeEdge(p, q, Math.max(0.01, Math.sqrt(d2) * scale));
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Number of cells per side of the unit square for a link radius
+	 */
+	private int geometricCells(double radius) {
+		return (int) Math.max(1, Math.min(Math.floor(1 / radius),
+				Math.sqrt(vertices)));
+	}
+
+	/**
+	 * First location id of a cell; the remainder of n / cells goes to the
+	 * first cells
+	 */
+	private int cellStart(int cell, int m) {
+		long cells = (long) m * m;
+		long base = vertices / cells;
+		long extra = vertices % cells;
+		return (int) (cell * base + Math.min(cell, extra));
+	}
+
+	/**
+	 * Coordinates of all points in one row of cells, as x, y pairs
+	 */
+	private double[] geometricRow(int row, int m) {
+		int first = cellStart(row * m, m);
+		double[] points = new double[2 * (cellStart((row + 1) * m, m) - first)];
+		for (int cx = 0; cx < m; cx++) {
+			int cell = row * m + cx;
+			Random random = new Random(mix(seed, cell));
+			for (int p = cellStart(cell, m); p < cellStart(cell + 1, m); p++) {
+				points[2 * (p - first)] = (cx + random.nextDouble()) / m;
+				points[2 * (p - first) + 1] = (row + random.nextDouble()) / m;
+			}
+		}
+		return points;
+	}
+
+	/**
+	 * Chung-Lu graph. Location v has weight (v + 1)^-a with
+	 * a = 1 / (exponent - 1); it draws about degree / 2 * weight / mean
+	 * edges whose other ends are sampled in proportion to weight by
+	 * inverting the continuous CDF of x^-a, and each edge is written both
+	 * ways.
+	 */
+	private void writePowerLaw() throws IOException {
+		double a = 1 / (exponent - 1);
+		double top = Math.pow(vertices + 1, 1 - a) - 1;
+		double meanWeight = top / ((1 - a) * vertices);
+		Random random = new Random(seed);
+		for (int v = 0; v < vertices; v++) {
+			double expected = averageDegree / 2 * Math.pow(v + 1, -a) / meanWeight;
+			long count = (long) expected;
+			if (random.nextDouble() < expected - count) {
+				count++;
+			}
+			count = Math.max(1, Math.min(count, vertices - 1));
+			for (long i = 0; i < count; i++) {
+				int t = v;
+				//resample the rare self loop
+				while (t == v) {
+					double x = Math.pow(1 + random.nextDouble() * top, 1 / (1 - a));
+					t = (int) Math.min(vertices - 1, Math.max(0, Math.floor(x) - 1));
+				}
+				double base = 1 + 10 * unit(Math.min(v, t), Math.max(v, t), -1);
+				writeEdge(v, t, base);
+				writeEdge(t, v, base);
+			}
+		}
+	}
+
+	/**
+	 * Writes one edge line. Property k is base times a factor between 0.5
+	 * and 1.5 that depends only on the two end points and k.
+	 */
+	private void writeEdge(int src, int dest, double base) throws IOException {
+		int low = Math.min(src, dest);
+		int high = Math.max(src, dest);
+		append("v");
+		appendLong(src);
+		append(" v");
+		appendLong(dest);
+		for (int k = 0; k < propertyNames.length; k++) {
+			append(" ");
+			double value = base * (0.5 + unit(low, high, k));
+			appendCents(Math.max(1, Math.round(value * 100)));
+		}
+		append("\n");
+		edges++;
+	}
+
+	/**
+	 * Uniform value in [0, 1) from the seed, two ids and a salt
+	 */
+	private double unit(int low, int high, int salt) {
+		long h = mix(mix(seed ^ low, high), salt);
+		return (h >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * SplitMix64 style hash of a value and a key
+	 */
+	private static long mix(long value, long key) {
+		long z = value + 0x9E3779B97F4A7C15L * (key + 1);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private void append(String s) throws IOException {
+		for (int i = 0; i < s.length(); i++) {
+			put((byte) s.charAt(i));
+		}
+	}
+
+	private void appendLong(long value) throws IOException {
+		if (value >= 10) {
+			appendLong(value / 10);
+		}
+		put((byte) ('0' + value % 10));
+	}
+
+	/**
+	 * Writes a count of hundredths with two decimals, e.g. 1234 as 12.34
+	 */
+	private void appendCents(long cents) throws IOException {
+		appendLong(cents / 100);
+		put((byte) '.');
+		put((byte) ('0' + cents / 10 % 10));
+		put((byte) ('0' + cents % 10));
+	}
+
+	private void put(byte b) throws IOException {
+		if (length == buffer.length) {
+			flush();
+		}
+		buffer[length++] = b;
+	}
+
+	private void flush() throws IOException {
+		out.write(buffer, 0, length);
+		length = 0;
+	}
+
+	/**
+	 * Writes a synthetic map file
+	 *
+	 * @param args
+	 *            output file and options, see the usage message
+	 */
+	public static void main(String[] args) {
+		String path = null;
+		Topology topology = Topology.GRID;
+		int vertices = 1000;
+		String[] properties = { "Time", "Cost" };
+		long seed = 42;
+		double degree = -1;
+		double exponent = -1;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-topology")) {
+					topology = Topology.valueOf(args[++i].toUpperCase()
+							.replace('-', '_'));
+				} else if (args[i].equals("-vertices")) {
+					vertices = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-properties")) {
+					properties = args[++i].split(",");
+				} else if (args[i].equals("-seed")) {
+					seed = Long.parseLong(args[++i]);
+				} else if (args[i].equals("-degree")) {
+					degree = Double.parseDouble(args[++i]);
+				} else if (args[i].equals("-exponent")) {
+					exponent = Double.parseDouble(args[++i]);
+				} else if (path == null && !args[i].startsWith("-")) {
+					path = args[i];
+				} else {
+					throw new IllegalArgumentException(args[i]);
+				}
+			}
+			if (path == null) {
+				throw new IllegalArgumentException("no output file");
+			}
+			MapFileGenerator generator = new MapFileGenerator(topology,
+					vertices, properties, seed);
+			if (degree > 0) {
+				generator.setAverageDegree(degree);
+			}
+			if (exponent > 0) {
+				generator.setExponent(exponent);
+			}
+			long start = System.nanoTime();
+			long edges = generator.write(path);
+			System.out.printf("Wrote %d edges to %s in %.1fs%n", edges, path,
+					(System.nanoTime() - start) / 1e9);
+		} catch (RuntimeException e) {
+			System.out.println("Usage: java MapFileGenerator <outputFile> "
+					+ "[-topology grid|geometric|power_law] [-vertices n] "
+					+ "[-properties Time,Cost] [-degree d] [-exponent g] "
+					+ "[-seed s]");
+			System.exit(1);
+		} catch (IOException e) {
+			System.out.println("Could not write " + path + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
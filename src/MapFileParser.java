@@ -0,0 +1,504 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for map files. The first line holds "Source Destination"
+ * followed by the edge property names; every other line holds a source
+ * name, a destination name and one numeric value per property. Tokens may
+ * be separated by any amount of spaces or tabs and blank lines are skipped.
+ *
+ * The input is read in large blocks and tokenized in place: numbers are
+ * parsed straight from the bytes and each location name is turned into a
+ * String only once, the first time it is seen. Names are lower cased, as
+ * MapApp has always done, unless the parser is told to keep them as they
+ * are, and numbered in order of first appearance. The
+ * Handler gets the vertices and edges as soon as their line has been read.
+ *
+ */
+public class MapFileParser {
+
+	/**
+	 * Receives the contents of a map file while it is being parsed
+	 *
+	 */
+	public interface Handler {
+
+		/**
+		 * Called once with the edge property names from the header line
+		 *
+		 * @param propertyNames
+		 *            edge property names
+		 * @throws InvalidFileException
+		 *             to reject the file
+		 */
+		void header(String[] propertyNames) throws InvalidFileException;
+
+		/**
+		 * Called the first time a location name appears
+		 *
+		 * @param id
+		 *            number of the location; ids count up from 0
+		 * @param name
+		 *            name of the location, lower case unless the parser
+		 *            keeps letter case
+		 */
+		void vertex(int id, String name);
+
+		/**
+		 * Called for every edge line
+		 *
+		 * @param src
+		 *            id of the source location
+		 * @param dest
+		 *            id of the destination location
+		 * @param properties
+		 *            property values; the array is reused for the next line
+		 * @throws InvalidFileException
+		 *             to reject the file without parsing the rest of it
+		 */
+		void edge(int src, int dest, double[] properties)
+				throws InvalidFileException;
+	}
+
+	private static final double[] POWERS_OF_TEN = new double[23];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private final InputStream in;
+	private byte[] buffer = new byte[1 << 20];
+	private int start; //first unparsed byte in buffer
+	private int end; //one past the last byte read into buffer
+	private boolean eof;
+	private int lineEnd; //newline ending the current line, or end
+	private long lineNumber;
+	private long bytesRead;
+
+	//token bounds of the current line
+	private int[] tokenStart = new int[8];
+	private int[] tokenEnd = new int[8];
+
+	//location names seen so far, in an open addressing hash table
+	private final NameTable names;
+
+	/**
+	 * Creates a parser that lower cases location names; the stream is read
+	 * but not closed by parse
+	 *
+	 * @param in
+	 *            map file contents
+	 */
+	public MapFileParser(InputStream in) {
+		this(in, true);
+	}
+
+	/**
+	 * Creates a parser; the stream is read but not closed by parse
+	 *
+	 * @param in
+	 *            map file contents
+	 * @param foldCase
+	 *            whether location names are lower cased, so that names
+	 *            differing only in letter case are the same location
+	 */
+	public MapFileParser(InputStream in, boolean foldCase) {
+		if (in == null) {
+			throw new IllegalArgumentException();
+		}
+		this.in = in;
+		this.names = new NameTable(foldCase);
+	}
+
+	/**
+	 * Parses the whole input
+	 *
+	 * @param handler
+	 *            receives the header, vertices and edges
+	 * @throws InvalidFileException
+	 *             if header line has < 3 columns or if any line that
+	 *             describes an edge has a different number of properties
+	 *             than the header or if any property value is not numeric
+	 *             or if an edge starts and ends at the same location; the
+	 *             message names the line
+	 * @throws IOException
+	 *             if the input cannot be read
+	 */
+	public void parse(Handler handler) throws InvalidFileException, IOException {
+		String[] properties = parseHeader();
+		handler.header(properties);
+		parseEdges(handler, properties.length);
+	}
+
+	/**
+	 * Parses the header line
+	 *
+	 * @return edge property names
+	 * @throws InvalidFileException
+	 *             if the input is empty or the header has < 3 columns
+	 */
+	String[] parseHeader() throws InvalidFileException, IOException {
+		if (!nextLine()) {
+			throw new InvalidFileException("Invalid file format.");
+		}
+		int count = tokenize(start, lineEnd);
+		if (count < 3) {
+			throw new InvalidFileException("Invalid file format.");
+		}
+		String[] properties = new String[count - 2];
+		for (int i = 2; i < count; i++) {
+			properties[i - 2] = new String(buffer, tokenStart[i],
+					tokenEnd[i] - tokenStart[i], StandardCharsets.UTF_8);
+		}
+		skipLine();
+		return properties;
+	}
+
+	/**
+	 * Parses edge lines up to the end of the input. Location ids and line
+	 * numbers continue from what this parser has seen so far.
+	 *
+	 * @param handler
+	 *            receives the vertices and edges
+	 * @param propertyCount
+	 *            number of property values every line must have
+	 */
+	void parseEdges(Handler handler, int propertyCount)
+			throws InvalidFileException, IOException {
+		int columns = propertyCount + 2;
+		double[] values = new double[propertyCount];
+		while (nextLine()) {
+			int count = tokenize(start, lineEnd);
+			if (count > 0) {
+				if (count != columns) {
+					throw error("Incorrect number of properties.");
+				}
+				for (int i = 2; i < count; i++) {
+					values[i - 2] = parseDouble(buffer, tokenStart[i], tokenEnd[i]);
+				}
+				int src = intern(0, handler);
+				int dest = intern(1, handler);
+				if (src == dest) {
+					throw error("Source and destination are the same location.");
+				}
+				handler.edge(src, dest, values);
+			}
+			skipLine();
+		}
+	}
+
+	/**
+	 * Moves start past the current line
+	 */
+	private void skipLine() {
+		start = lineEnd < end ? lineEnd + 1 : lineEnd;
+	}
+
+	/**
+	 * Number of lines read so far
+	 *
+	 * @return line count
+	 */
+	public long getLineCount() {
+		return lineNumber;
+	}
+
+	/**
+	 * Number of bytes read so far
+	 *
+	 * @return byte count
+	 */
+	public long getByteCount() {
+		return bytesRead;
+	}
+
+	/**
+	 * Makes sure a whole line starting at start is in the buffer and sets
+	 * lineEnd
+	 *
+	 * @return false at the end of the input
+	 */
+	private boolean nextLine() throws IOException {
+		int scanned = start;
+		while (true) {
+			for (int i = scanned; i < end; i++) {
+				if (buffer[i] == '\n') {
+					lineEnd = i;
+					lineNumber++;
+					return true;
+				}
+			}
+			if (eof) {
+				if (start < end) {
+					//last line without a newline
+					lineEnd = end;
+					lineNumber++;
+					return true;
+				}
+				return false;
+			}
+			scanned = end - start;
+			fill();
+		}
+	}
+
+	/**
+	 * Moves the unparsed bytes to the front of the buffer, growing it if a
+	 * line fills it completely, and reads more input
+	 */
+	private void fill() throws IOException {
+		int remaining = end - start;
+		if (remaining == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		} else if (start > 0) {
+			System.arraycopy(buffer, start, buffer, 0, remaining);
+		}
+		start = 0;
+		end = remaining;
+		int n = in.read(buffer, end, buffer.length - end);
+		if (n < 0) {
+			eof = true;
+		} else {
+			end += n;
+			bytesRead += n;
+		}
+	}
+
+	/**
+	 * Records the bounds of the whitespace separated tokens in a range
+	 *
+	 * @return number of tokens
+	 */
+	private int tokenize(int from, int to) {
+		int count = 0;
+		int i = from;
+		while (true) {
+			while (i < to && isSpace(buffer[i])) {
+				i++;
+			}
+			if (i == to) {
+				return count;
+			}
+			if (count == tokenStart.length) {
+				tokenStart = Arrays.copyOf(tokenStart, count * 2);
+				tokenEnd = Arrays.copyOf(tokenEnd, count * 2);
+			}
+			tokenStart[count] = i;
+			while (i < to && !isSpace(buffer[i])) {
+				i++;
+			}
+			tokenEnd[count++] = i;
+		}
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+	}
+
+	/**
+	 * Returns the id of the name in token i, reporting new names to the
+	 * handler
+	 */
+	private int intern(int token, Handler handler) {
+		int before = names.size();
+		int id = names.intern(buffer, tokenStart[token], tokenEnd[token]);
+		if (id == before) {
+			handler.vertex(id, names.getName(id));
+		}
+		return id;
+	}
+
+	/**
+	 * Exception for the current line
+	 */
+	private InvalidFileException error(String message) {
+		return new InvalidFileException(message, lineNumber);
+	}
+
+	/**
+	 * Parses a decimal number straight from bytes. Plain numbers such as
+	 * 12.34 or -7 are converted exactly without creating a String; anything
+	 * else (exponents, many digits, NaN, ...) goes through
+	 * Double.parseDouble so the accepted syntax stays the same.
+	 */
+	private double parseDouble(byte[] b, int from, int to)
+			throws InvalidFileException {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (b[i] == '-' || b[i] == '+')) {
+			negative = b[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0; //significant digits in mantissa
+		int scale = 0; //digits after the decimal point
+		boolean any = false;
+		boolean exact = true;
+		boolean point = false;
+		for (; i < to; i++) {
+			int d = b[i] - '0';
+			if (d >= 0 && d <= 9) {
+				any = true;
+				if (mantissa == 0 && d == 0) {
+					//leading zero
+				} else if (digits < 15) {
+					mantissa = mantissa * 10 + d;
+					digits++;
+				} else {
+					exact = false;
+					break;
+				}
+				if (point) {
+					scale++;
+				}
+			} else if (b[i] == '.' && !point) {
+				point = true;
+			} else {
+				exact = false;
+				break;
+			}
+		}
+		if (exact && any && scale < POWERS_OF_TEN.length) {
+			//both operands are exact doubles, so the quotient is correctly
+			//rounded, just like Double.parseDouble
+			double value = mantissa / POWERS_OF_TEN[scale];
+			return negative ? -value : value;
+		}
+		try {
+			return Double.parseDouble(new String(b, from, to - from,
+					StandardCharsets.UTF_8));
+		} catch (NumberFormatException e) {
+			throw error("All properties must be Doubles.");
+		}
+	}
+
+	/**
+	 * Interned location names, keyed by their UTF-8 bytes, lower cased if
+	 * letter case is folded
+	 */
+	static class NameTable {
+
+		private int[] table = new int[1 << 10]; //id + 1, 0 for a free slot
+		private int[] hashes = new int[1 << 9];
+		private byte[][] keys = new byte[1 << 9][];
+		private String[] strings = new String[1 << 9];
+		private int size;
+		private byte[] scratch = new byte[64];
+		private final boolean foldCase;
+
+		NameTable(boolean foldCase) {
+			this.foldCase = foldCase;
+		}
+
+		int size() {
+			return size;
+		}
+
+		String getName(int id) {
+			return strings[id];
+		}
+
+		/**
+		 * Returns the id of a name, adding it if it is new
+		 *
+		 * @param b
+		 *            buffer holding the name
+		 * @param from
+		 *            first byte of the name
+		 * @param to
+		 *            one past the last byte of the name
+		 * @return id of the name
+		 */
+		int intern(byte[] b, int from, int to) {
+			int length = to - from;
+			if (scratch.length < length) {
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+			}
+			//lower case ASCII in place; other names go through String
+			int hash = 0;
+			for (int i = 0; i < length; i++) {
+				byte c = b[from + i];
+				if (c < 0 && foldCase) {
+					return internSlow(new String(b, from, length,
+							StandardCharsets.UTF_8).toLowerCase());
+				}
+				if (foldCase && c >= 'A' && c <= 'Z') {
+					c += 'a' - 'A';
+				}
+				scratch[i] = c;
+				hash = 31 * hash + c;
+			}
+			return lookup(scratch, length, hash, null);
+		}
+
+		private int internSlow(String name) {
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			int hash = 0;
+			for (byte c : bytes) {
+				hash = 31 * hash + c;
+			}
+			return lookup(bytes, bytes.length, hash, name);
+		}
+
+		private int lookup(byte[] key, int length, int hash, String name) {
+			int mask = table.length - 1;
+			int slot = mix(hash) & mask;
+			while (table[slot] != 0) {
+				int id = table[slot] - 1;
+				if (hashes[id] == hash && equal(keys[id], key, length)) {
+					return id;
+				}
+				slot = (slot + 1) & mask;
+			}
+			int id = size++;
+			if (id == keys.length) {
+				hashes = Arrays.copyOf(hashes, id * 2);
+				keys = Arrays.copyOf(keys, id * 2);
+				strings = Arrays.copyOf(strings, id * 2);
+			}
+			hashes[id] = hash;
+			keys[id] = Arrays.copyOf(key, length);
+			strings[id] = name != null ? name
+					: new String(key, 0, length, StandardCharsets.UTF_8);
+			table[slot] = id + 1;
+			if (size * 2 > table.length) {
+				rehash();
+			}
+			return id;
+		}
+
+		private void rehash() {
+			table = new int[table.length * 2];
+			int mask = table.length - 1;
+			for (int id = 0; id < size; id++) {
+				int slot = mix(hashes[id]) & mask;
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = id + 1;
+			}
+		}
+
+		private static boolean equal(byte[] a, byte[] b, int length) {
+			if (a.length != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (a[i] != b[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static int mix(int h) {
+			h *= 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Process-wide instrumentation of route searches and map loading. Every
+ * search counts its settled vertices, relaxed edges and queue pushes and
+ * pops in local variables; only while metrics are enabled does it also
+ * read the clock and add them to the QueryMetrics of its kind. Disabled,
+ * a search pays for one volatile read.
+ *
+ * Metrics start disabled unless the system property mapapp.metrics is
+ * "true"; MapApp enables them.
+ */
+public final class Metrics {
+
+	private static volatile boolean enabled = Boolean.getBoolean(
+			"mapapp.metrics");
+
+	//one-directional Dijkstra searches of RouteSearch
+	static final QueryMetrics DIJKSTRA = new QueryMetrics("dijkstra");
+	//RouteSearch runs guided by a RouteHeuristic
+	static final QueryMetrics ASTAR = new QueryMetrics("astar");
+	static final QueryMetrics BIDIRECTIONAL = new QueryMetrics(
+			"bidirectional");
+	//queries on a ContractionHierarchy
+	static final QueryMetrics HIERARCHY = new QueryMetrics("hierarchy");
+	//multi-criteria searches of ParetoSearch, counting labels as vertices
+	static final QueryMetrics PARETO = new QueryMetrics("pareto");
+	//resource-constrained searches of ParetoSearch
+	static final QueryMetrics CONSTRAINED = new QueryMetrics("constrained");
+	//k shortest route queries, all spur searches of a query together
+	static final QueryMetrics KSHORTEST = new QueryMetrics("kshortest");
+	//budget-bounded searches of BoundedSearch
+	static final QueryMetrics ISOCHRONE = new QueryMetrics("isochrone");
+	static final IngestMetrics INGEST = new IngestMetrics();
+
+	private static final List<QueryMetrics> QUERIES = Collections
+			.unmodifiableList(Arrays.asList(DIJKSTRA, ASTAR, BIDIRECTIONAL,
+					HIERARCHY, PARETO, CONSTRAINED, KSHORTEST,
+					ISOCHRONE));
+
+	private Metrics() {
+	}
+
+	/**
+	 * Checks if searches and loads are recorded
+	 *
+	 * @return true if enabled
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Starts or stops recording searches and loads; the totals so far are
+	 * kept
+	 *
+	 * @param on
+	 *            true to record
+	 */
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	/**
+	 * Metrics of each kind of search
+	 *
+	 * @return dijkstra, astar, bidirectional, hierarchy, pareto,
+	 *         constrained, kshortest and isochrone metrics
+	 */
+	public static List<QueryMetrics> getQueryMetrics() {
+		return QUERIES;
+	}
+
+	/**
+	 * Metrics of map file loading
+	 *
+	 * @return ingest metrics
+	 */
+	public static IngestMetrics getIngestMetrics() {
+		return INGEST;
+	}
+
+	/**
+	 * Forgets everything recorded so far
+	 */
+	public static void reset() {
+		for (QueryMetrics metrics : QUERIES) {
+			metrics.reset();
+		}
+		INGEST.reset();
+	}
+
+	/**
+	 * Describes the ingest metrics and every kind of search that ran, one
+	 * per line
+	 *
+	 * @return report ending with a newline
+	 */
+	public static String report() {
+		StringBuilder report = new StringBuilder();
+		report.append(INGEST).append('\n');
+		for (QueryMetrics metrics : QUERIES) {
+			if (metrics.getQueryCount() > 0) {
+				report.append(metrics).append('\n');
+			}
+		}
+		return report.toString();
+	}
+}
@@ -3,8 +3,11 @@
  * The MinPriorityQueueADT interface describes a data structure that maintains a minimum
  * priority queue, supporting isEmpty(), removeMin(), and insert().
  * 
- * You must implement this interface in a file named FileLinePriorityQueue.java 
- * using an array-based heap.
+ * Implementations should use an array-based heap; see IndexedMinPriorityQueue
+ * for the vertex queues used by the shortest route search.
+ *
+ * @param <E>
+ *            Generic data type for the queued items
  */
 public interface MinPriorityQueueADT<E> {
     /**
@@ -17,14 +20,16 @@ public interface MinPriorityQueueADT<E> {
     public E removeMin() throws PriorityQueueEmptyException;
 
     /**
-     * Inserts a FileLine into the queue, making sure to keep the shape and
+     * Inserts an item into the queue, making sure to keep the shape and
      * order properties intact.
      *
-     * @param double
-     * @param Object
+     * @param priority
+     *            priority of the item, smaller comes out first
+     * @param item
+     *            item to be queued
      * @throws PriorityQueueFullException if the priority queue is full.
      */
-    public void insert(double a, Location b) throws PriorityQueueFullException;
+    public void insert(double priority, E item) throws PriorityQueueFullException;
 
     /**
      * Checks if the queue is empty.
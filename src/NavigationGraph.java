@@ -1,7 +1,14 @@
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * NavigationGraph implements GraphADT.  Some operations are adding and getting
@@ -10,9 +17,31 @@ import java.util.List;
  *
  * @authors: McKinley Sconiers-Hasan
  */
-public class NavigationGraph implements GraphADT<Location, Path> {
+public class NavigationGraph implements NavigationGraphADT {
 	private String[] edgePropertyNames;
 	private List<GraphNode<Location,Path>> graph;
+	//index of each vertex in graph, so lookups don't scan the list
+	private Map<Location,Integer> indexOf;
+	//vertices by lower case name, for case insensitive lookups
+	private Map<String,Location> locationsByFoldedName;
+	//kind of priority queue getShortestRoute runs on
+	private PriorityQueueType queueType;
+	//compact copy searched by getShortestRoute, null after a change
+	private CompactNavigationGraph snapshot;
+	//Path of each edge id in snapshot
+	private Path[] snapshotEdges;
+	//whether a graph handed out by freeze shares the edge values of 
+	//snapshot, so updates must not change them in place
+	private boolean snapshotFrozen;
+	//routes of earlier getShortestRoute calls, or null for no caching
+	private RouteCache routeCache;
+	//landmarks whose bounds the graph invalidates when it changes, or null
+	private Landmarks landmarks;
+	//strongly connected components kept up to date by addVertex and 
+	//addEdge once a query needed them, or null
+	private ComponentIndex components;
+	//whether a frozen copy uses components, so updates must copy it first
+	private boolean componentsShared;
 
 	/** NavigationGraph constructor
 	 * 
@@ -22,6 +51,25 @@ public class NavigationGraph implements GraphADT<Location, Path> {
 	public NavigationGraph(String[] edgePropertyNames) {
 		this.edgePropertyNames = edgePropertyNames;
 		graph = new ArrayList<GraphNode<Location,Path>>();
+		indexOf = new HashMap<Location,Integer>();
+		locationsByFoldedName = new HashMap<String,Location>();
+		queueType = PriorityQueueType.getDefault();
+	}
+
+	/**
+	 * Chooses the priority queue getShortestRoute runs on
+	 * 
+	 * @param queueType
+	 *            kind of vertex priority queue
+	 */
+	public void setPriorityQueueType(PriorityQueueType queueType) {
+		if(queueType == null) {
+			throw new IllegalArgumentException();
+		}
+		this.queueType = queueType;
+		if(snapshot != null) {
+			snapshot.setPriorityQueueType(queueType);
+		}
 	}
 
 	/**
@@ -36,13 +84,7 @@ public class NavigationGraph implements GraphADT<Location, Path> {
 			throw new IllegalArgumentException();
 		}
 		//get location regardless of letter case
-		for(int i = 0; i < graph.size(); i++) {
-			if(graph.get(i).getVertexData().getName().
-					equalsIgnoreCase(name)) {
-				return graph.get(i).getVertexData();
-			}
-		}
-		return null; 
+		return locationsByFoldedName.get(name.toLowerCase());
 	}
 
 	/**
@@ -104,7 +146,26 @@ public class NavigationGraph implements GraphADT<Location, Path> {
 		}
 		GraphNode<Location,Path> temp =
 				new GraphNode<Location,Path>(vertex,graph.size()); //create a vertex at "Location vertex"
+		//the first vertex with a given name keeps the index entries
+		if(!indexOf.containsKey(vertex)) {
+			indexOf.put(vertex, graph.size());
+		}
+		String folded = vertex.getName().toLowerCase();
+		if(!locationsByFoldedName.containsKey(folded)) {
+			locationsByFoldedName.put(folded, vertex);
+		}
 		graph.add(temp);//add the new vertex to the list of GraphNodes
+		ComponentIndex index = getComponentsForUpdate();
+		if(index != null) {
+			index.addVertex();//a component of its own until edges come
+		}
+		snapshot = null;//the compact copy is out of date
+		if(routeCache != null) {
+			routeCache.invalidate();
+		}
+		if(landmarks != null) {
+			landmarks.invalidate();//no tables for the new vertex
+		}
 	}
 
 	/**
@@ -125,14 +186,79 @@ public class NavigationGraph implements GraphADT<Location, Path> {
 			throw new IllegalArgumentException("Src: " + src + ", Dest: " + 
 					dest + ", Edge: " + edge);
 		}
-		//edge initially linked to null until proper vertex found
-		GraphNode<Location, Path> source = null; 
-		for(int i = 0; i < graph.size(); i++) {
-			if(src.equals(graph.get(i).getVertexData())) {
-				source = graph.get(i);
-			}
+		int s = getIndex(src);
+		int d = getIndex(dest);
+		ComponentIndex index = getComponentsForUpdate();
+		if(index != null && !index.addEdge(s, d) 
+				&& !absorb(index, d, index.getComponent(s), true)
+				&& !absorb(index, s, index.getComponent(d), false)) {
+			components = null;//built again by the next query
 		}
+		GraphNode<Location, Path> source = graph.get(s); 
 		source.addOutEdge(edge); //link edge to vertex
+		graph.get(d).addInEdge(edge);//and to the reverse index
+		snapshot = null;//the compact copy is out of date
+		if(routeCache != null) {
+			routeCache.invalidate();//cached routes may no longer be shortest
+		}
+		if(landmarks != null) {
+			landmarks.invalidate();//nor are bounds below every route
+		}
+	}
+
+	/**
+	 * Returns the component index to update for a new vertex or edge: the
+	 * one kept so far, or a copy of the one a query on the compact copy 
+	 * built, which a frozen graph may share. A kept index is copied too 
+	 * if a frozen graph uses it.
+	 * 
+	 * @return index of the graph before the change, or null
+	 */
+	private ComponentIndex getComponentsForUpdate() {
+		if(components == null && snapshot != null 
+				&& snapshot.peekComponentIndex() != null) {
+			components = snapshot.peekComponentIndex().copy();
+			componentsShared = false;
+		}
+		if(components != null && componentsShared) {
+			components = components.copy();
+			componentsShared = false;
+		}
+		return components;
+	}
+
+	/**
+	 * Lets a vertex that is a component of its own join component c when
+	 * a new edge closes a cycle between them
+	 * 
+	 * @param index
+	 *            component index to update
+	 * @param v
+	 *            vertex at one end of the new edge
+	 * @param c
+	 *            component at the other end
+	 * @param entered
+	 *            true if the new edge enters v, so v must have an edge to
+	 *            c, false if it leaves v, so v must have one from c
+	 * @return true if v joined c
+	 */
+	private boolean absorb(ComponentIndex index, int v, int c, 
+			boolean entered) {
+		GraphNode<Location,Path> node = graph.get(v);
+		List<Path> out = node.getOutEdges();
+		List<Path> in = node.getInEdges();
+		if((entered ? out : in).isEmpty()) {
+			return false;//the new edge closes no cycle
+		}
+		int[] neighbors = new int[out.size() + in.size()];
+		int i = 0;
+		for(Path path : out) {
+			neighbors[i++] = getIndex(path.getDestination());
+		}
+		for(Path path : in) {
+			neighbors[i++] = getIndex(path.getSource());
+		}
+		return index.absorb(v, c, neighbors);
 	}
 
 	/**
@@ -149,16 +275,13 @@ public class NavigationGraph implements GraphADT<Location, Path> {
 		if(src == dest || src == null || dest == null) {
 			throw new IllegalArgumentException();
 		}
-		Path exists = null;
-		GraphNode<Location, Path> source = null;
-		//vertex initially null until found
-		for(int i = 0; i < graph.size(); i++) {
-			if(src.equals(graph.get(i).getVertexData())) {
-				source = graph.get(i);
-			}
+		int index = getIndex(src);
+		if(index < 0) {
+			throw new IllegalArgumentException("Src: " + src);
 		}
+		Path exists = null;
 		//path between dest, src null until found
-		List<Path> list = source.getOutEdges();
+		List<Path> list = graph.get(index).getOutEdges();
 		for(int i = 0; i < list.size(); i++) {
 			if(dest.equals(list.get(i).getDestination())) {
 				exists = list.get(i);
@@ -178,13 +301,23 @@ public class NavigationGraph implements GraphADT<Location, Path> {
 		if(src == null || doesNotExist(src)) {
 			throw new IllegalArgumentException("Src: " + src);
 		}
-		List<Path> list = null; //list of outgoing edges of src 
-		for(int i = 0; i < graph.size(); i++) {
-			if(src.equals(graph.get(i).getVertexData())) {
-				list = graph.get(i).getOutEdges();
-			}
+		//return outgoing edges of src
+		return graph.get(getIndex(src)).getOutEdges();
+	}
+
+	/**
+	 * Returns the incoming edges of a vertex, in the order they were added
+	 * 
+	 * @param dest
+	 *          Destination vertex for which the incoming edges are required
+	 * @return List of edges ending at dest
+	 */
+	public List<Path> getInEdges(Location dest) {
+		if(dest == null || doesNotExist(dest)) {
+			throw new IllegalArgumentException("Dest: " + dest);
 		}
-		return list; //return outgoing edges or null if none
+		//return incoming edges of dest
+		return graph.get(getIndex(dest)).getInEdges();
 	}
 
 	/**
@@ -199,13 +332,8 @@ public class NavigationGraph implements GraphADT<Location, Path> {
 			throw new IllegalArgumentException("Vertex: " + null);
 		}
 
-		GraphNode<Location, Path> src = null;
-		//initialize src to vertex at "Location vertex"
-		for(int i = 0; i < graph.size(); i++) {
-			if(vertex.equals(graph.get(i).getVertexData())) {
-				src = graph.get(i);
-			}
-		}
+		//node at "Location vertex"
+		GraphNode<Location, Path> src = graph.get(getIndex(vertex));
 
 		List<Path> list = src.getOutEdges();//get all the out edges of vertex
 		//list to store all the destinations
@@ -219,7 +347,10 @@ public class NavigationGraph implements GraphADT<Location, Path> {
 
 	/**
 	 * Calculate the shortest route from src to dest vertex using
-	 * edgePropertyName and Dijkstra's algorithm.
+	 * edgePropertyName and Dijkstra's algorithm. The search runs on a
+	 * compact copy of the graph that is made on the first query after the
+	 * graph changed and reuses its scratch arrays between queries; it stops
+	 * as soon as dest is settled.
 	 * 
 	 * @param src
 	 *            Source vertex from which the shortest route is desired
@@ -227,158 +358,663 @@ public class NavigationGraph implements GraphADT<Location, Path> {
 	 *            Destination vertex to which the shortest route is desired
 	 * @param edgePropertyName
 	 *            edge property by which shortest route has to be calculated
-	 * @return List of edges that denote the shortest route by edgePropertyName
+	 * @return List of edges that denote the shortest route by edgePropertyName,
+	 * 			starting with the edge that enters dest, or an empty list
+	 * 			if there is no route
 	 */
 	public List<Path> getShortestRoute(Location src, Location dest, 
 			String edgePropertyName) {
+		return getShortestRoute(src, dest, edgePropertyName, null);
+	}
+
+	/**
+	 * Calculate the shortest route from src to dest vertex using
+	 * edgePropertyName and A* search guided by a heuristic, on the same
+	 * compact copy as the Dijkstra variant.
+	 * 
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param edgePropertyName
+	 *            edge property by which shortest route has to be calculated
+	 * @param heuristic
+	 *            lower bounds on the route length over edgePropertyName, 
+	 *            or null to run Dijkstra's algorithm
+	 * @return List of edges that denote the shortest route by edgePropertyName,
+	 * 			starting with the edge that enters dest, or an empty list
+	 * 			if there is no route
+	 * @see RouteHeuristic
+	 */
+	public List<Path> getShortestRoute(Location src, Location dest, 
+			String edgePropertyName, RouteHeuristic heuristic) {
 		if(src == null || dest == null || edgePropertyName == null 
 				|| src == dest) {
 			throw new IllegalArgumentException("Locations and "
 					+ "properties cannot be null");
 		}
 
+		int srcIndex = getIndex(src);//index of the incoming source node
+		int destIndex = getIndex(dest);//index of the incoming destination node
+		int t = getPropertyIndex(edgePropertyName);//index of the property
+
 		//if the edges or property don't exist
-		if(doesNotExist(src) || doesNotExist(dest) || 
-				propertyDoesNotExist(edgePropertyName)) {
+		if(srcIndex < 0 || destIndex < 0 || t < 0) {
 			throw new IllegalArgumentException("Src: " + src 
 					+ ", Dest: " + dest + ", Edge: " + edgePropertyName);
 		}
 
-		String[] propNames = getEdgePropertyNames();
-		int t = 0;//stores the index of the property name
+		RouteCache cache = routeCache;
+		if(cache == null) {
+			return getRoute(getSnapshot().findRoute(srcIndex, destIndex, t, 
+					heuristic));
+		}
+		int[] route = cache.get(srcIndex, destIndex, t);
+		if(route == null) {
+			long generation = cache.getGeneration();
+			route = getSnapshot().findRoute(srcIndex, destIndex, t, heuristic);
+			cache.put(srcIndex, destIndex, t, route, generation);
+		}
+		return getRoute(route);
+	}
 
-		//find the correct property name that matches
-		for(int i = 0; i < propNames.length; i++) {
-			if(propNames[i].equals(edgePropertyName)) {
-				t = i;
-			}
+	/**
+	 * Calculate the shortest route from src to dest vertex on a weighted
+	 * sum of the edge properties, e.g. 0.7 Time + 0.3 Cost, on the compact
+	 * copy of the graph. The sum is computed for each edge as the search
+	 * reaches it, so no edges are copied.
+	 * 
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param weights
+	 *            factor of each edge property in the order of 
+	 *            getEdgePropertyNames, none negative
+	 * @return List of edges that denote the shortest route by the weighted
+	 * 			sum, starting with the edge that enters dest, or an empty 
+	 * 			list if there is no route
+	 * @see CompactNavigationGraph#getShortestRoute(Location, Location, 
+	 * 			double[])
+	 */
+	public List<Path> getShortestRoute(Location src, Location dest, 
+			double[] weights) {
+		if(src == null || dest == null || src == dest) {
+			throw new IllegalArgumentException("Locations cannot be null");
+		}
+		int srcIndex = getIndex(src);//index of the source node
+		int destIndex = getIndex(dest);//index of the destination node
+		if(srcIndex < 0 || destIndex < 0) {
+			throw new IllegalArgumentException("Src: " + src 
+					+ ", Dest: " + dest);
 		}
+		return getRoute(getSnapshot().findRoute(srcIndex, destIndex, 
+				weights));
+	}
 
-		//array to keep track of which vertices have been visited
-		boolean[] visited = new boolean[graph.size()];
-		//to keep track of the total weight of each vertex
-		double[] totalWeight = new double[graph.size()];
-		//list to store predecessors
-		List<GraphNode<Location,Path>> pred = new ArrayList<GraphNode<
-				Location,Path>>();
+	/**
+	 * Calculate the shortest route from src to dest vertex on one edge
+	 * property among the routes whose totals on other properties stay
+	 * within bounds, e.g. the cheapest route that takes at most 30 
+	 * minutes, on the compact copy of the graph
+	 * 
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param edgePropertyName
+	 *            edge property by which shortest route has to be calculated
+	 * @param boundedPropertyNames
+	 *            other edge properties whose route totals are bounded
+	 * @param bounds
+	 *            largest allowed route total of each bounded property
+	 * @return List of edges of the route, starting with the edge that 
+	 * 			enters dest, or an empty list if no route stays within the 
+	 * 			bounds
+	 * @see CompactNavigationGraph#getShortestRoute(Location, Location, 
+	 * 			String, String[], double[])
+	 */
+	public List<Path> getShortestRoute(Location src, Location dest, 
+			String edgePropertyName, String[] boundedPropertyNames, 
+			double[] bounds) {
+		if(src == null || dest == null || src == dest) {
+			throw new IllegalArgumentException("Locations cannot be null");
+		}
+		int srcIndex = getIndex(src);//index of the source node
+		int destIndex = getIndex(dest);//index of the destination node
+		if(srcIndex < 0 || destIndex < 0) {
+			throw new IllegalArgumentException("Src: " + src 
+					+ ", Dest: " + dest);
+		}
+		CompactNavigationGraph compact = getSnapshot();
+		return getRoute(compact.findConstrainedRoute(srcIndex, destIndex, 
+				compact.getConstrainedProperties(edgePropertyName, 
+						boundedPropertyNames, bounds), bounds));
+	}
 
-		for(int i = 0; i < graph.size(); i++) {
-			visited[i]  = false;//initialize visited to false
-			totalWeight[i] = Double.MAX_VALUE;//set total weight to infinity
-			pred.add(null);//initialize all predecessors to null
+	/**
+	 * Puts a RouteCache in front of getShortestRoute. Cached routes are
+	 * dropped whenever a vertex or edge is added. The cache must not be
+	 * used by another graph.
+	 * 
+	 * @param cache
+	 *            empty or invalidated RouteCache, or null to stop caching
+	 */
+	public void setRouteCache(RouteCache cache) {
+		if(cache != null) {
+			cache.invalidate();//routes of another graph must not be served
+		}
+		this.routeCache = cache;
+	}
+
+	/**
+	 * Returns the RouteCache in front of getShortestRoute
+	 * 
+	 * @return cache with its counters, or null if routes are not cached
+	 */
+	public RouteCache getRouteCache() {
+		return routeCache;
+	}
+
+	/**
+	 * Attaches Landmarks whose heuristics are used on this graph, so that
+	 * changes to the graph mark them stale. A property goes stale when one
+	 * of its values goes down, every property when a vertex or edge is
+	 * added; its heuristic then estimates 0, which turns the search into
+	 * Dijkstra's algorithm, until new landmarks are built.
+	 * 
+	 * @param landmarks
+	 *            Landmarks computed for this graph, or null
+	 */
+	public void setLandmarks(Landmarks landmarks) {
+		this.landmarks = landmarks;
+	}
+
+	/**
+	 * Returns the Landmarks attached to this graph
+	 * 
+	 * @return landmarks, or null if none are attached
+	 */
+	public Landmarks getLandmarks() {
+		return landmarks;
+	}
+
+	/**
+	 * Calculate the shortest route from src to dest vertex using
+	 * edgePropertyName and bidirectional Dijkstra, which searches forward
+	 * from src over the outgoing edges and backward from dest over the
+	 * incoming edges until the two searches meet. The route has the same
+	 * length as the one of getShortestRoute; of several equally short
+	 * routes another one may be returned.
+	 * 
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param edgePropertyName
+	 *            edge property by which shortest route has to be calculated
+	 * @return List of edges that denote the shortest route by edgePropertyName,
+	 * 			starting with the edge that enters dest, or an empty list
+	 * 			if there is no route
+	 * @see BidirectionalSearch
+	 */
+	public List<Path> getShortestRouteBidirectional(Location src, 
+			Location dest, String edgePropertyName) {
+		if(src == null || dest == null || edgePropertyName == null 
+				|| src == dest) {
+			throw new IllegalArgumentException("Locations and "
+					+ "properties cannot be null");
 		}
 
 		int srcIndex = getIndex(src);//index of the incoming source node
 		int destIndex = getIndex(dest);//index of the incoming destination node
+		int t = getPropertyIndex(edgePropertyName);//index of the property
 
-		totalWeight[srcIndex] = 0;//set the total weight for the source to 0
+		//if the edges or property don't exist
+		if(srcIndex < 0 || destIndex < 0 || t < 0) {
+			throw new IllegalArgumentException("Src: " + src 
+					+ ", Dest: " + dest + ", Edge: " + edgePropertyName);
+		}
+		return getRoute(getSnapshot().findRouteBidirectional(srcIndex, 
+				destIndex, t));
+	}
 
-		VertexPriorityQueue pq = new VertexPriorityQueue();
+	/**
+	 * Looks up the Paths behind the edge ids of a route found on the
+	 * compact copy
+	 * 
+	 * @param edges
+	 *            edge ids of the compact copy
+	 * @return List of the Paths in the same order
+	 */
+	private List<Path> getRoute(int[] edges) {
+		List<Path> c = new ArrayList<Path>(edges.length);//the final path
+		for(int e : edges) {
+			c.add(snapshotEdges[e]);
+		}
+		return c;//return the list of Paths
+	}
 
-		try {
-			pq.insert(totalWeight[srcIndex], src);
-		} catch (PriorityQueueFullException e) {
-			e.printStackTrace();
+	/**
+	 * Calculates every Pareto-optimal route from src to dest over several
+	 * edge properties on the compact copy of the graph: each route is
+	 * shorter than every other one on at least one of the properties.
+	 * 
+	 * @param src
+	 *            Source vertex from which the routes are desired
+	 * @param dest
+	 *            Destination vertex to which the routes are desired
+	 * @param edgePropertyNames
+	 *            edge properties to minimize together, or null for all
+	 * @param epsilon
+	 *            0 for every Pareto-optimal route, or the relative 
+	 *            difference below which values count as equal
+	 * @return routes ordered by their value on the first property, each a 
+	 * 			List of edges starting with the edge that enters dest; an 
+	 * 			empty list if there is no route
+	 * @see CompactNavigationGraph#getParetoRoutes
+	 */
+	public List<List<Path>> getParetoRoutes(Location src, Location dest, 
+			String[] edgePropertyNames, double epsilon) {
+		if(src == null || dest == null || src == dest) {
+			throw new IllegalArgumentException("Locations cannot be null");
+		}
+		int srcIndex = getIndex(src);//index of the source node
+		int destIndex = getIndex(dest);//index of the destination node
+		if(srcIndex < 0 || destIndex < 0) {
+			throw new IllegalArgumentException("Src: " + src 
+					+ ", Dest: " + dest);
 		}
+		CompactNavigationGraph compact = getSnapshot();
+		List<List<Path>> routes = new ArrayList<List<Path>>();
+		for(int[] route : compact.findParetoRoutes(srcIndex, destIndex, 
+				compact.getPropertyIndexes(edgePropertyNames), epsilon)) {
+			routes.add(getRoute(route));
+		}
+		return routes;
+	}
+
+	/**
+	 * Calculates up to k shortest loopless routes from src to dest over
+	 * edgePropertyName on the compact copy of the graph, the shortest
+	 * route first and then its alternatives
+	 * 
+	 * @param src
+	 *            Source vertex from which the routes are desired
+	 * @param dest
+	 *            Destination vertex to which the routes are desired
+	 * @param edgePropertyName
+	 *            edge property by which routes are calculated
+	 * @param k
+	 *            largest number of routes, at least 1
+	 * @return routes shortest first, each a List of edges starting with 
+	 * 			the edge that enters dest; an empty list if there is no route
+	 * @see CompactNavigationGraph#getKShortestRoutes
+	 */
+	public List<List<Path>> getKShortestRoutes(Location src, Location dest, 
+			String edgePropertyName, int k) {
+		if(src == null || dest == null || edgePropertyName == null 
+				|| src == dest) {
+			throw new IllegalArgumentException("Locations and "
+					+ "properties cannot be null");
+		}
+		int srcIndex = getIndex(src);//index of the source node
+		int destIndex = getIndex(dest);//index of the destination node
+		int t = getPropertyIndex(edgePropertyName);//index of the property
+		if(srcIndex < 0 || destIndex < 0 || t < 0) {
+			throw new IllegalArgumentException("Src: " + src 
+					+ ", Dest: " + dest + ", Edge: " + edgePropertyName);
+		}
+		List<List<Path>> routes = new ArrayList<List<Path>>();
+		for(int[] route : getSnapshot().findKShortestRoutes(srcIndex, 
+				destIndex, t, k)) {
+			routes.add(getRoute(route));
+		}
+		return routes;
+	}
 
-		while(!pq.isEmpty()) {
+	/**
+	 * Runs Dijkstra's algorithm from src to every reachable vertex on the
+	 * compact copy of the graph and keeps the result. Routes read off the
+	 * tree consist of the Paths added to this graph.
+	 * 
+	 * @param src
+	 *            Location the routes start at
+	 * @param edgePropertyName
+	 *            edge property by which routes are calculated
+	 * @return immutable shortest path tree of src
+	 * @see CompactNavigationGraph#shortestPathTree
+	 */
+	public ShortestPathTree shortestPathTree(Location src, 
+			String edgePropertyName) {
+		if(src == null || edgePropertyName == null) {
+			throw new IllegalArgumentException("Locations and "
+					+ "properties cannot be null");
+		}
+		int srcIndex = getIndex(src);//index of the source node
+		int t = getPropertyIndex(edgePropertyName);//index of the property
+		if(srcIndex < 0 || t < 0) {
+			throw new IllegalArgumentException("Src: " + src 
+					+ ", Edge: " + edgePropertyName);
+		}
+		return getSnapshot().shortestPathTree(srcIndex, t, snapshotEdges);
+	}
 
-			GraphNode<Location, Path> currNode = null;
-			//make new array to store output from queue
-			Object[] min = new Object[2];
-			int w = 0;//index of current node
-			List<Location> b = getVertices();
+	/**
+	 * Finds every Location that can be reached from src within a budget on
+	 * edgePropertyName on the compact copy of the graph, without searching
+	 * past the budget
+	 * 
+	 * @param src
+	 *            Location the routes start at
+	 * @param edgePropertyName
+	 *            edge property the budget is on
+	 * @param budget
+	 *            largest route length, at least 0
+	 * @return reached Locations in order of distance, src included
+	 * @see CompactNavigationGraph#isochrone
+	 */
+	public Isochrone isochrone(Location src, String edgePropertyName, 
+			double budget) {
+		return getSnapshot().isochrone(src, edgePropertyName, budget);
+	}
 
-			try {
-				min = pq.removeMin();//remove min from the queue; 
-				w = getIndex((Location) min[1]);//get index of the Location
-				visited[w] = true;//set min Location to visited
-			} catch (PriorityQueueEmptyException e) {
-				System.out.println("Queue is empty.");
-			}
+	/**
+	 * Finds every Location that can be reached from any of several sources
+	 * within a budget on edgePropertyName on the compact copy of the graph,
+	 * searching from all of them at once
+	 * 
+	 * @param sources
+	 *            Locations the routes start at, at least one
+	 * @param edgePropertyName
+	 *            edge property the budget is on
+	 * @param budget
+	 *            largest route length, at least 0
+	 * @return reached Locations in order of distance from the nearest 
+	 * 			source, the sources included
+	 * @see CompactNavigationGraph#isochrone
+	 */
+	public Isochrone isochrone(List<Location> sources, 
+			String edgePropertyName, double budget) {
+		return getSnapshot().isochrone(sources, edgePropertyName, budget);
+	}
 
-			//the node that has the location that just came out of the queue
-			currNode = graph.get(w); 
+	/**
+	 * Calculates the shortest route lengths from every source to every
+	 * target on the compact copy of the graph, with one search per source
+	 * run in parallel, or bucket-based searches if contract was called for
+	 * edgePropertyName
+	 * 
+	 * @param sources
+	 *            Locations the routes start at
+	 * @param targets
+	 *            Locations the routes end at
+	 * @param edgePropertyName
+	 *            edge property by which route lengths are calculated
+	 * @return matrix[i][j] is the length of the shortest route from source
+	 *         i to target j, 0 if they are the same Location and infinity
+	 *         if there is no route
+	 * @see CompactNavigationGraph#distanceMatrix
+	 */
+	public double[][] distanceMatrix(List<Location> sources, 
+			List<Location> targets, String edgePropertyName) {
+		return getSnapshot().distanceMatrix(sources, targets, 
+				edgePropertyName);
+	}
 
-			Location curr = (Location) min[1];
-			//get the neighbors of vertex
-			List<Location> neighbors = getNeighbors(curr);
-			//to store all the names of the neighbors
-			List<String> names = new ArrayList<String>();
+	/**
+	 * Number of vertices the last getShortestRoute or
+	 * getShortestRouteBidirectional call settled, showing how much of the
+	 * graph it had to explore
+	 * 
+	 * @return settled vertex count, 0 if there was no query since the
+	 * 			graph last changed
+	 */
+	public int getLastSettledCount() {
+		return snapshot == null ? 0 : snapshot.getLastSettledCount();
+	}
 
-			for(int i = 0; i < neighbors.size(); i++) {//for each neighbor
-				//add that name to the list
-				names.add(neighbors.get(i).getName());
-			}
+	/**
+	 * Builds a ContractionHierarchy for an edge property on the compact
+	 * copy of the graph, so that getShortestRoute answers queries on that
+	 * property with it. The hierarchy is dropped when the graph changes.
+	 * 
+	 * @param edgePropertyName
+	 *            edge property to contract for
+	 * @return the hierarchy, e.g. to be written to a file
+	 */
+	public ContractionHierarchy contract(String edgePropertyName) {
+		return getSnapshot().contract(edgePropertyName);
+	}
 
-			Collections.sort(names);//sort the names in alphabetical order
+	/**
+	 * Reads a ContractionHierarchy written for this graph and uses it like
+	 * one built by contract
+	 * 
+	 * @param path
+	 *            file written by ContractionHierarchy.write
+	 * @return the hierarchy
+	 * @throws FileNotFoundException
+	 *             if path is not found
+	 * @throws InvalidFileException
+	 *             if the file is no hierarchy of a graph like this one
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public ContractionHierarchy readContractionHierarchy(String path) 
+			throws FileNotFoundException, InvalidFileException, IOException {
+		ContractionHierarchy hierarchy = ContractionHierarchy.read(path, 
+				getSnapshot());
+		snapshot.setContractionHierarchy(hierarchy);
+		return hierarchy;
+	}
 
-			//to check every Location in neighbors
-			for(int j = 0; j < neighbors.size(); j++) {
-				int index = 0;
+	/**
+	 * Freezes the current state of the graph. The returned graph shares 
+	 * the vertex, edge and edge value arrays of the compact copy searches 
+	 * run on, but none of its other state: it gets its own Contraction 
+	 * Hierarchies, priority queue type and search scratch space. Nothing 
+	 * this graph does later reaches it; new vertices and edges go to a 
+	 * new compact copy, new edge values to copied columns, and contract, 
+	 * readContractionHierarchy, setPriorityQueueType and queries only 
+	 * touch the compact copy of this graph. Concurrent queries on the 
+	 * frozen graph go through a RouteQueryExecutor.
+	 * 
+	 * @return immutable CompactNavigationGraph with the same vertex ids
+	 * @see RouteQueryExecutor
+	 */
+	public CompactNavigationGraph freeze() {
+		CompactNavigationGraph frozen = getSnapshot().copyForFreeze();
+		snapshotFrozen = true;
+		componentsShared = components != null;
+		return frozen;
+	}
 
-				//to check every Location in graph
-				List<Location> locations = getVertices();
-				for(int i = 0; i < locations.size(); i++) {
-					//get the index for the neighbor
-					if(neighbors.get(j).equals(locations.get(i))) {
-						index = i;
-					}
+	/**
+	 * Changes one property of the edges from src to dest in place, e.g. a
+	 * new travel time. The compact copy, cached routes and Contraction
+	 * Hierarchies are repaired instead of rebuilt: only the changed values
+	 * are written, only cached routes the change can affect are dropped
+	 * and a hierarchy of the property is repaired before its next query,
+	 * once for any number of updates. A graph handed out by freeze does
+	 * not change.
+	 * 
+	 * @param src
+	 *            source vertex of the edge
+	 * @param dest
+	 *            destination vertex of the edge
+	 * @param edgePropertyName
+	 *            property to be changed
+	 * @param value
+	 *            new property value
+	 * @throws IllegalArgumentException
+	 *             if there is no edge from src to dest or no such property
+	 * @see #applyEdgeUpdates
+	 */
+	public void updateEdge(Location src, Location dest, 
+			String edgePropertyName, double value) {
+		if(src == null || dest == null || edgePropertyName == null) {
+			throw new IllegalArgumentException("Locations and "
+					+ "properties cannot be null");
+		}
+		int srcIndex = getIndex(src);
+		int destIndex = getIndex(dest);
+		int t = getPropertyIndex(edgePropertyName);
+		if(srcIndex < 0 || destIndex < 0 || t < 0 
+				|| getEdgeIfExists(src, dest) == null) {
+			throw new IllegalArgumentException("Src: " + src 
+					+ ", Dest: " + dest + ", Edge: " + edgePropertyName);
+		}
+		applyUpdates(1, new int[] {srcIndex}, new int[] {destIndex}, 
+				new int[] {t}, new double[] {value});
+	}
+
+	/**
+	 * Reads a delta file in the format of a map file and changes the edges
+	 * it lists like updateEdge. The header names the edge properties the
+	 * file gives new values for, which may be any of the properties of the
+	 * graph; every other line holds source, destination and those values
+	 * for an existing edge. Location names must match in letter case too.
+	 * Nothing is changed if any line is invalid, and parsing stops at the
+	 * first invalid line.
+	 * 
+	 * @param deltaFilepath
+	 *            path to the delta file
+	 * @return number of edge lines read
+	 * @throws FileNotFoundException
+	 *             if deltaFilepath is not found
+	 * @throws InvalidFileException
+	 *             if the file is not in map file format, names a property
+	 *             the graph does not have or an edge it does not have; the
+	 *             message names the offending line
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public int applyEdgeUpdates(String deltaFilepath) 
+			throws FileNotFoundException, InvalidFileException, IOException {
+		InputStream in = new FileInputStream(deltaFilepath);
+		final MapFileParser parser = new MapFileParser(in, false);
+		DeltaHandler delta = new DeltaHandler(parser);
+		try {
+			parser.parse(delta);
+		} finally {
+			in.close();
+		}
+		applyUpdates(delta.count, delta.srcs, delta.dests, delta.columns, 
+				delta.values);
+		return delta.lines;
+	}
+
+	/**
+	 * Writes new edge values to the Paths and the compact copy, then
+	 * repairs the hierarchies and the route cache
+	 * 
+	 * @param count
+	 *            number of changed edges
+	 * @param srcs
+	 *            source vertex index of each change
+	 * @param dests
+	 *            destination vertex index of each change
+	 * @param columns
+	 *            index of each property the changes give values for
+	 * @param values
+	 *            new values, columns.length per change
+	 */
+	private void applyUpdates(int count, int[] srcs, int[] dests, 
+			int[] columns, double[] values) {
+		CompactNavigationGraph previous = snapshot;
+		CompactNavigationGraph updated = previous;
+		if(previous != null && snapshotFrozen) {
+			updated = previous.copyForUpdate();//leave the frozen one alone
+		}
+		boolean[] changed = new boolean[edgePropertyNames.length];
+		BitSet[] decreased = new BitSet[edgePropertyNames.length];
+		BitSet[] increased = new BitSet[edgePropertyNames.length];
+		for(int i = 0; i < count; i++) {
+			List<Path> out = graph.get(srcs[i]).getOutEdges();
+			Location dest = graph.get(dests[i]).getVertexData();
+			//edges of a vertex keep their order in the compact copy, whose
+			//targets are found without touching the Paths
+			int begin = updated == null ? 0 : updated.edgesBegin(srcs[i]);
+			int end = updated == null ? out.size() 
+					: updated.edgesEnd(srcs[i]) - begin;
+			for(int k = 0; k < end; k++) {
+				if(updated != null ? updated.edgeTarget(begin + k) != dests[i]
+						: !dest.equals(out.get(k).getDestination())) {
+					continue;
 				}
-				//this neighbor has not been visited
-				if(visited[index] == false) {
-					//find out if total weight can be reduced
-					Path d = null;
-					Location successor = locations.get(index);//successor
-					//get the out edges for curr
-					List<Path> edges = getOutEdges(curr);
-
-					for(int i = 0; i < edges.size(); i++) {
-						//if the destination equals the neighbor
-						if(edges.get(i).getDestination().equals
-								(locations.get(index))) {
-							d = edges.get(i);//we have the correct Path
-						}
+				Path path = out.get(k);
+				for(int c = 0; c < columns.length; c++) {
+					int t = columns[c];
+					double value = values[i * columns.length + c];
+					double old = path.getProperties().get(t);
+					if(old == value) {
+						continue;
+					}
+					path.setProperty(t, value);
+					changed[t] = true;
+					if(value < old && landmarks != null) {
+						landmarks.invalidate(t);//bounds may be too high now
+					}
+					if(updated == null) {
+						continue;
 					}
-					
-					//get the properties for the edge we want
-					List<Double> prop = d.getProperties();
-					//get the value of the property that matches
-					Double y = prop.get(t);
-
-					//if successor total weight > curr's total weight + edge 
-					//weight from curr to successor
-					if(totalWeight[index] > totalWeight[w] + y) {
-						//update the total weight
-						totalWeight[index] = totalWeight[w] + y;
-						pred.remove(index);//remove the current predecessor
-						//replace it with the current node
-						pred.add(index, currNode);
-
-						try {
-							pq.insert(totalWeight[index], successor);//update 		
-						} catch (PriorityQueueFullException e) {
-							System.out.println("Queue is full.");
+					updated.setEdgeWeight(t, begin + k, value);
+					if(value < old) {
+						if(decreased[t] == null) {
+							decreased[t] = new BitSet();
 						}
+						decreased[t].set(begin + k);
+					} else {
+						if(increased[t] == null) {
+							increased[t] = new BitSet();
+						}
+						increased[t].set(begin + k);
 					}
 				}
 			}
 		}
+		if(updated != null) {
+			updated.updateHierarchies(previous, decreased, increased);
+			snapshot = updated;
+			snapshotFrozen = false;
+		}
+		if(routeCache != null) {
+			for(int t = 0; t < changed.length; t++) {
+				if(changed[t]) {
+					//without a compact copy no routes can be cached
+					//any route may be shorter after a decrease
+					routeCache.invalidate(t, decreased[t] != null ? null 
+							: increased[t]);
+				}
+			}
+		}
+	}
 
-		//find the path given the current list of predecessors 
-		List<Path> c = new ArrayList<Path>();//list to store the final path
-		Location s = dest;
-		int q = destIndex;
-
-		while(!s.equals(src)) {
-			Location pre = pred.get(q).getVertexData();//get the predecessor
-			//get edge and add it to the list of edges
-			c.add(getEdgeIfExists(pre, s));
-			s = pre;//make the new current node the predecessor
-			q = getIndex(s);//get the index of the new current node
-
+	/**
+	 * Returns the compact copy of the graph used for searching, making a
+	 * new one if the graph changed since the last copy
+	 * 
+	 * @return CompactNavigationGraph with the same vertex ids
+	 */
+	private CompactNavigationGraph getSnapshot() {
+		if(snapshot == null) {
+			snapshot = new CompactNavigationGraph(this);
+			snapshot.setPriorityQueueType(queueType);
+			snapshotFrozen = false;
+			if(components != null) {
+				snapshot.setComponentIndex(components);
+			}
+			//remember the Path behind every edge id of the copy
+			snapshotEdges = new Path[snapshot.getEdgeCount()];
+			int e = 0;
+			for(int i = 0; i < graph.size(); i++) {
+				for(Path path : graph.get(i).getOutEdges()) {
+					snapshotEdges[e++] = path;
+				}
+			}
 		}
-		return c;//return the list of Paths
+		return snapshot;
 	}
 	
 	/**Returns the index of location x in the graph or -1 if not found
@@ -388,13 +1024,8 @@ public class NavigationGraph implements GraphADT<Location, Path> {
 	 * 		
 	 * */
 	private int getIndex(Location x) {
-		//look through all vertices to see if one has location "x"
-		for(int i = 0; i < graph.size(); i++) {
-			if(x.equals(graph.get(i).getVertexData())) {
-				return i;
-			}
-		}
-		return -1;
+		Integer index = indexOf.get(x);
+		return index == null ? -1 : index;
 	}
 
 	/**Returns a boolean depending if a vertex exists
@@ -404,29 +1035,33 @@ public class NavigationGraph implements GraphADT<Location, Path> {
 	 * 
 	 * */
 	private boolean doesNotExist(Location x) {
-		//look through all vertices to see if one matches "x"
-		for(int i = 0; i < graph.size(); i++) {
-			if(graph.get(i).getVertexData().equals(x)) {
-				return false;
-			}
-		}
-		return true;
+		return !indexOf.containsKey(x);
 	}
-	/**Returns a boolean depending if a propery exists
+	/**Returns the index of a property name or -1 if not found
 	 * 
 	 * @param String name
-	 * 			name we are checking if exists
-	 * @return boolean 
+	 * 			name we are looking for
+	 * @return int
 	 * 
 	 */
-	private boolean propertyDoesNotExist(String name) {
+	private int getPropertyIndex(String name) {
 		//look through all properties to see if one matches "name"
 		for(int i = 0; i < edgePropertyNames.length; i++) {
 			if(edgePropertyNames[i].equals(name)) {
-				return false;
+				return i;
 			}
 		}
-		return true;
+		return -1;
+	}
+
+	/**
+	 * Getter method for the vertex nodes, used by CompactNavigationGraph to
+	 * copy the graph without going through the Location lookups
+	 * 
+	 * @return List of GraphNodes ordered by id
+	 */
+	List<GraphNode<Location, Path>> getNodes() {
+		return graph;
 	}
 
 	/**
@@ -442,4 +1077,81 @@ public class NavigationGraph implements GraphADT<Location, Path> {
 		}
 		return list;
 	}
+
+	/**
+	 * Collects the changes of a delta file as vertex and property indexes,
+	 * rejecting the file at the first line that does not match the graph
+	 */
+	private class DeltaHandler implements MapFileParser.Handler {
+
+		private final MapFileParser parser;
+		//vertex index of each location id of the file, -1 if unknown
+		private int[] vertexOf = new int[16];
+		//property index of each value column
+		private int[] columns;
+		private int[] srcs = new int[16];
+		private int[] dests = new int[16];
+		private double[] values;
+		private int count;
+		private int lines;
+
+		DeltaHandler(MapFileParser parser) {
+			this.parser = parser;
+		}
+
+		public void header(String[] propertyNames) 
+				throws InvalidFileException {
+			columns = new int[propertyNames.length];
+			values = new double[16 * columns.length];
+			for(int i = 0; i < columns.length; i++) {
+				columns[i] = getPropertyIndex(propertyNames[i]);
+				if(columns[i] < 0) {
+					throw new InvalidFileException("Unknown edge property: " 
+							+ propertyNames[i]);
+				}
+			}
+		}
+
+		private boolean hasEdge(int s, int d) {
+			if(snapshot != null) {
+				for(int e = snapshot.edgesBegin(s); e < snapshot.edgesEnd(s); e++) {
+					if(snapshot.edgeTarget(e) == d) {
+						return true;
+					}
+				}
+				return false;
+			}
+			return getEdgeIfExists(graph.get(s).getVertexData(), 
+					graph.get(d).getVertexData()) != null;
+		}
+
+		public void vertex(int id, String name) {
+			if(id == vertexOf.length) {
+				vertexOf = Arrays.copyOf(vertexOf, 2 * id);
+			}
+			//exact names only, unlike getLocationByName
+			vertexOf[id] = getIndex(new Location(name));
+		}
+
+		public void edge(int src, int dest, double[] lineValues) 
+				throws InvalidFileException {
+			lines++;
+			int s = vertexOf[src];
+			int d = vertexOf[dest];
+			if(s < 0 || d < 0 || !hasEdge(s, d)) {
+				throw new InvalidFileException("No such edge", 
+						parser.getLineCount());
+			}
+			if(count == srcs.length) {
+				srcs = Arrays.copyOf(srcs, 2 * count);
+				dests = Arrays.copyOf(dests, 2 * count);
+				values = Arrays.copyOf(values, 2 * count * columns.length);
+			}
+			srcs[count] = s;
+			dests[count] = d;
+			System.arraycopy(lineValues, 0, values, count * columns.length, 
+					columns.length);
+			count++;
+		}
+	}
 }
@@ -0,0 +1,210 @@
+import java.util.List;
+
+/**
+ * Interface for a graph of Locations connected by Paths. Both the mutable
+ * NavigationGraph and the frozen CompactNavigationGraph implement it, so the
+ * MapApp driver can run on either one.
+ *
+ */
+public interface NavigationGraphADT extends GraphADT<Location, Path> {
+
+	/**
+	 * Returns a Location object given its name, ignoring letter case
+	 *
+	 * @param name
+	 *            name of the location
+	 * @return Location object or null if there is no such location
+	 */
+	public Location getLocationByName(String name);
+
+	/**
+	 * Calculate the shortest route from src to dest vertex using
+	 * edgePropertyName and A* search guided by a heuristic
+	 *
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param edgePropertyName
+	 *            edge property by which shortest route has to be calculated
+	 * @param heuristic
+	 *            lower bounds on the route length over edgePropertyName,
+	 *            or null to run Dijkstra's algorithm
+	 * @return List of edges that denote the shortest route, starting with
+	 *         the edge that enters dest, or an empty list if there is none
+	 */
+	public List<Path> getShortestRoute(Location src, Location dest,
+			String edgePropertyName, RouteHeuristic heuristic);
+
+	/**
+	 * Calculate the shortest route from src to dest vertex using
+	 * edgePropertyName and bidirectional Dijkstra
+	 *
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param edgePropertyName
+	 *            edge property by which shortest route has to be calculated
+	 * @return List of edges that denote a shortest route, starting with the
+	 *         edge that enters dest, or an empty list if there is none
+	 */
+	public List<Path> getShortestRouteBidirectional(Location src,
+			Location dest, String edgePropertyName);
+
+	/**
+	 * Calculate the shortest route from src to dest vertex on a weighted
+	 * sum of the edge properties
+	 *
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param weights
+	 *            factor of each edge property in the order of
+	 *            getEdgePropertyNames, none negative
+	 * @return List of edges that denote the shortest route, starting with
+	 *         the edge that enters dest, or an empty list if there is none
+	 */
+	public List<Path> getShortestRoute(Location src, Location dest,
+			double[] weights);
+
+	/**
+	 * Calculate the shortest route from src to dest vertex on one edge
+	 * property among the routes whose totals on other properties stay
+	 * within bounds
+	 *
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param edgePropertyName
+	 *            edge property by which shortest route has to be calculated
+	 * @param boundedPropertyNames
+	 *            other edge properties whose route totals are bounded
+	 * @param bounds
+	 *            largest allowed route total of each bounded property
+	 * @return List of edges of the route, starting with the edge that
+	 *         enters dest, or an empty list if no route stays within the
+	 *         bounds
+	 */
+	public List<Path> getShortestRoute(Location src, Location dest,
+			String edgePropertyName, String[] boundedPropertyNames,
+			double[] bounds);
+
+	/**
+	 * Calculates every Pareto-optimal route from src to dest over several
+	 * edge properties, showing the trade-offs between them
+	 *
+	 * @param src
+	 *            Source vertex from which the routes are desired
+	 * @param dest
+	 *            Destination vertex to which the routes are desired
+	 * @param edgePropertyNames
+	 *            edge properties to minimize together, or null for all
+	 * @param epsilon
+	 *            0 for every Pareto-optimal route, or the relative
+	 *            difference below which values count as equal
+	 * @return routes ordered by their value on the first property, each
+	 *         starting with the edge that enters dest; an empty list if
+	 *         there is no route
+	 */
+	public List<List<Path>> getParetoRoutes(Location src, Location dest,
+			String[] edgePropertyNames, double epsilon);
+
+	/**
+	 * Calculates up to k shortest loopless routes from src to dest over
+	 * edgePropertyName, the shortest route first and then its alternatives
+	 *
+	 * @param src
+	 *            Source vertex from which the routes are desired
+	 * @param dest
+	 *            Destination vertex to which the routes are desired
+	 * @param edgePropertyName
+	 *            edge property by which routes are calculated
+	 * @param k
+	 *            largest number of routes, at least 1
+	 * @return routes shortest first, each starting with the edge that
+	 *         enters dest; an empty list if there is no route
+	 */
+	public List<List<Path>> getKShortestRoutes(Location src, Location dest,
+			String edgePropertyName, int k);
+
+	/**
+	 * Calculates the shortest routes from src to every Location over
+	 * edgePropertyName in one search
+	 *
+	 * @param src
+	 *            Location the routes start at
+	 * @param edgePropertyName
+	 *            edge property by which routes are calculated
+	 * @return immutable shortest path tree of src
+	 */
+	public ShortestPathTree shortestPathTree(Location src,
+			String edgePropertyName);
+
+	/**
+	 * Finds every Location that can be reached from src within a budget on
+	 * edgePropertyName, with the length of the shortest route to each
+	 *
+	 * @param src
+	 *            Location the routes start at
+	 * @param edgePropertyName
+	 *            edge property the budget is on
+	 * @param budget
+	 *            largest route length, at least 0
+	 * @return reached Locations in order of distance
+	 */
+	public Isochrone isochrone(Location src, String edgePropertyName,
+			double budget);
+
+	/**
+	 * Finds every Location that can be reached from any of several sources
+	 * within a budget on edgePropertyName, searching from all at once
+	 *
+	 * @param sources
+	 *            Locations the routes start at, at least one
+	 * @param edgePropertyName
+	 *            edge property the budget is on
+	 * @param budget
+	 *            largest route length, at least 0
+	 * @return reached Locations in order of distance from the nearest
+	 *         source
+	 */
+	public Isochrone isochrone(List<Location> sources,
+			String edgePropertyName, double budget);
+
+	/**
+	 * Calculates the shortest route lengths from every source to every
+	 * target over edgePropertyName, sharing work between the sources
+	 *
+	 * @param sources
+	 *            Locations the routes start at
+	 * @param targets
+	 *            Locations the routes end at
+	 * @param edgePropertyName
+	 *            edge property by which route lengths are calculated
+	 * @return matrix[i][j] is the length of the shortest route from source
+	 *         i to target j, 0 if they are the same Location and infinity
+	 *         if there is no route
+	 */
+	public double[][] distanceMatrix(List<Location> sources,
+			List<Location> targets, String edgePropertyName);
+
+	/**
+	 * Number of vertices the last getShortestRoute or
+	 * getShortestRouteBidirectional call settled
+	 *
+	 * @return settled vertex count
+	 */
+	public int getLastSettledCount();
+
+	/**
+	 * Immutable copy of the current state of the graph that can be shared
+	 * between threads and queried through a RouteQueryExecutor
+	 *
+	 * @return frozen graph with the same vertex ids
+	 */
+	public CompactNavigationGraph freeze();
+
+}
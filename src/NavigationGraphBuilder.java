@@ -0,0 +1,49 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MapFileParser.Handler that builds a NavigationGraph as the file is read:
+ * every new name becomes a Location vertex and every line a Path.
+ *
+ */
+public class NavigationGraphBuilder implements MapFileParser.Handler {
+
+	private NavigationGraph graph;
+	//Location of each parser id
+	private final List<Location> locations = new ArrayList<Location>();
+
+	/**
+	 * Creates the graph with the edge property names from the header
+	 */
+	public void header(String[] propertyNames) {
+		graph = new NavigationGraph(propertyNames);
+	}
+
+	/**
+	 * Adds a vertex for a newly seen location name
+	 */
+	public void vertex(int id, String name) {
+		Location location = new Location(name);
+		locations.add(location);
+		graph.addVertex(location);
+	}
+
+	/**
+	 * Adds the edge of one line
+	 */
+	public void edge(int src, int dest, double[] properties) {
+		Location source = locations.get(src);
+		Location destination = locations.get(dest);
+		graph.addEdge(source, destination,
+				new Path(source, destination, properties));
+	}
+
+	/**
+	 * Returns the graph built so far
+	 *
+	 * @return NavigationGraph, null before the header was read
+	 */
+	public NavigationGraph getGraph() {
+		return graph;
+	}
+}
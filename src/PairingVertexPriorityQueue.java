@@ -0,0 +1,228 @@
+
+import java.util.Arrays;
+
+/**
+ * Indexed pairing heap of vertex ids. It supports the same operations as
+ * VertexPriorityQueue, but insert and decreaseKey are O(1) and removeMin is
+ * O(log n) amortized, which can pay off on graphs where most relaxations
+ * lower the key of an already queued vertex.
+ *
+ * The heap is a forest of vertex ids linked through arrays: child holds
+ * the first child of a vertex, sibling the next sibling and prev the left
+ * sibling, or the parent for a first child. A vertex is queued when its
+ * stamp equals the current generation, so clear() is O(1).
+ */
+public class PairingVertexPriorityQueue implements IndexedMinPriorityQueue {
+
+	private final int[] child;
+	private final int[] sibling;
+	private final int[] prev;
+	private final double[] priority;
+	private final int[] stamp; //generation in which each vertex was queued
+	private final int[] pairs; //scratch space for removeMin
+	private int generation;
+	private int root; //vertex with the minimum priority, -1 if empty
+	private int num; //number of vertices in queue
+
+	/**
+	 * Creates a pairing heap for vertex ids 0 to capacity - 1
+	 *
+	 * @param capacity
+	 *            number of vertices in the graph
+	 */
+	public PairingVertexPriorityQueue(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity: " + capacity);
+		}
+		child = new int[capacity];
+		sibling = new int[capacity];
+		prev = new int[capacity];
+		priority = new double[capacity];
+		stamp = new int[capacity];
+		pairs = new int[capacity];
+		generation = 1;
+		root = -1;
+		num = 0;
+	}
+
+	/** Removes and returns vertex with the minimum value */
+	public Integer removeMin() throws PriorityQueueEmptyException {
+		return removeMinVertex();
+	}
+
+	/** Returns vertex with the minimum value without removing it */
+	public int peekMinVertex() throws PriorityQueueEmptyException {
+		if (num == 0) {
+			throw new PriorityQueueEmptyException();
+		}
+		return root;
+	}
+
+	/** Removes and returns vertex with the minimum value */
+	public int removeMinVertex() throws PriorityQueueEmptyException {
+		if (num == 0) {
+			throw new PriorityQueueEmptyException();
+		}
+		int min = root;
+		stamp[min] = 0;
+		num--;
+
+		//first pass: meld the children of min in pairs, left to right
+		int count = 0;
+		int c = child[min];
+		while (c != -1) {
+			int next = sibling[c];
+			if (next == -1) {
+				pairs[count++] = detach(c);
+				break;
+			}
+			int after = sibling[next];
+			pairs[count++] = meld(detach(c), detach(next));
+			c = after;
+		}
+		//second pass: meld the pairs right to left
+		root = -1;
+		for (int i = count - 1; i >= 0; i--) {
+			root = root == -1 ? pairs[i] : meld(pairs[i], root);
+		}
+		return min;
+	}
+
+	/**Inserts a vertex into queue.
+	 *
+	 * parameter: double a = priority value of vertex
+	 * parameter: Integer b = id of vertex
+	 */
+	public void insert(double a, Integer b) throws PriorityQueueFullException {
+		insert(b.intValue(), a);
+	}
+
+	/**Inserts a vertex into queue.
+	 *
+	 * parameter: int vertex = id of vertex
+	 * parameter: double key = priority value of vertex
+	 */
+	public void insert(int vertex, double key) throws PriorityQueueFullException {
+		if (vertex < 0 || vertex >= child.length || stamp[vertex] == generation) {
+			throw new IllegalArgumentException("Vertex: " + vertex);
+		}
+		if (num == child.length) {
+			throw new PriorityQueueFullException();
+		}
+		stamp[vertex] = generation;
+		priority[vertex] = key;
+		child[vertex] = -1;
+		sibling[vertex] = -1;
+		prev[vertex] = -1;
+		root = root == -1 ? vertex : meld(root, vertex);
+		num++;
+	}
+
+	/**Lowers the priority of a queued vertex.
+	 *
+	 * parameter: int vertex = id of vertex
+	 * parameter: double key = new priority value of vertex
+	 */
+	public void decreaseKey(int vertex, double key) {
+		if (!contains(vertex) || key > priority[vertex]) {
+			throw new IllegalArgumentException("Vertex: " + vertex
+					+ ", Priority: " + key);
+		}
+		priority[vertex] = key;
+		if (vertex != root) {
+			//cut the subtree rooted at vertex and meld it with the root
+			root = meld(root, detach(vertex));
+		}
+	}
+
+	/**Returns true if the vertex is in the queue*/
+	public boolean contains(int vertex) {
+		return vertex >= 0 && vertex < stamp.length
+				&& stamp[vertex] == generation;
+	}
+
+	/**Returns the priority of a queued vertex*/
+	public double getPriority(int vertex) {
+		if (!contains(vertex)) {
+			throw new IllegalArgumentException("Vertex: " + vertex);
+		}
+		return priority[vertex];
+	}
+
+	/**Returns true of false based on statement saying queue is empty*/
+	public boolean isEmpty() {
+		return num == 0;
+	}
+
+	/**Returns number of vertices in queue*/
+	public int size() {
+		return num;
+	}
+
+	/**Returns the largest vertex id + 1 the queue accepts*/
+	public int capacity() {
+		return child.length;
+	}
+
+	/**Removes every vertex from the queue*/
+	public void clear() {
+		generation++;
+		if (generation == Integer.MAX_VALUE) {
+			//start over before the stamps wrap around
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+		root = -1;
+		num = 0;
+	}
+
+	/**
+	 * Unlinks a vertex, with its subtree, from its parent and siblings
+	 *
+	 * @param v
+	 *            vertex to be detached
+	 * @return v
+	 */
+	private int detach(int v) {
+		int p = prev[v];
+		if (p != -1) {
+			if (child[p] == v) {
+				child[p] = sibling[v];
+			} else {
+				sibling[p] = sibling[v];
+			}
+		}
+		if (sibling[v] != -1) {
+			prev[sibling[v]] = p;
+		}
+		sibling[v] = -1;
+		prev[v] = -1;
+		return v;
+	}
+
+	/**
+	 * Links two detached trees; the root with the larger priority becomes
+	 * the first child of the other
+	 *
+	 * @param a
+	 *            root of the first tree
+	 * @param b
+	 *            root of the second tree
+	 * @return root of the linked tree
+	 */
+	private int meld(int a, int b) {
+		if (priority[b] < priority[a]) {
+			int t = a;
+			a = b;
+			b = t;
+		}
+		int first = child[a];
+		sibling[b] = first;
+		if (first != -1) {
+			prev[first] = b;
+		}
+		prev[b] = a;
+		child[a] = b;
+		return a;
+	}
+}
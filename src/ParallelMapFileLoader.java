@@ -0,0 +1,362 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Loads a map file on several threads. The part after the header line is
+ * split into chunks at newline boundaries and each chunk is parsed on a
+ * fork-join pool into its own edge buffer with chunk-local location ids.
+ * The chunks are then merged in file order: local ids are mapped to the
+ * ids a sequential load would give (order of first appearance in the
+ * file), the Paths are created in parallel and finally added to the graph
+ * in file order.
+ *
+ * The result is identical to MapApp's sequential load: same vertex ids,
+ * same edge order per source, and the same InvalidFileException, including
+ * its line number, for the first invalid line.
+ *
+ */
+public class ParallelMapFileLoader {
+
+	//smallest chunk worth handing to another thread
+	private static final long MIN_CHUNK_BYTES = 1 << 20;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates a loader that runs on the common fork-join pool
+	 */
+	public ParallelMapFileLoader() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a loader that runs on the given pool
+	 *
+	 * @param pool
+	 *            pool the chunks are parsed on
+	 */
+	public ParallelMapFileLoader(ForkJoinPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException();
+		}
+		this.pool = pool;
+	}
+
+	/**
+	 * Reads and parses a map file into a NavigationGraph
+	 *
+	 * @param graphFilepath
+	 *            path to the input file
+	 * @return NavigationGraph object
+	 * @throws FileNotFoundException
+	 *             if graphFilepath is not found
+	 * @throws InvalidFileException
+	 *             in the same cases as
+	 *             MapApp.createNavigationGraphFromMapFile
+	 */
+	public NavigationGraph load(String graphFilepath)
+			throws FileNotFoundException, InvalidFileException {
+		File file = new File(graphFilepath);
+		if (!file.exists()) {
+			throw new FileNotFoundException();
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return load(raf.getChannel());
+		} catch (IOException e) {
+			throw new InvalidFileException("Could not read file: "
+					+ e.getMessage());
+		} finally {
+			try {
+				raf.close();
+			} catch (IOException e) {
+				//nothing left to read
+			}
+		}
+	}
+
+	private NavigationGraph load(FileChannel channel)
+			throws IOException, InvalidFileException {
+		long start = System.nanoTime();
+		//the header is read on this thread
+		ChannelInputStream headerIn = new ChannelInputStream(channel, 0,
+				channel.size());
+		MapFileParser headerParser = new MapFileParser(headerIn);
+		final String[] properties = headerParser.parseHeader();
+		long bodyStart = findLineStart(channel, 0);
+		NavigationGraph graph = new NavigationGraph(properties);
+
+		//parse the chunks in parallel
+		long[] bounds = split(channel, bodyStart);
+		List<Callable<Chunk>> parses = new ArrayList<Callable<Chunk>>();
+		for (int i = 0; i + 1 < bounds.length; i++) {
+			parses.add(new ChunkParse(channel, bounds[i], bounds[i + 1],
+					properties.length));
+		}
+		final List<Chunk> chunks = getAll(pool.invokeAll(parses));
+		long parsed = System.nanoTime();
+
+		//report the first invalid line in file order
+		long linesBefore = 1;
+		for (Chunk chunk : chunks) {
+			if (chunk.error != null) {
+				throw new InvalidFileException(chunk.error.getReason(),
+						linesBefore + chunk.error.getLineNumber());
+			}
+			linesBefore += chunk.lines;
+		}
+
+		//merge the location ids in order of first appearance
+		final List<Location> locations = new ArrayList<Location>();
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		for (Chunk chunk : chunks) {
+			chunk.globalIds = new int[chunk.names.size()];
+			for (int local = 0; local < chunk.names.size(); local++) {
+				String name = chunk.names.get(local);
+				Integer id = ids.get(name);
+				if (id == null) {
+					id = locations.size();
+					ids.put(name, id);
+					Location location = new Location(name);
+					locations.add(location);
+					graph.addVertex(location);
+				}
+				chunk.globalIds[local] = id;
+			}
+		}
+
+		//create the Paths in parallel, then add them in file order
+		List<Callable<Path[]>> builds = new ArrayList<Callable<Path[]>>();
+		for (final Chunk chunk : chunks) {
+			builds.add(new Callable<Path[]>() {
+				public Path[] call() {
+					return chunk.createPaths(locations);
+				}
+			});
+		}
+		List<Path[]> paths = getAll(pool.invokeAll(builds));
+		for (Path[] chunkPaths : paths) {
+			for (Path path : chunkPaths) {
+				graph.addEdge(path.getSource(), path.getDestination(), path);
+			}
+		}
+		if (Metrics.isEnabled()) {
+			Metrics.INGEST.record(linesBefore, channel.size(), parsed - start,
+					System.nanoTime() - parsed);
+		}
+		return graph;
+	}
+
+	/**
+	 * Cuts the byte range after the header into chunks that end right after
+	 * a newline
+	 *
+	 * @return chunk boundaries, first is bodyStart and last is the file size
+	 */
+	private long[] split(FileChannel channel, long bodyStart)
+			throws IOException {
+		long size = channel.size();
+		long body = size - bodyStart;
+		int chunks = (int) Math.max(1, Math.min(pool.getParallelism() * 4L,
+				body / MIN_CHUNK_BYTES));
+		long[] bounds = new long[chunks + 1];
+		bounds[0] = bodyStart;
+		for (int i = 1; i < chunks; i++) {
+			long nominal = bodyStart + body * i / chunks;
+			bounds[i] = Math.max(bounds[i - 1], findLineStart(channel, nominal));
+		}
+		bounds[chunks] = size;
+		return bounds;
+	}
+
+	/**
+	 * Returns the position after the first newline at or after a position,
+	 * or the file size if there is none
+	 */
+	private static long findLineStart(FileChannel channel, long position)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long size = channel.size();
+		while (position < size) {
+			buffer.clear();
+			int n = channel.read(buffer, position);
+			if (n <= 0) {
+				break;
+			}
+			for (int i = 0; i < n; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += n;
+		}
+		return size;
+	}
+
+	/**
+	 * Waits for all futures and returns their results
+	 */
+	private static <T> List<T> getAll(List<Future<T>> futures)
+			throws IOException {
+		List<T> results = new ArrayList<T>(futures.size());
+		for (Future<T> future : futures) {
+			try {
+				results.add(future.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while loading");
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new IOException(cause);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Parses one chunk of edge lines
+	 */
+	private static class ChunkParse implements Callable<Chunk> {
+
+		private final FileChannel channel;
+		private final long from;
+		private final long to;
+		private final int propertyCount;
+
+		ChunkParse(FileChannel channel, long from, long to, int propertyCount) {
+			this.channel = channel;
+			this.from = from;
+			this.to = to;
+			this.propertyCount = propertyCount;
+		}
+
+		public Chunk call() throws IOException {
+			Chunk chunk = new Chunk(propertyCount);
+			MapFileParser parser = new MapFileParser(
+					new ChannelInputStream(channel, from, to));
+			try {
+				parser.parseEdges(chunk, propertyCount);
+			} catch (InvalidFileException e) {
+				chunk.error = e;
+			}
+			chunk.lines = parser.getLineCount();
+			return chunk;
+		}
+	}
+
+	/**
+	 * Edge buffer of one chunk, filled by the parser
+	 */
+	private static class Chunk implements MapFileParser.Handler {
+
+		private final int propertyCount;
+		private final List<String> names = new ArrayList<String>();
+		private int[] sources = new int[1024];
+		private int[] destinations = new int[1024];
+		private double[] values;
+		private int edges;
+		private long lines;
+		private InvalidFileException error;
+		private int[] globalIds;
+
+		Chunk(int propertyCount) {
+			this.propertyCount = propertyCount;
+			this.values = new double[1024 * propertyCount];
+		}
+
+		public void header(String[] propertyNames) {
+			//chunks have no header
+		}
+
+		public void vertex(int id, String name) {
+			names.add(name);
+		}
+
+		public void edge(int src, int dest, double[] properties) {
+			if (edges == sources.length) {
+				sources = Arrays.copyOf(sources, edges * 2);
+				destinations = Arrays.copyOf(destinations, edges * 2);
+				values = Arrays.copyOf(values, edges * 2 * propertyCount);
+			}
+			sources[edges] = src;
+			destinations[edges] = dest;
+			System.arraycopy(properties, 0, values, edges * propertyCount,
+					propertyCount);
+			edges++;
+		}
+
+		/**
+		 * Creates the Paths of this chunk once globalIds is set
+		 */
+		Path[] createPaths(List<Location> locations) {
+			Path[] paths = new Path[edges];
+			double[] properties = new double[propertyCount];
+			for (int e = 0; e < edges; e++) {
+				System.arraycopy(values, e * propertyCount, properties, 0,
+						propertyCount);
+				paths[e] = new Path(locations.get(globalIds[sources[e]]),
+						locations.get(globalIds[destinations[e]]), properties);
+			}
+			//the buffers are no longer needed
+			sources = null;
+			destinations = null;
+			values = null;
+			return paths;
+		}
+	}
+
+	/**
+	 * InputStream over a byte range of a file channel. It uses positional
+	 * reads, so several of them can read one channel at the same time.
+	 */
+	private static class ChannelInputStream extends InputStream {
+
+		private final FileChannel channel;
+		private long position;
+		private final long end;
+
+		ChannelInputStream(FileChannel channel, long from, long to) {
+			this.channel = channel;
+			this.position = from;
+			this.end = to;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (position >= end) {
+				return -1;
+			}
+			len = (int) Math.min(len, end - position);
+			int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+			if (n > 0) {
+				position += n;
+			}
+			return n;
+		}
+	}
+}
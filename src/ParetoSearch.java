@@ -0,0 +1,710 @@
+import java.util.Arrays;
+
+/**
+ * Reusable multi-criteria label-setting search over a CompactNavigationGraph
+ * that finds every Pareto-optimal route between two vertices: the routes
+ * that no other route matches or beats on all of the chosen edge properties.
+ *
+ * A label is a route to a vertex with its cost on each property. Labels
+ * live in primitive arrays indexed by label id; the labels of each vertex
+ * that no other label dominates form its bag, a list linked through the
+ * label ids. Labels are expanded in order of their cost sum, so an expanded
+ * label is never dominated later. A new label is dropped if a label in the
+ * bag of its vertex or of the destination dominates it, since edge values
+ * are not negative, and it removes the labels of its own bag it dominates.
+ *
+ * With an epsilon above 0, a new label is also dropped if another label's
+ * costs are within a factor of 1 + epsilon of its own, which keeps the bags
+ * small on large graphs at the price of an approximate Pareto set.
+ *
+ * The same core answers resource-constrained queries: the route shortest
+ * on one property among those within bounds on the others.
+ *
+ * Like RouteSearch the per-vertex arrays are invalidated by a generation
+ * counter, and a search must only be used by one thread at a time.
+ */
+final class ParetoSearch {
+
+	//LARAC iterations per bounded property of a constrained run
+	private static final int MULTIPLIER_ITERATIONS = 12;
+
+	private final CompactNavigationGraph graph;
+	//first label of the bag of each vertex, valid while stamped
+	private final int[] head;
+	private final int[] stamp;
+	private int generation;
+
+	//number of properties of the last run, labels have that many costs
+	private int k;
+	private double[] cost = new double[1024];
+	private int[] vertex = new int[256];
+	private int[] parent = new int[256];
+	private int[] edge = new int[256];
+	//next label in the same bag, -1 at the end
+	private int[] next = new int[256];
+	private boolean[] dead = new boolean[256];
+	private int labelCount;
+
+	//binary heap of label ids by cost sum, or by objective cost plus
+	//lower bound in a constrained run
+	private int[] heap = new int[256];
+	private double[] sum = new double[256];
+	private int heapSize;
+
+	//constrained runs: lower bounds on the rest of the way to dest on
+	//each property, valid where stamped with the generation of the run;
+	//slot k + j - 1 holds those on the objective plus lambda[j] times
+	//bounded property j
+	private double[][] lower = new double[0][];
+	private int[][] lowerStamp = new int[0][];
+	private double[] radius = new double[0];
+	//Lagrange multiplier of each bounded property, 0 where unused
+	private double[] lambda = new double[0];
+	//costs of the route from src each backward search found, by slot
+	private double[][] pathCost = new double[0][];
+	//backward search scratch, created on the first constrained run
+	private IndexedMinPriorityQueue queue;
+	private double[] tentative;
+	private int[] tentativeStamp;
+	//edge each vertex was labeled over, leading towards dest
+	private int[] tentativeEdge;
+	//cheapest route within the bounds found by the backward searches and
+	//its cost on the objective, or null
+	private int[] candidate;
+	private double candidateCost;
+	private int backwardGeneration;
+
+	private double[] scratch = new double[0];
+	//labels expanded, edges relaxed and labels queued by the last run
+	private int settled;
+	private int relaxed;
+	private int pushes;
+
+	/**
+	 * Creates the scratch space for searches on a graph
+	 *
+	 * @param graph
+	 *            graph to be searched
+	 */
+	ParetoSearch(CompactNavigationGraph graph) {
+		int n = graph.getVertexCount();
+		this.graph = graph;
+		this.head = new int[n];
+		this.stamp = new int[n];
+	}
+
+	/**
+	 * Searches for the Pareto-optimal routes from src to dest
+	 *
+	 * @param src
+	 *            id of the source vertex
+	 * @param dest
+	 *            id of the destination vertex, not src
+	 * @param properties
+	 *            indexes of the edge properties to minimize together
+	 * @param epsilon
+	 *            0 for the exact Pareto set, or the relative difference
+	 *            below which routes count as equally good
+	 * @return edge ids of each route ordered from dest back to src, the
+	 *         routes ordered by their cost on the first property; empty if
+	 *         dest cannot be reached
+	 */
+	int[][] run(int src, int dest, int[] properties, double epsilon) {
+		long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+		begin(properties);
+		search(src, dest, properties, 1 + epsilon, null);
+		int[][] routes = routes(dest);
+		if (start != 0) {
+			Metrics.PARETO.record(settled, relaxed, pushes, settled,
+					System.nanoTime() - start);
+		}
+		return routes;
+	}
+
+	/**
+	 * Searches for the route from src to dest that is shortest on one edge
+	 * property among those that stay within bounds on others. Labels carry
+	 * the cost on every property, but bound-violating labels are dropped
+	 * and labels are expanded by cost plus a lower bound on the rest of the
+	 * way, so the first label of dest to be expanded is the answer.
+	 *
+	 * The lower bounds come from one backward Dijkstra search per property
+	 * over the incoming edges of dest; a vertex a search did not settle gets
+	 * the radius the search reached. The route from src each search finds
+	 * is checked against the bounds, and the cheapest one within them, the
+	 * candidate, bounds the label search; if it is the route shortest on
+	 * the objective, it is the answer right away. The searches of bounded
+	 * properties stop at their bound, the one of the objective at the cost
+	 * of the candidate, or at src if there is none.
+	 *
+	 * For each bounded property whose bound the route shortest on the
+	 * objective breaks, a Lagrange multiplier is then chosen as in LARAC:
+	 * searches on the objective plus multiplier times the property, each
+	 * a single-property search, move the multiplier between a route
+	 * within the bound and one beyond it until it stops improving. One
+	 * more backward search on that sum bounds the objective of every
+	 * route within the bound through a label, which prunes far more than
+	 * the bounds on single properties once the bounds are tight.
+	 *
+	 * @param src
+	 *            id of the source vertex
+	 * @param dest
+	 *            id of the destination vertex, not src
+	 * @param properties
+	 *            index of the property to minimize, then of each bounded one
+	 * @param bounds
+	 *            largest allowed route cost on properties[i + 1] at i
+	 * @return edge ids of the route ordered from dest back to src, empty if
+	 *         no route stays within the bounds
+	 */
+	int[] runConstrained(int src, int dest, int[] properties,
+			double[] bounds) {
+		long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+		begin(properties);
+		labelCount = 0;
+		settled = 0;
+		relaxed = 0;
+		pushes = 0;
+		candidate = null;
+		candidateCost = Double.POSITIVE_INFINITY;
+		int[] route = new int[0];
+		if (lowerBounds(src, dest, properties, bounds)) {
+			int l = candidate != null && candidateCost <= lowerBound(0, src)
+					? -1 : search(src, dest, properties, 1, bounds);
+			route = l >= 0 ? route(l) : candidate != null ? candidate : route;
+		}
+		if (start != 0) {
+			Metrics.CONSTRAINED.record(settled, relaxed, pushes, settled,
+					System.nanoTime() - start);
+		}
+		return route;
+	}
+
+	/**
+	 * Starts a run over some properties
+	 */
+	private void begin(int[] properties) {
+		nextGeneration();
+		k = properties.length;
+		if (scratch.length != k) {
+			scratch = new double[k];
+		}
+	}
+
+	/**
+	 * Label-setting core of both kinds of run
+	 *
+	 * @param factor
+	 *            1 + epsilon of the dominance test
+	 * @param bounds
+	 *            bounds of a constrained run, or null to collect the Pareto
+	 *            set in the bag of dest
+	 * @return the label of dest that a constrained run found, else -1
+	 */
+	private int search(int src, int dest, int[] properties, double factor,
+			double[] bounds) {
+		labelCount = 0;
+		heapSize = 0;
+		settled = 0;
+		relaxed = 0;
+		pushes = 1;
+		Arrays.fill(scratch, 0);
+		push(add(src, -1, -1, scratch), bounds == null ? 0
+				: lowerBound(0, src));
+		//cost on the objective of the best route to dest so far
+		double best = bounds == null ? Double.POSITIVE_INFINITY
+				: candidateCost;
+		while (heapSize > 0) {
+			int l = pop();
+			if (dead[l]) {
+				continue;
+			}
+			settled++;
+			int v = vertex[l];
+			if (v == dest) {
+				if (bounds != null) {
+					return l;//no label left can reach dest for less
+				}
+				continue;//routes through dest are dominated by the ones to it
+			}
+			int end = graph.edgesEnd(v);
+			relaxed += end - graph.edgesBegin(v);
+			for (int e = graph.edgesBegin(v); e < end; e++) {
+				int t = graph.edgeTarget(e);
+				for (int i = 0; i < k; i++) {
+					scratch[i] = cost[l * k + i]
+							+ graph.edgeWeight(properties[i], e);
+				}
+				if (bounds == null) {
+					//no extension of a label the destination dominates is
+					//better, and dest's own bag is checked here as well
+					if (dominated(dest, factor) || t != dest
+							&& dominated(t, factor)) {
+						continue;
+					}
+				} else if (!feasible(t, bounds, best) || dominated(t, 1)) {
+					continue;
+				}
+				removeDominated(t);
+				int label = add(t, l, e, scratch);
+				if (bounds == null) {
+					double key = 0;
+					for (int i = 0; i < k; i++) {
+						key += scratch[i];
+					}
+					push(label, key);
+				} else {
+					push(label, scratch[0] + lowerBound(0, t));
+					if (t == dest) {
+						best = Math.min(best, scratch[0]);
+					}
+				}
+				pushes++;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks if the costs in scratch, extended by the lower bounds from a
+	 * vertex on, can still be within the bounds and beat the best route
+	 */
+	private boolean feasible(int v, double[] bounds, double best) {
+		if (scratch[0] + lowerBound(0, v) >= best) {
+			return false;
+		}
+		for (int i = 1; i < k; i++) {
+			if (scratch[i] + lowerBound(i, v) > bounds[i - 1]) {
+				return false;
+			}
+			//any route within bound i costs at least the objective plus
+			//lambda times the slack left on property i
+			if (lambda[i] > 0 && scratch[0] + lambda[i] * (scratch[i]
+					- bounds[i - 1]) + lowerBound(k + i - 1, v) >= best) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Runs the backward searches of a constrained run
+	 *
+	 * @return false if no route can stay within the bounds
+	 */
+	private boolean lowerBounds(int src, int dest, int[] properties,
+			double[] bounds) {
+		int n = head.length;
+		int slots = 2 * k - 1;
+		if (lower.length < slots) {
+			int grown = lower.length;
+			lower = Arrays.copyOf(lower, slots);
+			lowerStamp = Arrays.copyOf(lowerStamp, slots);
+			radius = Arrays.copyOf(radius, slots);
+			for (int i = grown; i < slots; i++) {
+				lower[i] = new double[n];
+				lowerStamp[i] = new int[n];
+			}
+		}
+		if (lambda.length != k) {
+			lambda = new double[k];
+			pathCost = new double[slots][];
+		}
+		Arrays.fill(lambda, 0);
+		Arrays.fill(pathCost, null);
+		if (queue == null) {
+			graph.buildReverse();
+			queue = PriorityQueueType.getDefault().create(n);
+			tentative = new double[n];
+			tentativeStamp = new int[n];
+			tentativeEdge = new int[n];
+		}
+		for (int i = 1; i < k; i++) {
+			backward(i, dest, properties[i], -1, 0, -1, bounds[i - 1]);
+			if (lowerBound(i, src) > bounds[i - 1]) {
+				return false;//also when src cannot reach dest at all
+			}
+			//the route shortest on this property may be within the bounds
+			offerCandidate(i, src, dest, properties, bounds);
+		}
+		//beyond the candidate's cost every label is pruned anyway
+		backward(0, dest, properties[0], -1, 0, candidate == null ? src
+				: -1, candidateCost);
+		offerCandidate(0, src, dest, properties, bounds);
+		if (candidate != null && candidateCost <= lowerBound(0, src)) {
+			return true;
+		}
+		for (int j = 1; j < k; j++) {
+			multiplier(j, src, dest, properties, bounds);
+		}
+		return true;
+	}
+
+	/**
+	 * Chooses the Lagrange multiplier of bounded property j and runs the
+	 * backward search on the objective plus multiplier times property j.
+	 * Every multiplier of at least 0 gives valid bounds, so the iterations
+	 * are capped.
+	 */
+	private void multiplier(int j, int src, int dest, int[] properties,
+			double[] bounds) {
+		int slot = k + j - 1;
+		//routes beyond and within the bound on property j
+		double[] over = pathCost[0];
+		double[] within = pathCost[j];
+		if (over == null || within == null || over[j] <= bounds[j - 1]) {
+			return;
+		}
+		for (int iteration = 0; iteration < MULTIPLIER_ITERATIONS;
+				iteration++) {
+			double l = (within[0] - over[0]) / (over[j] - within[j]);
+			if (!(l > 0) || Double.isInfinite(l)) {
+				break;
+			}
+			lambda[j] = l;
+			backward(slot, dest, properties[0], properties[j], l, src,
+					Double.POSITIVE_INFINITY);
+			if (!offerCandidate(slot, src, dest, properties, bounds)) {
+				lambda[j] = 0;
+				return;
+			}
+			double[] found = pathCost[slot];
+			double sum = over[0] + l * over[j];
+			if (found[0] + l * found[j] >= sum - 1e-12 * sum) {
+				break;//no route beats both ends, l is the best multiplier
+			}
+			if (found[j] <= bounds[j - 1]) {
+				within = found;
+			} else {
+				over = found;
+			}
+		}
+		if (lambda[j] > 0) {
+			backward(slot, dest, properties[0], properties[j], lambda[j],
+					-1, candidateCost + lambda[j] * bounds[j - 1]);
+		}
+	}
+
+	/**
+	 * Records the costs of the route from src to dest of the last backward
+	 * search in pathCost and keeps the route as the candidate if it is
+	 * within the bounds and cheaper than the candidate
+	 *
+	 * @return false if the search did not reach src
+	 */
+	private boolean offerCandidate(int slot, int src, int dest,
+			int[] properties, double[] bounds) {
+		if (tentativeStamp[src] != backwardGeneration
+				|| queue.contains(src)) {
+			return false;//src was not settled
+		}
+		int length = 0;
+		Arrays.fill(scratch, 0);
+		for (int v = src; v != dest; length++) {
+			int e = tentativeEdge[v];
+			for (int i = 0; i < k; i++) {
+				scratch[i] += graph.edgeWeight(properties[i], e);
+			}
+			v = graph.edgeTarget(e);
+		}
+		pathCost[slot] = scratch.clone();
+		for (int i = 1; i < k; i++) {
+			if (scratch[i] > bounds[i - 1]) {
+				return true;
+			}
+		}
+		if (scratch[0] < candidateCost) {
+			candidateCost = scratch[0];
+			candidate = new int[length];
+			int v = src;
+			for (int i = length - 1; i >= 0; i--) {
+				candidate[i] = tentativeEdge[v];
+				v = graph.edgeTarget(candidate[i]);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Dijkstra's algorithm from dest over incoming edges, settling the
+	 * vertices whose distance to dest is at most limit
+	 *
+	 * @param i
+	 *            slot of the lower bounds to fill
+	 * @param second
+	 *            property added factor times to the first one, or -1
+	 * @param stopAt
+	 *            vertex after which to stop, or -1
+	 */
+	private void backward(int i, int dest, int property, int second,
+			double factor, int stopAt, double limit) {
+		backwardGeneration++;
+		if (backwardGeneration == Integer.MAX_VALUE) {
+			Arrays.fill(tentativeStamp, 0);
+			backwardGeneration = 1;
+		}
+		queue.clear();
+		radius[i] = Double.POSITIVE_INFINITY;
+		tentative[dest] = 0;
+		tentativeStamp[dest] = backwardGeneration;
+		try {
+			queue.insert(dest, 0);
+			while (!queue.isEmpty()) {
+				int v = queue.peekMinVertex();
+				double d = tentative[v];
+				if (d > limit) {
+					radius[i] = d;
+					break;
+				}
+				queue.removeMinVertex();
+				lower[i][v] = d;
+				lowerStamp[i][v] = generation;
+				if (v == stopAt) {
+					radius[i] = d;
+					break;
+				}
+				int end = graph.inEdgesEnd(v);
+				for (int j = graph.inEdgesBegin(v); j < end; j++) {
+					int u = graph.inEdgeSource(j);
+					int e = graph.inEdge(j);
+					double w = d + graph.edgeWeight(property, e);
+					if (second >= 0) {
+						w += factor * graph.edgeWeight(second, e);
+					}
+					if (tentativeStamp[u] != backwardGeneration) {
+						tentativeStamp[u] = backwardGeneration;
+						tentative[u] = w;
+						tentativeEdge[u] = e;
+						queue.insert(u, w);
+					} else if (w < tentative[u] && queue.contains(u)) {
+						tentative[u] = w;
+						tentativeEdge[u] = e;
+						queue.decreaseKey(u, w);
+					}
+				}
+			}
+		} catch (PriorityQueueEmptyException e) {
+			throw new IllegalStateException(e);
+		} catch (PriorityQueueFullException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Lower bound on the cost of the rest of the way from a vertex to dest
+	 * on the property at position i of a constrained run
+	 */
+	private double lowerBound(int i, int v) {
+		return lowerStamp[i][v] == generation ? lower[i][v] : radius[i];
+	}
+
+	/**
+	 * Number of labels the last run expanded
+	 *
+	 * @return settled label count
+	 */
+	int getSettledCount() {
+		return settled;
+	}
+
+	/**
+	 * Number of labels the last run created, the size of its label pool
+	 *
+	 * @return label count
+	 */
+	int getLabelCount() {
+		return labelCount;
+	}
+
+	/**
+	 * Checks if a label of a vertex's bag dominates the costs in scratch,
+	 * i.e. is no higher than factor times them on every property
+	 */
+	private boolean dominated(int v, double factor) {
+		if (stamp[v] != generation) {
+			return false;
+		}
+		for (int l = head[v]; l >= 0; l = next[l]) {
+			int i = 0;
+			while (i < k && cost[l * k + i] <= factor * scratch[i]) {
+				i++;
+			}
+			if (i == k) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Takes the labels that the costs in scratch dominate out of a bag
+	 */
+	private void removeDominated(int v) {
+		if (stamp[v] != generation) {
+			return;
+		}
+		int previous = -1;
+		for (int l = head[v]; l >= 0; l = next[l]) {
+			int i = 0;
+			while (i < k && scratch[i] <= cost[l * k + i]) {
+				i++;
+			}
+			if (i < k) {
+				previous = l;
+			} else {
+				dead[l] = true;
+				if (previous < 0) {
+					head[v] = next[l];
+				} else {
+					next[previous] = next[l];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a label and puts it first in the bag of its vertex
+	 *
+	 * @return label id
+	 */
+	private int add(int v, int parentLabel, int e, double[] costs) {
+		int l = labelCount++;
+		if (l == vertex.length) {
+			int capacity = 2 * l;
+			vertex = Arrays.copyOf(vertex, capacity);
+			parent = Arrays.copyOf(parent, capacity);
+			edge = Arrays.copyOf(edge, capacity);
+			next = Arrays.copyOf(next, capacity);
+			dead = Arrays.copyOf(dead, capacity);
+		}
+		if ((l + 1) * k > cost.length) {
+			cost = Arrays.copyOf(cost, Math.max(2 * cost.length,
+					(l + 1) * k));
+		}
+		System.arraycopy(costs, 0, cost, l * k, k);
+		vertex[l] = v;
+		parent[l] = parentLabel;
+		edge[l] = e;
+		dead[l] = false;
+		if (stamp[v] != generation) {
+			stamp[v] = generation;
+			head[v] = -1;
+		}
+		next[l] = head[v];
+		head[v] = l;
+		return l;
+	}
+
+	/**
+	 * Edge ids of the route of a label, ordered from its vertex back to
+	 * the source
+	 */
+	private int[] route(int label) {
+		int length = 0;
+		for (int l = label; parent[l] >= 0; l = parent[l]) {
+			length++;
+		}
+		int[] route = new int[length];
+		int l = label;
+		for (int i = 0; i < length; i++) {
+			route[i] = edge[l];
+			l = parent[l];
+		}
+		return route;
+	}
+
+	/**
+	 * Collects the routes of the labels left in the bag of dest
+	 */
+	private int[][] routes(int dest) {
+		if (stamp[dest] != generation) {
+			return new int[0][];
+		}
+		int count = 0;
+		for (int l = head[dest]; l >= 0; l = next[l]) {
+			count++;
+		}
+		int[] labels = new int[count];
+		count = 0;
+		for (int l = head[dest]; l >= 0; l = next[l]) {
+			//insertion sort by costs, first property first
+			int i = count++;
+			while (i > 0 && compare(l, labels[i - 1]) < 0) {
+				labels[i] = labels[i - 1];
+				i--;
+			}
+			labels[i] = l;
+		}
+		int[][] routes = new int[count][];
+		for (int r = 0; r < count; r++) {
+			routes[r] = route(labels[r]);
+		}
+		return routes;
+	}
+
+	private int compare(int a, int b) {
+		for (int i = 0; i < k; i++) {
+			int c = Double.compare(cost[a * k + i], cost[b * k + i]);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	private void push(int l, double key) {
+		if (heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, 2 * heapSize);
+			sum = Arrays.copyOf(sum, 2 * heapSize);
+		}
+		int i = heapSize++;
+		while (i > 0 && sum[(i - 1) >>> 1] > key) {
+			int up = (i - 1) >>> 1;
+			heap[i] = heap[up];
+			sum[i] = sum[up];
+			i = up;
+		}
+		heap[i] = l;
+		sum[i] = key;
+	}
+
+	private int pop() {
+		int top = heap[0];
+		int l = heap[--heapSize];
+		double key = sum[heapSize];
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && sum[child + 1] < sum[child]) {
+				child++;
+			}
+			if (sum[child] >= key) {
+				break;
+			}
+			heap[i] = heap[child];
+			sum[i] = sum[child];
+			i = child;
+		}
+		heap[i] = l;
+		sum[i] = key;
+		return top;
+	}
+
+	/**
+	 * Invalidates all bags of the previous run
+	 */
+	private void nextGeneration() {
+		generation++;
+		if (generation == Integer.MAX_VALUE) {
+			//start over before the stamps wrap around
+			Arrays.fill(stamp, 0);
+			for (int[] stamps : lowerStamp) {
+				Arrays.fill(stamps, 0);
+			}
+			generation = 1;
+		}
+	}
+}
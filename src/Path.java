@@ -1,5 +1,7 @@
 import java.text.DecimalFormat;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Class that creates a directed edge from one location to another
@@ -8,6 +10,8 @@ import java.util.List;
 public class Path {
 
 	private List<Double> pathProperties;
+	//values behind pathProperties once setProperty copied them, else null
+	private double[] ownProperties;
 
 	// TODO: check at end if we use the below two necessary
 	private Location source;
@@ -33,6 +37,22 @@ public class Path {
 		this.pathProperties = pathProperties;
 	}
 
+	/**
+	 * Creates a Path object from source to destination with properties held
+	 * in a primitive array, which saves boxing every value
+	 * 
+	 * @param source
+	 *            source location for the edge
+	 * @param destination
+	 *            destination location for the edge
+	 * @param pathProperties
+	 *            property values associated with the edge; the array is
+	 *            copied
+	 */
+	public Path(Location source, Location destination, double[] pathProperties) {
+		this(source, destination, new PropertyList(pathProperties.clone()));
+	}
+
 	/**
 	 * Getter method for destination location
 	 * 
@@ -60,6 +80,29 @@ public class Path {
 		return this.pathProperties;
 	}
 
+	/**
+	 * Changes one property value, used for edge value updates of
+	 * NavigationGraph. The first change copies the properties into a list
+	 * of this Path's own, since the list it was created with belongs to the
+	 * caller and may be shared with other Paths.
+	 * 
+	 * @param index
+	 *            index of the property
+	 * @param value
+	 *            new value
+	 */
+	void setProperty(int index, double value) {
+		if (ownProperties == null) {
+			double[] values = new double[pathProperties.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = pathProperties.get(i);
+			}
+			ownProperties = values;
+			pathProperties = new PropertyList(values);
+		}
+		ownProperties[index] = value;
+	}
+
 
     /**
      * Similar to toString, but only displays the specified property.
@@ -93,4 +136,34 @@ public class Path {
 		return outputString;
 	}
 
+	/**
+	 * Fixed size list view of a double array
+	 */
+	private static class PropertyList extends AbstractList<Double>
+			implements RandomAccess {
+
+		private final double[] values;
+
+		PropertyList(double[] values) {
+			this.values = values;
+		}
+
+		@Override
+		public Double get(int index) {
+			return values[index];
+		}
+
+		@Override
+		public Double set(int index, Double value) {
+			double old = values[index];
+			values[index] = value;
+			return old;
+		}
+
+		@Override
+		public int size() {
+			return values.length;
+		}
+	}
+
 }
@@ -0,0 +1,66 @@
+/**
+ * The vertex priority queues the shortest route search can run on. The
+ * default can be set with the system property mapapp.queue, e.g.
+ * -Dmapapp.queue=PAIRING, so the variants can be benchmarked against each
+ * other without code changes.
+ *
+ */
+public enum PriorityQueueType {
+
+	/** Indexed binary heap */
+	BINARY,
+	/** Indexed 4-ary heap, shallower and more cache friendly */
+	QUATERNARY,
+	/** Indexed pairing heap */
+	PAIRING;
+
+	//last unknown mapapp.queue value reported, so it is reported once
+	private static String reported;
+
+	/**
+	 * Creates an empty queue of this type
+	 *
+	 * @param capacity
+	 *            number of vertices in the graph
+	 * @return new queue for vertex ids 0 to capacity - 1
+	 */
+	public IndexedMinPriorityQueue create(int capacity) {
+		switch (this) {
+		case QUATERNARY:
+			return new VertexPriorityQueue(capacity, 4);
+		case PAIRING:
+			return new PairingVertexPriorityQueue(capacity);
+		default:
+			return new VertexPriorityQueue(capacity);
+		}
+	}
+
+	/**
+	 * Returns the queue type named by the mapapp.queue system property,
+	 * ignoring case. An unknown name is reported on standard error once and
+	 * BINARY is used instead, so that a typo cannot stop graphs from being
+	 * built.
+	 *
+	 * @return configured queue type, BINARY if none or an unknown one is
+	 *         set
+	 */
+	public static PriorityQueueType getDefault() {
+		String name = System.getProperty("mapapp.queue");
+		if (name == null) {
+			return BINARY;
+		}
+		for (PriorityQueueType type : values()) {
+			if (type.name().equalsIgnoreCase(name.trim())) {
+				return type;
+			}
+		}
+		synchronized (PriorityQueueType.class) {
+			if (!name.equals(reported)) {
+				reported = name;
+				System.err.println("Unknown mapapp.queue " + name
+						+ ", using " + BINARY);
+			}
+		}
+		return BINARY;
+	}
+}
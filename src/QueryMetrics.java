@@ -0,0 +1,145 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Work and latency of one kind of route search, summed over every search
+ * of that kind while Metrics are enabled: searches run, vertices settled,
+ * edges relaxed, priority queue pushes and pops, and a histogram of the
+ * wall time of each search.
+ *
+ * The counters are LongAdders, so threads searching at once do not contend
+ * on them.
+ *
+ * @see Metrics
+ */
+public final class QueryMetrics {
+
+	private final String name;
+	private final LongAdder queries = new LongAdder();
+	private final LongAdder settled = new LongAdder();
+	private final LongAdder relaxed = new LongAdder();
+	private final LongAdder pushes = new LongAdder();
+	private final LongAdder pops = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	/**
+	 * Creates empty metrics
+	 *
+	 * @param name
+	 *            kind of search, e.g. "dijkstra"
+	 */
+	QueryMetrics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Adds one search
+	 *
+	 * @param settledCount
+	 *            vertices the search settled
+	 * @param relaxedCount
+	 *            edges it relaxed
+	 * @param pushCount
+	 *            queue inserts and decrease-keys
+	 * @param popCount
+	 *            queue removals
+	 * @param nanos
+	 *            wall time of the search
+	 */
+	void record(int settledCount, int relaxedCount, int pushCount,
+			int popCount, long nanos) {
+		queries.increment();
+		settled.add(settledCount);
+		relaxed.add(relaxedCount);
+		pushes.add(pushCount);
+		pops.add(popCount);
+		latency.record(nanos);
+	}
+
+	/**
+	 * Kind of search these metrics are for
+	 *
+	 * @return name, e.g. "dijkstra"
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Number of searches
+	 *
+	 * @return search count
+	 */
+	public long getQueryCount() {
+		return queries.sum();
+	}
+
+	/**
+	 * Vertices settled by all searches
+	 *
+	 * @return settled vertex count
+	 */
+	public long getSettledCount() {
+		return settled.sum();
+	}
+
+	/**
+	 * Edges relaxed by all searches, i.e. scanned from a settled vertex
+	 *
+	 * @return relaxed edge count
+	 */
+	public long getRelaxedCount() {
+		return relaxed.sum();
+	}
+
+	/**
+	 * Priority queue inserts and decrease-keys of all searches
+	 *
+	 * @return push count
+	 */
+	public long getPushCount() {
+		return pushes.sum();
+	}
+
+	/**
+	 * Priority queue removals of all searches
+	 *
+	 * @return pop count
+	 */
+	public long getPopCount() {
+		return pops.sum();
+	}
+
+	/**
+	 * Wall time of each search
+	 *
+	 * @return histogram in nanoseconds
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Forgets every recorded search
+	 */
+	public void reset() {
+		queries.reset();
+		settled.reset();
+		relaxed.reset();
+		pushes.reset();
+		pops.reset();
+		latency.reset();
+	}
+
+	/**
+	 * Returns the totals and the latency histogram, e.g. "dijkstra:
+	 * queries=10 settled=5000 relaxed=20000 pushes=6000 pops=5000 latency
+	 * count=10 mean=..."
+	 */
+	@Override
+	public String toString() {
+		return name + ": queries=" + getQueryCount() + " settled="
+				+ getSettledCount() + " relaxed=" + getRelaxedCount()
+				+ " pushes=" + getPushCount() + " pops=" + getPopCount()
+				+ " latency " + latency;
+	}
+}
@@ -0,0 +1,362 @@
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of shortest routes in front of getShortestRoute, for query
+ * streams in which a few pairs of Locations make up most of the queries.
+ * Routes are kept as the edge ids of the graph's compact copy and keyed on
+ * source id, destination id and edge property index.
+ *
+ * The cache is split into stripes, each a least recently used map with its
+ * own lock and an equal share of the byte bound, so threads looking up
+ * different routes rarely wait for each other. The size of an entry is
+ * estimated from its map entry, key and edge array.
+ *
+ * invalidate drops every route, or after edge value changes only the
+ * routes they can affect. A route computed before an invalidation is not
+ * stored afterwards, so stale routes are never served.
+ */
+public final class RouteCache {
+
+	//estimated bytes of a map entry with its key and an empty edge array
+	private static final int ENTRY_BYTES = 96;
+	private static final int DEFAULT_STRIPES = 16;
+
+	private final long maxBytes;
+	private final Stripe[] stripes;
+	//bumped by invalidate; routes computed under an older one are dropped
+	private volatile long generation;
+
+	/**
+	 * Creates an empty cache with 16 stripes
+	 *
+	 * @param maxBytes
+	 *            bound on the estimated size of all cached routes
+	 */
+	public RouteCache(long maxBytes) {
+		this(maxBytes, DEFAULT_STRIPES);
+	}
+
+	/**
+	 * Creates an empty cache
+	 *
+	 * @param maxBytes
+	 *            bound on the estimated size of all cached routes
+	 * @param stripes
+	 *            number of independently locked parts, rounded up to a power
+	 *            of two; about the number of threads querying at once
+	 */
+	public RouteCache(long maxBytes, int stripes) {
+		if (maxBytes <= 0 || stripes <= 0) {
+			throw new IllegalArgumentException();
+		}
+		int count = Integer.highestOneBit(stripes);
+		if (count < stripes) {
+			count <<= 1;
+		}
+		this.maxBytes = maxBytes;
+		this.stripes = new Stripe[count];
+		for (int i = 0; i < count; i++) {
+			this.stripes[i] = new Stripe(maxBytes / count);
+		}
+	}
+
+	/**
+	 * Looks up a route
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id
+	 * @param p
+	 *            edge property index
+	 * @return edge ids of the route ordered from d back to s, or null if it
+	 *         is not cached
+	 */
+	int[] get(int s, int d, int p) {
+		Key key = new Key(s, d, p);
+		Stripe stripe = stripeFor(key);
+		synchronized (stripe) {
+			int[] route = stripe.get(key);
+			if (route == null) {
+				stripe.misses++;
+			} else {
+				stripe.hits++;
+			}
+			return route;
+		}
+	}
+
+	/**
+	 * Current generation, to be read before a route is computed and passed
+	 * to put
+	 *
+	 * @return generation number
+	 */
+	long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Stores a route unless the cache was invalidated since it was computed,
+	 * evicting least recently used routes of the stripe until it fits
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id
+	 * @param p
+	 *            edge property index
+	 * @param route
+	 *            edge ids of the route ordered from d back to s; not
+	 *            changed afterwards
+	 * @param computedAt
+	 *            getGeneration() from before the route was computed
+	 */
+	void put(int s, int d, int p, int[] route, long computedAt) {
+		Key key = new Key(s, d, p);
+		long bytes = ENTRY_BYTES + 4L * route.length;
+		Stripe stripe = stripeFor(key);
+		synchronized (stripe) {
+			//invalidate bumps the generation before clearing the stripes
+			if (computedAt != generation || bytes > stripe.maxBytes) {
+				return;
+			}
+			int[] old = stripe.put(key, route);
+			if (old != null) {
+				stripe.bytes -= ENTRY_BYTES + 4L * old.length;
+			}
+			stripe.bytes += bytes;
+			Iterator<Map.Entry<Key, int[]>> eldest = stripe.entrySet()
+					.iterator();
+			while (stripe.bytes > stripe.maxBytes) {
+				int[] evicted = eldest.next().getValue();
+				eldest.remove();
+				stripe.bytes -= ENTRY_BYTES + 4L * evicted.length;
+				stripe.evictions++;
+			}
+		}
+	}
+
+	/**
+	 * Drops every cached route, e.g. because the graph changed
+	 */
+	public void invalidate() {
+		synchronized (this) {
+			generation++;
+		}
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+				stripe.bytes = 0;
+				stripe.invalidations++;
+			}
+		}
+	}
+
+	/**
+	 * Drops the routes of one edge property that use any of some edges. If
+	 * the values of those edges only went up, every other route is still a
+	 * shortest one.
+	 *
+	 * @param p
+	 *            edge property index
+	 * @param edges
+	 *            ids of the edges whose values went up, or null to drop
+	 *            every route of p, e.g. because a value went down
+	 */
+	void invalidate(int p, BitSet edges) {
+		synchronized (this) {
+			generation++;
+		}
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				Iterator<Map.Entry<Key, int[]>> entries = stripe.entrySet()
+						.iterator();
+				while (entries.hasNext()) {
+					Map.Entry<Key, int[]> entry = entries.next();
+					if (entry.getKey().p == p && (edges == null
+							|| uses(entry.getValue(), edges))) {
+						entries.remove();
+						stripe.bytes -= ENTRY_BYTES
+								+ 4L * entry.getValue().length;
+					}
+				}
+				stripe.invalidations++;
+			}
+		}
+	}
+
+	private static boolean uses(int[] route, BitSet edges) {
+		for (int e : route) {
+			if (edges.get(e)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Bound on the estimated size of all cached routes
+	 *
+	 * @return bytes
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Estimated size of the cached routes
+	 *
+	 * @return bytes
+	 */
+	public long getByteSize() {
+		long bytes = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				bytes += stripe.bytes;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Number of cached routes
+	 *
+	 * @return route count
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Number of lookups that found their route
+	 *
+	 * @return hit count
+	 */
+	public long getHitCount() {
+		long count = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				count += stripe.hits;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Number of lookups that did not find their route
+	 *
+	 * @return miss count
+	 */
+	public long getMissCount() {
+		long count = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				count += stripe.misses;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Number of routes dropped to stay within the byte bound
+	 *
+	 * @return eviction count
+	 */
+	public long getEvictionCount() {
+		long count = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				count += stripe.evictions;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Number of times invalidate was called
+	 *
+	 * @return invalidation count
+	 */
+	public long getInvalidationCount() {
+		synchronized (stripes[0]) {
+			return stripes[0].invalidations;
+		}
+	}
+
+	/**
+	 * Returns the counters, e.g. "hits=90 misses=10 evictions=0 routes=10
+	 * bytes=1360/1048576"
+	 */
+	@Override
+	public String toString() {
+		return "hits=" + getHitCount() + " misses=" + getMissCount()
+				+ " evictions=" + getEvictionCount() + " routes=" + size()
+				+ " bytes=" + getByteSize() + "/" + maxBytes;
+	}
+
+	private Stripe stripeFor(Key key) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		return stripes[h & (stripes.length - 1)];
+	}
+
+	/**
+	 * Source, destination and property of a route
+	 */
+	private static final class Key {
+
+		private final int s;
+		private final int d;
+		private final int p;
+
+		Key(int s, int d, int p) {
+			this.s = s;
+			this.d = d;
+			this.p = p;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return s == key.s && d == key.d && p == key.p;
+		}
+
+		@Override
+		public int hashCode() {
+			return (s * 31 + d) * 0x9E3779B1 + p;
+		}
+	}
+
+	/**
+	 * Least recently used part of the cache, guarded by its own monitor
+	 */
+	private static final class Stripe extends LinkedHashMap<Key, int[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long maxBytes;
+		private long bytes;
+		private long hits;
+		private long misses;
+		private long evictions;
+		private long invalidations;
+
+		Stripe(long maxBytes) {
+			super(16, 0.75f, true);
+			this.maxBytes = maxBytes;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+/**
+ * Lower bound on the remaining length of a route, used by the A* variant of
+ * getShortestRoute to search towards the destination first. Vertices are
+ * given by their id, which is their position in getVertices() of the graph
+ * being searched.
+ *
+ * An estimate must never be larger than the length of the shortest route
+ * from the vertex to dest over the edge property being searched, otherwise
+ * the route found may not be the shortest. Estimates that are also
+ * consistent (no edge lowers the estimate by more than its own length)
+ * keep every vertex settled at most once.
+ *
+ */
+public interface RouteHeuristic {
+
+	/**
+	 * Estimates the length of the shortest route from a vertex to dest
+	 *
+	 * @param vertex
+	 *            id of the vertex the route starts at
+	 * @param dest
+	 *            id of the destination
+	 * @return lower bound on the route length, 0 for dest itself
+	 */
+	public double estimate(int vertex, int dest);
+
+}
@@ -0,0 +1,348 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Answers shortest route queries on a frozen graph from many threads at
+ * once. The graph is only read; every thread that runs a query gets its
+ * own search scratch space, kept in a ThreadLocal and reused by its later
+ * queries, so the query path shares no mutable state and takes no locks.
+ *
+ * The attached ContractionHierarchies and the priority queue type are
+ * those of the graph when the executor is created. Routes are the same as
+ * the ones getShortestRoute of the graph returns.
+ *
+ * @see NavigationGraph#freeze
+ */
+public final class RouteQueryExecutor {
+
+	private final CompactNavigationGraph graph;
+	private final PriorityQueueType queueType;
+	//hierarchies by edge property index, null where there is none
+	private final ContractionHierarchy[] hierarchies;
+	private final ForkJoinPool pool;
+	//routes of earlier queries, or null
+	private final RouteCache cache;
+	//search state of each thread that ran a query
+	private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>();
+
+	/**
+	 * Creates an executor that runs batches on the common pool
+	 *
+	 * @param graph
+	 *            frozen graph to be searched
+	 */
+	public RouteQueryExecutor(CompactNavigationGraph graph) {
+		this(graph, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates an executor
+	 *
+	 * @param graph
+	 *            frozen graph to be searched
+	 * @param pool
+	 *            pool that submitted queries and batches run on
+	 */
+	public RouteQueryExecutor(CompactNavigationGraph graph,
+			ForkJoinPool pool) {
+		this(graph, pool, null);
+	}
+
+	/**
+	 * Creates an executor that looks up routes in a cache before searching.
+	 * The graph never changes, so the cache is never invalidated; it must
+	 * not be used for another graph.
+	 *
+	 * @param graph
+	 *            frozen graph to be searched
+	 * @param pool
+	 *            pool that submitted queries and batches run on
+	 * @param cache
+	 *            cache shared by all threads, or null
+	 */
+	public RouteQueryExecutor(CompactNavigationGraph graph,
+			ForkJoinPool pool, RouteCache cache) {
+		if (graph == null || pool == null) {
+			throw new IllegalArgumentException();
+		}
+		this.graph = graph;
+		this.queueType = graph.getPriorityQueueType();
+		this.pool = pool;
+		this.cache = cache;
+		String[] properties = graph.getEdgePropertyNames();
+		this.hierarchies = new ContractionHierarchy[properties.length];
+		for (int p = 0; p < properties.length; p++) {
+			hierarchies[p] = graph.getContractionHierarchy(p);
+		}
+		//build the component index now, so queries never wait for it
+		graph.getComponentIndex();
+	}
+
+	/**
+	 * Frozen graph the queries run on
+	 *
+	 * @return graph
+	 */
+	public CompactNavigationGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Cache the queries look up routes in
+	 *
+	 * @return cache with its counters, or null
+	 */
+	public RouteCache getRouteCache() {
+		return cache;
+	}
+
+	/**
+	 * Calculates the shortest route from src to dest on the calling thread.
+	 * Safe to call from any number of threads at once.
+	 *
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param edgePropertyName
+	 *            edge property by which shortest route has to be calculated
+	 * @return List of edges that denote the shortest route by
+	 *         edgePropertyName, ordered from dest back to src, or an empty
+	 *         list if dest cannot be reached
+	 * @see CompactNavigationGraph#getShortestRoute
+	 */
+	public List<Path> getShortestRoute(Location src, Location dest,
+			String edgePropertyName) {
+		return getShortestRoute(src, dest, edgePropertyName, null);
+	}
+
+	/**
+	 * Calculates the shortest route from src to dest on the calling thread
+	 * with A* search guided by a heuristic. Safe to call from any number of
+	 * threads at once if the heuristic is, as Landmarks and
+	 * CoordinateHeuristic are.
+	 *
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param edgePropertyName
+	 *            edge property by which shortest route has to be calculated
+	 * @param heuristic
+	 *            lower bounds on the route length over edgePropertyName,
+	 *            or null to run Dijkstra's algorithm
+	 * @return List of edges that denote the shortest route by
+	 *         edgePropertyName, ordered from dest back to src, or an empty
+	 *         list if dest cannot be reached
+	 */
+	public List<Path> getShortestRoute(Location src, Location dest,
+			String edgePropertyName, RouteHeuristic heuristic) {
+		int p = property(edgePropertyName);
+		return graph.createRoute(findRoute(index(src), index(dest, src), p,
+				heuristic));
+	}
+
+	/**
+	 * Calculates the shortest route from src to dest on the pool
+	 *
+	 * @param src
+	 *            Source vertex from which the shortest route is desired
+	 * @param dest
+	 *            Destination vertex to which the shortest route is desired
+	 * @param edgePropertyName
+	 *            edge property by which shortest route has to be calculated
+	 * @return the route as getShortestRoute returns it, once calculated
+	 * @throws IllegalArgumentException
+	 *             right away if a Location or the property is not valid
+	 */
+	public Future<List<Path>> submit(Location src, Location dest,
+			String edgePropertyName) {
+		final int s = index(src);
+		final int d = index(dest, src);
+		final int p = property(edgePropertyName);
+		return pool.submit(new Callable<List<Path>>() {
+			public List<Path> call() {
+				return graph.createRoute(findRoute(s, d, p, null));
+			}
+		});
+	}
+
+	/**
+	 * Calculates the shortest routes between pairs of Locations, spread
+	 * over the threads of the pool
+	 *
+	 * @param sources
+	 *            Locations the routes start at
+	 * @param dests
+	 *            Locations the routes end at, one per source
+	 * @param edgePropertyName
+	 *            edge property by which shortest routes are calculated
+	 * @return the route from sources.get(i) to dests.get(i) at index i, as
+	 *         getShortestRoute returns it
+	 */
+	public List<List<Path>> getShortestRoutes(List<Location> sources,
+			List<Location> dests, String edgePropertyName) {
+		if (sources == null || dests == null
+				|| sources.size() != dests.size()) {
+			throw new IllegalArgumentException("Need one destination per "
+					+ "source");
+		}
+		final int p = property(edgePropertyName);
+		final int[] s = new int[sources.size()];
+		final int[] d = new int[s.length];
+		for (int i = 0; i < s.length; i++) {
+			s[i] = index(sources.get(i));
+			d[i] = index(dests.get(i), sources.get(i));
+		}
+		//each task sets its own indexes, which invokeAll publishes
+		final List<List<Path>> routes = new ArrayList<List<Path>>(
+				Collections.nCopies(s.length, (List<Path>) null));
+		//a few tasks per thread so uneven queries even out
+		int tasks = Math.max(1, Math.min(s.length,
+				4 * pool.getParallelism()));
+		List<Callable<Void>> calls = new ArrayList<Callable<Void>>(tasks);
+		for (int k = 0; k < tasks; k++) {
+			final int lo = (int) ((long) s.length * k / tasks);
+			final int hi = (int) ((long) s.length * (k + 1) / tasks);
+			calls.add(new Callable<Void>() {
+				public Void call() {
+					for (int i = lo; i < hi; i++) {
+						routes.set(i, graph.createRoute(findRoute(s[i], d[i],
+								p, null)));
+					}
+					return null;
+				}
+			});
+		}
+		for (Future<Void> future : pool.invokeAll(calls)) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+		return routes;
+	}
+
+	/**
+	 * Runs one query with the scratch space of the calling thread, unless
+	 * the route is cached
+	 *
+	 * @param s
+	 *            source vertex id
+	 * @param d
+	 *            destination vertex id, not s
+	 * @param p
+	 *            edge property index
+	 * @param heuristic
+	 *            A* bounds or null for Dijkstra
+	 * @return edge ids of the route ordered from d back to s, empty if d
+	 *         cannot be reached
+	 */
+	int[] findRoute(int s, int d, int p, RouteHeuristic heuristic) {
+		if (cache == null) {
+			return search(s, d, p, heuristic);
+		}
+		int[] route = cache.get(s, d, p);
+		if (route == null) {
+			long generation = cache.getGeneration();
+			route = search(s, d, p, heuristic);
+			cache.put(s, d, p, route, generation);
+		}
+		return route;
+	}
+
+	private int[] search(int s, int d, int p, RouteHeuristic heuristic) {
+		Worker worker = getWorker();
+		ContractionHierarchy hierarchy = heuristic == null ? hierarchies[p]
+				: null;
+		if (hierarchy != null) {
+			if (worker.queries[p] == null) {
+				worker.queries[p] = hierarchy.newQuery();
+			}
+			return worker.queries[p].run(s, d);
+		}
+		return graph.findRoute(getSearch(), s, d, p, heuristic);
+	}
+
+	/**
+	 * Returns the search scratch space of the calling thread, e.g. for
+	 * searches towards many targets at once
+	 *
+	 * @return RouteSearch only used by the calling thread
+	 */
+	RouteSearch getSearch() {
+		Worker worker = getWorker();
+		if (worker.search == null) {
+			worker.search = new RouteSearch(graph, queueType);
+		}
+		return worker.search;
+	}
+
+	/**
+	 * Checks if queries over an edge property run on a hierarchy
+	 *
+	 * @param p
+	 *            edge property index
+	 * @return true if a ContractionHierarchy is attached for p
+	 */
+	boolean isContracted(int p) {
+		return hierarchies[p] != null;
+	}
+
+	private Worker getWorker() {
+		Worker worker = workers.get();
+		if (worker == null) {
+			worker = new Worker();
+			workers.set(worker);
+		}
+		return worker;
+	}
+
+	private int index(Location location) {
+		int v = location == null ? -1 : graph.getIndex(location);
+		if (v < 0) {
+			throw new IllegalArgumentException("Location: " + location);
+		}
+		return v;
+	}
+
+	private int index(Location dest, Location src) {
+		if (dest == src) {
+			throw new IllegalArgumentException(src + " and " + dest
+					+ " are the same Location");
+		}
+		return index(dest);
+	}
+
+	private int property(String edgePropertyName) {
+		int p = edgePropertyName == null ? -1
+				: graph.getPropertyIndex(edgePropertyName);
+		if (p < 0) {
+			throw new IllegalArgumentException("Edge: " + edgePropertyName);
+		}
+		return p;
+	}
+
+	/**
+	 * Search state of one thread, created on its first query
+	 */
+	private final class Worker {
+
+		private RouteSearch search;
+		private final ContractionHierarchy.Query[] queries =
+				new ContractionHierarchy.Query[hierarchies.length];
+	}
+}
@@ -0,0 +1,285 @@
+import java.util.Arrays;
+
+/**
+ * Reusable Dijkstra search over a CompactNavigationGraph. The distance,
+ * predecessor edge and queue arrays are allocated once per graph and reused
+ * by every query; instead of refilling them, each run bumps a generation
+ * counter and a vertex's entries are only valid while its stamp equals the
+ * current generation. After warm-up a query allocates nothing.
+ *
+ * A vertex that is labeled in the current generation but no longer queued
+ * has been settled. A RouteSearch must only be used by one thread at a time.
+ *
+ * Instead of one edge property a run can minimize a weighted sum of them,
+ * computed for each edge as it is relaxed.
+ *
+ * Given a destination the search stops as soon as the destination is
+ * settled, and given a RouteHeuristic as well it runs A*: vertices are
+ * queued by distance plus estimate, and a vertex whose distance improves
+ * after it was settled, which an inconsistent heuristic allows, is queued
+ * again.
+ */
+final class RouteSearch {
+
+	private final CompactNavigationGraph graph;
+	private final double[] distance;
+	private final int[] predEdge;
+	//source vertex of predEdge, so routes are read off without looking up
+	//edge sources
+	private final int[] predVertex;
+	private final int[] stamp;
+	//heuristic estimate of each labeled vertex, A* only
+	private final double[] estimate;
+	private final IndexedMinPriorityQueue queue;
+	private int generation;
+	//vertices removed from the queue by the last run
+	private int settled;
+
+	/**
+	 * Creates the scratch space for searches on a graph
+	 *
+	 * @param graph
+	 *            graph to be searched
+	 * @param queueType
+	 *            kind of priority queue to search with
+	 */
+	RouteSearch(CompactNavigationGraph graph, PriorityQueueType queueType) {
+		int n = graph.getVertexCount();
+		this.graph = graph;
+		this.distance = new double[n];
+		this.predEdge = new int[n];
+		this.predVertex = new int[n];
+		this.stamp = new int[n];
+		this.estimate = new double[n];
+		this.queue = queueType.create(n);
+		this.generation = 0;
+	}
+
+	/**
+	 * Runs Dijkstra's algorithm from src on one edge property. Afterwards
+	 * reached, getDistance and getPredecessorEdge describe the shortest
+	 * path tree of src until the next run.
+	 *
+	 * @param src
+	 *            id of the source vertex
+	 * @param property
+	 *            index of the edge property to minimize
+	 */
+	void run(int src, int property) {
+		run(src, property, -1, null);
+	}
+
+	/**
+	 * Searches from src on one edge property until dest is settled.
+	 * Afterwards getDistance and getPredecessorEdge are final for dest and
+	 * the vertices on its shortest path; other reached vertices may only
+	 * have tentative labels.
+	 *
+	 * @param src
+	 *            id of the source vertex
+	 * @param property
+	 *            index of the edge property to minimize
+	 * @param dest
+	 *            id of the vertex to stop at, or -1 to settle everything
+	 *            reachable
+	 * @param heuristic
+	 *            lower bounds towards dest for A*, or null for Dijkstra
+	 */
+	void run(int src, int property, int dest, RouteHeuristic heuristic) {
+		search(src, property, null, dest, heuristic, null, 0);
+	}
+
+	/**
+	 * Searches from src until dest is settled, on the weighted sum of the
+	 * edge properties, which is computed for each edge as it is relaxed
+	 *
+	 * @param src
+	 *            id of the source vertex
+	 * @param weights
+	 *            factor of each edge property, by index, none negative
+	 * @param dest
+	 *            id of the vertex to stop at
+	 */
+	void run(int src, double[] weights, int dest) {
+		search(src, -1, weights, dest, null, null, 0);
+	}
+
+	/**
+	 * Searches from src on one edge property until every target vertex is
+	 * settled, so that getDistance is final for all of them
+	 *
+	 * @param src
+	 *            id of the source vertex
+	 * @param property
+	 *            index of the edge property to minimize
+	 * @param isTarget
+	 *            marks the target vertices by id
+	 * @param targetCount
+	 *            number of marked vertices
+	 */
+	void run(int src, int property, boolean[] isTarget, int targetCount) {
+		search(src, property, null, -1, null, isTarget, targetCount);
+	}
+
+	private void search(int src, int property, double[] weights, int dest,
+			RouteHeuristic heuristic, boolean[] isTarget, int targetCount) {
+		long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+		nextGeneration();
+		queue.clear();
+		settled = 0;
+		int relaxed = 0;
+		int pushes = 1;
+		boolean astar = heuristic != null && dest >= 0;
+		label(src, 0, -1, -1);
+		try {
+			queue.insert(src, astar ? estimate(src, dest, heuristic) : 0);
+			while (!queue.isEmpty()) {
+				int w = queue.removeMinVertex();
+				settled++;
+				if (w == dest || isTarget != null && isTarget[w]
+						&& --targetCount == 0) {
+					break;
+				}
+				double base = distance[w];
+				int end = graph.edgesEnd(w);
+				relaxed += end - graph.edgesBegin(w);
+				for (int e = graph.edgesBegin(w); e < end; e++) {
+					int t = graph.edgeTarget(e);
+					double weight = base + (weights == null
+							? graph.edgeWeight(property, e)
+							: graph.edgeWeight(weights, e));
+					if (stamp[t] != generation) {
+						label(t, weight, e, w);
+						queue.insert(t, astar ? weight
+								+ estimate(t, dest, heuristic) : weight);
+						pushes++;
+					} else if (weight < distance[t]) {
+						if (queue.contains(t)) {
+							label(t, weight, e, w);
+							queue.decreaseKey(t, astar ? weight + estimate[t]
+									: weight);
+							pushes++;
+						} else if (astar) {
+							//reopen a vertex settled too early
+							label(t, weight, e, w);
+							queue.insert(t, weight + estimate[t]);
+							pushes++;
+						}
+					}
+				}
+			}
+		} catch (PriorityQueueEmptyException e) {
+			throw new IllegalStateException(e);
+		} catch (PriorityQueueFullException e) {
+			throw new IllegalStateException(e);
+		}
+		if (start != 0) {
+			(astar ? Metrics.ASTAR : Metrics.DIJKSTRA).record(settled, relaxed,
+					pushes, settled, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Computes and keeps the heuristic estimate of a newly labeled vertex
+	 */
+	private double estimate(int v, int dest, RouteHeuristic heuristic) {
+		double h = heuristic.estimate(v, dest);
+		estimate[v] = h;
+		return h;
+	}
+
+	/**
+	 * Number of vertices the last run settled, counting a reopened vertex
+	 * each time
+	 *
+	 * @return settled vertex count
+	 */
+	int getSettledCount() {
+		return settled;
+	}
+
+	/**
+	 * Checks if the last run reached a vertex
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return true if v can be reached from the source
+	 */
+	boolean reached(int v) {
+		return stamp[v] == generation;
+	}
+
+	/**
+	 * Distance of a vertex in the last run
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return length of the shortest path to v, infinity if not reached
+	 */
+	double getDistance(int v) {
+		return reached(v) ? distance[v] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Last edge on the shortest path to a vertex in the last run
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return edge id, or -1 for the source and unreached vertices
+	 */
+	int getPredecessorEdge(int v) {
+		return reached(v) ? predEdge[v] : -1;
+	}
+
+	/**
+	 * Vertex before a vertex on its shortest path in the last run
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return source vertex of the predecessor edge, or -1 for the source
+	 *         and unreached vertices
+	 */
+	int getPredecessor(int v) {
+		return reached(v) ? predVertex[v] : -1;
+	}
+
+	/**
+	 * Graph this search runs on
+	 *
+	 * @return searched graph
+	 */
+	CompactNavigationGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Records a tentative distance for a vertex
+	 *
+	 * @param v
+	 *            vertex id
+	 * @param d
+	 *            distance from the source
+	 * @param e
+	 *            edge the distance was reached over
+	 * @param u
+	 *            vertex edge e leaves from
+	 */
+	private void label(int v, double d, int e, int u) {
+		stamp[v] = generation;
+		distance[v] = d;
+		predEdge[v] = e;
+		predVertex[v] = u;
+	}
+
+	/**
+	 * Invalidates all labels of the previous run
+	 */
+	private void nextGeneration() {
+		generation++;
+		if (generation == Integer.MAX_VALUE) {
+			//start over before the stamps wrap around
+			Arrays.fill(stamp, 0);
+			generation = 1;
+		}
+	}
+}
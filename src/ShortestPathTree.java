@@ -0,0 +1,181 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable shortest path tree of one source Location over one edge
+ * property: the length of the shortest route to every vertex and the last
+ * edge and vertex of that route, indexed by vertex id. Routes to any number
+ * of destinations are read off the predecessors without searching again,
+ * in time linear in their length.
+ *
+ * Vertex and edge ids are those of the CompactNavigationGraph the tree
+ * was computed on, which for a NavigationGraph is its compact copy at the
+ * time; the tree stays valid when the graph changes later.
+ */
+public final class ShortestPathTree {
+
+	private final CompactNavigationGraph graph;
+	//Path behind each edge id, or null to create Paths from the graph
+	private final Path[] edgePaths;
+	private final int source;
+	private final String edgePropertyName;
+	private final double[] distance;
+	private final int[] predEdge;
+	private final int[] predVertex;
+
+	/**
+	 * Creates a tree from the arrays of a search
+	 *
+	 * @param graph
+	 *            graph the tree was computed on
+	 * @param edgePaths
+	 *            Paths by edge id to return in routes, or null
+	 * @param source
+	 *            id of the source vertex
+	 * @param edgePropertyName
+	 *            edge property the routes are shortest by
+	 * @param distance
+	 *            route length by vertex id, infinity if not reachable
+	 * @param predEdge
+	 *            last route edge by vertex id, -1 for the source and
+	 *            vertices that are not reachable
+	 * @param predVertex
+	 *            source vertex of predEdge by vertex id, -1 where predEdge
+	 *            is
+	 */
+	ShortestPathTree(CompactNavigationGraph graph, Path[] edgePaths,
+			int source, String edgePropertyName, double[] distance,
+			int[] predEdge, int[] predVertex) {
+		this.graph = graph;
+		this.edgePaths = edgePaths;
+		this.source = source;
+		this.edgePropertyName = edgePropertyName;
+		this.distance = distance;
+		this.predEdge = predEdge;
+		this.predVertex = predVertex;
+	}
+
+	/**
+	 * Location the routes start at
+	 *
+	 * @return source Location
+	 */
+	public Location getSource() {
+		return graph.getLocation(source);
+	}
+
+	/**
+	 * Edge property the routes are shortest by
+	 *
+	 * @return edge property name
+	 */
+	public String getEdgePropertyName() {
+		return edgePropertyName;
+	}
+
+	/**
+	 * Number of vertices, one more than the largest vertex id
+	 *
+	 * @return vertex count
+	 */
+	public int getVertexCount() {
+		return distance.length;
+	}
+
+	/**
+	 * Length of the shortest route to a vertex
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return route length, 0 for the source, infinity if v cannot be
+	 *         reached
+	 */
+	public double getDistance(int v) {
+		return distance[v];
+	}
+
+	/**
+	 * Length of the shortest route to a Location
+	 *
+	 * @param dest
+	 *            Location in the graph
+	 * @return route length, 0 for the source, infinity if dest cannot be
+	 *         reached
+	 * @throws IllegalArgumentException
+	 *             if dest is not in the graph
+	 */
+	public double getDistance(Location dest) {
+		return distance[indexOf(dest)];
+	}
+
+	/**
+	 * Last edge of the shortest route to a vertex
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return edge id, -1 for the source and vertices that cannot be
+	 *         reached
+	 */
+	public int getPredecessorEdge(int v) {
+		return predEdge[v];
+	}
+
+	/**
+	 * Vertex before a vertex on its shortest route
+	 *
+	 * @param v
+	 *            vertex id
+	 * @return vertex id, -1 for the source and vertices that cannot be
+	 *         reached
+	 */
+	public int getPredecessor(int v) {
+		return predVertex[v];
+	}
+
+	/**
+	 * Checks if there is a route to a Location
+	 *
+	 * @param dest
+	 *            Location in the graph
+	 * @return true if dest can be reached from the source
+	 */
+	public boolean isReachable(Location dest) {
+		return distance[indexOf(dest)] != Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Follows the predecessor edges from dest back to the source
+	 *
+	 * @param dest
+	 *            Location in the graph
+	 * @return List of edges that denote the shortest route, starting with
+	 *         the edge that enters dest, or an empty list if dest is the
+	 *         source or cannot be reached
+	 * @throws IllegalArgumentException
+	 *             if dest is not in the graph
+	 */
+	public List<Path> getRoute(Location dest) {
+		int v = indexOf(dest);
+		if (predEdge[v] < 0) {
+			return Collections.emptyList();
+		}
+		List<Path> route = new ArrayList<Path>();
+		while (v != source) {
+			int e = predEdge[v];
+			int u = predVertex[v];
+			route.add(edgePaths != null ? edgePaths[e]
+					: graph.createPath(u, e));
+			v = u;
+		}
+		return route;
+	}
+
+	private int indexOf(Location location) {
+		int v = location == null ? -1 : graph.getIndex(location);
+		if (v < 0) {
+			throw new IllegalArgumentException("Location: " + location);
+		}
+		return v;
+	}
+}
@@ -1,71 +1,231 @@
 
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 
 /**
- * Creates a MinPriorityQueue of vertices. Operations include insert, remove, 
- * isEmpty, and size. Each position in queue is given a vertex location and 
- * priority value.
+ * Creates a MinPriorityQueue of vertices. Operations include insert, remove,
+ * decreaseKey, isEmpty, and size. Each position in queue is given a vertex
+ * id and priority value.
+ *
+ * The queue is an array-based d-ary min-heap (binary by default) indexed by
+ * vertex id: heap holds the queued vertex ids in heap order, position maps
+ * each vertex to its slot in heap (-1 if not queued) and priority holds the
+ * keys by vertex id. insert, decreaseKey and removeMinVertex are
+ * O(d log_d n).
  *
  * @authors: McKinley Sconiers-Hasan, Grant Darin
  */
-public class VertexPriorityQueue implements MinPriorityQueueADT<Object[]> {
+public class VertexPriorityQueue implements IndexedMinPriorityQueue {
+
+	private final int arity; //children per heap node
+	private final int[] heap; //vertex ids in heap order
+	private final int[] position; //slot of each vertex in heap, -1 if absent
+	private final double[] priority; //priority of each queued vertex
+	private int num; //number of vertices in queue
 
-	ArrayList<Object[]> pairs; //vertex pairs in queue
-	private int num; //number of vertex pairs in queue
+	/**
+	 * Creates a binary heap for vertex ids 0 to capacity - 1
+	 *
+	 * @param capacity
+	 *            number of vertices in the graph
+	 */
+	public VertexPriorityQueue(int capacity) {
+		this(capacity, 2);
+	}
 
-	/** VertexPriorityQueue constructor*/
-	public VertexPriorityQueue() {
-		pairs = new ArrayList<Object[]>();
+	/**
+	 * Creates a d-ary heap for vertex ids 0 to capacity - 1
+	 *
+	 * @param capacity
+	 *            number of vertices in the graph
+	 * @param arity
+	 *            number of children per heap node, at least 2
+	 */
+	public VertexPriorityQueue(int capacity, int arity) {
+		if (capacity < 0 || arity < 2) {
+			throw new IllegalArgumentException("Capacity: " + capacity
+					+ ", Arity: " + arity);
+		}
+		this.arity = arity;
+		heap = new int[capacity];
+		position = new int[capacity];
+		priority = new double[capacity];
+		Arrays.fill(position, -1);
 		num = 0;
 	}
-	
+
 	/** Removes and returns vertex with the minimum value */
-	public Object[] removeMin() throws PriorityQueueEmptyException {
-		if(pairs.size() == 0) {
+	public Integer removeMin() throws PriorityQueueEmptyException {
+		return removeMinVertex();
+	}
+
+	/** Returns vertex with the minimum value without removing it */
+	public int peekMinVertex() throws PriorityQueueEmptyException {
+		if (num == 0) {
 			throw new PriorityQueueEmptyException();
 		}
+		return heap[0];
+	}
 
-		//create new arraylist to stores vertex priority values
-		ArrayList<Double> list = new ArrayList<Double>();
-		//initialize vertex locations to each have a priority value
-		for(int i = 0; i < pairs.size(); i++) {
-			Object[] m = pairs.get(i);
-			list.add((Double) m[0]);
+	/** Removes and returns vertex with the minimum value */
+	public int removeMinVertex() throws PriorityQueueEmptyException {
+		if (num == 0) {
+			throw new PriorityQueueEmptyException();
 		}
-		//sort list based on value to prepare for removal of minimum
-		Collections.sort(list);
-		
-		//find where list.get(0) is in the pairs array
-		for(int i = 0; i < pairs.size(); i++) {
-			if(pairs.get(i)[0] == list.get(0)) {
-				num--;
-				return pairs.remove(i);
-			}
+		int min = heap[0];
+		position[min] = -1;
+		num--;
+		if (num > 0) {
+			//move the last vertex to the root and let it sink
+			siftDown(heap[num], 0);
 		}
-		return null;
+		return min;
 	}
+
 	/**Inserts a vertex into queue.
-	 * 
+	 *
 	 * parameter: double a = priority value of vertex
-	 * parameter: Location b = location of vertex
+	 * parameter: Integer b = id of vertex
 	 */
-	public void insert(double a, Location b) throws PriorityQueueFullException{
-		Object[] array = new Object[2]; 
-		array[0] = a; //initialize first part of vertex to its value
-		array[1] = b; //initialize second part of vertex to its location
-		pairs.add(array);
-		num++;
-	}
-	
+	public void insert(double a, Integer b) throws PriorityQueueFullException {
+		insert(b.intValue(), a);
+	}
+
+	/**Inserts a vertex into queue.
+	 *
+	 * parameter: int vertex = id of vertex
+	 * parameter: double key = priority value of vertex
+	 */
+	public void insert(int vertex, double key) throws PriorityQueueFullException {
+		checkVertex(vertex);
+		if (position[vertex] >= 0) {
+			throw new IllegalArgumentException("Vertex " + vertex
+					+ " is already queued");
+		}
+		if (num == heap.length) {
+			throw new PriorityQueueFullException();
+		}
+		priority[vertex] = key;
+		siftUp(vertex, num++);
+	}
+
+	/**Lowers the priority of a queued vertex.
+	 *
+	 * parameter: int vertex = id of vertex
+	 * parameter: double key = new priority value of vertex
+	 */
+	public void decreaseKey(int vertex, double key) {
+		checkVertex(vertex);
+		if (position[vertex] < 0 || key > priority[vertex]) {
+			throw new IllegalArgumentException("Vertex: " + vertex
+					+ ", Priority: " + key);
+		}
+		priority[vertex] = key;
+		siftUp(vertex, position[vertex]);
+	}
+
+	/**Returns true if the vertex is in the queue*/
+	public boolean contains(int vertex) {
+		return vertex >= 0 && vertex < position.length && position[vertex] >= 0;
+	}
+
+	/**Returns the priority of a queued vertex*/
+	public double getPriority(int vertex) {
+		if (!contains(vertex)) {
+			throw new IllegalArgumentException("Vertex: " + vertex);
+		}
+		return priority[vertex];
+	}
+
 	/**Returns true of false based on statement saying queue is empty*/
 	public boolean isEmpty() {
-		return pairs.size() == 0;
+		return num == 0;
 	}
 
 	/**Returns number of vertices in queue*/
 	public int size() {
 		return num;
 	}
+
+	/**Returns the largest vertex id + 1 the queue accepts*/
+	public int capacity() {
+		return heap.length;
+	}
+
+	/**Removes every vertex from the queue*/
+	public void clear() {
+		for (int i = 0; i < num; i++) {
+			position[heap[i]] = -1;
+		}
+		num = 0;
+	}
+
+	/**
+	 * Moves vertex up from slot i until its parent is not larger
+	 *
+	 * @param vertex
+	 *            vertex to be placed
+	 * @param i
+	 *            slot the vertex starts in
+	 */
+	private void siftUp(int vertex, int i) {
+		double key = priority[vertex];
+		while (i > 0) {
+			int parent = (i - 1) / arity;
+			if (priority[heap[parent]] <= key) {
+				break;
+			}
+			heap[i] = heap[parent];
+			position[heap[i]] = i;
+			i = parent;
+		}
+		heap[i] = vertex;
+		position[vertex] = i;
+	}
+
+	/**
+	 * Moves vertex down from slot i until no child is smaller
+	 *
+	 * @param vertex
+	 *            vertex to be placed
+	 * @param i
+	 *            slot the vertex starts in
+	 */
+	private void siftDown(int vertex, int i) {
+		double key = priority[vertex];
+		while (true) {
+			int first = i * arity + 1;
+			if (first >= num) {
+				break;
+			}
+			//find the smallest child
+			int last = Math.min(first + arity, num);
+			int min = first;
+			for (int c = first + 1; c < last; c++) {
+				if (priority[heap[c]] < priority[heap[min]]) {
+					min = c;
+				}
+			}
+			if (priority[heap[min]] >= key) {
+				break;
+			}
+			heap[i] = heap[min];
+			position[heap[i]] = i;
+			i = min;
+		}
+		heap[i] = vertex;
+		position[vertex] = i;
+	}
+
+	/**
+	 * Checks that a vertex id is in range
+	 *
+	 * @param vertex
+	 *            vertex id
+	 */
+	private void checkVertex(int vertex) {
+		if (vertex < 0 || vertex >= heap.length) {
+			throw new IllegalArgumentException("Vertex: " + vertex);
+		}
+	}
 }
@@ -0,0 +1,118 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Strongly connected components and the reachability check built on them
+ * against plain Dijkstra on sparse random graphs, also while vertices and
+ * edges are added between queries
+ */
+public class ComponentIndexTest {
+
+	@Test
+	public void componentsAndReachability() {
+		Random random = new Random(51);
+		for (int g = 0; g < 100; g++) {
+			int n = 1 + random.nextInt(60);
+			NavigationGraph graph = RandomGraphs.create(random, n,
+					random.nextInt(2 * n), 1, false);
+			ComponentIndex index = new CompactNavigationGraph(graph)
+					.getComponentIndex();
+			assertComponents(graph, index);
+		}
+	}
+
+	@Test
+	public void addedVerticesAndEdges() {
+		Random random = new Random(52);
+		for (int g = 0; g < 40; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					1 + random.nextInt(30), random.nextInt(30), 1, true);
+			for (int step = 0; step < 30; step++) {
+				List<Location> vertices = graph.getVertices();
+				if (random.nextInt(5) == 0) {
+					graph.addVertex(new Location("v" + vertices.size(),
+							random.nextInt(100), random.nextInt(100)));
+				} else {
+					Location src = vertices.get(random.nextInt(vertices.size()));
+					Location dest = vertices
+							.get(random.nextInt(vertices.size()));
+					if (src != dest) {
+						graph.addEdge(src, dest, new Path(src, dest,
+								new double[] { 1 + random.nextInt(20) }));
+					}
+				}
+				//queries in between keep the index and update it in place
+				vertices = graph.getVertices();
+				for (int q = 0; q < 10; q++) {
+					Location src = vertices.get(random.nextInt(vertices.size()));
+					Location dest = vertices
+							.get(random.nextInt(vertices.size()));
+					if (src != dest) {
+						RandomGraphs.assertShortest(src, dest, 0, RandomGraphs
+								.distances(graph, src, 0)[vertices.indexOf(dest)],
+								graph.getShortestRoute(src, dest, "p0"));
+					}
+				}
+				//a frozen copy shares the index kept up to date, if any
+				ComponentIndex index = graph.freeze().peekComponentIndex();
+				if (index != null) {
+					assertComponents(graph, index);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void frozenCopyKeepsItsComponents() {
+		Random random = new Random(53);
+		for (int g = 0; g < 40; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(30), random.nextInt(40), 1, false);
+			List<Location> vertices = graph.getVertices();
+			Location src = vertices.get(0);
+			Location dest = vertices.get(vertices.size() - 1);
+			graph.getShortestRoute(src, dest, "p0");
+			CompactNavigationGraph frozen = graph.freeze();
+			double expected = RandomGraphs.distances(graph, src, 0)[vertices
+					.size() - 1];
+			graph.addEdge(src, dest, new Path(src, dest, new double[] { 1 }));
+			RandomGraphs.assertShortest(src, dest, 0, expected,
+					frozen.getShortestRoute(src, dest, "p0"));
+			RandomGraphs.assertShortest(src, dest, 0, 1,
+					graph.getShortestRoute(src, dest, "p0"));
+		}
+	}
+
+	/**
+	 * Checks that the components of an index are the strongly connected
+	 * components of a graph and that it lets every route through
+	 */
+	private static void assertComponents(NavigationGraph graph,
+			ComponentIndex index) {
+		List<Location> vertices = graph.getVertices();
+		int n = vertices.size();
+		double[][] distance = new double[n][];
+		for (int s = 0; s < n; s++) {
+			distance[s] = RandomGraphs.distances(graph, vertices.get(s), 0);
+		}
+		Set<Integer> components = new HashSet<Integer>();
+		for (int s = 0; s < n; s++) {
+			components.add(index.getComponent(s));
+			for (int d = 0; d < n; d++) {
+				boolean reachable = distance[s][d] < Double.POSITIVE_INFINITY;
+				assertTrue(!reachable || index.mayReach(s, d));
+				assertEquals(reachable
+						&& distance[d][s] < Double.POSITIVE_INFINITY,
+						index.getComponent(s) == index.getComponent(d));
+			}
+		}
+		assertEquals(components.size(), index.getComponentCount());
+	}
+}
@@ -0,0 +1,115 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Contraction Hierarchy queries against plain Dijkstra on random graphs,
+ * with and without a core, contracted in parallel batches and read back
+ * from a file, and distance matrices from bucket-based searches
+ */
+public class ContractionHierarchyTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void routesMatchDijkstra() {
+		Random random = new Random(11);
+		for (int g = 0; g < 80; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(60), random.nextInt(240), 2, true);
+			graph.contract("p1");
+			RandomGraphs.assertAllPairs(graph, 1);
+		}
+	}
+
+	@Test
+	public void cliqueStaysInCore() {
+		Random random = new Random(12);
+		for (int g = 0; g < 10; g++) {
+			NavigationGraph graph = RandomGraphs.create(random, 120, 240, 1,
+					false);
+			//more neighbor pairs than are worth contracting
+			List<Location> vertices = graph.getVertices();
+			for (int u = 0; u < 40; u++) {
+				for (int v = 0; v < 40; v++) {
+					Location src = vertices.get(u);
+					Location dest = vertices.get(v);
+					if (u != v && graph.getEdgeIfExists(src, dest) == null) {
+						graph.addEdge(src, dest, new Path(src, dest,
+								new double[] { 1 + random.nextInt(40) }));
+					}
+				}
+			}
+			ContractionHierarchy hierarchy = graph.contract("p0");
+			assertTrue(hierarchy.getCoreSize() > 0);
+			RandomGraphs.assertAllPairs(graph, 0);
+		}
+	}
+
+	@Test
+	public void parallelContraction() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Random random = new Random(13);
+			NavigationGraph graph = RandomGraphs.grid(random, 40, 1);
+			CompactNavigationGraph compact = new CompactNavigationGraph(graph);
+			compact.setContractionHierarchy(ContractionHierarchy.build(compact,
+					"p0", pool));
+			List<Location> vertices = graph.getVertices();
+			for (int i = 0; i < 20; i++) {
+				Location src = vertices.get(random.nextInt(vertices.size()));
+				double[] expected = RandomGraphs.distances(graph, src, 0);
+				for (int d = 0; d < vertices.size(); d += 3) {
+					if (vertices.get(d) != src) {
+						RandomGraphs.assertShortest(src, vertices.get(d), 0,
+								expected[d], compact.getShortestRoute(src,
+										vertices.get(d), "p0"));
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void writeAndRead() throws Exception {
+		Random random = new Random(15);
+		NavigationGraph graph = RandomGraphs.create(random, 200, 800, 2,
+				true);
+		File file = folder.newFile("graph.ch");
+		graph.contract("p1").write(file.getPath());
+		NavigationGraph copy = RandomGraphs.create(new Random(15), 200, 800,
+				2, true);
+		copy.readContractionHierarchy(file.getPath());
+		RandomGraphs.assertAllPairs(copy, 1);
+	}
+
+	@Test
+	public void distanceMatrix() {
+		Random random = new Random(14);
+		for (int g = 0; g < 30; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(60), random.nextInt(240), 1, true);
+			graph.contract("p0");
+			List<Location> vertices = graph.getVertices();
+			double[][] matrix = graph.distanceMatrix(vertices, vertices, "p0");
+			for (int s = 0; s < vertices.size(); s++) {
+				double[] expected = RandomGraphs.distances(graph,
+						vertices.get(s), 0);
+				for (int d = 0; d < vertices.size(); d++) {
+					assertEquals(expected[d], matrix[s][d], 1e-9);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,204 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Edge value updates against plain Dijkstra: repaired Contraction
+ * Hierarchies, delta files, frozen copies and attached Landmarks
+ */
+public class EdgeUpdateTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void repairedHierarchies() {
+		Random random = new Random(71);
+		for (int g = 0; g < 40; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(50), random.nextInt(200), 2, true);
+			graph.contract("p0");
+			for (int round = 0; round < 4; round++) {
+				//a few decreases, a few increases or both
+				int mode = random.nextInt(3);
+				for (int i = 1 + random.nextInt(4); i > 0; i--) {
+					Path edge = randomEdge(graph, random);
+					if (edge == null) {
+						break;
+					}
+					double old = edge.getProperties().get(0);
+					double value = mode == 0 || mode == 2 && random.nextBoolean()
+							? 1 + random.nextInt((int) old)
+							: old + random.nextInt(20);
+					graph.updateEdge(edge.getSource(), edge.getDestination(),
+							"p0", value);
+				}
+				RandomGraphs.assertAllPairs(graph, 0);
+			}
+		}
+	}
+
+	@Test
+	public void deltaFile() throws Exception {
+		Random random = new Random(72);
+		NavigationGraph graph = RandomGraphs.create(random, 40, 160, 2, false);
+		graph.contract("p1");
+		List<Location> vertices = graph.getVertices();
+		File file = folder.newFile("delta.txt");
+		Writer out = new FileWriter(file);
+		int lines = 0;
+		try {
+			out.write("Source Destination p1\n");
+			for (Location src : vertices) {
+				for (Path edge : graph.getOutEdges(src)) {
+					if (random.nextInt(4) == 0) {
+						out.write(src.getName() + " "
+								+ edge.getDestination().getName() + " "
+								+ (1 + random.nextInt(20)) + "\n");
+						lines++;
+					}
+				}
+			}
+		} finally {
+			out.close();
+		}
+		assertEquals(lines, graph.applyEdgeUpdates(file.getPath()));
+		RandomGraphs.assertAllPairs(graph, 1);
+	}
+
+	@Test
+	public void deltaFileRejected() throws Exception {
+		NavigationGraph graph = new NavigationGraph(new String[] { "p0" });
+		Location a = new Location("A");
+		Location b = new Location("b");
+		graph.addVertex(a);
+		graph.addVertex(b);
+		graph.addEdge(a, b, new Path(a, b, new double[] { 5 }));
+		File file = folder.newFile("delta.txt");
+		Writer out = new FileWriter(file);
+		try {
+			//a different letter case, then a line that is never read
+			out.write("Source Destination p0\nA b 4\na b 3\nb\n");
+		} finally {
+			out.close();
+		}
+		try {
+			graph.applyEdgeUpdates(file.getPath());
+			fail();
+		} catch (InvalidFileException e) {
+			assertEquals("No such edge", e.getReason());
+			assertEquals(3, e.getLineNumber());
+		}
+		assertEquals(5, graph.getEdgeIfExists(a, b).getProperties().get(0), 0);
+	}
+
+	@Test
+	public void frozenCopyUnchanged() {
+		Random random = new Random(73);
+		for (int g = 0; g < 20; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(30), random.nextInt(120), 1, true);
+			graph.contract("p0");
+			List<Location> vertices = graph.getVertices();
+			double[][] before = new double[vertices.size()][];
+			for (int s = 0; s < vertices.size(); s++) {
+				before[s] = RandomGraphs.distances(graph, vertices.get(s), 0);
+			}
+			CompactNavigationGraph frozen = graph.freeze();
+			for (int i = 0; i < 10; i++) {
+				Path edge = randomEdge(graph, random);
+				if (edge != null) {
+					graph.updateEdge(edge.getSource(), edge.getDestination(),
+							"p0", 1 + random.nextInt(20));
+				}
+			}
+			for (int s = 0; s < vertices.size(); s++) {
+				for (int d = 0; d < vertices.size(); d++) {
+					if (s != d) {
+						assertEquals(before[s][d], frozen.distanceMatrix(
+								vertices.subList(s, s + 1),
+								vertices.subList(d, d + 1), "p0")[0][0], 1e-9);
+					}
+				}
+			}
+			RandomGraphs.assertAllPairs(graph, 0);
+		}
+	}
+
+	@Test
+	public void attachedLandmarks() {
+		Random random = new Random(74);
+		for (int g = 0; g < 30; g++) {
+			//updateEdge sets every parallel edge, which may lower one
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(40), random.nextInt(160), 2, false);
+			Landmarks landmarks = Landmarks.build(
+					new CompactNavigationGraph(graph), 1 + random.nextInt(4),
+					Landmarks.Selection.FARTHEST);
+			graph.setLandmarks(landmarks);
+			Path edge = randomEdge(graph, random);
+			if (edge == null) {
+				continue;
+			}
+			//increases leave the lower bounds valid
+			graph.updateEdge(edge.getSource(), edge.getDestination(), "p0",
+					edge.getProperties().get(0) + 5);
+			assertFalse(landmarks.isStale("p0"));
+			RandomGraphs.assertShortestRoutes(graph, 0,
+					landmarks.getHeuristic("p0"));
+			//decreases do not
+			graph.updateEdge(edge.getSource(), edge.getDestination(), "p0", 1);
+			assertTrue(landmarks.isStale("p0"));
+			assertFalse(landmarks.isStale("p1"));
+			RandomGraphs.assertShortestRoutes(graph, 0,
+					landmarks.getHeuristic("p0"));
+		}
+	}
+
+	@Test
+	public void sharedPropertyLists() {
+		NavigationGraph graph = new NavigationGraph(new String[] { "p0" });
+		Location a = new Location("a");
+		Location b = new Location("b");
+		Location c = new Location("c");
+		graph.addVertex(a);
+		graph.addVertex(b);
+		graph.addVertex(c);
+		List<Double> values = Arrays.asList(5.0);
+		graph.addEdge(a, b, new Path(a, b, values));
+		graph.addEdge(b, c, new Path(b, c, values));
+		graph.getShortestRoute(a, c, "p0");
+		graph.updateEdge(a, b, "p0", 1);
+		assertEquals(5, values.get(0), 0);
+		assertEquals(5, graph.getEdgeIfExists(b, c).getProperties().get(0), 0);
+		assertEquals(6, RandomGraphs.length(graph.getShortestRoute(a, c, "p0"),
+				0), 0);
+	}
+
+	/**
+	 * Picks an edge of a random Location that has one
+	 */
+	private static Path randomEdge(NavigationGraph graph, Random random) {
+		List<Location> vertices = graph.getVertices();
+		for (int i = 0; i < 20; i++) {
+			List<Path> out = graph.getOutEdges(vertices.get(random
+					.nextInt(vertices.size())));
+			if (!out.isEmpty()) {
+				return out.get(random.nextInt(out.size()));
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,70 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Snapshots written and opened again: Locations with their coordinates,
+ * and A* with coordinate bounds on the opened graph against plain Dijkstra
+ * on the original
+ */
+public class GraphSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void coordinatesAndRoutes() throws Exception {
+		Random random = new Random(10);
+		for (int g = 0; g < 20; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					1 + random.nextInt(40), random.nextInt(160), 2, true);
+			File file = folder.newFile("graph" + g + ".snap");
+			GraphSnapshot.write(new CompactNavigationGraph(graph),
+					file.getPath());
+			CompactNavigationGraph snapshot = GraphSnapshot.open(file
+					.getPath());
+			List<Location> vertices = graph.getVertices();
+			assertEquals(vertices.size(), snapshot.getVertexCount());
+			for (int v = 0; v < vertices.size(); v++) {
+				Location location = snapshot.getLocation(v);
+				assertEquals(vertices.get(v).getName(), location.getName());
+				assertEquals(vertices.get(v).getX(), location.getX(), 0);
+				assertEquals(vertices.get(v).getY(), location.getY(), 0);
+			}
+			RouteHeuristic heuristic = new CoordinateHeuristic(snapshot, "p1");
+			for (Location src : vertices) {
+				double[] expected = RandomGraphs.distances(graph, src, 1);
+				for (int d = 0; d < vertices.size(); d++) {
+					if (vertices.get(d) != src) {
+						RandomGraphs.assertShortest(src, vertices.get(d), 1,
+								expected[d], snapshot.getShortestRoute(src,
+										vertices.get(d), "p1", heuristic));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void locationsWithoutCoordinates() throws Exception {
+		NavigationGraph graph = new NavigationGraph(new String[] { "p0" });
+		Location a = new Location("a");
+		Location b = new Location("b", 3, 4);
+		graph.addVertex(a);
+		graph.addVertex(b);
+		graph.addEdge(a, b, new Path(a, b, new double[] { 1 }));
+		File file = folder.newFile("graph.snap");
+		GraphSnapshot.write(new CompactNavigationGraph(graph), file.getPath());
+		CompactNavigationGraph snapshot = GraphSnapshot.open(file.getPath());
+		assertEquals(Double.NaN, snapshot.getLocation(0).getX(), 0);
+		assertEquals(Double.NaN, snapshot.getLocation(0).getY(), 0);
+		assertEquals(3, snapshot.getLocation(1).getX(), 0);
+		assertEquals(4, snapshot.getLocation(1).getY(), 0);
+	}
+}
@@ -0,0 +1,99 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Isochrones from one and from several sources against plain Dijkstra on
+ * small random graphs
+ */
+public class IsochroneTest {
+
+	private static final int GRAPHS = 100;
+
+	@Test
+	public void singleSource() {
+		Random random = new Random(41);
+		for (int g = 0; g < GRAPHS; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					1 + random.nextInt(60), random.nextInt(200), 2, true);
+			List<Location> vertices = graph.getVertices();
+			Location src = vertices.get(random.nextInt(vertices.size()));
+			double budget = random.nextInt(60);
+			Isochrone isochrone = graph.isochrone(src, "p1", budget);
+			assertReached(graph, isochrone, budget,
+					RandomGraphs.distances(graph, src, 1));
+			for (int i = 0; i < isochrone.size(); i++) {
+				assertEquals(src, isochrone.getNearestSource(i));
+			}
+		}
+	}
+
+	@Test
+	public void severalSources() {
+		Random random = new Random(42);
+		for (int g = 0; g < GRAPHS; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					1 + random.nextInt(60), random.nextInt(200), 1, true);
+			List<Location> vertices = graph.getVertices();
+			List<Location> sources = new ArrayList<Location>();
+			for (int s = 1 + random.nextInt(4); s > 0; s--) {
+				Location src = vertices.get(random.nextInt(vertices.size()));
+				if (!sources.contains(src)) {
+					sources.add(src);
+				}
+			}
+			double budget = random.nextInt(60);
+			double[] nearest = new double[vertices.size()];
+			Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+			for (Location src : sources) {
+				double[] distance = RandomGraphs.distances(graph, src, 0);
+				for (int v = 0; v < nearest.length; v++) {
+					nearest[v] = Math.min(nearest[v], distance[v]);
+				}
+			}
+			Isochrone isochrone = graph.isochrone(sources, "p0", budget);
+			assertReached(graph, isochrone, budget, nearest);
+			for (int i = 0; i < isochrone.size(); i++) {
+				//the route from the nearest source is a shortest one
+				Location source = isochrone.getNearestSource(i);
+				assertTrue(sources.contains(source));
+				double[] distance = RandomGraphs.distances(graph, source, 0);
+				assertEquals(isochrone.getDistanceAt(i),
+						distance[vertices.indexOf(isochrone.getLocation(i))],
+						1e-9);
+			}
+		}
+	}
+
+	/**
+	 * Checks that an isochrone holds exactly the Locations within the budget,
+	 * at their distances and in order of distance
+	 */
+	private static void assertReached(NavigationGraph graph,
+			Isochrone isochrone, double budget, double[] expected) {
+		List<Location> vertices = graph.getVertices();
+		int within = 0;
+		for (int v = 0; v < vertices.size(); v++) {
+			if (expected[v] <= budget) {
+				within++;
+				assertTrue(isochrone.contains(vertices.get(v)));
+				assertEquals(expected[v],
+						isochrone.getDistance(vertices.get(v)), 1e-9);
+			} else {
+				assertEquals(Double.POSITIVE_INFINITY,
+						isochrone.getDistance(vertices.get(v)), 0);
+			}
+		}
+		assertEquals(within, isochrone.size());
+		for (int i = 1; i < isochrone.size(); i++) {
+			assertTrue(isochrone.getDistanceAt(i - 1) <= isochrone
+					.getDistanceAt(i));
+		}
+	}
+}
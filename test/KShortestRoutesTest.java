@@ -0,0 +1,54 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * K shortest loopless routes against every loopless route on small random
+ * graphs
+ */
+public class KShortestRoutesTest {
+
+	@Test
+	public void lengthsAreTheKSmallest() {
+		Random random = new Random(31);
+		for (int g = 0; g < 200; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(7), random.nextInt(30), 1, false);
+			List<Location> vertices = graph.getVertices();
+			Location src = vertices.get(0);
+			Location dest = vertices.get(vertices.size() - 1);
+			List<Double> expected = new ArrayList<Double>();
+			for (List<Path> route : RandomGraphs.simpleRoutes(graph, src,
+					dest)) {
+				expected.add(RandomGraphs.length(route, 0));
+			}
+			Collections.sort(expected);
+			int k = 1 + random.nextInt(12);
+			List<List<Path>> routes = graph.getKShortestRoutes(src, dest, "p0",
+					k);
+			assertEquals(Math.min(k, expected.size()), routes.size());
+			Set<List<Path>> distinct = new HashSet<List<Path>>();
+			for (int i = 0; i < routes.size(); i++) {
+				List<Path> route = routes.get(i);
+				RandomGraphs.assertRoute(src, dest, route);
+				assertEquals(expected.get(i), RandomGraphs.length(route, 0),
+						1e-9);
+				Set<Location> visited = new HashSet<Location>();
+				for (Path path : route) {
+					assertTrue(visited.add(path.getDestination()));
+				}
+				assertFalse(visited.contains(src));
+				assertTrue(distinct.add(route));
+			}
+		}
+	}
+}
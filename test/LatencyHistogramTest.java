@@ -0,0 +1,58 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Durations recorded from several threads at once against the same
+ * durations sorted
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void concurrentRecording() throws Exception {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final long[][] recorded = new long[4][20000];
+		Thread[] threads = new Thread[recorded.length];
+		for (int t = 0; t < threads.length; t++) {
+			final long[] values = recorded[t];
+			final Random random = new Random(t);
+			threads[t] = new Thread() {
+				public void run() {
+					for (int i = 0; i < values.length; i++) {
+						values[i] = (long) Math.exp(random.nextDouble() * 20);
+						histogram.record(values[i]);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		long[] all = new long[0];
+		long sum = 0;
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+			int from = all.length;
+			all = Arrays.copyOf(all, from + recorded[t].length);
+			System.arraycopy(recorded[t], 0, all, from, recorded[t].length);
+		}
+		for (long value : all) {
+			sum += value;
+		}
+		Arrays.sort(all);
+		assertEquals(all.length, histogram.getCount());
+		assertEquals((double) sum / all.length, histogram.getMean(), 1e-6);
+		assertEquals(all[all.length - 1], histogram.getMax());
+		for (double percentile : new double[] { 1, 50, 90, 99, 99.9 }) {
+			long expected = all[(int) Math.ceil(percentile / 100 * all.length)
+					- 1];
+			long value = histogram.getValueAtPercentile(percentile);
+			assertTrue(value >= expected && value <= expected * 1.01 + 1);
+		}
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+	}
+}
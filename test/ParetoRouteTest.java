@@ -0,0 +1,73 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Pareto routes against the Pareto front of every loopless route on small
+ * random graphs
+ */
+public class ParetoRouteTest {
+
+	@Test
+	public void paretoRoutesAreTheParetoFront() {
+		Random random = new Random(21);
+		for (int g = 0; g < 150; g++) {
+			int properties = 2 + random.nextInt(2);
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(7), random.nextInt(24), properties, true);
+			List<Location> vertices = graph.getVertices();
+			Location src = vertices.get(0);
+			Location dest = vertices.get(vertices.size() - 1);
+			Set<List<Double>> expected = new HashSet<List<Double>>();
+			List<List<Double>> all = new ArrayList<List<Double>>();
+			for (List<Path> route : RandomGraphs.simpleRoutes(graph, src,
+					dest)) {
+				all.add(values(route, properties));
+			}
+			for (List<Double> candidate : all) {
+				boolean dominated = false;
+				for (List<Double> other : all) {
+					dominated |= dominates(other, candidate);
+				}
+				if (!dominated) {
+					expected.add(candidate);
+				}
+			}
+			Set<List<Double>> found = new HashSet<List<Double>>();
+			for (List<Path> route : graph.getParetoRoutes(src, dest, null, 0)) {
+				RandomGraphs.assertRoute(src, dest, route);
+				found.add(values(route, properties));
+			}
+			assertEquals(expected, found);
+		}
+	}
+
+	private static List<Double> values(List<Path> route, int properties) {
+		Double[] values = new Double[properties];
+		for (int p = 0; p < properties; p++) {
+			values[p] = RandomGraphs.length(route, p);
+		}
+		return Arrays.asList(values);
+	}
+
+	/**
+	 * Checks if a is at most b on every property and below it on one
+	 */
+	private static boolean dominates(List<Double> a, List<Double> b) {
+		boolean below = false;
+		for (int p = 0; p < a.size(); p++) {
+			if (a.get(p) > b.get(p)) {
+				return false;
+			}
+			below |= a.get(p) < b.get(p);
+		}
+		return below;
+	}
+}
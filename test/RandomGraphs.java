@@ -0,0 +1,330 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Small random graphs for the tests and the plain algorithms their answers
+ * are checked against: Dijkstra's algorithm over getOutEdges and the
+ * enumeration of every loopless route.
+ */
+final class RandomGraphs {
+
+	private RandomGraphs() {
+	}
+
+	/**
+	 * Random graph with integer edge values from 1 to 20 and coordinates in
+	 * a 100 by 100 square. Locations are named v0, v1, ... in id order.
+	 *
+	 * @param random
+	 *            source of the graph
+	 * @param vertices
+	 *            number of Locations
+	 * @param edges
+	 *            number of edges tried; loops are skipped
+	 * @param properties
+	 *            number of edge properties, named p0, p1, ...
+	 * @param parallel
+	 *            whether two edges may join the same Locations
+	 * @return new graph
+	 */
+	static NavigationGraph create(Random random, int vertices, int edges,
+			int properties, boolean parallel) {
+		String[] names = new String[properties];
+		for (int p = 0; p < properties; p++) {
+			names[p] = "p" + p;
+		}
+		NavigationGraph graph = new NavigationGraph(names);
+		Location[] locations = new Location[vertices];
+		for (int v = 0; v < vertices; v++) {
+			locations[v] = new Location("v" + v, random.nextInt(100),
+					random.nextInt(100));
+			graph.addVertex(locations[v]);
+		}
+		for (int i = 0; i < edges; i++) {
+			Location src = locations[random.nextInt(vertices)];
+			Location dest = locations[random.nextInt(vertices)];
+			if (src == dest
+					|| !parallel && graph.getEdgeIfExists(src, dest) != null) {
+				continue;
+			}
+			double[] values = new double[properties];
+			for (int p = 0; p < properties; p++) {
+				values[p] = 1 + random.nextInt(20);
+			}
+			graph.addEdge(src, dest, new Path(src, dest, values));
+		}
+		return graph;
+	}
+
+	/**
+	 * Grid with edges both ways between neighbors, like a street map, with
+	 * integer edge values from 1 to 20. Locations are named v0, v1, ... row
+	 * after row.
+	 *
+	 * @param random
+	 *            source of the edge values
+	 * @param side
+	 *            number of Locations in a row and in a column
+	 * @param properties
+	 *            number of edge properties, named p0, p1, ...
+	 * @return new graph
+	 */
+	static NavigationGraph grid(Random random, int side, int properties) {
+		NavigationGraph graph = create(random, side * side, 0, properties,
+				false);
+		List<Location> vertices = graph.getVertices();
+		for (int v = 0; v < vertices.size(); v++) {
+			if (v % side + 1 < side) {
+				connect(graph, random, vertices.get(v), vertices.get(v + 1));
+			}
+			if (v + side < vertices.size()) {
+				connect(graph, random, vertices.get(v), vertices.get(v + side));
+			}
+		}
+		return graph;
+	}
+
+	private static void connect(NavigationGraph graph, Random random,
+			Location a, Location b) {
+		int properties = graph.getEdgePropertyNames().length;
+		for (int i = 0; i < 2; i++) {
+			double[] values = new double[properties];
+			for (int p = 0; p < properties; p++) {
+				values[p] = 1 + random.nextInt(20);
+			}
+			Location src = i == 0 ? a : b;
+			Location dest = i == 0 ? b : a;
+			graph.addEdge(src, dest, new Path(src, dest, values));
+		}
+	}
+
+	/**
+	 * Distances from src to every Location by Dijkstra's algorithm over a
+	 * weighted sum of the edge properties
+	 *
+	 * @param graph
+	 *            searched graph
+	 * @param src
+	 *            source Location
+	 * @param weights
+	 *            factor of each edge property
+	 * @return distance of each Location by id, infinity if unreachable
+	 */
+	static double[] distances(NavigationGraph graph, Location src,
+			double[] weights) {
+		List<Location> vertices = graph.getVertices();
+		Map<Location, Integer> ids = new HashMap<Location, Integer>();
+		for (int v = 0; v < vertices.size(); v++) {
+			ids.put(vertices.get(v), v);
+		}
+		double[] distance = new double[vertices.size()];
+		Arrays.fill(distance, Double.POSITIVE_INFINITY);
+		distance[ids.get(src)] = 0;
+		PriorityQueue<double[]> queue = new PriorityQueue<double[]>(11,
+				new Comparator<double[]>() {
+					public int compare(double[] a, double[] b) {
+						return Double.compare(a[0], b[0]);
+					}
+				});
+		queue.add(new double[] { 0, ids.get(src) });
+		while (!queue.isEmpty()) {
+			double[] entry = queue.poll();
+			int v = (int) entry[1];
+			if (entry[0] > distance[v]) {
+				continue;
+			}
+			for (Path path : graph.getOutEdges(vertices.get(v))) {
+				int t = ids.get(path.getDestination());
+				double d = entry[0] + value(path, weights);
+				if (d < distance[t]) {
+					distance[t] = d;
+					queue.add(new double[] { d, t });
+				}
+			}
+		}
+		return distance;
+	}
+
+	/**
+	 * Distances from src to every Location over one edge property
+	 *
+	 * @param graph
+	 *            searched graph
+	 * @param src
+	 *            source Location
+	 * @param property
+	 *            edge property index
+	 * @return distance of each Location by id, infinity if unreachable
+	 */
+	static double[] distances(NavigationGraph graph, Location src,
+			int property) {
+		double[] weights = new double[graph.getEdgePropertyNames().length];
+		weights[property] = 1;
+		return distances(graph, src, weights);
+	}
+
+	/**
+	 * Every loopless route from src to dest, each as a list of edges from
+	 * src on, which the graph methods return the other way round
+	 *
+	 * @param graph
+	 *            small graph
+	 * @param src
+	 *            source Location
+	 * @param dest
+	 *            destination Location
+	 * @return all routes, parallel edges giving routes of their own
+	 */
+	static List<List<Path>> simpleRoutes(NavigationGraph graph, Location src,
+			Location dest) {
+		List<List<Path>> routes = new ArrayList<List<Path>>();
+		List<Location> visited = new ArrayList<Location>();
+		visited.add(src);
+		enumerate(graph, src, dest, visited, new ArrayList<Path>(), routes);
+		return routes;
+	}
+
+	private static void enumerate(NavigationGraph graph, Location at,
+			Location dest, List<Location> visited, List<Path> route,
+			List<List<Path>> routes) {
+		if (at.equals(dest)) {
+			routes.add(new ArrayList<Path>(route));
+			return;
+		}
+		for (Path path : graph.getOutEdges(at)) {
+			Location next = path.getDestination();
+			if (visited.contains(next)) {
+				continue;
+			}
+			visited.add(next);
+			route.add(path);
+			enumerate(graph, next, dest, visited, route, routes);
+			route.remove(route.size() - 1);
+			visited.remove(visited.size() - 1);
+		}
+	}
+
+	/**
+	 * Total of one edge property over a route
+	 *
+	 * @param route
+	 *            edges in any order
+	 * @param property
+	 *            edge property index
+	 * @return route length
+	 */
+	static double length(List<Path> route, int property) {
+		double length = 0;
+		for (Path path : route) {
+			length += path.getProperties().get(property);
+		}
+		return length;
+	}
+
+	/**
+	 * Weighted sum of the edge properties of one edge
+	 */
+	static double value(Path path, double[] weights) {
+		double value = 0;
+		for (int p = 0; p < weights.length; p++) {
+			if (weights[p] != 0) {
+				value += weights[p] * path.getProperties().get(p);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Checks that a route as the graph methods return it, starting with the
+	 * edge that enters dest, leads from src to dest
+	 *
+	 * @param src
+	 *            source Location
+	 * @param dest
+	 *            destination Location
+	 * @param route
+	 *            non-empty route
+	 */
+	static void assertRoute(Location src, Location dest, List<Path> route) {
+		assertEquals(dest, route.get(0).getDestination());
+		for (int i = 1; i < route.size(); i++) {
+			assertEquals(route.get(i - 1).getSource(),
+					route.get(i).getDestination());
+		}
+		assertEquals(src, route.get(route.size() - 1).getSource());
+	}
+
+	/**
+	 * Checks that a route is a shortest one
+	 *
+	 * @param src
+	 *            source Location
+	 * @param dest
+	 *            destination Location
+	 * @param property
+	 *            edge property index
+	 * @param expected
+	 *            length of the shortest route, infinity if there is none
+	 * @param route
+	 *            route found
+	 */
+	static void assertShortest(Location src, Location dest, int property,
+			double expected, List<Path> route) {
+		if (expected == Double.POSITIVE_INFINITY) {
+			assertEquals(src + " -> " + dest, Collections.<Path> emptyList(),
+					route);
+			return;
+		}
+		assertRoute(src, dest, route);
+		assertEquals(src + " -> " + dest, expected, length(route, property),
+				1e-9);
+	}
+
+	/**
+	 * Checks getShortestRoute between every pair of Locations
+	 *
+	 * @param graph
+	 *            searched graph
+	 * @param property
+	 *            edge property index
+	 */
+	static void assertAllPairs(NavigationGraph graph, int property) {
+		assertShortestRoutes(graph, property, null);
+	}
+
+	/**
+	 * Checks getShortestRoute with a heuristic between every pair of
+	 * Locations
+	 *
+	 * @param graph
+	 *            searched graph
+	 * @param property
+	 *            edge property index
+	 * @param heuristic
+	 *            heuristic for the property, or null for Dijkstra
+	 */
+	static void assertShortestRoutes(NavigationGraph graph, int property,
+			RouteHeuristic heuristic) {
+		String name = graph.getEdgePropertyNames()[property];
+		List<Location> vertices = graph.getVertices();
+		for (Location src : vertices) {
+			double[] expected = distances(graph, src, property);
+			for (int d = 0; d < vertices.size(); d++) {
+				if (vertices.get(d) != src) {
+					assertShortest(src, vertices.get(d), property, expected[d],
+							graph.getShortestRoute(src, vertices.get(d), name,
+									heuristic));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Routes served by a RouteCache against plain Dijkstra, within the byte
+ * bound and while the graph changes
+ */
+public class RouteCacheTest {
+
+	@Test
+	public void cachedRoutesAreTheSame() {
+		Random random = new Random(61);
+		for (int g = 0; g < 40; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(30), random.nextInt(120), 2, true);
+			RouteCache cache = new RouteCache(1 << 20);
+			graph.setRouteCache(cache);
+			List<Location> vertices = graph.getVertices();
+			int pairs = 0;
+			for (Location src : vertices) {
+				for (Location dest : vertices) {
+					if (src != dest) {
+						List<Path> route = graph.getShortestRoute(src, dest,
+								"p1");
+						assertEquals(route,
+								graph.getShortestRoute(src, dest, "p1"));
+						pairs++;
+					}
+				}
+			}
+			assertEquals(pairs, cache.getMissCount());
+			assertEquals(pairs, cache.getHitCount());
+			RandomGraphs.assertAllPairs(graph, 1);
+		}
+	}
+
+	@Test
+	public void byteBound() {
+		Random random = new Random(62);
+		NavigationGraph graph = RandomGraphs.create(random, 60, 300, 1, true);
+		RouteCache cache = new RouteCache(4096, 2);
+		graph.setRouteCache(cache);
+		for (int i = 0; i < 3; i++) {
+			RandomGraphs.assertAllPairs(graph, 0);
+			assertTrue(cache.getByteSize() <= cache.getMaxBytes());
+		}
+		assertTrue(cache.getEvictionCount() > 0);
+	}
+
+	@Test
+	public void invalidatedByNewEdges() {
+		Random random = new Random(63);
+		for (int g = 0; g < 30; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(20), random.nextInt(80), 1, true);
+			RouteCache cache = new RouteCache(1 << 20);
+			graph.setRouteCache(cache);
+			RandomGraphs.assertAllPairs(graph, 0);
+			for (int step = 0; step < 10; step++) {
+				List<Location> vertices = graph.getVertices();
+				Location src = vertices.get(random.nextInt(vertices.size()));
+				Location dest = vertices.get(random.nextInt(vertices.size()));
+				if (src != dest) {
+					long invalidations = cache.getInvalidationCount();
+					graph.addEdge(src, dest, new Path(src, dest,
+							new double[] { 1 + random.nextInt(20) }));
+					assertTrue(cache.getInvalidationCount() > invalidations);
+					RandomGraphs.assertAllPairs(graph, 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void invalidatedByUpdates() {
+		Random random = new Random(64);
+		for (int g = 0; g < 30; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(20), random.nextInt(80), 2, false);
+			graph.setRouteCache(new RouteCache(1 << 20));
+			RandomGraphs.assertAllPairs(graph, 0);
+			for (int step = 0; step < 20; step++) {
+				List<Location> vertices = graph.getVertices();
+				Location src = vertices.get(random.nextInt(vertices.size()));
+				Location dest = vertices.get(random.nextInt(vertices.size()));
+				if (src != dest && graph.getEdgeIfExists(src, dest) != null) {
+					//up or down, on the cached property or the other one
+					graph.updateEdge(src, dest, "p" + random.nextInt(2),
+							1 + random.nextInt(20));
+					RandomGraphs.assertAllPairs(graph, 0);
+				}
+			}
+		}
+	}
+}
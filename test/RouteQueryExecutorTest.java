@@ -0,0 +1,52 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Batches of queries run by several threads on a frozen graph against
+ * plain Dijkstra, with and without a Contraction Hierarchy
+ */
+public class RouteQueryExecutorTest {
+
+	@Test
+	public void batchesMatchDijkstra() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Random random = new Random(16);
+			for (int g = 0; g < 20; g++) {
+				NavigationGraph graph = RandomGraphs.create(random,
+						2 + random.nextInt(60), random.nextInt(240), 2, true);
+				if (g % 2 == 0) {
+					graph.contract("p0");
+				}
+				RouteQueryExecutor executor = new RouteQueryExecutor(
+						graph.freeze(), pool);
+				List<Location> vertices = graph.getVertices();
+				List<Location> sources = new ArrayList<Location>();
+				List<Location> dests = new ArrayList<Location>();
+				for (Location src : vertices) {
+					for (Location dest : vertices) {
+						if (src != dest) {
+							sources.add(src);
+							dests.add(dest);
+						}
+					}
+				}
+				List<List<Path>> routes = executor.getShortestRoutes(sources,
+						dests, "p0");
+				for (int i = 0; i < routes.size(); i++) {
+					Location src = sources.get(i);
+					Location dest = dests.get(i);
+					RandomGraphs.assertShortest(src, dest, 0, RandomGraphs
+							.distances(graph, src, 0)[vertices.indexOf(dest)],
+							routes.get(i));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
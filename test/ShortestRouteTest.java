@@ -0,0 +1,117 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Searches from one Location to another, distance matrices and shortest
+ * path trees against plain Dijkstra on small random graphs
+ */
+public class ShortestRouteTest {
+
+	private static final int GRAPHS = 60;
+
+	@Test
+	public void dijkstraOnEveryQueueType() {
+		Random random = new Random(1);
+		for (int g = 0; g < GRAPHS; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(40), random.nextInt(160), 2, true);
+			for (PriorityQueueType type : PriorityQueueType.values()) {
+				graph.setPriorityQueueType(type);
+				RandomGraphs.assertAllPairs(graph, 1);
+			}
+		}
+	}
+
+	@Test
+	public void aStarWithCoordinates() {
+		Random random = new Random(2);
+		for (int g = 0; g < GRAPHS; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(40), random.nextInt(160), 1, true);
+			RandomGraphs.assertShortestRoutes(graph, 0,
+					new CoordinateHeuristic(graph, "p0"));
+		}
+	}
+
+	@Test
+	public void bidirectional() {
+		Random random = new Random(4);
+		for (int g = 0; g < GRAPHS; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(40), random.nextInt(160), 2, true);
+			List<Location> vertices = graph.getVertices();
+			for (Location src : vertices) {
+				double[] expected = RandomGraphs.distances(graph, src, 0);
+				for (int d = 0; d < vertices.size(); d++) {
+					if (vertices.get(d) != src) {
+						RandomGraphs.assertShortest(src, vertices.get(d), 0,
+								expected[d], graph.getShortestRouteBidirectional(
+										src, vertices.get(d), "p0"));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void aStarWithLandmarks() {
+		Random random = new Random(3);
+		for (int g = 0; g < GRAPHS; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(40), random.nextInt(160), 2, true);
+			Landmarks.Selection selection = g % 2 == 0
+					? Landmarks.Selection.FARTHEST : Landmarks.Selection.AVOID;
+			Landmarks landmarks = Landmarks.build(
+					new CompactNavigationGraph(graph), 1 + random.nextInt(4),
+					selection);
+			RandomGraphs.assertShortestRoutes(graph, 1,
+					landmarks.getHeuristic("p1"));
+		}
+	}
+
+	@Test
+	public void distanceMatrix() {
+		Random random = new Random(5);
+		for (int g = 0; g < GRAPHS; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(40), random.nextInt(160), 2, true);
+			List<Location> vertices = graph.getVertices();
+			double[][] matrix = graph.distanceMatrix(vertices, vertices, "p1");
+			for (int s = 0; s < vertices.size(); s++) {
+				double[] expected = RandomGraphs.distances(graph,
+						vertices.get(s), 1);
+				for (int d = 0; d < vertices.size(); d++) {
+					assertEquals(expected[d], matrix[s][d], 1e-9);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void shortestPathTree() {
+		Random random = new Random(6);
+		for (int g = 0; g < GRAPHS; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(40), random.nextInt(160), 2, true);
+			List<Location> vertices = graph.getVertices();
+			for (int s = 0; s < vertices.size(); s++) {
+				double[] expected = RandomGraphs.distances(graph,
+						vertices.get(s), 1);
+				ShortestPathTree tree = graph.shortestPathTree(vertices.get(s),
+						"p1");
+				for (int d = 0; d < vertices.size(); d++) {
+					assertEquals(expected[d], tree.getDistance(d), 1e-9);
+					if (d != s) {
+						RandomGraphs.assertShortest(vertices.get(s),
+								vertices.get(d), 1, expected[d],
+								tree.getRoute(vertices.get(d)));
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,80 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Weighted-sum routes against plain Dijkstra and constrained routes against
+ * every loopless route on small random graphs
+ */
+public class WeightedRouteTest {
+
+	private static final int GRAPHS = 150;
+
+	@Test
+	public void weightedSum() {
+		Random random = new Random(22);
+		for (int g = 0; g < GRAPHS; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(30), random.nextInt(120), 2, true);
+			double[] weights = { random.nextInt(11) / 10.0, 0 };
+			weights[1] = 1 - weights[0];
+			List<Location> vertices = graph.getVertices();
+			Location src = vertices.get(0);
+			double[] expected = RandomGraphs.distances(graph, src, weights);
+			for (int d = 1; d < vertices.size(); d++) {
+				List<Path> route = graph.getShortestRoute(src, vertices.get(d),
+						weights);
+				if (expected[d] == Double.POSITIVE_INFINITY) {
+					assertTrue(route.isEmpty());
+					continue;
+				}
+				RandomGraphs.assertRoute(src, vertices.get(d), route);
+				double sum = 0;
+				for (Path path : route) {
+					sum += RandomGraphs.value(path, weights);
+				}
+				assertEquals(expected[d], sum, 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void constrainedRoutes() {
+		Random random = new Random(23);
+		for (int g = 0; g < GRAPHS; g++) {
+			NavigationGraph graph = RandomGraphs.create(random,
+					2 + random.nextInt(7), random.nextInt(24), 3, true);
+			List<Location> vertices = graph.getVertices();
+			Location src = vertices.get(0);
+			Location dest = vertices.get(vertices.size() - 1);
+			List<List<Path>> routes = RandomGraphs.simpleRoutes(graph, src,
+					dest);
+			for (int b = 0; b < 5; b++) {
+				double[] bounds = { 5 + random.nextInt(60),
+						5 + random.nextInt(60) };
+				double expected = Double.POSITIVE_INFINITY;
+				for (List<Path> route : routes) {
+					if (RandomGraphs.length(route, 1) <= bounds[0]
+							&& RandomGraphs.length(route, 2) <= bounds[1]) {
+						expected = Math.min(expected,
+								RandomGraphs.length(route, 0));
+					}
+				}
+				List<Path> route = graph.getShortestRoute(src, dest, "p0",
+						new String[] { "p1", "p2" }, bounds);
+				if (expected == Double.POSITIVE_INFINITY) {
+					assertTrue(route.isEmpty());
+					continue;
+				}
+				RandomGraphs.assertRoute(src, dest, route);
+				assertTrue(RandomGraphs.length(route, 1) <= bounds[0]);
+				assertTrue(RandomGraphs.length(route, 2) <= bounds[1]);
+				assertEquals(expected, RandomGraphs.length(route, 0), 1e-9);
+			}
+		}
+	}
+}